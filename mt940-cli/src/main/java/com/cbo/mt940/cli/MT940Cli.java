@@ -0,0 +1,520 @@
+package com.cbo.mt940.cli;
+
+import com.cbo.mt940.MT940BalanceContinuity;
+import com.cbo.mt940.MT940ChunkedParser;
+import com.cbo.mt940.MT940ColumnarExporter;
+import com.cbo.mt940.MT940CompressedInput;
+import com.cbo.mt940.MT940CsvConverter;
+import com.cbo.mt940.MT940JsonConverter;
+import com.cbo.mt940.MT940Message;
+import com.cbo.mt940.MT940ParseError;
+import com.cbo.mt940.MT940ParseResult;
+import com.cbo.mt940.MT940Reader;
+import com.cbo.mt940.MT940Reconciliation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Command-line batch tool for scheduled conversion and validation jobs:
+ * <pre>
+ * mt940 parse     [options] file...   one tab-separated line per message: location, :20:, :25:, :28C:,
+ *                                     number of :61: lines, opening and closing balance in minor units
+ * mt940 validate  [options] file...   parse errors only
+ * mt940 reconcile [options] file...   unbalanced messages and balance continuity breaks
+ * mt940 convert   --format csv|json|columnar [-o file | -d directory] [options] file...
+ * </pre>
+ * Files may be plain, gzip or zip; {@code -} reads standard input. Plain files are parsed with
+ * {@link MT940ChunkedParser} on {@code --parallelism} threads, compressed ones are decompressed on them.
+ * {@code convert -d} converts the files concurrently, one output per input. Problems are reported as
+ * {@code file:line: message} on standard error.
+ * <p>
+ * The exit status is {@value #OK} when every message is valid (and, for {@code reconcile}, balanced and
+ * continuous), {@value #FAILED} when some are not, {@value #USAGE} for a usage error and
+ * {@value #IO_ERROR} when a file cannot be read or written.
+ * <p>
+ * Short-lived jobs are dominated by JVM startup, so this class does the work straight from
+ * {@code main}: no reflection, no service loading, no framework. It is the entry point of the
+ * {@code appcds} build profile, see the module's {@code pom.xml}.
+ */
+public final class MT940Cli {
+
+    /**
+     * Exit status when every message passed.
+     */
+    public static final int OK = 0;
+    /**
+     * Exit status when some messages failed.
+     */
+    public static final int FAILED = 1;
+    /**
+     * Exit status of a usage error.
+     */
+    public static final int USAGE = 2;
+    /**
+     * Exit status when a file cannot be read or written.
+     */
+    public static final int IO_ERROR = 3;
+
+    private static final String USAGE_TEXT = "Usage: mt940 parse|validate|reconcile|convert [options] file...\n"
+            + "  -p, --parallelism N     threads used per file (default: available processors)\n"
+            + "  -f, --format FORMAT     convert to csv, json (JSON Lines) or columnar\n"
+            + "  -o, --output FILE       write the output to FILE instead of standard output\n"
+            + "  -d, --output-dir DIR    convert every file to DIR/<name>.<format>, files in parallel\n"
+            + "  -q, --quiet             do not print the summary\n"
+            + "  -h, --help              print this help\n";
+
+    // Stripped from input names by convert -d, compression first
+    private static final String[][] KNOWN_EXTENSIONS = {{".gz", ".zip"}, {".mt940", ".sta", ".txt"}};
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private String command;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private String format;
+    private String output;
+    private String outputDirectory;
+    private boolean quiet;
+    private final List<String> files = new ArrayList<>();
+    private long messages;
+    private long failures;
+
+    private MT940Cli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024),
+                false, StandardCharsets.ISO_8859_1);
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 16 * 1024),
+                false, StandardCharsets.ISO_8859_1);
+        int status = run(args, out, err);
+        out.flush();
+        err.flush();
+        System.exit(status);
+    }
+
+    /**
+     * Runs a command as {@link #main} does, without exiting.
+     *
+     * @param args The command line.
+     * @param out  The standard output.
+     * @param err  The standard error.
+     * @return The exit status.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        MT940Cli cli = new MT940Cli(out, err);
+        try {
+            if (!cli.parseArguments(args)) {
+                out.print(USAGE_TEXT);
+                return OK;
+            }
+        } catch (IllegalArgumentException e) {
+            err.println("mt940: " + e.getMessage());
+            err.print(USAGE_TEXT);
+            return USAGE;
+        }
+        long start = System.nanoTime();
+        try {
+            cli.execute();
+        } catch (NoSuchFileException e) {
+            out.flush();
+            err.println("mt940: No such file: " + e.getFile());
+            return IO_ERROR;
+        } catch (IOException | UncheckedIOException e) {
+            out.flush();
+            err.println("mt940: " + e.getMessage());
+            return IO_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IO_ERROR;
+        }
+        out.flush();
+        if (!cli.quiet) {
+            err.printf("mt940 %s: %d file(s), %d %s, %d failed in %d ms%n", cli.command, cli.files.size(),
+                    cli.messages, "csv".equals(cli.format) ? "row(s)" : "message(s)", cli.failures,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        return cli.failures == 0 ? OK : FAILED;
+    }
+
+    // Returns false when only help was asked for
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-p":
+                case "--parallelism":
+                    String value = value(args, ++i, arg);
+                    try {
+                        parallelism = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid parallelism: " + value);
+                    }
+                    if (parallelism < 1) {
+                        throw new IllegalArgumentException("Parallelism must be positive");
+                    }
+                    break;
+                case "-f":
+                case "--format":
+                    format = value(args, ++i, arg);
+                    if (!format.equals("csv") && !format.equals("json") && !format.equals("columnar")) {
+                        throw new IllegalArgumentException("Unknown format: " + format);
+                    }
+                    break;
+                case "-o":
+                case "--output":
+                    output = value(args, ++i, arg);
+                    break;
+                case "-d":
+                case "--output-dir":
+                    outputDirectory = value(args, ++i, arg);
+                    break;
+                case "-q":
+                case "--quiet":
+                    quiet = true;
+                    break;
+                default:
+                    if (arg.startsWith("-") && !arg.equals("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    } else if (command == null) {
+                        command = arg;
+                    } else {
+                        files.add(arg);
+                    }
+            }
+        }
+        if (command == null) {
+            throw new IllegalArgumentException("Missing command");
+        }
+        if (!command.equals("parse") && !command.equals("validate") && !command.equals("reconcile")
+                && !command.equals("convert")) {
+            throw new IllegalArgumentException("Unknown command: " + command);
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Missing input file");
+        }
+        if (command.equals("convert")) {
+            if (format == null) {
+                throw new IllegalArgumentException("Missing --format");
+            }
+            if (output != null && outputDirectory != null) {
+                throw new IllegalArgumentException("Use either --output or --output-dir");
+            }
+            if (outputDirectory != null && files.contains("-")) {
+                throw new IllegalArgumentException("Standard input cannot be converted to --output-dir");
+            }
+            if (outputDirectory != null) {
+                requireDistinctOutputNames();
+            }
+        } else if (format != null || outputDirectory != null) {
+            throw new IllegalArgumentException("--format and --output-dir only apply to convert");
+        }
+        return true;
+    }
+
+    // Files converted concurrently must not write the same output; compared ignoring case for such file systems
+    private void requireDistinctOutputNames() {
+        Map<String, String> targets = new HashMap<>();
+        for (String file : files) {
+            String name = outputName(file);
+            String previous = targets.putIfAbsent(name.toLowerCase(Locale.ROOT), file);
+            if (previous != null) {
+                throw new IllegalArgumentException(previous + " and " + file + " would both be converted to "
+                        + Paths.get(outputDirectory, name));
+            }
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args[i];
+    }
+
+    private void execute() throws IOException, InterruptedException {
+        if (command.equals("convert")) {
+            convert();
+            return;
+        }
+        PrintStream report = output != null
+                ? new PrintStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(output)), 64 * 1024), false,
+                StandardCharsets.ISO_8859_1)
+                : out;
+        MT940BalanceContinuity continuity = command.equals("reconcile") ? new MT940BalanceContinuity() : null;
+        try {
+            for (String file : files) {
+                if (command.equals("parse")) {
+                    read(file, result -> summarize(file, result, report));
+                } else if (command.equals("validate")) {
+                    read(file, result -> validate(file, result));
+                } else {
+                    read(file, result -> reconcile(file, result, continuity));
+                }
+            }
+        } finally {
+            if (continuity != null) {
+                continuity.close();
+            }
+            if (report != out) {
+                report.close();
+            }
+        }
+    }
+
+    // Hands every result of a file to the handler, in file order
+    private void read(String file, Consumer<MT940ParseResult> handler) throws IOException {
+        if (!file.equals("-") && !isCompressed(Paths.get(file))) {
+            MT940ChunkedParser parser = new MT940ChunkedParser();
+            parser.setParallelism(parallelism);
+            for (MT940ParseResult result : parser.parse(Paths.get(file))) {
+                handler.accept(result);
+            }
+            return;
+        }
+        try (MT940Reader reader = new MT940Reader(open(file))) {
+            MT940ParseResult result;
+            while ((result = reader.readResult()) != null) {
+                handler.accept(result);
+            }
+        }
+    }
+
+    private InputStream open(String file) throws IOException {
+        MT940CompressedInput input = new MT940CompressedInput();
+        input.setParallelism(parallelism);
+        return file.equals("-") ? input.open(System.in) : input.open(Paths.get(file));
+    }
+
+    private static boolean isCompressed(Path file) throws IOException {
+        byte[] magic = new byte[2];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(magic, 0, magic.length);
+        }
+        return length == 2 && ((magic[0] == 0x1f && (magic[1] & 0xff) == 0x8b) || (magic[0] == 'P' && magic[1] == 'K'));
+    }
+
+    private void summarize(String file, MT940ParseResult result, PrintStream report) {
+        if (!validate(file, result)) {
+            return;
+        }
+        MT940Message message = result.getMessage();
+        report.append(file).append(':').append(Long.toString(result.getLineNumber())).append('\t')
+                .append(message.getTransactionReferenceNumber()).append('\t')
+                .append(message.getAccountIdentification()).append('\t')
+                .append(message.getStatementNumberSequenceNumber()).append('\t')
+                .append(Integer.toString(message.getStatementLines().size())).append('\t')
+                .append(Long.toString(MT940Reconciliation.getOpeningBalance(message))).append('\t')
+                .append(Long.toString(MT940Reconciliation.getClosingBalance(message))).append('\n');
+    }
+
+    // Reports the errors of an invalid result; returns whether it is valid
+    private boolean validate(String file, MT940ParseResult result) {
+        messages++;
+        if (result.isValid()) {
+            return true;
+        }
+        failures++;
+        for (MT940ParseError error : result.getErrors()) {
+            report(file, error.getLineNumber(), error.getCode() + (error.getTag() != null ? " :" + error.getTag() + ": " : " ")
+                    + error.getDetail());
+        }
+        return false;
+    }
+
+    private void reconcile(String file, MT940ParseResult result, MT940BalanceContinuity continuity) {
+        if (!validate(file, result)) {
+            return;
+        }
+        MT940Message message = result.getMessage();
+        long line = result.getLineNumber();
+        try {
+            if (!MT940Reconciliation.isBalanced(message)) {
+                failures++;
+                report(file, line, "Unbalanced " + message.getAccountIdentification() + " ("
+                        + message.getStatementNumberSequenceNumber() + "): opening "
+                        + MT940Reconciliation.getOpeningBalance(message) + " plus lines "
+                        + MT940Reconciliation.getStatementLineTotal(message) + " is not closing "
+                        + MT940Reconciliation.getClosingBalance(message));
+            }
+            continuity.setBreakHandler(gap -> report(file, line, gap.toString()));
+            if (!continuity.update(message)) {
+                failures++;
+            }
+        } catch (IllegalArgumentException e) {
+            failures++;
+            report(file, line, e.getMessage());
+        }
+    }
+
+    private void report(String file, long line, String problem) {
+        err.println(file + ":" + line + ": " + problem);
+    }
+
+    private void convert() throws IOException, InterruptedException {
+        if (outputDirectory == null) {
+            OutputStream target = output != null ? Files.newOutputStream(Paths.get(output)) : out;
+            try {
+                convert(files, target);
+            } finally {
+                if (target != out) {
+                    target.close();
+                }
+            }
+            return;
+        }
+        Path directory = Files.createDirectories(Paths.get(outputDirectory));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()));
+        try {
+            List<Future<Void>> tasks = new ArrayList<>(files.size());
+            for (String file : files) {
+                Path target = directory.resolve(outputName(file));
+                tasks.add(executor.submit(() -> {
+                    try (OutputStream stream = Files.newOutputStream(target)) {
+                        convert(List.of(file), stream);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // The file name without its compression and MT940 extensions, e.g. a.mt940.gz becomes a.csv
+    private String outputName(String file) {
+        String name = Paths.get(file).getFileName().toString();
+        for (String[] extensions : KNOWN_EXTENSIONS) {
+            for (String extension : extensions) {
+                if (name.length() > extension.length()
+                        && name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length())) {
+                    name = name.substring(0, name.length() - extension.length());
+                    break;
+                }
+            }
+        }
+        return name + (format.equals("json") ? ".jsonl" : "." + format);
+    }
+
+    // Converts the files one after the other into one output, with a single header or footer
+    private void convert(List<String> inputs, OutputStream target) throws IOException {
+        long converted = 0;
+        long rejected = 0;
+        if (format.equals("columnar")) {
+            // Closing the exporter writes the footer; the target is closed by the caller
+            MT940ColumnarExporter exporter = new MT940ColumnarExporter(new NonClosingOutputStream(target));
+            for (String file : inputs) {
+                long before = exporter.getRejectedMessageCount();
+                exporter.export(open(file));
+                reportRejected(file, exporter.getRejectedMessageCount() - before);
+            }
+            exporter.close();
+            converted = exporter.getMessageCount();
+            rejected = exporter.getRejectedMessageCount();
+        } else {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new NonClosingOutputStream(target),
+                    StandardCharsets.UTF_8), 64 * 1024);
+            if (format.equals("csv")) {
+                MT940CsvConverter converter = new MT940CsvConverter(writer);
+                for (String file : inputs) {
+                    long before = converter.getRejectedMessageCount();
+                    converter.convert(open(file));
+                    reportRejected(file, converter.getRejectedMessageCount() - before);
+                }
+                converted = converter.getRowCount();
+                rejected = converter.getRejectedMessageCount();
+            } else {
+                MT940JsonConverter converter = new MT940JsonConverter(writer);
+                for (String file : inputs) {
+                    long before = converter.getRejectedMessageCount();
+                    converter.convert(open(file));
+                    reportRejected(file, converter.getRejectedMessageCount() - before);
+                }
+                converted = converter.getMessageCount();
+                rejected = converter.getRejectedMessageCount();
+            }
+            writer.flush();
+        }
+        synchronized (this) {
+            messages += converted;
+            failures += rejected;
+        }
+    }
+
+    private void reportRejected(String file, long rejected) {
+        if (rejected > 0) {
+            err.println(file + ": " + rejected + " invalid message(s) skipped");
+        }
+    }
+
+    /**
+     * Lets a converter close its stream without closing the shared output.
+     */
+    private static final class NonClosingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        NonClosingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
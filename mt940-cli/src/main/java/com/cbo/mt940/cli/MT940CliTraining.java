@@ -0,0 +1,47 @@
+package com.cbo.mt940.cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Training run of the {@code appcds} build profile: runs every {@link MT940Cli} command and output
+ * format once on a sample file in a single JVM, so the class data sharing archive dumped at exit
+ * holds every class a real job loads, the lambda forms included. Output is discarded; the columnar
+ * output goes to a scratch directory, deleted afterwards.
+ */
+public final class MT940CliTraining {
+
+    private MT940CliTraining() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MT940CliTraining sample.mt940 directory");
+            System.exit(MT940Cli.USAGE);
+        }
+        String sample = args[0];
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        // Not a temporary directory: its random name would load the security providers into the archive
+        Path directory = Paths.get(args[1], "mt940-training");
+        MT940Cli.run(new String[]{"parse", sample}, discard, discard);
+        MT940Cli.run(new String[]{"validate", sample}, discard, discard);
+        MT940Cli.run(new String[]{"reconcile", sample}, discard, discard);
+        MT940Cli.run(new String[]{"convert", "-f", "csv", sample}, discard, discard);
+        MT940Cli.run(new String[]{"convert", "-f", "json", sample}, discard, discard);
+        MT940Cli.run(new String[]{"convert", "-f", "columnar", "-d", directory.toString(), sample}, discard, discard);
+        MT940Cli.run(new String[]{"--help"}, discard, discard);
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.cbo.mt940.cli;
+
+import com.cbo.mt940.MT940LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the wall-clock time of short {@link MT940Cli} jobs, from process start to exit, the way a
+ * scheduler sees them. The same command line is run as:
+ * <ul>
+ *     <li>{@code jvm}: a plain JVM;</li>
+ *     <li>{@code jvm-tuned}: a JVM with the C1 compiler only and the serial collector, which suit jobs
+ *     of a few hundred milliseconds;</li>
+ *     <li>{@code appcds}: the tuned JVM with the archive of the {@code appcds} build profile, if built.</li>
+ * </ul>
+ * Each variant runs once untimed to warm the file system cache, then {@code --runs} times.
+ * <pre>
+ * java -cp target/mt940-cli.jar com.cbo.mt940.cli.MT940StartupBenchmark [--runs N] [--jar file]
+ *     [--archive file] command [options] file...
+ * </pre>
+ */
+public final class MT940StartupBenchmark {
+
+    private static final String[] TUNED_OPTIONS = {"-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC"};
+
+    private MT940StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = 20;
+        String jar = "target/mt940-cli.jar";
+        String archive = "target/mt940-cli.jsa";
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("--"); i += 2) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--jar":
+                    jar = args[i + 1];
+                    break;
+                case "--archive":
+                    archive = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (runs < 1) {
+            throw new IllegalArgumentException("Runs must be positive");
+        }
+        List<String> command = Arrays.asList(args).subList(i, args.length);
+        if (command.isEmpty()) {
+            System.err.println("Usage: MT940StartupBenchmark [--runs N] [--jar file] [--archive file] command [options] file...");
+            System.exit(MT940Cli.USAGE);
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        benchmark("jvm", jvm(java, jar, command), runs);
+        benchmark("jvm-tuned", jvm(java, jar, command, TUNED_OPTIONS), runs);
+        if (Files.isRegularFile(Paths.get(archive))) {
+            benchmark("appcds", jvm(java, jar, command, TUNED_OPTIONS[0], TUNED_OPTIONS[1],
+                    "-XX:SharedArchiveFile=" + archive), runs);
+        } else {
+            System.out.println("appcds     skipped, no " + archive + " (build with -Pappcds)");
+        }
+    }
+
+    private static List<String> jvm(String java, String jar, List<String> command, String... options) {
+        List<String> line = new ArrayList<>();
+        line.add(java);
+        line.addAll(Arrays.asList(options));
+        line.add("-cp");
+        line.add(jar);
+        line.add(MT940Cli.class.getName());
+        line.addAll(command);
+        return line;
+    }
+
+    private static void benchmark(String name, List<String> line, int runs) throws IOException, InterruptedException {
+        MT940LatencyHistogram latency = new MT940LatencyHistogram();
+        int status = launch(line);
+        if (status != MT940Cli.OK && status != MT940Cli.FAILED) {
+            System.out.printf("%-10s failed with exit status %d: %s%n", name, status, String.join(" ", line));
+            return;
+        }
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            launch(line);
+            latency.record(System.nanoTime() - start);
+        }
+        System.out.printf("%-10s %d runs: mean %.1f ms, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", name, runs,
+                latency.getMean() / 1e6, latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                latency.getMax() / 1e6);
+    }
+
+    private static int launch(List<String> line) throws IOException, InterruptedException {
+        return new ProcessBuilder(line)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start()
+                .waitFor();
+    }
+}
@@ -0,0 +1,146 @@
+package com.cbo.mt940.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940CliTest {
+
+    private static final Path SAMPLE = Paths.get("src/appcds/training.mt940");
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void parsePrintsOneLinePerValidMessage() {
+        assertEquals(MT940Cli.FAILED, run("parse", "-q", SAMPLE.toString()));
+        String[] lines = out().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(SAMPLE + ":1\t20231115-319\t1022200171931\t319/1\t2\t699460900\t592779300", lines[0]);
+        assertTrue(err().startsWith(SAMPLE + ":38: "), err());
+    }
+
+    @Test
+    void validateReportsOnlyErrors() {
+        assertEquals(MT940Cli.FAILED, run("validate", SAMPLE.toString()));
+        assertEquals("", out());
+        assertTrue(err().contains("mt940 validate: 1 file(s), 4 message(s), 1 failed"), err());
+    }
+
+    @Test
+    void reconcileReportsContinuityBreaks(@TempDir Path directory) throws IOException {
+        assertEquals(MT940Cli.FAILED, run("reconcile", "-q", SAMPLE.toString()));
+        assertTrue(err().contains(SAMPLE + ":23: "), err());
+
+        Path continuous = directory.resolve("continuous.mt940");
+        List<String> lines = Files.readAllLines(SAMPLE);
+        Files.write(continuous, lines.subList(0, 22));
+        err.reset();
+        assertEquals(MT940Cli.OK, run("reconcile", "-q", continuous.toString()), err());
+    }
+
+    @Test
+    void convertsCompressedInputToOneCsvFile(@TempDir Path directory) throws IOException {
+        Path compressed = directory.resolve("sample.mt940.gz");
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(SAMPLE, gzip);
+        }
+        Path csv = directory.resolve("lines.csv");
+        assertEquals(MT940Cli.FAILED, run("convert", "-q", "-f", "csv", "-o", csv.toString(),
+                SAMPLE.toString(), compressed.toString()));
+        List<String> rows = Files.readAllLines(csv);
+        assertEquals(1 + 2 * 4, rows.size());
+        assertTrue(rows.get(0).startsWith("transaction_reference,"));
+        assertTrue(err().contains(compressed + ": 1 invalid message(s) skipped"), err());
+    }
+
+    @Test
+    void convertsEveryFileIntoTheOutputDirectory(@TempDir Path directory) throws IOException {
+        Path copy = directory.resolve("copy.mt940");
+        Files.copy(SAMPLE, copy);
+        Path output = directory.resolve("out");
+        assertEquals(MT940Cli.FAILED, run("convert", "-q", "-f", "json", "-d", output.toString(),
+                SAMPLE.toString(), copy.toString()));
+        assertEquals(3, Files.readAllLines(output.resolve("training.jsonl")).size());
+        assertEquals(3, Files.readAllLines(output.resolve("copy.jsonl")).size());
+    }
+
+    @Test
+    void outputNamesOnlyLoseKnownExtensions(@TempDir Path directory) throws IOException {
+        Path dated = directory.resolve("statement.2023-11-15.MT940");
+        Files.copy(SAMPLE, dated);
+        Path compressed = directory.resolve("statement.2023-11-16.mt940.gz");
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(SAMPLE, gzip);
+        }
+        Path output = directory.resolve("out");
+        assertEquals(MT940Cli.FAILED, run("convert", "-q", "-f", "csv", "-d", output.toString(),
+                dated.toString(), compressed.toString()));
+        assertEquals(5, Files.readAllLines(output.resolve("statement.2023-11-15.csv")).size());
+        assertEquals(5, Files.readAllLines(output.resolve("statement.2023-11-16.csv")).size());
+    }
+
+    @Test
+    void duplicateOutputNamesAreRejectedUpFront(@TempDir Path directory) throws IOException {
+        Path plain = directory.resolve("a.mt940");
+        Path compressed = directory.resolve("a.mt940.gz");
+        Files.createDirectories(directory.resolve("dir1"));
+        Files.createDirectories(directory.resolve("dir2"));
+        Path first = Files.copy(SAMPLE, directory.resolve("dir1/x.txt"));
+        Path second = Files.copy(SAMPLE, directory.resolve("dir2/x.txt"));
+        Path output = directory.resolve("out");
+
+        assertEquals(MT940Cli.USAGE, run("convert", "-f", "csv", "-d", output.toString(),
+                plain.toString(), compressed.toString()));
+        assertTrue(err().contains(plain + " and " + compressed + " would both be converted to "
+                + output.resolve("a.csv")), err());
+        assertEquals(MT940Cli.USAGE, run("convert", "-f", "json", "-d", output.toString(),
+                first.toString(), second.toString()));
+        assertTrue(err().contains(first + " and " + second + " would both be converted to "
+                + output.resolve("x.jsonl")), err());
+        assertTrue(Files.notExists(output));
+    }
+
+    @Test
+    void usageErrorsAreReported() {
+        assertEquals(MT940Cli.USAGE, run("frobnicate", SAMPLE.toString()));
+        assertEquals(MT940Cli.USAGE, run("convert", SAMPLE.toString()));
+        assertEquals(MT940Cli.USAGE, run("validate", "-p", "0", SAMPLE.toString()));
+        assertEquals(MT940Cli.USAGE, run("validate", "-f", "csv", SAMPLE.toString()));
+        assertEquals(MT940Cli.USAGE, run("validate"));
+        assertEquals(MT940Cli.OK, run("--help"));
+        assertTrue(out().startsWith("Usage: mt940 "));
+    }
+
+    @Test
+    void missingFileIsAnIoError() {
+        assertEquals(MT940Cli.IO_ERROR, run("validate", "no-such-file.mt940"));
+        assertTrue(err().contains("No such file: no-such-file.mt940"), err());
+    }
+
+    private int run(String... args) {
+        return MT940Cli.run(args, new PrintStream(out, true, StandardCharsets.ISO_8859_1),
+                new PrintStream(err, true, StandardCharsets.ISO_8859_1));
+    }
+
+    private String out() {
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private String err() {
+        return err.toString(StandardCharsets.ISO_8859_1);
+    }
+}
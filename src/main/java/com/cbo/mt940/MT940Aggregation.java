@@ -0,0 +1,352 @@
+package com.cbo.mt940;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+
+/**
+ * Debit and credit totals of Tag 61 statement lines per account, value date and transaction type ID code.
+ * <p>
+ * Totals are kept in an open-addressing table keyed by a packed long (account index, YYMMDD value date,
+ * transaction type ID code) with long accumulators in minor units, so adding a line never boxes.
+ * An instance is not thread-safe: parallel aggregation builds one partial instance per worker and
+ * merges them at the end, see {@link #aggregate(Collection, int)} and {@link #collector()}.
+ */
+public class MT940Aggregation {
+
+    private static final int DAY_BITS = 20;
+    private static final int TYPE_BITS = 20;
+    private static final int MAX_ACCOUNTS = (1 << 24) - 2;
+    private static final long DAY_MASK = (1L << DAY_BITS) - 1;
+    private static final long TYPE_MASK = (1L << TYPE_BITS) - 1;
+    private static final long EMPTY = -1L;
+
+    // Per entry: debit count, debit amount, credit count, credit amount
+    private static final int SLOTS = 4;
+
+    private final Map<String, Integer> accountIndexes = new HashMap<>();
+    private final List<String> accounts = new ArrayList<>();
+    private String lastAccount;
+    private int lastAccountIndex;
+
+    private long[] keys;
+    private long[] totals;
+    private int size;
+
+    /**
+     * Receives one row of aggregated totals. Amounts are in minor units.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param accountIdentification The Tag 25 account, or {@code null} when rolled up over accounts.
+         * @param valueDate             The YYMMDD value date, or {@code 0} when rolled up over days.
+         * @param transactionTypeIDCode The transaction type ID code, or {@code null} when rolled up over types.
+         * @param debitCount            The number of debit lines.
+         * @param debitAmount           The sum of debit amounts.
+         * @param creditCount           The number of credit lines.
+         * @param creditAmount          The sum of credit amounts.
+         */
+        void visit(String accountIdentification, int valueDate, String transactionTypeIDCode,
+                   long debitCount, long debitAmount, long creditCount, long creditAmount);
+    }
+
+    public MT940Aggregation() {
+        this(64);
+    }
+
+    /**
+     * @param expectedEntries The expected number of distinct (account, day, type) combinations.
+     */
+    public MT940Aggregation(int expectedEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedEntries * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.totals = new long[capacity * SLOTS];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Aggregates the statement lines of the given messages, splitting the work over
+     * {@code parallelism} threads that each fill a partial aggregation.
+     *
+     * @param messages    The parsed messages.
+     * @param parallelism The number of worker threads (1 aggregates on the calling thread).
+     * @return The merged aggregation.
+     */
+    public static MT940Aggregation aggregate(Collection<MT940Message> messages, int parallelism) {
+        if (parallelism <= 1) {
+            MT940Aggregation aggregation = new MT940Aggregation();
+            for (MT940Message message : messages) {
+                aggregation.add(message);
+            }
+            return aggregation;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> messages.parallelStream().collect(collector())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Aggregation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Aggregation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns a collector that aggregates messages into per-thread partial aggregations
+     * and merges them, for use with parallel streams.
+     *
+     * @return The collector.
+     */
+    public static Collector<MT940Message, ?, MT940Aggregation> collector() {
+        return Collector.of(MT940Aggregation::new, MT940Aggregation::add, MT940Aggregation::merge);
+    }
+
+    /**
+     * Adds all statement lines of a message.
+     *
+     * @param message The parsed message.
+     */
+    public void add(MT940Message message) {
+        int account = accountIndex(message.getAccountIdentification());
+        for (MT940Tag61 line : message.getStatementLines()) {
+            add(account, line.getValueDate(), line.getTransactionTypeIDCode(), line.getDebitCreditMark(), line.getAmount());
+        }
+    }
+
+    /**
+     * Adds a single statement line, e.g. while streaming.
+     *
+     * @param accountIdentification The Tag 25 account the line belongs to.
+     * @param line                  The statement line.
+     */
+    public void add(String accountIdentification, MT940Tag61 line) {
+        add(accountIndex(accountIdentification), line.getValueDate(), line.getTransactionTypeIDCode(),
+                line.getDebitCreditMark(), line.getAmount());
+    }
+
+    /**
+     * Adds a single statement line given as primitives.
+     *
+     * @param accountIdentification The Tag 25 account the line belongs to.
+     * @param valueDate             The YYMMDD value date.
+     * @param transactionTypeIDCode The transaction type ID code.
+     * @param debit                 {@code true} for debit entries.
+     * @param amount                The amount in minor units.
+     */
+    public void add(String accountIdentification, int valueDate, CharSequence transactionTypeIDCode, boolean debit, long amount) {
+        add(packKey(accountIndex(accountIdentification), valueDate, packType(transactionTypeIDCode)), debit ? 1 : 0,
+                debit ? amount : 0, debit ? 0 : 1, debit ? 0 : amount);
+    }
+
+    private void add(int account, String valueDate, String transactionTypeIDCode, String debitCreditMark, String amount) {
+        boolean debit = MT940Amount.isDebit(debitCreditMark);
+        long minorUnits = MT940Amount.parseMinorUnits(amount);
+        long key = packKey(account, MT940Amount.parseDate(valueDate, 0), packType(transactionTypeIDCode));
+        add(key, debit ? 1 : 0, debit ? minorUnits : 0, debit ? 0 : 1, debit ? 0 : minorUnits);
+    }
+
+    /**
+     * Merges another (partial) aggregation into this one.
+     *
+     * @param other The aggregation to merge.
+     * @return This aggregation.
+     */
+    public MT940Aggregation merge(MT940Aggregation other) {
+        int[] remap = new int[other.accounts.size() + 1];
+        for (int i = 0; i < other.accounts.size(); i++) {
+            remap[i + 1] = accountIndex(other.accounts.get(i));
+        }
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            long key = other.keys[slot];
+            if (key != EMPTY) {
+                int account = remap[(int) (key >>> (DAY_BITS + TYPE_BITS))];
+                int base = slot * SLOTS;
+                add(withAccount(key, account), other.totals[base], other.totals[base + 1],
+                        other.totals[base + 2], other.totals[base + 3]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return The totals per account over all days and transaction types.
+     */
+    public MT940Aggregation byAccount() {
+        return rollUp(true, false, false);
+    }
+
+    /**
+     * @return The totals per value date over all accounts and transaction types.
+     */
+    public MT940Aggregation byDay() {
+        return rollUp(false, true, false);
+    }
+
+    /**
+     * @return The totals per transaction type ID code over all accounts and days.
+     */
+    public MT940Aggregation byTransactionType() {
+        return rollUp(false, false, true);
+    }
+
+    /**
+     * Re-aggregates the totals keeping only the requested dimensions.
+     *
+     * @param keepAccount Whether to keep the account dimension.
+     * @param keepDay     Whether to keep the value date dimension.
+     * @param keepType    Whether to keep the transaction type dimension.
+     * @return A new aggregation with the dropped dimensions summed up.
+     */
+    public MT940Aggregation rollUp(boolean keepAccount, boolean keepDay, boolean keepType) {
+        MT940Aggregation result = new MT940Aggregation(size);
+        result.accounts.addAll(accounts);
+        result.accountIndexes.putAll(accountIndexes);
+        long mask = (keepAccount ? ~(DAY_MASK << TYPE_BITS | TYPE_MASK) : 0)
+                | (keepDay ? DAY_MASK << TYPE_BITS : 0)
+                | (keepType ? TYPE_MASK : 0);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                int base = slot * SLOTS;
+                result.add(keys[slot] & mask, totals[base], totals[base + 1], totals[base + 2], totals[base + 3]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits every aggregated row, in no particular order.
+     *
+     * @param visitor The visitor to call.
+     */
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key != EMPTY) {
+                int account = (int) (key >>> (DAY_BITS + TYPE_BITS));
+                int base = slot * SLOTS;
+                visitor.visit(account == 0 ? null : accounts.get(account - 1),
+                        (int) ((key >>> TYPE_BITS) & DAY_MASK),
+                        unpackType((int) (key & TYPE_MASK)),
+                        totals[base], totals[base + 1], totals[base + 2], totals[base + 3]);
+            }
+        }
+    }
+
+    /**
+     * @return The number of aggregated rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int accountIndex(String accountIdentification) {
+        if (accountIdentification == null) {
+            throw new IllegalArgumentException("Account identification cannot be null");
+        }
+        if (accountIdentification.equals(lastAccount)) {
+            return lastAccountIndex;
+        }
+        Integer index = accountIndexes.get(accountIdentification);
+        if (index == null) {
+            if (accounts.size() == MAX_ACCOUNTS) {
+                throw new IllegalStateException("Too many accounts to aggregate");
+            }
+            accounts.add(accountIdentification);
+            index = accounts.size();
+            accountIndexes.put(accountIdentification, index);
+        }
+        lastAccount = accountIdentification;
+        lastAccountIndex = index;
+        return index;
+    }
+
+    private void add(long key, long debitCount, long debitAmount, long creditCount, long creditAmount) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    add(key, debitCount, debitAmount, creditCount, creditAmount);
+                    return;
+                }
+                keys[slot] = key;
+                size++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int base = slot * SLOTS;
+        totals[base] += debitCount;
+        totals[base + 1] += debitAmount;
+        totals[base + 2] += creditCount;
+        totals[base + 3] += creditAmount;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldTotals = totals;
+        keys = new long[oldKeys.length << 1];
+        totals = new long[keys.length * SLOTS];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                int base = slot * SLOTS;
+                add(oldKeys[slot], oldTotals[base], oldTotals[base + 1], oldTotals[base + 2], oldTotals[base + 3]);
+            }
+        }
+    }
+
+    private static long packKey(int account, int valueDate, int type) {
+        return ((long) account << (DAY_BITS + TYPE_BITS)) | ((long) valueDate << TYPE_BITS) | type;
+    }
+
+    private static long withAccount(long key, int account) {
+        return ((long) account << (DAY_BITS + TYPE_BITS)) | (key & (DAY_MASK << TYPE_BITS | TYPE_MASK));
+    }
+
+    // Packs the four upper-case letters of a transaction type ID code into 5 bits each, 0 meaning none
+    private static int packType(CharSequence transactionTypeIDCode) {
+        if (transactionTypeIDCode == null || transactionTypeIDCode.length() != 4) {
+            throw new IllegalArgumentException("Invalid transaction type ID code");
+        }
+        int packed = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = transactionTypeIDCode.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                throw new IllegalArgumentException("Invalid transaction type ID code");
+            }
+            packed = (packed << 5) | (c - 'A' + 1);
+        }
+        return packed;
+    }
+
+    private static String unpackType(int packed) {
+        if (packed == 0) {
+            return null;
+        }
+        char[] chars = new char[4];
+        for (int i = 3; i >= 0; i--) {
+            chars[i] = (char) ('A' + (packed & 31) - 1);
+            packed >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,146 @@
+package com.cbo.mt940;
+
+/**
+ * Allocation-free conversion between MT940 amount strings (comma as decimal separator)
+ * and long minor units (hundredths).
+ */
+public final class MT940Amount {
+
+    private MT940Amount() {
+    }
+
+    /**
+     * Parses an MT940 amount into minor units.
+     *
+     * @param amount The amount to parse (format: digits with an optional comma and up to two decimals).
+     * @return The amount in minor units.
+     * @throws IllegalArgumentException If the amount is invalid.
+     */
+    public static long parseMinorUnits(CharSequence amount) {
+        if (amount == null) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        return parseMinorUnits(amount, 0, amount.length());
+    }
+
+    /**
+     * Parses the MT940 amount found between {@code start} (inclusive) and {@code end} (exclusive)
+     * into minor units without creating an intermediate String.
+     *
+     * @param amount The characters holding the amount.
+     * @param start  The index of the first character of the amount.
+     * @param end    The index after the last character of the amount.
+     * @return The amount in minor units.
+     * @throws IllegalArgumentException If the amount is invalid.
+     */
+    public static long parseMinorUnits(CharSequence amount, int start, int end) {
+        long units = 0;
+        int integerDigits = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            char c = amount.charAt(i);
+            if (c == ',' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals < 0) {
+                    if (++integerDigits > 15) {
+                        throw new IllegalArgumentException("Invalid amount format");
+                    }
+                } else if (++decimals > 2) {
+                    throw new IllegalArgumentException("Invalid amount format");
+                }
+                units = units * 10 + (c - '0');
+            } else {
+                throw new IllegalArgumentException("Invalid amount format");
+            }
+        }
+        if (integerDigits == 0) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            units *= 10;
+        }
+        return units;
+    }
+
+    /**
+     * Formats minor units as an MT940 amount with two decimals, e.g. {@code 53340800} as {@code 533408,00}.
+     *
+     * @param minorUnits The non-negative amount in minor units.
+     * @return The formatted amount.
+     * @throws IllegalArgumentException If the amount is negative.
+     */
+    public static String format(long minorUnits) {
+        StringBuilder sb = new StringBuilder(20);
+        appendTo(sb, minorUnits);
+        return sb.toString();
+    }
+
+    /**
+     * Appends minor units as an MT940 amount with two decimals.
+     *
+     * @param sb         The builder to append to.
+     * @param minorUnits The non-negative amount in minor units.
+     * @throws IllegalArgumentException If the amount is negative.
+     */
+    public static void appendTo(StringBuilder sb, long minorUnits) {
+        if (minorUnits < 0) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        long cents = minorUnits % 100;
+        sb.append(minorUnits / 100).append(',');
+        if (cents < 10) {
+            sb.append('0');
+        }
+        sb.append(cents);
+    }
+
+    /**
+     * Gets the length of the formatted amount without formatting it.
+     *
+     * @param minorUnits The non-negative amount in minor units.
+     * @return The number of characters {@link #format(long)} returns.
+     */
+    static int formattedLength(long minorUnits) {
+        int length = 4;
+        for (long units = minorUnits / 100; units >= 10; units /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Parses a YYMMDD date into an int without creating an intermediate String.
+     *
+     * @param date  The characters holding the date.
+     * @param start The index of the first digit.
+     * @return The date as an int, e.g. {@code 231115}.
+     * @throws IllegalArgumentException If the date is not six digits.
+     */
+    public static int parseDate(CharSequence date, int start) {
+        if (date == null || date.length() < start + 6) {
+            throw new IllegalArgumentException("Invalid value date format");
+        }
+        int value = 0;
+        for (int i = start; i < start + 6; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid value date format");
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Tells whether a debit/credit mark books the amount on the debit side.
+     * D and RC (reversal of credit) are debits; C and RD (reversal of debit) are credits.
+     *
+     * @param debitCreditMark The debit/credit mark.
+     * @return {@code true} for debit entries.
+     */
+    public static boolean isDebit(CharSequence debitCreditMark) {
+        boolean reversal = debitCreditMark.charAt(0) == 'R';
+        return (debitCreditMark.charAt(debitCreditMark.length() - 1) == 'D') != reversal;
+    }
+}
@@ -0,0 +1,704 @@
+package com.cbo.mt940;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Balance continuity across the statements of each account: the Tag 60F opening balance of a statement
+ * must equal the Tag 62F closing balance of the account's previous statement, in the same currency, and
+ * Tag 28C statement numbers must follow each other without gaps. The pages of a statement chain the same
+ * way through 62M and 60M, with consecutive sequence numbers. A statement numbered 1 in a new year, after
+ * the yearly reset many banks apply, is not a gap, and a statement delivered twice is ignored.
+ * <p>
+ * Only the last closing state of every account is kept, in fixed-size slots of an open-addressing table
+ * keyed by a 64-bit hash of the account; the account itself is stored in the slot to tell collisions
+ * apart. The slots live in heap buffers, in direct buffers outside the Java heap, or in memory-mapped
+ * files of a spill directory that the operating system pages to disk, so millions of accounts cost
+ * neither an object each nor heap. The table is split into segments with their own lock, so statements
+ * can be fed from several parser threads at once; the statements of one account must arrive in order.
+ * <p>
+ * Breaks are counted and handed to an optional handler. The state can be written to a checkpoint file
+ * and restored, so the next day's run continues from the last closing balances.
+ */
+public class MT940BalanceContinuity implements Closeable {
+
+    private static final int MAGIC = 0x4D544243; // "MTBC"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int MAX_ACCOUNT_LENGTH = 35;
+
+    // Slot layout: hash key (0 when empty), closing balance, closing date, statement number, sequence number,
+    // currency, flags, account length and account
+    private static final int KEY = 0;
+    private static final int BALANCE = 8;
+    private static final int DATE = 16;
+    private static final int NUMBER = 20;
+    private static final int SEQUENCE = 24;
+    private static final int CURRENCY = 28;
+    private static final int FLAGS = 31;
+    private static final int ACCOUNT_LENGTH = 32;
+    private static final int ACCOUNT = 33;
+    private static final int SLOT_SIZE = 72;
+    private static final int MAX_CAPACITY = 1 << 24;
+    private static final byte INTERMEDIATE = 1;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final boolean offHeap;
+    private final Path spillDirectory;
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder balanceBreaks = new LongAdder();
+    private final LongAdder statementNumberGaps = new LongAdder();
+    private volatile Consumer<? super Break> breakHandler;
+
+    /**
+     * Creates a checker keeping its state on the heap.
+     */
+    public MT940BalanceContinuity() {
+        this(1024, false);
+    }
+
+    /**
+     * Creates a checker keeping its state on the heap or in direct buffers outside it.
+     *
+     * @param expectedAccounts The expected number of accounts; the table grows past it.
+     * @param offHeap          {@code true} to keep the state in direct buffers.
+     * @throws IllegalArgumentException If the expected number of accounts is negative.
+     */
+    public MT940BalanceContinuity(int expectedAccounts, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.spillDirectory = null;
+        try {
+            allocateSegments(expectedAccounts);
+        } catch (IOException e) {
+            // Only mapped files fail with an IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a checker keeping its state in memory-mapped files of a directory. The files are temporary
+     * and deleted by {@link #close()}: use {@link #checkpoint(Path)} to keep the state across runs.
+     *
+     * @param expectedAccounts The expected number of accounts; the table grows past it.
+     * @param spillDirectory   The directory of the mapped files.
+     * @throws IllegalArgumentException If the expected number of accounts is negative or the directory is null.
+     * @throws IOException              If the files cannot be created.
+     */
+    public MT940BalanceContinuity(int expectedAccounts, Path spillDirectory) throws IOException {
+        if (spillDirectory == null) {
+            throw new IllegalArgumentException("Spill directory must not be null");
+        }
+        this.offHeap = true;
+        this.spillDirectory = spillDirectory;
+        allocateSegments(expectedAccounts);
+    }
+
+    /**
+     * Sets the consumer of every break found, called on the thread that fed the statement.
+     *
+     * @param breakHandler The handler, or {@code null} to only count breaks.
+     */
+    public void setBreakHandler(Consumer<? super Break> breakHandler) {
+        this.breakHandler = breakHandler;
+    }
+
+    /**
+     * Checks a statement against the account's previous one and records its closing state.
+     *
+     * @param statement The parsed statement.
+     * @return {@code true} if the statement continues the previous one, or is the first of its account.
+     * @throws IllegalArgumentException If the account is longer than 35 characters.
+     * @throws UncheckedIOException     If a mapped file of the spill directory cannot be grown.
+     */
+    public boolean update(MT940Statement statement) {
+        return update(statement.getAccountIdentification(), statement.getStatementNumber(),
+                statement.getSequenceNumber(), statement.getCurrency(), statement.getOpeningBalanceDate(),
+                statement.getOpeningBalanceMinorUnits(), statement.getClosingBalanceDate(),
+                statement.getClosingBalanceMinorUnits(), statement.isIntermediateClosing());
+    }
+
+    /**
+     * Checks a message against the account's previous statement and records its closing state.
+     *
+     * @param message The parsed message.
+     * @return {@code true} if the message continues the previous statement, or is the first of its account.
+     * @throws IllegalArgumentException If Tag 25, 28C, 60a or 62a is missing or invalid.
+     */
+    public boolean update(MT940Message message) {
+        String opening = message.getOpeningBalance();
+        String closing = message.getClosingBalanceBookedFunds();
+        // Tag 28C as a whole is set by the parser and by setStatementNumberSequenceNumber alike
+        String statementNumberSequenceNumber = message.getStatementNumberSequenceNumber();
+        if (statementNumberSequenceNumber == null) {
+            throw new IllegalArgumentException("Missing or invalid Tag 28C in the MT940 message");
+        }
+        if (opening == null || closing == null) {
+            throw new IllegalArgumentException("Missing or invalid Tag 60, 62F or 28C in the MT940 message");
+        }
+        int slash = statementNumberSequenceNumber.indexOf('/');
+        String statementNumber = slash < 0 ? statementNumberSequenceNumber : statementNumberSequenceNumber.substring(0, slash);
+        String sequenceNumber = slash < 0 ? null : statementNumberSequenceNumber.substring(slash + 1);
+        int openingStart = opening.indexOf(':', 1) + 1;
+        int closingStart = closing.indexOf(':', 1) + 1;
+        return update(message.getAccountIdentification(), statementNumber, sequenceNumber,
+                opening.substring(openingStart + 7, openingStart + 10), MT940Amount.parseDate(opening, openingStart + 1),
+                MT940Reconciliation.parseBalance(opening), MT940Amount.parseDate(closing, closingStart + 1),
+                MT940Reconciliation.parseBalance(closing), closing.startsWith(":62M:"));
+    }
+
+    /**
+     * @return The number of accounts with a recorded closing state.
+     */
+    public int getAccountCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.size;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of statements checked.
+     */
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * @return The number of statements whose opening balance did not match the previous closing balance.
+     */
+    public long getBalanceBreakCount() {
+        return balanceBreaks.sum();
+    }
+
+    /**
+     * @return The number of statements whose Tag 28C did not follow the previous statement's.
+     */
+    public long getStatementNumberGapCount() {
+        return statementNumberGaps.sum();
+    }
+
+    /**
+     * @param accountIdentification The Tag 25 account.
+     * @return {@code true} if a closing state is recorded for the account.
+     */
+    public boolean contains(String accountIdentification) {
+        return slotValue(accountIdentification, KEY) != null;
+    }
+
+    /**
+     * @param accountIdentification The Tag 25 account.
+     * @return The signed closing balance of the account's last statement, in minor units.
+     * @throws IllegalArgumentException If no state is recorded for the account.
+     */
+    public long getClosingBalanceMinorUnits(String accountIdentification) {
+        return require(slotValue(accountIdentification, BALANCE), accountIdentification);
+    }
+
+    /**
+     * @param accountIdentification The Tag 25 account.
+     * @return The YYMMDD closing balance date of the account's last statement.
+     * @throws IllegalArgumentException If no state is recorded for the account.
+     */
+    public int getClosingBalanceDate(String accountIdentification) {
+        return (int) require(slotValue(accountIdentification, DATE), accountIdentification);
+    }
+
+    /**
+     * Writes the recorded closing states to a file, replaced atomically once complete. Every account's
+     * state is consistent, but statements fed while the checkpoint is written may or may not be part of
+     * it: take it between batches, e.g. along with the ingestion checkpoint.
+     *
+     * @param file The checkpoint file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void checkpoint(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(SLOT_SIZE);
+            for (Segment segment : segments) {
+                byte[] copy;
+                int count;
+                // Copied under the lock, written outside it
+                segment.lock.lock();
+                try {
+                    copy = new byte[segment.size * SLOT_SIZE];
+                    count = 0;
+                    for (int i = 0; i < segment.capacity; i++) {
+                        if (segment.slots.getLong(i * SLOT_SIZE + KEY) != 0) {
+                            segment.slots.get(i * SLOT_SIZE, copy, count++ * SLOT_SIZE, SLOT_SIZE);
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+                out.writeInt(count);
+                out.write(copy, 0, count * SLOT_SIZE);
+            }
+            // The CRC covers everything before it
+            out.writeInt((int) crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the recorded closing states with those of a checkpoint file. Counters are left as they are.
+     *
+     * @param file The checkpoint file written by {@link #checkpoint(Path)}.
+     * @throws IOException If the file cannot be read or is not an intact checkpoint.
+     */
+    public void restore(Path file) throws IOException {
+        // Verified in a first pass, so a damaged file leaves the current state alone
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = openCheckpoint(file, crc)) {
+            for (int s = 0; s < SEGMENTS; s++) {
+                in.skipNBytes((long) in.readInt() * SLOT_SIZE);
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected || in.read() != -1) {
+                throw new IOException("Corrupt balance continuity checkpoint: " + file);
+            }
+        }
+        try (DataInputStream in = openCheckpoint(file, new CRC32())) {
+            byte[] slot = new byte[SLOT_SIZE];
+            ByteBuffer record = ByteBuffer.wrap(slot);
+            for (Segment segment : segments) {
+                int count = in.readInt();
+                segment.lock.lock();
+                try {
+                    Path oldFile = segment.file;
+                    allocate(segment, segment.capacity);
+                    release(oldFile);
+                    for (int i = 0; i < count; i++) {
+                        in.readFully(slot);
+                        insert(segment, record.getLong(KEY), record);
+                        if (segment.size * 4 > segment.capacity * 3) {
+                            grow(segment);
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the mapped files of a spill directory. The checker must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                release(segment.file);
+                segment.file = null;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MT940BalanceContinuity{accounts=" + getAccountCount() + ", statements=" + statements.sum()
+                + ", balanceBreaks=" + balanceBreaks.sum() + ", statementNumberGaps=" + statementNumberGaps.sum()
+                + ", storage=" + (spillDirectory != null ? spillDirectory : offHeap ? "off-heap" : "heap") + "}";
+    }
+
+    private boolean update(String account, String statementNumber, String sequenceNumber, String currency,
+                           int openingDate, long opening, int closingDate, long closing, boolean intermediate) {
+        int accountLength = account == null ? -1 : account.length();
+        if (accountLength < 1 || accountLength > MAX_ACCOUNT_LENGTH) {
+            throw new IllegalArgumentException("Invalid 25 value");
+        }
+        int number = Integer.parseInt(statementNumber);
+        int sequence = sequenceNumber == null ? 1 : Integer.parseInt(sequenceNumber);
+        long key = hash(account);
+        Segment segment = segments[(int) (key >>> (64 - SEGMENT_BITS))];
+        Consumer<? super Break> handler = breakHandler;
+        boolean continuous = true;
+        Break found = null;
+        segment.lock.lock();
+        try {
+            int slot = find(segment, key, account);
+            if (slot < 0) {
+                slot = ~slot;
+                segment.slots.putLong(slot * SLOT_SIZE + KEY, key);
+                segment.slots.put(slot * SLOT_SIZE + ACCOUNT_LENGTH, (byte) accountLength);
+                for (int i = 0; i < accountLength; i++) {
+                    segment.slots.put(slot * SLOT_SIZE + ACCOUNT + i, (byte) account.charAt(i));
+                }
+                segment.size++;
+            } else {
+                int base = slot * SLOT_SIZE;
+                ByteBuffer slots = segment.slots;
+                long previousBalance = slots.getLong(base + BALANCE);
+                int previousDate = slots.getInt(base + DATE);
+                int previousNumber = slots.getInt(base + NUMBER);
+                int previousSequence = slots.getInt(base + SEQUENCE);
+                boolean previousIntermediate = (slots.get(base + FLAGS) & INTERMEDIATE) != 0;
+                boolean sameCurrency = currencyEquals(slots, base, currency);
+                if (number == previousNumber && sequence == previousSequence && closing == previousBalance
+                        && closingDate == previousDate && sameCurrency) {
+                    // Delivered again, e.g. after a restart from an ingestion checkpoint
+                    statements.increment();
+                    return true;
+                }
+                Break.Kind kind = null;
+                if (!sameCurrency || opening != previousBalance) {
+                    kind = Break.Kind.BALANCE;
+                    balanceBreaks.increment();
+                }
+                boolean follows = previousIntermediate
+                        ? number == previousNumber && sequence == previousSequence + 1
+                        : sequence == 1 && (number == previousNumber + 1
+                        || number == 1 && closingDate / 10000 != previousDate / 10000);
+                if (!follows) {
+                    kind = kind == null ? Break.Kind.STATEMENT_NUMBER : kind;
+                    statementNumberGaps.increment();
+                }
+                continuous = kind == null;
+                if (kind != null && handler != null) {
+                    found = new Break(kind, account, previousBalance, previousDate, currency(slots, base),
+                            previousNumber + "/" + previousSequence, opening, openingDate, currency,
+                            number + "/" + sequence, !follows);
+                }
+            }
+            int base = slot * SLOT_SIZE;
+            segment.slots.putLong(base + BALANCE, closing);
+            segment.slots.putInt(base + DATE, closingDate);
+            segment.slots.putInt(base + NUMBER, number);
+            segment.slots.putInt(base + SEQUENCE, sequence);
+            for (int i = 0; i < 3; i++) {
+                segment.slots.put(base + CURRENCY + i, (byte) currency.charAt(i));
+            }
+            segment.slots.put(base + FLAGS, intermediate ? INTERMEDIATE : 0);
+            if (segment.size * 4 > segment.capacity * 3) {
+                grow(segment);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        statements.increment();
+        if (found != null) {
+            // Outside the lock, so a slow handler does not hold up the segment
+            handler.accept(found);
+        }
+        return continuous;
+    }
+
+    // Reads a value of the account's slot, or null if the account is unknown
+    private Long slotValue(String account, int field) {
+        if (account == null || account.isEmpty() || account.length() > MAX_ACCOUNT_LENGTH) {
+            return null;
+        }
+        long key = hash(account);
+        Segment segment = segments[(int) (key >>> (64 - SEGMENT_BITS))];
+        segment.lock.lock();
+        try {
+            int slot = find(segment, key, account);
+            if (slot < 0) {
+                return null;
+            }
+            int base = slot * SLOT_SIZE;
+            return field == DATE ? segment.slots.getInt(base + DATE) : segment.slots.getLong(base + field);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private static long require(Long value, String account) {
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown account " + account);
+        }
+        return value;
+    }
+
+    // Returns the slot of the account, or the complement of the empty slot it would take
+    private static int find(Segment segment, long key, String account) {
+        int mask = segment.capacity - 1;
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            long stored = segment.slots.getLong(slot * SLOT_SIZE + KEY);
+            if (stored == 0) {
+                return ~slot;
+            }
+            if (stored == key && accountEquals(segment.slots, slot * SLOT_SIZE, account)) {
+                return slot;
+            }
+        }
+    }
+
+    // Copies a whole slot into the first empty slot for its key
+    private static void insert(Segment segment, long key, ByteBuffer record) {
+        int mask = segment.capacity - 1;
+        int slot = (int) key & mask;
+        while (segment.slots.getLong(slot * SLOT_SIZE + KEY) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        segment.slots.put(slot * SLOT_SIZE, record, 0, SLOT_SIZE);
+        segment.size++;
+    }
+
+    private void grow(Segment segment) {
+        if (segment.capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Too many accounts for the balance continuity table");
+        }
+        ByteBuffer old = segment.slots;
+        int oldCapacity = segment.capacity;
+        Path oldFile = segment.file;
+        try {
+            allocate(segment, oldCapacity * 2);
+            for (int i = 0; i < oldCapacity; i++) {
+                long key = old.getLong(i * SLOT_SIZE + KEY);
+                if (key != 0) {
+                    insert(segment, key, old.slice(i * SLOT_SIZE, SLOT_SIZE));
+                }
+            }
+            release(oldFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void allocateSegments(int expectedAccounts) throws IOException {
+        if (expectedAccounts < 0) {
+            throw new IllegalArgumentException("Expected accounts must not be negative");
+        }
+        int perSegment = expectedAccounts / SEGMENTS + 1;
+        int capacity = Math.min(MAX_CAPACITY, Integer.highestOneBit(Math.max(16, perSegment * 2 - 1)) << 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+            allocate(segments[i], capacity);
+        }
+    }
+
+    // Gives the segment an empty table of the given capacity; the caller releases the previous one
+    private void allocate(Segment segment, int capacity) throws IOException {
+        long bytes = (long) capacity * SLOT_SIZE;
+        if (spillDirectory != null) {
+            Path file = Files.createTempFile(spillDirectory, "mt940-continuity-", ".bin");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid once the channel is closed
+                segment.slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+            segment.file = file;
+        } else {
+            segment.slots = offHeap ? ByteBuffer.allocateDirect((int) bytes) : ByteBuffer.allocate((int) bytes);
+        }
+        segment.capacity = capacity;
+        segment.size = 0;
+    }
+
+    // Deletes a mapped file; its pages are unmapped once the buffer is collected
+    private static void release(Path file) throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static DataInputStream openCheckpoint(Path file, CRC32 crc) throws IOException {
+        DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(
+                Files.newInputStream(file)), crc));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != SLOT_SIZE) {
+            in.close();
+            throw new IOException("Not a balance continuity checkpoint: " + file);
+        }
+        return in;
+    }
+
+    private static boolean accountEquals(ByteBuffer slots, int base, String account) {
+        int length = slots.get(base + ACCOUNT_LENGTH);
+        if (length != account.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((char) (slots.get(base + ACCOUNT + i) & 0xFF) != account.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean currencyEquals(ByteBuffer slots, int base, String currency) {
+        for (int i = 0; i < 3; i++) {
+            if ((char) (slots.get(base + CURRENCY + i) & 0xFF) != currency.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String currency(ByteBuffer slots, int base) {
+        char[] currency = new char[3];
+        for (int i = 0; i < 3; i++) {
+            currency[i] = (char) (slots.get(base + CURRENCY + i) & 0xFF);
+        }
+        return new String(currency);
+    }
+
+    // FNV-1a over the characters, then a MurmurHash3 finalizer; never 0, the empty slot key
+    private static long hash(String account) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < account.length(); i++) {
+            h = (h ^ account.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * One lock-protected part of the table.
+     */
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private ByteBuffer slots;
+        private int capacity;
+        private int size;
+        private Path file;
+    }
+
+    /**
+     * A statement that does not continue the previous statement of its account. Balances are signed minor
+     * units, dates YYMMDD and statement numbers in the Tag 28C {@code number/sequence} layout.
+     */
+    public static final class Break {
+
+        /**
+         * What did not continue. A statement breaking both is reported once, as {@link #BALANCE}, with
+         * {@link #isStatementNumberGap()} set.
+         */
+        public enum Kind {
+            /**
+             * The opening balance or its currency differs from the previous closing balance.
+             */
+            BALANCE,
+            /**
+             * Tag 28C does not follow the previous statement's.
+             */
+            STATEMENT_NUMBER
+        }
+
+        private final Kind kind;
+        private final String accountIdentification;
+        private final long previousClosingBalance;
+        private final int previousClosingDate;
+        private final String previousCurrency;
+        private final String previousStatementNumberSequenceNumber;
+        private final long openingBalance;
+        private final int openingDate;
+        private final String currency;
+        private final String statementNumberSequenceNumber;
+        private final boolean statementNumberGap;
+
+        Break(Kind kind, String accountIdentification, long previousClosingBalance, int previousClosingDate,
+              String previousCurrency, String previousStatementNumberSequenceNumber, long openingBalance,
+              int openingDate, String currency, String statementNumberSequenceNumber, boolean statementNumberGap) {
+            this.kind = kind;
+            this.accountIdentification = accountIdentification;
+            this.previousClosingBalance = previousClosingBalance;
+            this.previousClosingDate = previousClosingDate;
+            this.previousCurrency = previousCurrency;
+            this.previousStatementNumberSequenceNumber = previousStatementNumberSequenceNumber;
+            this.openingBalance = openingBalance;
+            this.openingDate = openingDate;
+            this.currency = currency;
+            this.statementNumberSequenceNumber = statementNumberSequenceNumber;
+            this.statementNumberGap = statementNumberGap;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getAccountIdentification() {
+            return accountIdentification;
+        }
+
+        public long getPreviousClosingBalanceMinorUnits() {
+            return previousClosingBalance;
+        }
+
+        public int getPreviousClosingBalanceDate() {
+            return previousClosingDate;
+        }
+
+        public String getPreviousCurrency() {
+            return previousCurrency;
+        }
+
+        public String getPreviousStatementNumberSequenceNumber() {
+            return previousStatementNumberSequenceNumber;
+        }
+
+        public long getOpeningBalanceMinorUnits() {
+            return openingBalance;
+        }
+
+        public int getOpeningBalanceDate() {
+            return openingDate;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public String getStatementNumberSequenceNumber() {
+            return statementNumberSequenceNumber;
+        }
+
+        /**
+         * @return {@code true} if Tag 28C does not follow the previous statement's, whatever {@link #getKind()} is.
+         */
+        public boolean isStatementNumberGap() {
+            return statementNumberGap;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append(kind == Kind.BALANCE ? "Balance break" : "Statement number gap").append(" on ")
+                    .append(accountIdentification).append(": closed ");
+            appendBalance(sb, previousClosingDate, previousCurrency, previousClosingBalance);
+            sb.append(" (").append(previousStatementNumberSequenceNumber).append("), opened ");
+            appendBalance(sb, openingDate, currency, openingBalance);
+            return sb.append(" (").append(statementNumberSequenceNumber).append(')').toString();
+        }
+
+        private static void appendBalance(StringBuilder sb, int date, String currency, long balance) {
+            sb.append(balance < 0 ? 'D' : 'C');
+            MT940StatementLine.appendDigits(sb, date, 6);
+            sb.append(currency);
+            MT940Amount.appendTo(sb, Math.abs(balance));
+        }
+    }
+}
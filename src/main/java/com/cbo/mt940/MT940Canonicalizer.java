@@ -0,0 +1,202 @@
+package com.cbo.mt940;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Bounded table of shared String instances for field values that repeat across messages, such as
+ * account identifications, currencies, transaction type ID codes, {@code NONREF} customer references
+ * and common supplementary details.
+ * <p>
+ * Values are looked up straight from a character or byte range: the hash and the comparison run on the
+ * range, and a String is only created on a miss. The table is two-way set associative and lossy: a
+ * miss evicts the least recently inserted value of its set, so memory stays bounded however many
+ * distinct values pass through, and values that are not repeated simply fall out again.
+ * <p>
+ * Lookups take no lock. Slots are written without synchronization; since Strings are immutable, a
+ * racing reader can only miss a value that was just inserted, never see a broken one.
+ * <p>
+ * The parser uses the instance installed with {@link MT940Message#setCanonicalizer(MT940Canonicalizer)},
+ * or the one set on an {@link MT940Reader}.
+ */
+public final class MT940Canonicalizer {
+
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Default length of the longest value kept: a line of supplementary details.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 35;
+
+    private final String[] slots;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * Creates a table with {@link #DEFAULT_CAPACITY} slots for values of up to {@link #DEFAULT_MAX_LENGTH} characters.
+     */
+    public MT940Canonicalizer() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a table.
+     *
+     * @param capacity  The number of slots, rounded up to a power of two (at least 2).
+     * @param maxLength The length of the longest value kept; longer values are returned as new Strings.
+     * @throws IllegalArgumentException If the capacity or the length is not positive.
+     */
+    public MT940Canonicalizer(int capacity, int maxLength) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("Invalid maximum length");
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.slots = new String[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return The number of slots.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return The length of the longest value kept.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the shared instance equal to the characters between {@code start} and {@code end}.
+     *
+     * @param text  The text holding the value.
+     * @param start The offset of the first character.
+     * @param end   The offset after the last character.
+     * @return The shared instance, or a new String if the value was not in the table.
+     */
+    public String canonicalize(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length > maxLength) {
+            return text.subSequence(start, end).toString();
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int set = index(hash);
+        String first = slots[set];
+        if (first != null && matches(first, text, start, length)) {
+            return first;
+        }
+        String second = slots[set + 1];
+        if (second != null && matches(second, text, start, length)) {
+            return second;
+        }
+        return insert(set, first, text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Returns the shared instance equal to the ISO-8859-1 bytes between {@code start} and {@code end}.
+     *
+     * @param bytes The bytes holding the value.
+     * @param start The offset of the first byte.
+     * @param end   The offset after the last byte.
+     * @return The shared instance, or a new String if the value was not in the table.
+     */
+    public String canonicalize(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (length > maxLength) {
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + (bytes[i] & 0xFF);
+        }
+        int set = index(hash);
+        String first = slots[set];
+        if (first != null && matches(first, bytes, start, length)) {
+            return first;
+        }
+        String second = slots[set + 1];
+        if (second != null && matches(second, bytes, start, length)) {
+            return second;
+        }
+        return insert(set, first, new String(bytes, start, length, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Returns the shared instance equal to a value.
+     *
+     * @param value The value, or {@code null}.
+     * @return The shared instance, the value itself if it was not in the table, or {@code null}.
+     */
+    public String canonicalize(String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        // String caches its hash, which is the same as the one computed from ranges
+        int set = index(value.hashCode());
+        String first = slots[set];
+        if (value.equals(first)) {
+            return first;
+        }
+        String second = slots[set + 1];
+        if (value.equals(second)) {
+            return second;
+        }
+        return insert(set, first, value);
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
+    }
+
+    // First slot of the two-slot set of a hash
+    private int index(int hash) {
+        return (hash ^ hash >>> 16) & mask & ~1;
+    }
+
+    // The newest value goes first and the previous first one moves to the second slot
+    private String insert(int set, String first, String value) {
+        slots[set + 1] = first;
+        slots[set] = value;
+        return value;
+    }
+
+    private static boolean matches(String candidate, CharSequence text, int start, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String candidate, byte[] bytes, int start, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != (char) (bytes[start + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
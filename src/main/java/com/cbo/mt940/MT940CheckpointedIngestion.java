@@ -0,0 +1,215 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Resumable ingestion of a large MT940 file. The byte offset just past the last processed {@code -}}
+ * envelope is recorded in a small journal file, so a restarted job seeks straight to that point
+ * instead of reading the file again from the start.
+ * <p>
+ * A checkpoint is written and forced to disk once every {@link #setCheckpointInterval(int) interval}
+ * messages and when the file has been read to the end; the interval trades the cost of the fsyncs
+ * against the number of messages handled again after a crash. Delivery is at least once: messages
+ * after the last checkpoint are handed to the handler again on restart.
+ * <p>
+ * The journal holds two fixed-size slots written alternately, each with a sequence number and a CRC,
+ * so a write torn by a crash leaves the previous checkpoint readable. It also keeps a fingerprint of
+ * the head of the file: if the file was replaced, ingestion starts over from the beginning. A file that
+ * only grew is resumed, so appended messages are picked up by the next run.
+ * <p>
+ * The file must be plain text: compressed input cannot be sought into.
+ */
+public class MT940CheckpointedIngestion {
+
+    /**
+     * Default number of messages between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    private static final int MAGIC = 0x4D543934; // "MT94"
+    private static final int VERSION = 1;
+    private static final int SLOT_SIZE = 64;
+    private static final int RECORD_SIZE = 4 + 4 + 8 * 5;
+    private static final int FINGERPRINT_LENGTH = 4096;
+
+    private final Path journal;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private long sequence;
+    private long checkpointOffset;
+    private long checkpointLineNumber = 1;
+    private long processedMessages;
+    private long resumedOffset;
+    private long checkpoints;
+
+    /**
+     * Creates a runner recording its progress in a journal file, created if absent.
+     *
+     * @param journal The journal path, one per ingested file.
+     */
+    public MT940CheckpointedIngestion(Path journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the number of messages handled between two checkpoints.
+     *
+     * @param checkpointInterval The number of messages; 1 checkpoints after every message.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Ingests a file from its last checkpoint to the end. Invalid messages are handed to the handler as
+     * results with errors, like {@link MT940Reader#readResult()} returns them, and do not stop ingestion.
+     * If the handler throws, the exception is passed on and the message is handled again on the next run.
+     *
+     * @param file    The MT940 file.
+     * @param handler The consumer of every message after the checkpoint, called on this thread.
+     * @return The number of messages handled by this run.
+     * @throws IOException If the file or the journal cannot be read or written, or the file ends inside a message.
+     */
+    public long run(Path file, Consumer<? super MT940ParseResult> handler) throws IOException {
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE)) {
+            long fingerprint = fingerprint(input, FINGERPRINT_LENGTH);
+            if (!load(log, input) || checkpointOffset > input.size()) {
+                sequence = 0;
+                checkpointOffset = 0;
+                checkpointLineNumber = 1;
+                processedMessages = 0;
+            }
+            resumedOffset = checkpointOffset;
+            input.position(checkpointOffset);
+            MT940Reader reader = new MT940Reader(new InputStreamReader(Channels.newInputStream(input),
+                    StandardCharsets.ISO_8859_1), checkpointOffset, checkpointLineNumber);
+            long handled = 0;
+            int sinceCheckpoint = 0;
+            MT940ParseResult result;
+            while ((result = reader.readResult()) != null) {
+                handler.accept(result);
+                handled++;
+                if (++sinceCheckpoint == checkpointInterval) {
+                    checkpoint(log, fingerprint, reader, sinceCheckpoint);
+                    sinceCheckpoint = 0;
+                }
+            }
+            if (sinceCheckpoint > 0) {
+                checkpoint(log, fingerprint, reader, sinceCheckpoint);
+            }
+            return handled;
+        }
+    }
+
+    /**
+     * @return The offset just past the last checkpointed envelope.
+     */
+    public long getCheckpointOffset() {
+        return checkpointOffset;
+    }
+
+    /**
+     * @return The offset the last run started from.
+     */
+    public long getResumedOffset() {
+        return resumedOffset;
+    }
+
+    /**
+     * @return The number of messages of the file handled up to the last checkpoint, over all runs.
+     */
+    public long getProcessedMessageCount() {
+        return processedMessages;
+    }
+
+    /**
+     * @return The number of checkpoints written by this instance.
+     */
+    public long getCheckpointCount() {
+        return checkpoints;
+    }
+
+    private void checkpoint(FileChannel log, long fingerprint, MT940Reader reader, int messages) throws IOException {
+        sequence++;
+        checkpointOffset = reader.getOffset();
+        checkpointLineNumber = reader.getLineNumber();
+        processedMessages += messages;
+        ByteBuffer record = ByteBuffer.allocate(SLOT_SIZE);
+        record.putInt(MAGIC).putInt(VERSION).putLong(sequence).putLong(checkpointOffset)
+                .putLong(checkpointLineNumber).putLong(processedMessages).putLong(fingerprint);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE);
+        record.putInt((int) crc.getValue());
+        record.clear();
+        long position = (sequence & 1) * SLOT_SIZE;
+        while (record.hasRemaining()) {
+            position += log.write(record, position);
+        }
+        // The journal only changes size on its first writes; later checkpoints force the data alone
+        log.force(checkpoints < 2);
+        checkpoints++;
+    }
+
+    // Reads the newest intact slot written for the same file
+    private boolean load(FileChannel log, FileChannel input) throws IOException {
+        boolean found = false;
+        for (int slot = 0; slot < 2; slot++) {
+            ByteBuffer record = ByteBuffer.allocate(SLOT_SIZE);
+            long position = (long) slot * SLOT_SIZE;
+            while (record.hasRemaining() && log.read(record, position + record.position()) > 0) {
+                // Read the whole slot
+            }
+            if (record.position() < RECORD_SIZE + 4) {
+                continue;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, RECORD_SIZE);
+            record.flip();
+            if (record.getInt(RECORD_SIZE) != (int) crc.getValue()
+                    || record.getInt() != MAGIC || record.getInt() != VERSION) {
+                continue;
+            }
+            long slotSequence = record.getLong();
+            long offset = record.getLong();
+            long lineNumber = record.getLong();
+            long messages = record.getLong();
+            long fingerprint = record.getLong();
+            if (found && slotSequence <= sequence
+                    || fingerprint(input, (int) fingerprint & Integer.MAX_VALUE) != fingerprint) {
+                continue;
+            }
+            sequence = slotSequence;
+            checkpointOffset = offset;
+            checkpointLineNumber = lineNumber;
+            processedMessages = messages;
+            found = true;
+        }
+        return found;
+    }
+
+    // CRC and length of the head of the file, which do not change when messages are appended
+    private static long fingerprint(FileChannel input, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(length, input.size()));
+        while (head.hasRemaining() && input.read(head, head.position()) > 0) {
+            // Read the whole head
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 0, head.position());
+        return crc.getValue() << 32 | head.position();
+    }
+}
@@ -0,0 +1,427 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses one large MT940 file on several cores.
+ * <p>
+ * The file is memory-mapped and cut into byte ranges. Each range is first scanned in parallel for the
+ * envelopes that start in it: the first {@code {1:} of the file and every {@code {1:} after a {@code -}} trailer.
+ * Consecutive envelopes are then parsed in batches of about one range each. A single envelope larger
+ * than a range (one giant statement) is parsed by splitting its statement lines into ranges resynced
+ * on {@code \n:61:}; the header and closing fields are parsed once and the lines are stitched back in
+ * order. Because ranges are only used to decide where work starts, messages and lines that straddle a
+ * range edge are parsed whole by the range they start in.
+ * <p>
+ * Results come back in file order, with absolute byte offsets and line numbers, like
+ * {@link MT940Reader#readResult()}.
+ */
+public class MT940ChunkedParser {
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+    private static final int LOOK_BEHIND = 1024;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long chunkSize;
+
+    /**
+     * Sets the number of threads, by default the number of processors.
+     *
+     * @param parallelism The number of threads.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the size of the byte ranges. By default the file is cut into one range per thread,
+     * and never into ranges smaller than 64 KB or larger than 256 MB.
+     *
+     * @param chunkSize The range size in bytes, or 0 for the default.
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size must not be negative");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses every message in a file without throwing on invalid content.
+     *
+     * @param file The MT940 file.
+     * @return One result per message, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public List<MT940ParseResult> parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new ArrayList<>();
+            }
+            long chunk = chunkSize > 0 ? chunkSize : Math.min(MAX_CHUNK_SIZE,
+                    Math.max(MIN_CHUNK_SIZE, (size + parallelism - 1) / parallelism));
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<long[]> envelopes = findEnvelopes(pool, channel, size, chunk);
+                return parseEnvelopes(pool, channel, size, chunk, envelopes);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Phase 1: finds the envelope starts of every range in parallel.
+     *
+     * @return {offset, line number} of every envelope, in file order.
+     */
+    private List<long[]> findEnvelopes(ForkJoinPool pool, FileChannel channel, long size, long chunk) throws IOException {
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (long start = 0; start < size; start += chunk) {
+            long chunkStart = start;
+            long chunkEnd = Math.min(size, start + chunk);
+            tasks.add(() -> scanChunk(channel, size, chunkStart, chunkEnd));
+        }
+        List<long[]> envelopes = new ArrayList<>();
+        long line = 1;
+        for (Chunk result : invokeAll(pool, tasks)) {
+            if (envelopes.isEmpty() && result.firstCandidate >= 0
+                    && (result.count == 0 || result.firstCandidate < result.offsets[0])) {
+                // Whatever precedes the first {1: of the file is not a message
+                envelopes.add(new long[]{result.firstCandidate, line + result.firstCandidateLine});
+            }
+            for (int i = 0; i < result.count; i++) {
+                envelopes.add(new long[]{result.offsets[i], line + result.lines[i]});
+            }
+            line += result.newlines;
+        }
+        return envelopes;
+    }
+
+    private static Chunk scanChunk(FileChannel channel, long size, long start, long end) throws IOException {
+        // Map a little before the range to check what precedes a {1:, and 2 bytes after to see a {1: on the edge
+        long mapStart = Math.max(0, start - LOOK_BEHIND);
+        MT940MappedText text = MT940MappedText.map(channel, mapStart, Math.min(size, end + 2) - mapStart);
+        Chunk chunk = new Chunk();
+        int from = (int) (start - mapStart);
+        int to = (int) (end - mapStart);
+        long newlines = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                newlines++;
+            } else if (c == '{' && i + 2 < text.length() && text.charAt(i + 1) == '1' && text.charAt(i + 2) == ':') {
+                if (isEnvelopeStart(text, i)) {
+                    chunk.add(mapStart + i, newlines);
+                } else if (chunk.firstCandidate < 0) {
+                    chunk.firstCandidate = mapStart + i;
+                    chunk.firstCandidateLine = newlines;
+                }
+            }
+        }
+        chunk.newlines = newlines;
+        return chunk;
+    }
+
+    // A {1: starts an envelope at the start of the file or when only whitespace separates it from a -} trailer
+    private static boolean isEnvelopeStart(CharSequence text, int position) {
+        int i = position - 1;
+        while (i >= 0 && Character.isWhitespace(text.charAt(i))) {
+            i--;
+        }
+        if (i < 0) {
+            // Only whitespace before: the file start, or a gap longer than any field could hold
+            return true;
+        }
+        return i >= 1 && text.charAt(i) == '}' && text.charAt(i - 1) == '-';
+    }
+
+    /**
+     * Phase 2: parses batches of envelopes and giant envelopes in parallel and concatenates the results.
+     */
+    private List<MT940ParseResult> parseEnvelopes(ForkJoinPool pool, FileChannel channel, long size, long chunk,
+                                                  List<long[]> envelopes) throws IOException {
+        List<Callable<List<MT940ParseResult>>> tasks = new ArrayList<>();
+        int batchStart = 0;
+        for (int i = 0; i < envelopes.size(); i++) {
+            long start = envelopes.get(i)[0];
+            long end = i + 1 < envelopes.size() ? envelopes.get(i + 1)[0] : size;
+            if (end - start > chunk) {
+                addBatch(tasks, channel, size, envelopes, batchStart, i);
+                long line = envelopes.get(i)[1];
+                tasks.add(() -> List.of(parseGiant(pool, channel, start, end, line, chunk)));
+                batchStart = i + 1;
+            } else if (end - envelopes.get(batchStart)[0] >= chunk) {
+                addBatch(tasks, channel, size, envelopes, batchStart, i + 1);
+                batchStart = i + 1;
+            }
+        }
+        addBatch(tasks, channel, size, envelopes, batchStart, envelopes.size());
+
+        List<MT940ParseResult> results = new ArrayList<>(envelopes.size());
+        for (List<MT940ParseResult> batch : invokeAll(pool, tasks)) {
+            results.addAll(batch);
+        }
+        return results;
+    }
+
+    private static void addBatch(List<Callable<List<MT940ParseResult>>> tasks, FileChannel channel, long size,
+                                 List<long[]> envelopes, int from, int to) {
+        if (from < to) {
+            tasks.add(() -> parseBatch(channel, size, envelopes, from, to));
+        }
+    }
+
+    private static List<MT940ParseResult> parseBatch(FileChannel channel, long size, List<long[]> envelopes,
+                                                     int from, int to) throws IOException {
+        long regionStart = envelopes.get(from)[0];
+        long regionEnd = to < envelopes.size() ? envelopes.get(to)[0] : size;
+        MT940MappedText text = MT940MappedText.map(channel, regionStart, regionEnd - regionStart);
+        MT940MessageAssembler assembler = newAssembler();
+        List<MT940ParseResult> results = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            long start = envelopes.get(i)[0];
+            long end = i + 1 < envelopes.size() ? envelopes.get(i + 1)[0] : size;
+            results.add(assembler.assembleResult(text, (int) (start - regionStart), (int) (end - regionStart),
+                    start, envelopes.get(i)[1]));
+        }
+        return results;
+    }
+
+    private static MT940MessageAssembler newAssembler() {
+        MT940MessageAssembler assembler = new MT940MessageAssembler();
+        assembler.setMetrics(MT940Message.getMetrics());
+        return assembler;
+    }
+
+    /**
+     * Parses one envelope larger than a range: the statement lines in parallel, everything else once.
+     * It is reported to the metrics and Flight Recorder as one message, like those of the batches.
+     */
+    private static MT940ParseResult parseGiant(ForkJoinPool pool, FileChannel channel, long offset, long end,
+                                               long line, long chunk) throws IOException {
+        MT940MappedText text = MT940MappedText.map(channel, offset, end - offset);
+        MT940ParseEvent event = MT940ParseInstrumentation.begin();
+        long startNanos = System.nanoTime();
+        MT940ParseResult result = parseSplit(pool, text, offset, line, chunk);
+        if (result == null) {
+            return newAssembler().assembleResult(text, 0, text.length(), offset, line);
+        }
+        MT940ParseInstrumentation.record(MT940Message.getMetrics(), event, startNanos, text.length(), result);
+        return result;
+    }
+
+    /**
+     * @return The result, or {@code null} if the envelope has to be parsed whole.
+     */
+    private static MT940ParseResult parseSplit(ForkJoinPool pool, MT940MappedText text, long offset, long line,
+                                               long chunk) throws IOException {
+        int length = text.length();
+        int firstLine = MT940Scanner.indexOf(text, "\n:61:", 0, length);
+        if (firstLine < 0) {
+            return null;
+        }
+        int linesStart = firstLine + 1;
+        int lastLine = lastIndexOf(text, "\n:61:", linesStart - 1, length);
+        int linesEnd = MT940Scanner.fieldEnd(text, lastLine + 5, length);
+
+        // Cut the statement lines into ranges, each resynced to the start of a :61: field
+        int pieces = (int) Math.max(pool.getParallelism(), (linesEnd - linesStart) / chunk);
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(linesStart);
+        for (int i = 1; i < pieces; i++) {
+            int target = linesStart + (int) ((long) (linesEnd - linesStart) * i / pieces);
+            int resync = MT940Scanner.indexOf(text, "\n:61:", Math.max(target - 1, boundaries.get(boundaries.size() - 1)), linesEnd);
+            if (resync < 0) {
+                break;
+            }
+            if (resync + 1 > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(resync + 1);
+            }
+        }
+        boundaries.add(linesEnd);
+        List<Callable<Lines>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            int pieceStart = boundaries.get(i);
+            int pieceEnd = boundaries.get(i + 1);
+            tasks.add(() -> parseLines(text, pieceStart, pieceEnd, offset));
+        }
+        // Runs inside the pool; invokeAll lets this worker help with the pieces instead of blocking
+        List<Lines> results = invokeAll(pool, tasks);
+
+        // Lines between the ranges may hold tags the ranges do not handle; parse the whole message then
+        for (Lines lines : results) {
+            if (lines.irregular) {
+                return null;
+            }
+        }
+
+        // Parse the header and closing fields without the statement lines
+        long headNewlines = countNewlines(text, 0, linesStart);
+        long lineNewlines = countNewlines(text, linesStart, linesEnd + 1);
+        String headAndTail = text.subSequence(0, linesStart).toString() + text.subSequence(linesEnd + 1, length);
+        MT940ParseResult frame = new MT940MessageAssembler().assemblePartialResult(headAndTail, 0, headAndTail.length(),
+                offset, line);
+        List<MT940ParseError> errors = new ArrayList<>();
+        for (MT940ParseError error : frame.getErrors()) {
+            // Errors after the statement lines: move them back to where they are in the file
+            if (error.getOffset() >= offset + linesStart) {
+                error = new MT940ParseError(error.getCode(), error.getTag(), error.getOffset() + (linesEnd + 1 - linesStart),
+                        error.getLineNumber() + lineNewlines, error.getDetail());
+            }
+            errors.add(error);
+        }
+        long pieceLine = line + headNewlines;
+        for (Lines lines : results) {
+            for (MT940ParseError error : lines.errors) {
+                errors.add(new MT940ParseError(error.getCode(), error.getTag(), error.getOffset(),
+                        pieceLine + error.getLineNumber(), error.getDetail()));
+            }
+            pieceLine += lines.newlines;
+        }
+        if (!errors.isEmpty()) {
+            errors.sort(Comparator.comparingLong(MT940ParseError::getOffset));
+            return new MT940ParseResult(null, errors, offset, line);
+        }
+        MT940Message message = frame.getMessage();
+        for (Lines lines : results) {
+            for (MT940Tag61 statementLine : lines.statementLines) {
+                message.addStatementLine(statementLine);
+            }
+        }
+        return new MT940ParseResult(message, null, offset, line);
+    }
+
+    /**
+     * Parses the fields between {@code start} and {@code end}, which must start with a :61: field.
+     * Error line numbers are relative to {@code start}.
+     */
+    private static Lines parseLines(CharSequence text, int start, int end, long offset) {
+        Lines lines = new Lines();
+        MT940Tag61View view = new MT940Tag61View();
+        int pos = start;
+        long newlines = 0;
+        while (pos < end) {
+            int tagEnd = pos + 1;
+            while (tagEnd < end && tagEnd - pos <= 4 && text.charAt(tagEnd) != ':') {
+                tagEnd++;
+            }
+            if (text.charAt(pos) != ':' || tagEnd >= end || text.charAt(tagEnd) != ':') {
+                lines.irregular = true;
+                return lines;
+            }
+            int contentStart = tagEnd + 1;
+            int contentEnd = MT940Scanner.fieldEnd(text, contentStart, end);
+            if (tagEnd - pos == 3 && text.charAt(pos + 1) == '6' && text.charAt(pos + 2) == '1') {
+                String error = view.reset(text, contentStart, MT940Scanner.trimEnd(text, contentStart, contentEnd))
+                        ? view.validationError()
+                        : "Missing or invalid Tag 61 in the MT940 message";
+                if (error != null) {
+                    lines.errors.add(new MT940ParseError(MT940ErrorCode.INVALID_VALUE, "61", offset + contentStart,
+                            newlines, error));
+                } else {
+                    lines.statementLines.add(view.toTag61());
+                }
+            } else if (!(tagEnd - pos == 3 && text.charAt(pos + 1) == '8' && text.charAt(pos + 2) == '6')) {
+                // Only :61: and :86: are expected between the first and the last statement line
+                lines.irregular = true;
+                return lines;
+            }
+            newlines += countNewlines(text, pos, Math.min(contentEnd + 1, end));
+            pos = contentEnd + 1;
+        }
+        lines.newlines = newlines;
+        return lines;
+    }
+
+    private static int lastIndexOf(CharSequence text, String token, int start, int end) {
+        for (int i = end - token.length(); i >= start; i--) {
+            if (MT940Scanner.indexOf(text, token, i, i + token.length()) == i) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long countNewlines(CharSequence text, int start, int end) {
+        long count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Envelope starts found in one range, with line numbers relative to the range start.
+     */
+    private static final class Chunk {
+        private long[] offsets = new long[16];
+        private long[] lines = new long[16];
+        private int count;
+        private long newlines;
+        private long firstCandidate = -1;
+        private long firstCandidateLine;
+
+        private void add(long offset, long line) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            offsets[count] = offset;
+            lines[count] = line;
+            count++;
+        }
+    }
+
+    /**
+     * Statement lines parsed from one range of a giant message.
+     */
+    private static final class Lines {
+        private final List<MT940Tag61> statementLines = new ArrayList<>();
+        private final List<MT940ParseError> errors = new ArrayList<>();
+        private long newlines;
+        private boolean irregular;
+    }
+}
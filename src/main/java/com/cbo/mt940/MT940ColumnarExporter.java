@@ -0,0 +1,494 @@
+package com.cbo.mt940;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the statement lines of MT940 input into a self-describing columnar file for analytics tools.
+ * <p>
+ * Lines are taken straight from the scanner (no {@link MT940Tag61} objects) and buffered column by column
+ * in row groups; a row group is written once it holds {@link #setRowGroupSize(int)} rows, so memory stays
+ * bounded by one row group plus the lines of one message. Low-cardinality columns (account, statement,
+ * currency, D/C mark, funds code, transaction type) are dictionary encoded per row group. Lines of invalid
+ * messages are not exported.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * file      = "MT940COL" version:u8 rowGroup* footer footerLength:i32 "MT940COL"
+ * rowGroup  = chunk per column, in schema order
+ * chunk     = encoding:u8 (0 plain, 1 dictionary) hasNulls:u8 [validity bitmap, LSB first] values
+ * values    = INT32/INT64 plain: one value per row
+ *           | STRING plain: (rows + 1) i32 offsets, then the ISO-8859-1 bytes
+ *           | STRING dictionary: size:i32, the entries as plain STRING values, width:u8 (1, 2 or 4), one index per row
+ * footer    = columns:i32 (name:modified UTF-8, type:u8 (1 INT32, 2 INT64, 3 STRING))*
+ *             rowGroups:i32 (offset:i64, rows:i32, length:i64)* totalRows:i64
+ * </pre>
+ * Null values have their validity bit cleared and a zero or empty value.
+ */
+public class MT940ColumnarExporter implements Closeable {
+
+    /**
+     * Default number of rows per row group.
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+
+    static final byte[] MAGIC = {'M', 'T', '9', '4', '0', 'C', 'O', 'L'};
+    static final byte INT32 = 1;
+    static final byte INT64 = 2;
+    static final byte STRING = 3;
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final Exporter exporter = new Exporter();
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    private final List<long[]> rowGroups = new ArrayList<>();
+    private long totalRows;
+    private boolean closed;
+
+    private final DictionaryColumn transactionReference = new DictionaryColumn("transaction_reference");
+    private final DictionaryColumn account = new DictionaryColumn("account");
+    private final DictionaryColumn statement = new DictionaryColumn("statement");
+    private final DictionaryColumn currency = new DictionaryColumn("currency");
+    private final IntColumn valueDate = new IntColumn("value_date");
+    private final IntColumn entryDate = new IntColumn("entry_date");
+    private final DictionaryColumn mark = new DictionaryColumn("debit_credit_mark");
+    private final DictionaryColumn fundsCode = new DictionaryColumn("funds_code");
+    private final LongColumn amount = new LongColumn("amount_minor_units");
+    private final DictionaryColumn transactionType = new DictionaryColumn("transaction_type");
+    private final StringColumn customerReference = new StringColumn("customer_reference");
+    private final StringColumn bankReference = new StringColumn("bank_reference");
+    private final StringColumn supplementaryDetails = new StringColumn("supplementary_details");
+    private final Column[] columns = {transactionReference, account, statement, currency, valueDate, entryDate, mark,
+            fundsCode, amount, transactionType, customerReference, bankReference, supplementaryDetails};
+    private int rows;
+
+    /**
+     * Starts a columnar file.
+     *
+     * @param out The destination, closed by {@link #close()}.
+     * @throws IOException If the file header cannot be written.
+     */
+    public MT940ColumnarExporter(OutputStream out) throws IOException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out = new DataOutputStream(counter);
+        this.out.write(MAGIC);
+        this.out.writeByte(1);
+    }
+
+    /**
+     * Sets the number of rows per row group.
+     *
+     * @param rowGroupSize The number of rows.
+     */
+    public void setRowGroupSize(int rowGroupSize) {
+        if (rowGroupSize < 1) {
+            throw new IllegalArgumentException("Row group size must be positive");
+        }
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * Exports the statement lines of every valid message in the input.
+     *
+     * @param reader The MT940 input.
+     * @return The number of statement lines exported.
+     * @throws IOException If reading or writing fails.
+     */
+    public long export(MT940Reader reader) throws IOException {
+        long before = exporter.getStatementLineCount();
+        exporter.convert(reader);
+        return exporter.getStatementLineCount() - before;
+    }
+
+    /**
+     * Exports the statement lines of every valid message in the input.
+     *
+     * @param in The MT940 bytes, closed when done.
+     * @return The number of statement lines exported.
+     * @throws IOException If reading or writing fails.
+     */
+    public long export(InputStream in) throws IOException {
+        try (MT940Reader reader = new MT940Reader(in)) {
+            return export(reader);
+        }
+    }
+
+    /**
+     * @return The number of statement lines exported.
+     */
+    public long getRowCount() {
+        return exporter.getStatementLineCount();
+    }
+
+    /**
+     * @return The number of valid messages whose lines were exported.
+     */
+    public long getMessageCount() {
+        return exporter.getMessageCount();
+    }
+
+    /**
+     * @return The number of invalid messages skipped.
+     */
+    public long getRejectedMessageCount() {
+        return exporter.getRejectedMessageCount();
+    }
+
+    /**
+     * Writes the last row group and the footer, then closes the destination.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushRowGroup();
+        long footerStart = counter.position;
+        out.writeInt(columns.length);
+        for (Column column : columns) {
+            out.writeUTF(column.name);
+            out.writeByte(column.type);
+        }
+        out.writeInt(rowGroups.size());
+        for (long[] rowGroup : rowGroups) {
+            out.writeLong(rowGroup[0]);
+            out.writeInt((int) rowGroup[1]);
+            out.writeLong(rowGroup[2]);
+        }
+        out.writeLong(totalRows);
+        out.writeInt((int) (counter.position - footerStart));
+        out.write(MAGIC);
+        out.close();
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        long start = counter.position;
+        for (Column column : columns) {
+            column.write(out, rows);
+            column.clear();
+        }
+        rowGroups.add(new long[]{start, rows, counter.position - start});
+        totalRows += rows;
+        rows = 0;
+    }
+
+    /**
+     * Appends the lines of each message to the columns and rolls them back if the message is invalid.
+     */
+    private final class Exporter extends MT940StreamingConverter {
+        private int messageStartRow;
+
+        @Override
+        void beginMessage() {
+            messageStartRow = rows;
+        }
+
+        @Override
+        void statementLine(MT940Tag61View line) {
+            int row = rows++;
+            transactionReference.add(row, text, transactionReferenceStart, transactionReferenceEnd);
+            account.add(row, text, accountStart, accountEnd);
+            statement.add(row, text, statementStart, statementEnd);
+            currency.add(row, text, openingStart < 0 ? -1 : openingStart + 7, openingStart + 10);
+            valueDate.add(row, line.getValueDate(), true);
+            int entry = line.entryDateStart;
+            entryDate.add(row, entry < 0 ? 0 : (text.charAt(entry) - '0') * 1000 + (text.charAt(entry + 1) - '0') * 100
+                    + (text.charAt(entry + 2) - '0') * 10 + (text.charAt(entry + 3) - '0'), entry >= 0);
+            mark.add(row, text, line.markStart, line.markEnd);
+            fundsCode.add(row, text, line.fundsCodeStart, line.fundsCodeStart + 1);
+            amount.add(row, line.getAmountMinorUnits());
+            transactionType.add(row, text, line.typeStart, line.typeStart + 4);
+            customerReference.add(row, text, line.typeStart + 4, line.customerReferenceEnd);
+            bankReference.add(row, text, line.bankReferenceStart, line.bankReferenceEnd);
+            supplementaryDetails.add(row, text, line.supplementaryDetailsStart, line.supplementaryDetailsEnd);
+        }
+
+        @Override
+        void endMessage(boolean valid) throws IOException {
+            if (!valid) {
+                // Drop the message's rows; the columns overwrite them with the next rows added
+                rows = messageStartRow;
+            } else if (rows >= rowGroupSize) {
+                flushRowGroup();
+            }
+        }
+    }
+
+    /**
+     * Values of one column in the current row group.
+     */
+    private abstract static class Column {
+        final String name;
+        final byte type;
+        long[] validity = new long[16];
+        boolean hasNulls;
+
+        Column(String name, byte type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        void setValid(int row, boolean valid) {
+            if (row >> 6 >= validity.length) {
+                validity = Arrays.copyOf(validity, validity.length * 2);
+            }
+            if (valid) {
+                validity[row >> 6] |= 1L << row;
+            } else {
+                validity[row >> 6] &= ~(1L << row);
+                hasNulls = true;
+            }
+        }
+
+        void writeHeader(DataOutputStream out, int encoding, int rows) throws IOException {
+            out.writeByte(encoding);
+            out.writeByte(hasNulls ? 1 : 0);
+            if (hasNulls) {
+                for (int i = 0; i < (rows + 7) >> 3; i++) {
+                    out.writeByte((int) (validity[i >> 3] >>> ((i & 7) << 3)));
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(validity, 0);
+            hasNulls = false;
+        }
+
+        abstract void write(DataOutputStream out, int rows) throws IOException;
+    }
+
+    private static final class IntColumn extends Column {
+        private int[] values = new int[1024];
+
+        IntColumn(String name) {
+            super(name, INT32);
+        }
+
+        void add(int row, int value, boolean valid) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = value;
+            setValid(row, valid);
+        }
+
+        @Override
+        void write(DataOutputStream out, int rows) throws IOException {
+            writeHeader(out, 0, rows);
+            for (int i = 0; i < rows; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private long[] values = new long[1024];
+
+        LongColumn(String name) {
+            super(name, INT64);
+        }
+
+        void add(int row, long value) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = value;
+            setValid(row, true);
+        }
+
+        @Override
+        void write(DataOutputStream out, int rows) throws IOException {
+            writeHeader(out, 0, rows);
+            for (int i = 0; i < rows; i++) {
+                out.writeLong(values[i]);
+            }
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        private int[] offsets = new int[1025];
+        private byte[] bytes = new byte[16 * 1024];
+
+        StringColumn(String name) {
+            super(name, STRING);
+        }
+
+        // A negative start adds a null
+        void add(int row, CharSequence text, int start, int end) {
+            if (row + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int length = start < 0 ? 0 : end - start;
+            int offset = offsets[row];
+            if (offset + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + length));
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[offset + i] = (byte) text.charAt(start + i);
+            }
+            offsets[row + 1] = offset + length;
+            setValid(row, start >= 0);
+        }
+
+        @Override
+        void write(DataOutputStream out, int rows) throws IOException {
+            writeHeader(out, 0, rows);
+            for (int i = 0; i <= rows; i++) {
+                out.writeInt(offsets[i]);
+            }
+            out.write(bytes, 0, offsets[rows]);
+        }
+    }
+
+    /**
+     * String column encoded as a per-row-group dictionary plus one index per row. Entries are looked up
+     * by their characters, so a String is only created the first time a value appears in a row group.
+     */
+    private static final class DictionaryColumn extends Column {
+        private String[] entries = new String[16];
+        private int size;
+        private int[] table = new int[64];
+        private int[] indexes = new int[1024];
+
+        DictionaryColumn(String name) {
+            super(name, STRING);
+            Arrays.fill(table, -1);
+        }
+
+        // A negative start adds a null
+        void add(int row, CharSequence text, int start, int end) {
+            if (row == indexes.length) {
+                indexes = Arrays.copyOf(indexes, row * 2);
+            }
+            indexes[row] = start < 0 ? 0 : indexOf(text, start, end);
+            setValid(row, start >= 0);
+        }
+
+        private int indexOf(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            int mask = table.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int index = table[slot];
+                if (index < 0) {
+                    return insert(slot, text.subSequence(start, end).toString());
+                }
+                if (matches(entries[index], text, start, end)) {
+                    return index;
+                }
+            }
+        }
+
+        private int insert(int slot, String value) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size] = value;
+            table[slot] = size;
+            if (++size * 2 > table.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for (int index = 0; index < size; index++) {
+                int slot = mix(entries[index].hashCode()) & mask;
+                while (table[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = index;
+            }
+        }
+
+        // Same hash as String.hashCode() over the characters, spread over the table
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String entry, CharSequence text, int start, int end) {
+            if (entry.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < entry.length(); i++) {
+                if (entry.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            Arrays.fill(entries, 0, size, null);
+            Arrays.fill(table, -1);
+            size = 0;
+        }
+
+        @Override
+        void write(DataOutputStream out, int rows) throws IOException {
+            writeHeader(out, 1, rows);
+            out.writeInt(size);
+            int offset = 0;
+            out.writeInt(0);
+            for (int i = 0; i < size; i++) {
+                offset += entries[i].length();
+                out.writeInt(offset);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeBytes(entries[i]);
+            }
+            int width = size <= 256 ? 1 : size <= 65536 ? 2 : 4;
+            out.writeByte(width);
+            for (int i = 0; i < rows; i++) {
+                int index = indexes[i];
+                if (width == 1) {
+                    out.writeByte(index);
+                } else if (width == 2) {
+                    out.writeShort(index);
+                } else {
+                    out.writeInt(index);
+                }
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long position;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.cbo.mt940;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens gzip- and zip-compressed MT940 archives for {@link MT940Reader} and {@link MT940Pipeline}.
+ * The format is recognized from the first bytes, so plain files are accepted as well.
+ * <p>
+ * Decompression runs on its own threads and is pipelined with parsing: every decompressed stream is
+ * produced into a bounded queue of blocks that the returned {@link InputStream} drains, so at most
+ * {@code bufferBlocks} blocks per stream are held in memory and a slow parser throttles decompression.
+ * The entries of a zip file are decompressed concurrently, up to the configured parallelism. A gzip
+ * stream (including multi-member files) can only be inflated from its start, so it gets one thread.
+ * <p>
+ * Blocks are cut at arbitrary byte positions; {@link MT940Reader} splits envelopes across them as it does
+ * across its own buffer refills.
+ */
+public class MT940CompressedInput {
+
+    /**
+     * Default size of a decompressed block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Default number of blocks buffered ahead per stream.
+     */
+    public static final int DEFAULT_BUFFER_BLOCKS = 16;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int bufferBlocks = DEFAULT_BUFFER_BLOCKS;
+
+    /**
+     * Sets the number of zip entries decompressed at once.
+     *
+     * @param parallelism The number of decompression threads per zip file.
+     * @throws IllegalArgumentException If the parallelism is not positive.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the size of the blocks handed from the decompressing thread to the reader.
+     *
+     * @param blockSize The block size in bytes.
+     * @throws IllegalArgumentException If the block size is not positive.
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Sets the number of decompressed blocks buffered ahead of the reader per stream.
+     *
+     * @param bufferBlocks The number of blocks.
+     * @throws IllegalArgumentException If the number is not positive.
+     */
+    public void setBufferBlocks(int bufferBlocks) {
+        if (bufferBlocks < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferBlocks = bufferBlocks;
+    }
+
+    /**
+     * Opens a file as one stream. The entries of a zip file are concatenated in archive order; each entry
+     * should hold whole messages.
+     *
+     * @param file The gzip, zip or plain MT940 file.
+     * @return The decompressed MT940 bytes, to be closed by the caller.
+     * @throws IOException If the file cannot be opened.
+     */
+    public InputStream open(Path file) throws IOException {
+        List<InputStream> entries = openEntries(file);
+        return entries.size() == 1 ? entries.get(0) : new SequenceInputStream(Collections.enumeration(entries));
+    }
+
+    /**
+     * Opens a file as one stream per zip entry, e.g. as the sources of {@link MT940Pipeline#run}, which
+     * splits them concurrently. A gzip or plain file gives a single stream.
+     *
+     * @param file The gzip, zip or plain MT940 file.
+     * @return The decompressed streams in archive order, to be closed by the caller.
+     * @throws IOException If the file cannot be opened.
+     */
+    public List<InputStream> openEntries(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(magic, 0, magic.length);
+        }
+        if (isZip(magic, length)) {
+            return openZip(file);
+        }
+        InputStream in = Files.newInputStream(file);
+        if (isGzip(magic, length)) {
+            return List.of(inflate(new GZIPInputStream(in, blockSize)));
+        }
+        return List.of(new BufferedInputStream(in, blockSize));
+    }
+
+    /**
+     * Opens a stream, e.g. an upload, as one stream. Zip entries are concatenated in order and, as a
+     * stream can only be read from its start, decompressed one after the other on one thread.
+     *
+     * @param in The gzip, zip or plain MT940 bytes, closed when the returned stream is closed.
+     * @return The decompressed MT940 bytes.
+     * @throws IOException If the stream cannot be read.
+     */
+    public InputStream open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, blockSize);
+        byte[] magic = new byte[4];
+        buffered.mark(magic.length);
+        int length = buffered.readNBytes(magic, 0, magic.length);
+        buffered.reset();
+        if (isZip(magic, length)) {
+            return inflate(new ZipEntriesInputStream(new ZipInputStream(buffered)));
+        }
+        if (isGzip(magic, length)) {
+            return inflate(new GZIPInputStream(buffered, blockSize));
+        }
+        return buffered;
+    }
+
+    private List<InputStream> openZip(Path file) throws IOException {
+        ZipFile zip = new ZipFile(file.toFile());
+        List<ZipEntry> entries = new ArrayList<>();
+        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+            ZipEntry entry = e.nextElement();
+            if (!entry.isDirectory()) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            zip.close();
+            return List.of(InputStream.nullInputStream());
+        }
+        // Tasks start in archive order and fill their own queues ahead of the reader. An entry read before
+        // a pool thread took it starts on a thread of its own, so reading out of order cannot wait on
+        // entries whose queues are full
+        ExecutorService inflaters = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()),
+                MT940PipelineStage.threadFactory("mt940-inflate"));
+        AtomicInteger remaining = new AtomicInteger(entries.size());
+        List<InputStream> streams = new ArrayList<>(entries.size());
+        for (ZipEntry entry : entries) {
+            BlockPipe pipe = new BlockPipe(bufferBlocks, () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    closeQuietly(zip);
+                }
+            });
+            pipe.setProducer(() -> {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    pipe.produce(in, blockSize);
+                } catch (IOException e) {
+                    pipe.fail(e);
+                }
+            });
+            inflaters.execute(pipe::runProducer);
+            streams.add(pipe);
+        }
+        inflaters.shutdown();
+        return streams;
+    }
+
+    // Decompresses the source on a thread of its own into a bounded pipe
+    private InputStream inflate(InputStream source) {
+        BlockPipe pipe = new BlockPipe(bufferBlocks, () -> closeQuietly(source));
+        Thread thread = MT940PipelineStage.threadFactory("mt940-inflate").newThread(() -> pipe.produce(source, blockSize));
+        thread.start();
+        return pipe;
+    }
+
+    private static boolean isZip(byte[] magic, int length) {
+        return length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    private static boolean isGzip(byte[] magic, int length) {
+        return length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // The data has been read or is no longer wanted
+        }
+    }
+
+    /**
+     * Bounded queue of decompressed blocks, read as an InputStream. The producer hands each block over
+     * without copying; an empty block marks the end.
+     */
+    private static final class BlockPipe extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> blocks;
+        private final Runnable onClose;
+        private final AtomicBoolean started = new AtomicBoolean();
+        // Set when the producer waits for a pool thread rather than running on one of its own
+        private Runnable producer;
+        private volatile boolean closed;
+        private volatile IOException failure;
+        private byte[] block;
+        private int position;
+
+        BlockPipe(int capacity, Runnable onClose) {
+            this.blocks = new ArrayBlockingQueue<>(capacity);
+            this.onClose = onClose;
+        }
+
+        void setProducer(Runnable producer) {
+            this.producer = producer;
+        }
+
+        // Runs the producer on the calling thread unless it has started elsewhere or the reader closed
+        void runProducer() {
+            if (started.compareAndSet(false, true) && !closed) {
+                producer.run();
+            }
+        }
+
+        // Runs on the decompressing thread; the end marker is always delivered unless the reader closed
+        void produce(InputStream in, int blockSize) {
+            try {
+                while (!closed) {
+                    byte[] next = new byte[blockSize];
+                    int length = in.readNBytes(next, 0, blockSize);
+                    if (length == 0) {
+                        break;
+                    }
+                    blocks.put(length == blockSize ? next : Arrays.copyOf(next, length));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException("Decompression failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Decompression interrupted");
+            }
+            end();
+        }
+
+        void fail(IOException e) {
+            failure = e;
+            end();
+        }
+
+        private void end() {
+            try {
+                if (!closed) {
+                    blocks.put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, block.length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return block == null || block == END ? 0 : block.length - position;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            block = END;
+            // Unblocks a producer waiting for room; it sees the flag and stops
+            blocks.clear();
+            onClose.run();
+        }
+
+        private boolean fill() throws IOException {
+            if (closed && block == END) {
+                return false;
+            }
+            if (producer != null && !started.get() && started.compareAndSet(false, true)) {
+                MT940PipelineStage.threadFactory("mt940-inflate").newThread(producer).start();
+            }
+            while (block == null || position == block.length) {
+                if (block == END) {
+                    return false;
+                }
+                try {
+                    block = blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+                }
+                position = 0;
+                if (block == END && failure != null) {
+                    throw failure;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The entries of a zip stream read back to back, skipping directories.
+     */
+    private static final class ZipEntriesInputStream extends InputStream {
+        private final ZipInputStream zip;
+        private boolean inEntry;
+        private boolean finished;
+
+        ZipEntriesInputStream(ZipInputStream zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!finished) {
+                if (!inEntry) {
+                    ZipEntry entry = zip.getNextEntry();
+                    if (entry == null) {
+                        finished = true;
+                        break;
+                    }
+                    inEntry = !entry.isDirectory();
+                    continue;
+                }
+                int n = zip.read(b, off, len);
+                if (n > 0) {
+                    return n;
+                }
+                inEntry = false;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Streams the statement lines of MT940 input to CSV, one row per :61: line with the fields of its message,
+ * straight from the scanner tokens. No {@link MT940Message} or {@link MT940Tag61} objects are built and only
+ * the rows of the current message are buffered, so memory does not grow with the input. Rows of invalid
+ * messages are not written.
+ * <p>
+ * Amounts are written in minor units with the debit/credit mark in its own column; dates keep their MT940
+ * YYMMDD and MMDD forms. Values holding a comma, quote or line break are quoted as in RFC 4180.
+ */
+public class MT940CsvConverter {
+
+    /**
+     * The header row.
+     */
+    public static final String HEADER = "transaction_reference,account,statement_number,sequence_number,currency,"
+            + "value_date,entry_date,debit_credit_mark,funds_code,amount_minor_units,transaction_type,"
+            + "customer_reference,bank_reference,supplementary_details\r\n";
+
+    private final Writer out;
+    private final Converter converter = new Converter();
+    private boolean headerWritten;
+
+    /**
+     * @param out The destination. It is flushed after every conversion but not closed.
+     */
+    public MT940CsvConverter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Converts every valid message in the input, writing the header row first if it has not been written yet.
+     *
+     * @param reader The MT940 input.
+     * @return The number of messages converted.
+     * @throws IOException If reading or writing fails.
+     */
+    public long convert(MT940Reader reader) throws IOException {
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+        long messages = converter.convert(reader);
+        out.flush();
+        return messages;
+    }
+
+    /**
+     * Converts every valid message in the input.
+     *
+     * @param in The MT940 bytes, closed when done.
+     * @return The number of messages converted.
+     * @throws IOException If reading or writing fails.
+     */
+    public long convert(InputStream in) throws IOException {
+        try (MT940Reader reader = new MT940Reader(in)) {
+            return convert(reader);
+        }
+    }
+
+    /**
+     * @return The number of rows written.
+     */
+    public long getRowCount() {
+        return converter.getStatementLineCount();
+    }
+
+    /**
+     * @return The number of invalid messages skipped.
+     */
+    public long getRejectedMessageCount() {
+        return converter.getRejectedMessageCount();
+    }
+
+    private final class Converter extends MT940StreamingConverter {
+        private final StringBuilder rows = new StringBuilder(4096);
+
+        @Override
+        void beginMessage() {
+            rows.setLength(0);
+        }
+
+        @Override
+        void statementLine(MT940Tag61View line) {
+            StringBuilder sb = rows;
+            appendValue(sb, text, transactionReferenceStart, transactionReferenceEnd);
+            sb.append(',');
+            appendValue(sb, text, accountStart, accountEnd);
+            sb.append(',');
+            int slash = statementStart < 0 ? -1 : MT940Scanner.indexOf(text, "/", statementStart, statementEnd);
+            appendValue(sb, text, statementStart, slash < 0 ? statementEnd : slash);
+            sb.append(',');
+            appendValue(sb, text, slash < 0 ? -1 : slash + 1, statementEnd);
+            sb.append(',');
+            appendValue(sb, text, openingStart < 0 ? -1 : openingStart + 7, openingStart + 10);
+            sb.append(',');
+            sb.append(text, line.valueDateStart, line.valueDateStart + 6).append(',');
+            appendValue(sb, text, line.entryDateStart, line.entryDateStart + 4);
+            sb.append(',');
+            sb.append(text, line.markStart, line.markEnd).append(',');
+            appendValue(sb, text, line.fundsCodeStart, line.fundsCodeStart + 1);
+            sb.append(',');
+            sb.append(line.getAmountMinorUnits()).append(',');
+            sb.append(text, line.typeStart, line.typeStart + 4).append(',');
+            appendValue(sb, text, line.typeStart + 4, line.customerReferenceEnd);
+            sb.append(',');
+            appendValue(sb, text, line.bankReferenceStart, line.bankReferenceEnd);
+            sb.append(',');
+            appendValue(sb, text, line.supplementaryDetailsStart, line.supplementaryDetailsEnd);
+            sb.append("\r\n");
+        }
+
+        @Override
+        void endMessage(boolean valid) throws IOException {
+            if (valid && rows.length() > 0) {
+                out.append(rows);
+            }
+        }
+    }
+
+    // Appends a field, quoted if needed; a negative start leaves the value empty
+    private static void appendValue(StringBuilder sb, CharSequence text, int start, int end) {
+        if (start < 0) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = start; i < end && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(text, start, end);
+            return;
+        }
+        sb.append('"');
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,617 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bulk importer of ledger CSV exports into MT940 statements.
+ * <p>
+ * The CSV needs a header row; its columns are found by name (see {@link Column}), so the defaults read
+ * the output of {@link MT940CsvConverter} back, reversal marks and funds codes included. Amounts are
+ * signed unless a debit/credit mark column (C, D, RC or RD) gives their side. Rows are grouped by account and value date: all rows of
+ * one account on one date become one statement, rendered by {@link MT940StatementBuilder} (long
+ * statements are paged into :28C: sequences). Each statement opens with the closing balance of the
+ * account's previous statement, starting from the balances given to {@link #setOpeningBalance}.
+ * <p>
+ * The CSV is read once: one thread splits the records and hands them, in batches, to worker threads that
+ * each own a share of the accounts. Rows of different accounts may be interleaved, but the rows of one
+ * account must come in date order; a statement is written as soon as a later date is seen for its
+ * account, so memory is bounded by the open statements rather than the input size. Statements of one
+ * account are written in date order; statements of different accounts may be interleaved.
+ */
+public class MT940CsvImporter {
+
+    /**
+     * The fields read from the CSV, with their default column names.
+     */
+    public enum Column {
+        ACCOUNT("account"),
+        CURRENCY("currency"),
+        VALUE_DATE("value_date"),
+        ENTRY_DATE("entry_date"),
+        DEBIT_CREDIT_MARK("debit_credit_mark"),
+        FUNDS_CODE("funds_code"),
+        AMOUNT("amount_minor_units"),
+        TRANSACTION_TYPE("transaction_type"),
+        CUSTOMER_REFERENCE("customer_reference"),
+        BANK_REFERENCE("bank_reference"),
+        SUPPLEMENTARY_DETAILS("supplementary_details");
+
+        private final String defaultName;
+
+        Column(String defaultName) {
+            this.defaultName = defaultName;
+        }
+
+        /**
+         * @return The column name used unless another is set.
+         */
+        public String getDefaultName() {
+            return defaultName;
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+    private static final int BATCH_SIZE = 1024;
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final String[][] END = new String[0][];
+
+    private final String header;
+    private final Map<Column, String> columnNames = new EnumMap<>(Column.class);
+    private final Map<String, Long> openingBalances = new HashMap<>();
+    private final Map<String, Long> closingBalances = new ConcurrentHashMap<>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private String defaultCurrency;
+    private boolean decimalAmounts;
+    private int maxMessageLength = MT940StatementBuilder.DEFAULT_MAX_MESSAGE_LENGTH;
+    private long rows;
+    private long statements;
+
+    /**
+     * @param header The {@code {1:...}{2:...}{3:...}{4:} header of the generated messages.
+     * @throws IllegalArgumentException If the header is invalid.
+     */
+    public MT940CsvImporter(String header) {
+        if (header == null || !header.startsWith("{1:") || !header.endsWith("{4:")) {
+            throw new IllegalArgumentException("Invalid header");
+        }
+        this.header = header;
+        for (Column column : COLUMNS) {
+            columnNames.put(column, column.getDefaultName());
+        }
+    }
+
+    /**
+     * Sets the name of the CSV column holding a field. Only the account, value date and amount columns
+     * are required; the currency may come from {@link #setDefaultCurrency}, the transaction type defaults
+     * to {@code NMSC} and the customer reference to {@code NONREF}.
+     *
+     * @param column The field.
+     * @param name   The column name in the header row.
+     */
+    public void setColumnName(Column column, String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Invalid column name");
+        }
+        columnNames.put(column, name);
+    }
+
+    /**
+     * Sets the currency of rows without one.
+     *
+     * @param currency The ISO currency code.
+     * @throws IllegalArgumentException If the currency is invalid.
+     */
+    public void setDefaultCurrency(String currency) {
+        if (!MT940Validation.isCurrency(currency)) {
+            throw new IllegalArgumentException("Invalid Currency");
+        }
+        this.defaultCurrency = currency;
+    }
+
+    /**
+     * Sets whether amounts are decimal numbers such as {@code -1250.75} (with a dot or a comma) instead of
+     * minor units such as {@code -125075}, the default.
+     *
+     * @param decimalAmounts Whether amounts are in major units with up to two decimals.
+     */
+    public void setDecimalAmounts(boolean decimalAmounts) {
+        this.decimalAmounts = decimalAmounts;
+    }
+
+    /**
+     * Sets the opening balance of an account's first statement; accounts without one open at zero.
+     *
+     * @param accountIdentification The account.
+     * @param balance               The signed balance in minor units.
+     */
+    public void setOpeningBalance(String accountIdentification, long balance) {
+        openingBalances.put(accountIdentification, balance);
+    }
+
+    /**
+     * Sets the size limit of each generated message.
+     *
+     * @param maxMessageLength The limit in characters, see {@link MT940StatementBuilder#setMaxMessageLength}.
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength < 512) {
+            throw new IllegalArgumentException("Message length limit must be at least 512");
+        }
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Sets the number of worker threads, by default the number of processors.
+     *
+     * @param parallelism The number of threads.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports a CSV file into an MT940 file.
+     *
+     * @param csv    The CSV file, read as UTF-8.
+     * @param mt940  The output file, created or truncated.
+     * @return The number of statements written.
+     * @throws IOException              If a file cannot be read or written.
+     * @throws IllegalArgumentException If a row is invalid.
+     */
+    public long importFile(Path csv, Path mt940) throws IOException {
+        MT940WriteEvent event = MT940Events.isRecorderInitialized() ? new MT940WriteEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long imported;
+        try (Reader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(mt940, StandardCharsets.ISO_8859_1)) {
+            imported = importCsv(in, out);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.messageSize = (int) Math.min(Files.size(mt940), Integer.MAX_VALUE);
+            event.lineCount = (int) Math.min(rows, Integer.MAX_VALUE);
+            event.destination = mt940.toString();
+            event.commit();
+        }
+        return imported;
+    }
+
+    /**
+     * Imports CSV records into MT940 messages. The writer is not closed.
+     *
+     * @param in  The CSV input, header row first.
+     * @param out The destination of the messages.
+     * @return The number of statements written.
+     * @throws IOException              If reading or writing fails.
+     * @throws IllegalArgumentException If a required column is missing or a row is invalid; statements
+     *                                  already written are kept.
+     */
+    public long importCsv(Reader in, Writer out) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        int[] positions = columnPositions(csv.readRecord());
+        closingBalances.clear();
+        rows = 0;
+        statements = 0;
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Shard> shards = new ArrayList<>(parallelism);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, MT940PipelineStage.threadFactory("mt940-import"));
+        List<Future<?>> done = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                Shard shard = new Shard(out, failure);
+                shards.add(shard);
+                done.add(workers.submit(shard));
+            }
+            long line = 1;
+            String[] record;
+            while ((record = csv.readRecord()) != null && failure.get() == null) {
+                line++;
+                if (record.length == 1 && record[0].isEmpty()) {
+                    continue;
+                }
+                String[] row = new String[COLUMNS.length + 1];
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    int position = positions[c];
+                    row[c] = position >= 0 && position < record.length && !record[position].isEmpty() ? record[position] : null;
+                }
+                row[COLUMNS.length] = Long.toString(line);
+                if (row[Column.ACCOUNT.ordinal()] == null) {
+                    throw new IllegalArgumentException("Missing account at line " + line);
+                }
+                shards.get(Math.floorMod(row[Column.ACCOUNT.ordinal()].hashCode(), parallelism)).add(row);
+                rows++;
+            }
+            for (Shard shard : shards) {
+                shard.finish();
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        Exception error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+        for (Shard shard : shards) {
+            statements += shard.statements;
+        }
+        out.flush();
+        return statements;
+    }
+
+    /**
+     * @return The number of CSV rows read by the last import.
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return The number of statements written by the last import.
+     */
+    public long getStatementCount() {
+        return statements;
+    }
+
+    /**
+     * Returns the closing balance of every account's last statement, to be used as the opening balances
+     * of the next import.
+     *
+     * @return The signed balances in minor units by account.
+     */
+    public Map<String, Long> getClosingBalances() {
+        return Collections.unmodifiableMap(closingBalances);
+    }
+
+    private int[] columnPositions(String[] headerRow) {
+        if (headerRow == null) {
+            throw new IllegalArgumentException("Missing CSV header row");
+        }
+        int[] positions = new int[COLUMNS.length];
+        for (Column column : COLUMNS) {
+            positions[column.ordinal()] = -1;
+            for (int i = 0; i < headerRow.length; i++) {
+                if (headerRow[i].trim().equals(columnNames.get(column))) {
+                    positions[column.ordinal()] = i;
+                    break;
+                }
+            }
+        }
+        for (Column column : new Column[]{Column.ACCOUNT, Column.VALUE_DATE, Column.AMOUNT}) {
+            if (positions[column.ordinal()] < 0) {
+                throw new IllegalArgumentException("Missing CSV column " + columnNames.get(column));
+            }
+        }
+        if (positions[Column.CURRENCY.ordinal()] < 0 && defaultCurrency == null) {
+            throw new IllegalArgumentException("Missing CSV column " + columnNames.get(Column.CURRENCY));
+        }
+        return positions;
+    }
+
+    /**
+     * An account's open statement and running balance; owned by one shard.
+     */
+    private static final class Account {
+        final String currency;
+        long balance;
+        int statementNumber;
+        int date;
+        MT940StatementBuilder statement;
+
+        Account(String currency, long balance) {
+            this.currency = currency;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * Worker owning the accounts whose hash falls in its share. Rows arrive in batches; rendered statements
+     * are collected and written to the shared writer in large blocks.
+     */
+    private final class Shard implements Runnable {
+        private final BlockingQueue<String[][]> queue = new ArrayBlockingQueue<>(4);
+        private final Map<String, Account> accounts = new HashMap<>();
+        private final StringBuilder rendered = new StringBuilder(FLUSH_SIZE * 2);
+        private final Writer out;
+        private final AtomicReference<Exception> failure;
+        private String[][] batch = new String[BATCH_SIZE][];
+        private int batchSize;
+        long statements;
+
+        Shard(Writer out, AtomicReference<Exception> failure) {
+            this.out = out;
+            this.failure = failure;
+        }
+
+        void add(String[] row) throws InterruptedException {
+            batch[batchSize++] = row;
+            if (batchSize == BATCH_SIZE) {
+                queue.put(batch);
+                batch = new String[BATCH_SIZE][];
+                batchSize = 0;
+            }
+        }
+
+        void finish() throws InterruptedException {
+            if (batchSize > 0) {
+                queue.put(Arrays.copyOf(batch, batchSize));
+            }
+            queue.put(END);
+        }
+
+        @Override
+        public void run() {
+            try {
+                String[][] rows;
+                while ((rows = queue.take()) != END) {
+                    if (failure.get() == null) {
+                        for (String[] row : rows) {
+                            addRow(row);
+                        }
+                    }
+                }
+                if (failure.get() == null) {
+                    List<String> remaining = new ArrayList<>(accounts.keySet());
+                    Collections.sort(remaining);
+                    for (String account : remaining) {
+                        close(account, accounts.get(account));
+                    }
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                // A failed write stops the import like an invalid row
+                failure.compareAndSet(null, e);
+                // Keep draining so the reading thread is never blocked on a full queue
+                try {
+                    while (queue.take() != END) {
+                        continue;
+                    }
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void addRow(String[] row) throws IOException {
+            try {
+                addRowValues(row);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(e.getMessage() + " at line " + row[COLUMNS.length], e);
+            }
+        }
+
+        private void addRowValues(String[] row) throws IOException {
+            String accountIdentification = row[Column.ACCOUNT.ordinal()];
+            int date = parseDate(row[Column.VALUE_DATE.ordinal()]);
+            Account account = accounts.get(accountIdentification);
+            if (account == null) {
+                String currency = row[Column.CURRENCY.ordinal()] != null ? row[Column.CURRENCY.ordinal()] : defaultCurrency;
+                account = new Account(currency, openingBalances.getOrDefault(accountIdentification, 0L));
+                accounts.put(accountIdentification, account);
+            } else if (row[Column.CURRENCY.ordinal()] != null && !row[Column.CURRENCY.ordinal()].equals(account.currency)) {
+                throw new IllegalArgumentException("Currency of account " + accountIdentification + " changes");
+            }
+            if (account.statement != null && account.date != date) {
+                if (date < account.date) {
+                    throw new IllegalArgumentException("Rows of account " + accountIdentification + " are not in date order");
+                }
+                close(accountIdentification, account);
+            }
+            if (account.statement == null) {
+                account.statement = new MT940StatementBuilder(header, transactionReference(date, account.statementNumber + 1),
+                        accountIdentification, account.currency);
+                account.statement.setStatementNumber(account.statementNumber % 99999 + 1);
+                account.statement.setMaxMessageLength(maxMessageLength);
+                account.statement.setOpeningBalance(date, account.balance);
+                account.date = date;
+            }
+            String type = row[Column.TRANSACTION_TYPE.ordinal()];
+            String customerReference = row[Column.CUSTOMER_REFERENCE.ordinal()];
+            String mark = row[Column.DEBIT_CREDIT_MARK.ordinal()];
+            long amount = parseAmount(row[Column.AMOUNT.ordinal()], mark);
+            account.statement.addLine(date, parseEntryDate(row[Column.ENTRY_DATE.ordinal()]),
+                    mark != null ? mark : amount < 0 ? "D" : "C", row[Column.FUNDS_CODE.ordinal()], Math.abs(amount),
+                    type == null ? "NMSC" : type, customerReference == null ? "NONREF" : customerReference,
+                    row[Column.BANK_REFERENCE.ordinal()], row[Column.SUPPLEMENTARY_DETAILS.ordinal()]);
+        }
+
+        private void close(String accountIdentification, Account account) throws IOException {
+            if (account.statement == null) {
+                return;
+            }
+            account.statement.writeTo(rendered);
+            account.balance = account.statement.getClosingBalance();
+            account.statementNumber++;
+            account.statement = null;
+            closingBalances.put(accountIdentification, account.balance);
+            statements++;
+            if (rendered.length() >= FLUSH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (rendered.length() == 0) {
+                return;
+            }
+            // Whole statements are written at once, so shards never interleave inside a message
+            synchronized (out) {
+                out.append(rendered);
+            }
+            rendered.setLength(0);
+        }
+    }
+
+    // Tag 20 in the 8!n-3!n form: the statement date with century, then the statement number
+    private static String transactionReference(int date, int statementNumber) {
+        return String.format("20%06d-%03d", date, statementNumber % 1000);
+    }
+
+    /**
+     * Parses a YYMMDD, YYYYMMDD or YYYY-MM-DD date.
+     */
+    private static int parseDate(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value date");
+        }
+        String digits = value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-'
+                ? value.substring(0, 4) + value.substring(5, 7) + value.substring(8) : value;
+        if ((digits.length() != 6 && digits.length() != 8) || !MT940Validation.isDigits(digits, 0, digits.length())) {
+            throw new IllegalArgumentException("Invalid value date format");
+        }
+        return Integer.parseInt(digits.substring(digits.length() - 6));
+    }
+
+    // Entry dates are MMDD; a full date keeps its month and day
+    private static int parseEntryDate(String value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value.length() == 4 && MT940Validation.isDigits(value, 0, 4)) {
+            return Integer.parseInt(value);
+        }
+        return parseDate(value) % 10000;
+    }
+
+    private long parseAmount(String value, String mark) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing amount");
+        }
+        boolean negative = value.charAt(0) == '-';
+        int start = negative || value.charAt(0) == '+' ? 1 : 0;
+        long amount;
+        try {
+            if (!decimalAmounts) {
+                amount = Long.parseLong(value.substring(start));
+            } else {
+                int separator = Math.max(value.indexOf('.'), value.indexOf(','));
+                if (separator < 0) {
+                    amount = Math.multiplyExact(Long.parseLong(value.substring(start)), 100);
+                } else {
+                    String fraction = value.substring(separator + 1);
+                    if (fraction.length() > 2 || !MT940Validation.isDigits(fraction, 0, fraction.length())) {
+                        throw new NumberFormatException();
+                    }
+                    long units = separator == start ? 0 : Long.parseLong(value.substring(start, separator));
+                    amount = Math.addExact(Math.multiplyExact(units, 100),
+                            fraction.isEmpty() ? 0 : Integer.parseInt(fraction) * (fraction.length() == 1 ? 10 : 1));
+                }
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        if (amount < 0) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        if (mark != null) {
+            // With a mark column the amount is unsigned; RC and RD reverse a credit or a debit
+            if (negative || !MT940Validation.isBalanceDebitCreditMark(mark) && !mark.equals("RC") && !mark.equals("RD")) {
+                throw new IllegalArgumentException("Invalid debit/credit mark");
+            }
+            negative = MT940Amount.isDebit(mark);
+        }
+        return negative ? -amount : amount;
+    }
+
+    /**
+     * Splits RFC 4180 records: fields separated by commas, optionally quoted with doubled quotes inside,
+     * records ended by LF or CRLF. Quoted fields may hold separators and line breaks.
+     */
+    private static final class CsvReader {
+        private final Reader in;
+        private final char[] buffer = new char[64 * 1024];
+        private final StringBuilder field = new StringBuilder(64);
+        private final List<String> fields = new ArrayList<>(16);
+        private int position;
+        private int limit;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        String[] readRecord() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IllegalArgumentException("Unterminated quoted CSV field");
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c < 0) {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[0]);
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.cbo.mt940;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Incremental ingestion of a drop directory. New and growing files are tailed from the offset past
+ * their last complete {@code -}} envelope, and every envelope is handed to a parser pool as soon as its
+ * trailer has been written, instead of re-running a batch job over whole files.
+ * <p>
+ * Changes are picked up through a {@link WatchService}; the directory is also rescanned at a fixed
+ * interval, since some platforms deliver events late or drop them on overflow. A partial envelope at the
+ * end of a file is left for the next change. A file that shrinks is read again from the start, as after
+ * a rotation, and a deleted file is forgotten.
+ * <p>
+ * The handler receives the result of every envelope, valid or not, from the pool threads: messages of
+ * the same file may be handled concurrently and out of order. When the pool is saturated the watcher
+ * thread parses too, which holds back reading until the handlers catch up.
+ * <p>
+ * A handler that throws, or a file that cannot be read, e.g. while it is locked by its writer, does not
+ * stop the watcher: the failure is counted and passed to the {@link #setFailureHandler failure handler},
+ * and an unreadable file is read again from the same offset on its next change or rescan.
+ * <p>
+ * {@link #getEndToEndLatency()} measures the time from the file's last modification, i.e. the write that
+ * completed the envelope, to the end of parsing.
+ * <p>
+ * The parser queue is bounded by envelope count; a {@link #setMemoryBudget(MT940MemoryBudget) memory
+ * budget} also bounds it by estimated size, holding back reading while the messages in flight would
+ * not fit. A message's reservation is released when the handler returns.
+ */
+public class MT940DirectoryWatcher implements Closeable {
+
+    private final Path directory;
+    private final Consumer<? super MT940ParseResult> handler;
+    // Only the watcher thread reads and writes the positions; concurrent for toString()
+    private final Map<Path, Tail> tails = new ConcurrentHashMap<>();
+    private final MT940ParserMetrics parserMetrics = new MT940ParserMetrics();
+    private final MT940LatencyHistogram endToEndLatency = new MT940LatencyHistogram();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final ThreadLocal<MT940MessageAssembler> assemblers = ThreadLocal.withInitial(() -> {
+        MT940MessageAssembler assembler = new MT940MessageAssembler();
+        assembler.setMetrics(parserMetrics);
+        return assembler;
+    });
+    private Predicate<Path> fileFilter = file -> true;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Duration rescanInterval = Duration.ofSeconds(5);
+    private MT940MemoryBudget memoryBudget;
+    private volatile BiConsumer<? super Path, ? super Exception> failureHandler;
+    private WatchService watchService;
+    private ThreadPoolExecutor parsers;
+    private Thread watcher;
+    private volatile boolean closed;
+
+    /**
+     * Creates a watcher of a directory.
+     *
+     * @param directory The drop directory; subdirectories are not watched.
+     * @param handler   The consumer of every parsed envelope, called from several threads at once.
+     */
+    public MT940DirectoryWatcher(Path directory, Consumer<? super MT940ParseResult> handler) {
+        this.directory = directory;
+        this.handler = handler;
+    }
+
+    /**
+     * Sets which files of the directory are ingested, e.g. by extension, leaving temporary files alone.
+     *
+     * @param fileFilter The filter, or {@code null} to ingest every regular file.
+     */
+    public void setFileFilter(Predicate<Path> fileFilter) {
+        this.fileFilter = fileFilter == null ? file -> true : fileFilter;
+    }
+
+    /**
+     * Sets the number of threads parsing envelopes.
+     *
+     * @param parallelism The number of parser threads.
+     * @throws IllegalArgumentException If the parallelism is not positive.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets how often the directory is rescanned when no change events arrive.
+     *
+     * @param rescanInterval The interval.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public void setRescanInterval(Duration rescanInterval) {
+        if (rescanInterval.isNegative() || rescanInterval.isZero()) {
+            throw new IllegalArgumentException("Rescan interval must be positive");
+        }
+        this.rescanInterval = rescanInterval;
+    }
+
+    /**
+     * Sets the budget bounding the estimated heap retained by envelopes waiting for the parsers and
+     * messages being handled.
+     *
+     * @param memoryBudget The budget, or {@code null} to bound by envelope count only.
+     */
+    public void setMemoryBudget(MT940MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets the consumer of the exceptions thrown by the handler and of the errors reading a file, called
+     * from the watcher and the parser threads. Exceptions it throws are ignored.
+     *
+     * @param failureHandler The handler of the file and the exception, or {@code null} to only count failures.
+     */
+    public void setFailureHandler(BiConsumer<? super Path, ? super Exception> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Starts watching in the background. Files already in the directory are ingested first.
+     *
+     * @throws IOException If the directory cannot be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("Watcher already started");
+        }
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        parsers = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), MT940PipelineStage.threadFactory("mt940-parse"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        watcher = new Thread(this::watchLoop, "mt940-watcher");
+        watcher.start();
+    }
+
+    /**
+     * @return The metrics of the parser pool.
+     */
+    public MT940ParserMetrics getParserMetrics() {
+        return parserMetrics;
+    }
+
+    /**
+     * @return The latency from the write completing an envelope to its parsed result, in nanoseconds.
+     */
+    public MT940LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    /**
+     * @return The number of envelopes handed to the handler.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * @return The number of handler exceptions and file read errors since start.
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Stops watching and waits for the envelopes already read to be handled.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = watcher;
+        }
+        if (thread == null) {
+            return;
+        }
+        watchService.close();
+        try {
+            thread.join();
+            parsers.shutdown();
+            parsers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MT940DirectoryWatcher{directory=" + directory + ", files=" + tails.size() + ", messages="
+                + messages.sum() + ", failures=" + failures.sum() + ", latency p50=" + endToEndLatency.getValueAtPercentile(50) / 1000
+                + "us p99=" + endToEndLatency.getValueAtPercentile(99) / 1000 + "us}";
+    }
+
+    private void watchLoop() {
+        try {
+            rescan();
+            long rescanNanos = rescanInterval.toNanos();
+            while (!closed) {
+                WatchKey key = watchService.poll(rescanNanos, TimeUnit.NANOSECONDS);
+                if (key == null) {
+                    rescan();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        tails.remove(directory.resolve((Path) event.context()));
+                    } else {
+                        tail(directory.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void rescan() throws InterruptedException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                tail(file);
+            }
+        } catch (IOException e) {
+            // Listing fails too, e.g. while the directory is remounted; the next rescan tries again
+            report(directory, e);
+        }
+        tails.keySet().removeIf(file -> !Files.exists(file));
+    }
+
+    // Reads the complete envelopes appended since the last call
+    private void tail(Path file) throws InterruptedException {
+        try {
+            tailFile(file);
+        } catch (IOException e) {
+            report(file, e);
+        }
+    }
+
+    private void tailFile(Path file) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(file) || !fileFilter.test(file)) {
+            return;
+        }
+        Tail tail = tails.computeIfAbsent(file, f -> new Tail());
+        Instant written;
+        long size;
+        try {
+            written = Files.getLastModifiedTime(file).toInstant();
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            tails.remove(file);
+            return;
+        }
+        if (size < tail.offset) {
+            tail.offset = 0;
+            tail.lineNumber = 1;
+        }
+        if (size == tail.offset) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(tail.offset);
+            MT940Reader reader = new MT940Reader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.ISO_8859_1), tail.offset, tail.lineNumber);
+            CharSequence text;
+            while ((text = reader.readEnvelope()) != null) {
+                submit(file, text.toString(), reader.getEnvelopeOffset(), reader.getEnvelopeLineNumber(), written);
+                tail.offset = reader.getOffset();
+                tail.lineNumber = reader.getLineNumber();
+            }
+            // Text after the last envelope holds no opening brace and is not read again
+            tail.offset = reader.getOffset();
+            tail.lineNumber = reader.getLineNumber();
+        } catch (EOFException e) {
+            // The trailer of the last envelope has not been written yet
+        } catch (NoSuchFileException e) {
+            tails.remove(file);
+        }
+    }
+
+    private void submit(Path file, String envelope, long offset, long lineNumber, Instant written)
+            throws InterruptedException {
+        MT940MemoryBudget budget = memoryBudget;
+        long reserved = 0;
+        if (budget != null) {
+            // Held for the envelope copy and the message until the handler returns
+            reserved = MT940MemoryBudget.estimate(envelope, 0, envelope.length()) + envelope.length();
+            budget.acquire(reserved);
+        }
+        long admitted = reserved;
+        parsers.execute(() -> {
+            try {
+                MT940ParseResult result = assemblers.get().assembleResult(envelope, 0, envelope.length(), offset,
+                        lineNumber);
+                endToEndLatency.record(Duration.between(written, Instant.now()).toNanos());
+                messages.increment();
+                handler.accept(result);
+            } catch (RuntimeException e) {
+                // Also thrown on the watcher thread when the pool is saturated
+                report(file, e);
+            } finally {
+                if (budget != null) {
+                    budget.release(admitted);
+                }
+            }
+        });
+    }
+
+    private void report(Path file, Exception failure) {
+        failures.increment();
+        BiConsumer<? super Path, ? super Exception> consumer = failureHandler;
+        if (consumer != null) {
+            try {
+                consumer.accept(file, failure);
+            } catch (RuntimeException e) {
+                // Nothing left to report it to
+            }
+        }
+    }
+
+    /**
+     * Position past the last complete envelope of a file.
+     */
+    private static final class Tail {
+        private long offset;
+        private long lineNumber = 1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link MT940Reader} when an envelope grows past the {@link MT940Reader#setMaxEnvelopeLength(int)
+ * maximum length} before its {@code -}} trailer is found, e.g. when a peer sends {@code {} and never ends
+ * the message. The rest of the envelope has not been read, so the reader cannot carry on with the input.
+ */
+public class MT940EnvelopeTooLongException extends IOException {
+
+    private final long offset;
+    private final int maxLength;
+
+    /**
+     * @param offset    The offset of the opening brace of the envelope.
+     * @param maxLength The maximum envelope length that was exceeded.
+     */
+    public MT940EnvelopeTooLongException(long offset, int maxLength) {
+        super("MT940 message at offset " + offset + " exceeds " + maxLength + " characters");
+        this.offset = offset;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return The offset of the opening brace of the envelope.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The maximum envelope length that was exceeded.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,48 @@
+package com.cbo.mt940;
+
+/**
+ * Categories of problems reported by the non-throwing parse mode, see {@link MT940ParseResult}.
+ */
+public enum MT940ErrorCode {
+    /**
+     * The {@code {1:...}{2:...}{3:...}{4:} header is missing or not followed by a line break.
+     */
+    INVALID_HEADER("Missing or invalid Header in the MT940 message"),
+    /**
+     * A block 4 line does not start with a {@code :tag:} prefix.
+     */
+    INVALID_FIELD("Invalid field in the MT940 message"),
+    /**
+     * A mandatory tag is absent or has an unusable layout.
+     */
+    MISSING_TAG("Missing or invalid tag in the MT940 message"),
+    /**
+     * A field value does not match the format of its tag.
+     */
+    INVALID_VALUE("Invalid field value in the MT940 message"),
+    /**
+     * The {@code -}} trailer is missing.
+     */
+    MISSING_TRAILER("Missing or invalid trailer in the MT940 message"),
+    /**
+     * The message is longer than the configured maximum envelope length, see {@link MT940EnvelopeTooLongException}.
+     */
+    MESSAGE_TOO_LONG("MT940 message exceeds the maximum envelope length"),
+    /**
+     * The closing balance is not the opening balance plus the statement lines.
+     */
+    UNBALANCED("Closing balance does not match opening balance and statement lines");
+
+    private final String description;
+
+    MT940ErrorCode(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return A generic description of the problem.
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,23 @@
+package com.cbo.mt940;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Guard for creating the Java Flight Recorder events {@link MT940ParseEvent} and {@link MT940WriteEvent}.
+ */
+final class MT940Events {
+
+    private MT940Events() {
+    }
+
+    /**
+     * Tells whether event objects are worth creating. No recording can run before Flight Recorder is
+     * initialized, and the first event object registers its class with JFR, which costs a short-lived
+     * process about a quarter of a second; until then the event classes are not even loaded.
+     *
+     * @return Whether Flight Recorder is initialized.
+     */
+    static boolean isRecorderInitialized() {
+        return FlightRecorder.isInitialized();
+    }
+}
@@ -1,17 +1,505 @@
 package com.cbo.mt940;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class MT940FileWriter {
+/**
+ * Asynchronous MT940 file writer. Producer threads format their messages and append them to the active
+ * buffer; a dedicated I/O thread swaps it for the spare one and writes the whole batch with a single
+ * gathering {@link FileChannel} write, so producers never wait for the disk unless the buffer is full.
+ * <p>
+ * Writes are made durable in groups: the file is forced once {@link #setSyncMessages(int) N} messages
+ * were written since the last fsync, or once the oldest of them is {@link #setSyncInterval(Duration) T}
+ * old, whichever comes first. The future returned by {@link #write(MT940Message)} completes when the
+ * message has been forced to disk, or completes exceptionally if writing failed.
+ * <p>
+ * Output can be rotated by size or message count: the first file is the given path and the next ones
+ * get {@code .1}, {@code .2}, ... appended. Messages are never split across files. Every message is
+ * written with the line breaks of {@link MT940Message#getLineEnding()} and followed by one line break.
+ */
+public class MT940FileWriter implements Closeable {
+
+    /**
+     * Default number of messages written between two fsyncs.
+     */
+    public static final int DEFAULT_SYNC_MESSAGES = 1000;
+    /**
+     * Default longest time a written message waits for its fsync.
+     */
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(50);
+    /**
+     * Default number of bytes buffered before producers wait for the I/O thread.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8 << 20;
+
+    private final Path file;
+    private int syncMessages = DEFAULT_SYNC_MESSAGES;
+    private long syncIntervalNanos = DEFAULT_SYNC_INTERVAL.toNanos();
+    private long maxFileSize;
+    private int maxFileMessages;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private List<Pending> active = new ArrayList<>();
+    private List<Pending> spare = new ArrayList<>();
+    private long activeBytes;
+    private boolean closed;
+    private IOException failure;
+    private volatile Thread writer;
+
+    // Owned by the I/O thread
+    private FileChannel channel;
+    private final List<CompletableFuture<Void>> unsynced = new ArrayList<>();
+    private long firstUnsyncedNanos;
+    private long fileSize;
+    private int fileMessages;
+    private ByteBuffer[] group = new ByteBuffer[64];
+    private volatile Path currentFile;
+    private volatile int fileCount;
+    private volatile long messageCount;
+    private volatile long syncCount;
+
+    /**
+     * Creates a writer of a file, created or truncated by {@link #start()}.
+     *
+     * @param file The output file, and the base name of rotated files.
+     */
+    public MT940FileWriter(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes a single message to a file synchronously.
+     *
+     * @param mt940Message The message.
+     * @param filePath     The output file, created or truncated.
+     * @throws UncheckedIOException If the file cannot be written.
+     */
     public static void writeToFile(MT940Message mt940Message, String filePath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Write the MT940 message to the file
-            // You can format it according to the MT940 standard
-            writer.write("Your MT940 message here");
+        MT940WriteEvent event = MT940Events.isRecorderInitialized() ? new MT940WriteEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        // Written with the line breaks of the parsed source
+        String text = mt940Message.toString(mt940Message.getLineEnding());
+        try (Writer writer = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.ISO_8859_1)) {
+            writer.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.messageSize = text.length();
+            event.lineCount = mt940Message.getStatementLines().size();
+            event.accountIdentification = mt940Message.getAccountIdentification();
+            event.destination = filePath;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets the number of written messages that triggers an fsync.
+     *
+     * @param syncMessages The number of messages; 1 forces after every batch the I/O thread writes.
+     * @throws IllegalArgumentException If the number is not positive.
+     */
+    public void setSyncMessages(int syncMessages) {
+        if (syncMessages < 1) {
+            throw new IllegalArgumentException("Sync messages must be positive");
+        }
+        this.syncMessages = syncMessages;
+    }
+
+    /**
+     * Sets the longest time a written message waits for its fsync.
+     *
+     * @param syncInterval The interval; zero forces after every batch.
+     * @throws IllegalArgumentException If the interval is negative.
+     */
+    public void setSyncInterval(Duration syncInterval) {
+        if (syncInterval.isNegative()) {
+            throw new IllegalArgumentException("Sync interval must not be negative");
+        }
+        this.syncIntervalNanos = syncInterval.toNanos();
+    }
+
+    /**
+     * Rotates to the next file before a message would take the current one past a size. A single
+     * message larger than the size gets a file of its own.
+     *
+     * @param maxFileSize The size in bytes, or 0 not to rotate by size.
+     * @throws IllegalArgumentException If the size is negative.
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("Max file size must not be negative");
+        }
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Rotates to the next file once a file holds a number of messages.
+     *
+     * @param maxFileMessages The number of messages, or 0 not to rotate by count.
+     * @throws IllegalArgumentException If the number is negative.
+     */
+    public void setMaxFileMessages(int maxFileMessages) {
+        if (maxFileMessages < 0) {
+            throw new IllegalArgumentException("Max file messages must not be negative");
+        }
+        this.maxFileMessages = maxFileMessages;
+    }
+
+    /**
+     * Sets the number of bytes producers may buffer before they wait for the I/O thread.
+     *
+     * @param bufferSize The size in bytes.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Opens the first file and starts the I/O thread.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("Writer already started");
+        }
+        open(file);
+        writer = new Thread(this::writeLoop, "mt940-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Formats a message and queues it for writing. Blocks while the buffer is full.
+     *
+     * @param message The message.
+     * @return A future completed once the message is on disk, or exceptionally if it could not be written,
+     *         as after any earlier write failure, or if the writer was closed while this call waited.
+     * @throws IllegalStateException If the writer is not started or was closed.
+     */
+    public CompletableFuture<Void> write(MT940Message message) {
+        MT940WriteEvent event = MT940Events.isRecorderInitialized() ? new MT940WriteEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        MT940LineEnding lineEnding = message.getLineEnding();
+        // Formatted with its line breaks and the separator after it, then encoded without a String copy
+        StringBuilder text = new StringBuilder(message.getEncodedLength() + 64);
+        message.appendTo(text, lineEnding);
+        text.append(lineEnding.getSeparator());
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(new Pending(StandardCharsets.ISO_8859_1.encode(CharBuffer.wrap(text)), future));
+        if (event != null && event.shouldCommit()) {
+            event.messageSize = text.length();
+            event.lineCount = message.getStatementLines().size();
+            event.accountIdentification = message.getAccountIdentification();
+            event.destination = file.toString();
+            event.commit();
+        }
+        return future;
+    }
+
+    /**
+     * Forces everything queued so far to disk without waiting for the sync thresholds.
+     *
+     * @return A future completed once the messages queued before the call are on disk.
+     * @throws IllegalStateException If the writer is not started or already closed.
+     */
+    public CompletableFuture<Void> sync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(new Pending(null, future));
+        return future;
+    }
+
+    /**
+     * @return The file currently written to.
+     */
+    public Path getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * @return The number of files opened, including the current one.
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return The number of messages written, durable or not.
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return The number of fsyncs issued.
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Writes and forces the queued messages, then closes the current file.
+     *
+     * @throws IOException If a write failed; the futures of the messages not written failed with it.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+            thread = writer;
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while closing " + file, e);
+            }
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MT940FileWriter{file=" + currentFile + ", files=" + fileCount + ", messages=" + messageCount
+                + ", syncs=" + syncCount + "}";
+    }
+
+    private void enqueue(Pending pending) {
+        lock.lock();
+        try {
+            if (writer == null) {
+                throw new IllegalStateException("Writer not started");
+            }
+            if (closed && failure == null) {
+                throw new IllegalStateException("Writer closed");
+            }
+            // Producers wait while the I/O thread catches up; a single large message always fits
+            while (failure == null && !closed && !active.isEmpty() && activeBytes + pending.size() > bufferSize) {
+                notFull.await();
+            }
+            if (failure != null) {
+                pending.future.completeExceptionally(failure);
+                return;
+            }
+            if (closed) {
+                // Closed while this producer waited: the I/O thread may already have written its last batch
+                pending.future.completeExceptionally(new IllegalStateException("Writer closed"));
+                return;
+            }
+            active.add(pending);
+            activeBytes += pending.size();
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = null;
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (active.isEmpty() && !closed) {
+                        if (unsynced.isEmpty()) {
+                            notEmpty.await();
+                        } else {
+                            long wait = firstUnsyncedNanos + syncIntervalNanos - System.nanoTime();
+                            if (wait <= 0) {
+                                break;
+                            }
+                            notEmpty.awaitNanos(wait);
+                        }
+                    }
+                    if (active.isEmpty() && closed) {
+                        break;
+                    }
+                    // Swap the buffers: producers fill the spare one while this batch is written
+                    batch = active;
+                    active = spare;
+                    activeBytes = 0;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                write(batch);
+                if (!unsynced.isEmpty() && (unsynced.size() >= syncMessages
+                        || System.nanoTime() - firstUnsyncedNanos >= syncIntervalNanos)) {
+                    force();
+                }
+                batch.clear();
+                spare = batch;
+                batch = null;
+            }
+            force();
+            channel.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            fail(e, batch);
+        } catch (InterruptedException e) {
+            fail(new IOException("Interrupted while writing " + currentFile, e), batch);
+        }
+    }
+
+    // Writes a batch with gathering writes, rotating and forcing where needed
+    private void write(List<Pending> batch) throws IOException {
+        int size = 0;
+        for (Pending pending : batch) {
+            if (pending.bytes == null) {
+                writeGroup(size);
+                size = 0;
+                unsynced.add(pending.future);
+                force();
+                continue;
+            }
+            int length = pending.size();
+            if (fileMessages > 0 && (maxFileMessages > 0 && fileMessages >= maxFileMessages
+                    || maxFileSize > 0 && fileSize + length > maxFileSize)) {
+                writeGroup(size);
+                size = 0;
+                force();
+                channel.close();
+                open(file.resolveSibling(file.getFileName() + "." + fileCount));
+            }
+            if (size == group.length) {
+                writeGroup(size);
+                size = 0;
+            }
+            group[size++] = pending.bytes;
+            if (unsynced.isEmpty()) {
+                firstUnsyncedNanos = System.nanoTime();
+            }
+            unsynced.add(pending.future);
+            fileSize += length;
+            fileMessages++;
+        }
+        writeGroup(size);
+    }
+
+    private void writeGroup(int size) throws IOException {
+        int first = 0;
+        while (first < size) {
+            channel.write(group, first, size - first);
+            while (first < size && !group[first].hasRemaining()) {
+                first++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            group[i] = null;
+        }
+        messageCount += size;
+    }
+
+    // Makes the written messages durable and completes their futures
+    private void force() throws IOException {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        // Data only: the file size is flushed with it, other metadata is not needed to read the file back
+        channel.force(false);
+        syncCount++;
+        for (CompletableFuture<Void> future : unsynced) {
+            future.complete(null);
+        }
+        unsynced.clear();
+    }
+
+    private void open(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currentFile = path;
+        fileCount++;
+        fileSize = 0;
+        fileMessages = 0;
+    }
+
+    // Fails every message not yet durable and refuses further writes
+    private void fail(IOException e, List<Pending> batch) {
+        lock.lock();
+        try {
+            failure = e;
+            closed = true;
+            for (CompletableFuture<Void> future : unsynced) {
+                future.completeExceptionally(e);
+            }
+            unsynced.clear();
+            for (List<Pending> pendings : List.of(batch == null ? List.<Pending>of() : batch, active)) {
+                for (Pending pending : pendings) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            active.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException suppressed) {
+            e.addSuppressed(suppressed);
+        }
+    }
+
+    /**
+     * A formatted message, or a sync request when {@code bytes} is null, and its completion.
+     */
+    private static final class Pending {
+        private final ByteBuffer bytes;
+        private final CompletableFuture<Void> future;
+
+        private Pending(ByteBuffer bytes, CompletableFuture<Void> future) {
+            this.bytes = bytes;
+            this.future = future;
+        }
+
+        private int size() {
+            return bytes == null ? 0 : bytes.remaining();
         }
     }
 }
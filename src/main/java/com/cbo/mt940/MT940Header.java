@@ -0,0 +1,382 @@
+package com.cbo.mt940;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code {1:...}{2:...}{3:...}{4:} header of an MT940 message, split into its fields.
+ * <ul>
+ *     <li>Block 1, basic header: application id, service id, logical terminal (LT) address, session and
+ *     sequence numbers, e.g. {@code {1:F01CBORETAAXXXX2206123456}}.</li>
+ *     <li>Block 2, application header (optional): direction, message type, then the receiver address and
+ *     priority of an input message ({@code {2:I940XXXXXXXXXXXXN}}) or the input time, message input
+ *     reference, output date and time and priority of an output message.</li>
+ *     <li>Block 3, user header (optional): tagged fields such as {@code {108:...}} (message user
+ *     reference) and {@code {121:...}} (unique end-to-end transaction reference).</li>
+ * </ul>
+ * Values that repeat across messages (LT addresses, message types, the whole application header of
+ * input messages, user header codes) are shared through the installed {@link MT940Canonicalizer}, so
+ * messages from the same few banks do not each hold copies. Headers that do not follow this layout are kept
+ * as they are and only {@link #toString()} is available.
+ * <p>
+ * Instances are immutable; {@link #toString()} gives back the header text exactly.
+ */
+public final class MT940Header {
+
+    private final String raw;
+    private final String applicationId;
+    private final String serviceId;
+    private final String logicalTerminalAddress;
+    private final String sessionNumber;
+    private final String sequenceNumber;
+    private final String applicationHeader;
+    private final String messageType;
+    private final String priority;
+    // Tag and value pairs of block 3, in order
+    private final String[] userHeader;
+    private final int length;
+
+    private MT940Header(String raw) {
+        this.raw = raw;
+        this.applicationId = null;
+        this.serviceId = null;
+        this.logicalTerminalAddress = null;
+        this.sessionNumber = null;
+        this.sequenceNumber = null;
+        this.applicationHeader = null;
+        this.messageType = null;
+        this.priority = null;
+        this.userHeader = null;
+        this.length = raw.length();
+    }
+
+    private MT940Header(CharSequence text, int block1, int block2, int block2End, String[] userHeader, int length,
+                        MT940Canonicalizer canonicalizer) {
+        this.raw = null;
+        this.applicationId = canonical(canonicalizer, text, block1, block1 + 1);
+        this.serviceId = canonical(canonicalizer, text, block1 + 1, block1 + 3);
+        this.logicalTerminalAddress = canonical(canonicalizer, text, block1 + 3, block1 + 15);
+        this.sessionNumber = text.subSequence(block1 + 15, block1 + 19).toString();
+        this.sequenceNumber = text.subSequence(block1 + 19, block1 + 25).toString();
+        if (block2 < 0) {
+            this.applicationHeader = null;
+            this.messageType = null;
+            this.priority = null;
+        } else {
+            boolean input = text.charAt(block2) == 'I';
+            // Output headers carry times and references, so only input headers repeat
+            this.applicationHeader = input ? canonical(canonicalizer, text, block2, block2End)
+                    : text.subSequence(block2, block2End).toString();
+            this.messageType = canonical(canonicalizer, text, block2 + 1, block2 + 4);
+            int priorityAt = input ? block2 + 16 : block2 + 46;
+            this.priority = priorityAt < block2End ? canonical(canonicalizer, text, priorityAt, priorityAt + 1) : null;
+        }
+        this.userHeader = userHeader;
+        this.length = length;
+    }
+
+    /**
+     * Parses a header.
+     *
+     * @param header The text from {@code {1:} up to and including {@code {4:}.
+     * @return The header.
+     * @throws IllegalArgumentException If the header is {@code null}.
+     */
+    public static MT940Header parse(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("Missing or invalid Header in the MT940 message");
+        }
+        return parse(header, 0, header.length());
+    }
+
+    /**
+     * Parses the header found between {@code start} and {@code end}.
+     *
+     * @param text  The text holding the header.
+     * @param start The offset of {@code {1:}.
+     * @param end   The offset after {@code {4:}.
+     * @return The header; if its blocks do not follow the SWIFT layout it is kept unparsed.
+     */
+    public static MT940Header parse(CharSequence text, int start, int end) {
+        return parse(text, start, end, MT940Message.getCanonicalizer());
+    }
+
+    static MT940Header parse(CharSequence text, int start, int end, MT940Canonicalizer canonicalizer) {
+        // Block 1 has a fixed length of 25 characters
+        int pos = start + 3;
+        if (end - start < 32 || !startsWith(text, "{1:", start, end) || text.charAt(pos + 25) != '}'
+                || !isApplicationId(text.charAt(pos)) || !MT940Validation.isDigits(text, pos + 1, pos + 3)) {
+            return unparsed(text, start, end);
+        }
+        int block1 = pos;
+        pos += 26;
+        int block2 = -1;
+        int block2End = -1;
+        if (startsWith(text, "{2:", pos, end)) {
+            block2 = pos + 3;
+            block2End = indexOf(text, '}', block2, end);
+            if (block2End < 0 || !isApplicationHeader(text, block2, block2End)) {
+                return unparsed(text, start, end);
+            }
+            pos = block2End + 1;
+        }
+        String[] userHeader = null;
+        if (startsWith(text, "{3:", pos, end)) {
+            pos += 3;
+            int fields = 0;
+            String[] pairs = new String[4];
+            while (pos < end && text.charAt(pos) == '{') {
+                int colon = indexOf(text, ':', pos + 1, end);
+                int close = colon < 0 ? -1 : indexOf(text, '}', colon + 1, end);
+                if (close < 0 || !MT940Validation.isDigits(text, pos + 1, colon) || colon - pos != 4) {
+                    return unparsed(text, start, end);
+                }
+                if (fields * 2 == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                }
+                String tag = canonical(canonicalizer, text, pos + 1, colon);
+                pairs[fields * 2] = tag;
+                // Message user and end-to-end references are unique per message; codes such as 119 repeat
+                pairs[fields * 2 + 1] = tag.equals("108") || tag.equals("121")
+                        ? text.subSequence(colon + 1, close).toString() : canonical(canonicalizer, text, colon + 1, close);
+                fields++;
+                pos = close + 1;
+            }
+            if (pos >= end || text.charAt(pos) != '}') {
+                return unparsed(text, start, end);
+            }
+            pos++;
+            userHeader = pairs.length == fields * 2 ? pairs : Arrays.copyOf(pairs, fields * 2);
+        }
+        if (pos + 3 != end || !startsWith(text, "{4:", pos, end)) {
+            return unparsed(text, start, end);
+        }
+        return new MT940Header(text, block1, block2, block2End, userHeader, end - start, canonicalizer);
+    }
+
+    /**
+     * @return Whether the blocks were recognised; if not, only {@link #toString()} is available.
+     */
+    public boolean isParsed() {
+        return raw == null;
+    }
+
+    /**
+     * @return The block 1 application id: {@code F} (FIN), {@code A} (GPA) or {@code L} (login).
+     */
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * @return The block 1 service id, e.g. {@code 01} for FIN/GPA.
+     */
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @return The 12-character logical terminal address of block 1: BIC8, terminal code and branch code.
+     */
+    public String getLogicalTerminalAddress() {
+        return logicalTerminalAddress;
+    }
+
+    /**
+     * @return The 11-character BIC of the block 1 logical terminal, without the terminal code.
+     */
+    public String getBic() {
+        if (logicalTerminalAddress == null) {
+            return null;
+        }
+        return logicalTerminalAddress.substring(0, 8) + logicalTerminalAddress.substring(9);
+    }
+
+    /**
+     * @return The 4-character session number of block 1.
+     */
+    public String getSessionNumber() {
+        return sessionNumber;
+    }
+
+    /**
+     * @return The 6-character sequence number of block 1.
+     */
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return The block 2 content, or {@code null} if the header has no block 2.
+     */
+    public String getApplicationHeader() {
+        return applicationHeader;
+    }
+
+    /**
+     * @return Whether block 2 describes an input message ({@code I}) rather than an output one ({@code O}).
+     */
+    public boolean isInput() {
+        return applicationHeader != null && applicationHeader.charAt(0) == 'I';
+    }
+
+    /**
+     * @return The message type of block 2, e.g. {@code 940}.
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return The 12-character receiver address of an input message's block 2.
+     */
+    public String getReceiverAddress() {
+        return isInput() ? applicationHeader.substring(4, 16) : null;
+    }
+
+    /**
+     * @return The 28-character message input reference (date, LT address, session and sequence) of an
+     * output message's block 2.
+     */
+    public String getMessageInputReference() {
+        return applicationHeader != null && !isInput() ? applicationHeader.substring(8, 36) : null;
+    }
+
+    /**
+     * @return The block 2 priority ({@code S}, {@code N} or {@code U}), or {@code null} if not given.
+     */
+    public String getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param tag The block 3 tag, e.g. {@code 108}.
+     * @return The value of the tag, or {@code null} if absent.
+     */
+    public String getUserHeaderField(String tag) {
+        if (userHeader != null) {
+            for (int i = 0; i < userHeader.length; i += 2) {
+                if (userHeader[i].equals(tag)) {
+                    return userHeader[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The block 3 fields by tag, in order; empty if the header has no block 3.
+     */
+    public Map<String, String> getUserHeader() {
+        if (userHeader == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < userHeader.length; i += 2) {
+            fields.put(userHeader[i], userHeader[i + 1]);
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * @return The block 3 message user reference (tag 108), or {@code null}.
+     */
+    public String getMessageUserReference() {
+        return getUserHeaderField("108");
+    }
+
+    /**
+     * @return The block 3 unique end-to-end transaction reference (tag 121), or {@code null}.
+     */
+    public String getUniqueEndToEndReference() {
+        return getUserHeaderField("121");
+    }
+
+    /**
+     * @return The length of {@link #toString()}.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return The header text, from {@code {1:} to {@code {4:}.
+     */
+    @Override
+    public String toString() {
+        if (raw != null) {
+            return raw;
+        }
+        StringBuilder sb = new StringBuilder(length);
+        sb.append("{1:").append(applicationId).append(serviceId).append(logicalTerminalAddress)
+                .append(sessionNumber).append(sequenceNumber).append('}');
+        if (applicationHeader != null) {
+            sb.append("{2:").append(applicationHeader).append('}');
+        }
+        if (userHeader != null) {
+            sb.append("{3:");
+            for (int i = 0; i < userHeader.length; i += 2) {
+                sb.append('{').append(userHeader[i]).append(':').append(userHeader[i + 1]).append('}');
+            }
+            sb.append('}');
+        }
+        return sb.append("{4:").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MT940Header && o.toString().equals(toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    private static MT940Header unparsed(CharSequence text, int start, int end) {
+        return new MT940Header(text.subSequence(start, end).toString());
+    }
+
+    private static boolean isApplicationId(char c) {
+        return c == 'F' || c == 'A' || c == 'L';
+    }
+
+    // I + type + receiver (12) [+ priority [+ delivery monitoring [+ obsolescence period]]],
+    // or O + type + input time (4) + MIR (28) + output date (6) and time (4) [+ priority]
+    private static boolean isApplicationHeader(CharSequence text, int start, int end) {
+        if (end - start < 4 || !MT940Validation.isDigits(text, start + 1, start + 4)) {
+            return false;
+        }
+        if (text.charAt(start) == 'I') {
+            return end - start >= 16 && end - start <= 21;
+        }
+        return text.charAt(start) == 'O' && (end - start == 46 || end - start == 47);
+    }
+
+    private static boolean startsWith(CharSequence text, String prefix, int start, int end) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String canonical(MT940Canonicalizer canonicalizer, CharSequence text, int start, int end) {
+        return canonicalizer != null ? canonicalizer.canonicalize(text, start, end) : text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,357 @@
+package com.cbo.mt940;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-running TCP service that parses MT940 messages sent by clients.
+ * <p>
+ * Clients write any number of {@code {1:...-}} envelopes on a connection. Every envelope gets one
+ * response line, in order:
+ * <pre>
+ * ACK &lt;offset&gt; &lt;transaction reference number&gt;
+ * NAK &lt;offset&gt; &lt;error code&gt; &lt;line number&gt; &lt;detail&gt;
+ * </pre>
+ * where {@code offset} is the byte offset of the envelope in the connection's stream. An envelope longer
+ * than {@link #setMaxEnvelopeLength(int) the maximum length} is answered with a {@code MESSAGE_TOO_LONG}
+ * NAK and the connection is closed, so a peer that never ends a message cannot exhaust the heap. Every connection
+ * is served by its own small-stack daemon thread, so thousands of mostly idle connections cost little
+ * more than their socket buffers and thread stacks.
+ * <p>
+ * Failing {@code accept} calls, e.g. when the process runs out of file descriptors, are retried with
+ * exponential backoff. After {@link #setMaxConsecutiveAcceptErrors(int) too many} in a row the server
+ * stops accepting, closes its listening socket and reports the error through {@link #getAcceptFailure()};
+ * open connections are still served.
+ */
+public class MT940IngestionServer implements Closeable {
+
+    /**
+     * Default maximum length of an envelope, well above the SWIFT limits of a single message.
+     */
+    public static final int DEFAULT_MAX_ENVELOPE_LENGTH = 1 << 20;
+
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = MT940Threads.newThreadPerTaskExecutor("mt940-connection");
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final MT940ParserMetrics parserMetrics = new MT940ParserMetrics();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder acknowledgedMessages = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final LongAdder acceptErrors = new LongAdder();
+    private int maxConsecutiveAcceptErrors = 20;
+    private volatile int maxEnvelopeLength = DEFAULT_MAX_ENVELOPE_LENGTH;
+    private volatile IOException acceptFailure;
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Binds the server to a port on the loopback interface.
+     *
+     * @param port The port, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public MT940IngestionServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+    }
+
+    /**
+     * Binds the server to an address.
+     *
+     * @param address The address to listen on.
+     * @param backlog The number of pending connections the operating system may queue.
+     * @throws IOException If the address cannot be bound.
+     */
+    public MT940IngestionServer(InetSocketAddress address, int backlog) throws IOException {
+        this(new ServerSocket());
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, backlog);
+    }
+
+    MT940IngestionServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Sets how many {@code accept} calls may fail in a row before the server stops accepting connections.
+     *
+     * @param maxConsecutiveAcceptErrors The number of consecutive failures, 20 by default.
+     * @throws IllegalArgumentException If the number is not positive.
+     * @throws IllegalStateException    If the server is already started.
+     */
+    public synchronized void setMaxConsecutiveAcceptErrors(int maxConsecutiveAcceptErrors) {
+        if (maxConsecutiveAcceptErrors < 1) {
+            throw new IllegalArgumentException("Maximum consecutive accept errors must be positive");
+        }
+        if (acceptor != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.maxConsecutiveAcceptErrors = maxConsecutiveAcceptErrors;
+    }
+
+    /**
+     * Sets the length an envelope may reach before its connection is answered with a NAK and closed.
+     * Applies to connections accepted afterwards.
+     *
+     * @param maxEnvelopeLength The number of characters, {@link #DEFAULT_MAX_ENVELOPE_LENGTH} by default.
+     * @throws IllegalArgumentException If the length is not positive.
+     */
+    public void setMaxEnvelopeLength(int maxEnvelopeLength) {
+        if (maxEnvelopeLength < 1) {
+            throw new IllegalArgumentException("Maximum envelope length must be positive");
+        }
+        this.maxEnvelopeLength = maxEnvelopeLength;
+    }
+
+    /**
+     * Starts accepting connections in the background.
+     */
+    public synchronized void start() {
+        if (acceptor != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        acceptor = new Thread(this::acceptLoop, "mt940-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The parser metrics of all connections.
+     */
+    public MT940ParserMetrics getParserMetrics() {
+        return parserMetrics;
+    }
+
+    /**
+     * @return The number of connections accepted since start.
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * @return The number of connections currently open.
+     */
+    public int getActiveConnections() {
+        return openSockets.size();
+    }
+
+    /**
+     * @return The number of messages answered with ACK.
+     */
+    public long getAcknowledgedMessages() {
+        return acknowledgedMessages.sum();
+    }
+
+    /**
+     * @return The number of messages answered with NAK.
+     */
+    public long getRejectedMessages() {
+        return rejectedMessages.sum();
+    }
+
+    /**
+     * @return The number of failed {@code accept} calls since start.
+     */
+    public long getAcceptErrors() {
+        return acceptErrors.sum();
+    }
+
+    /**
+     * @return The error that made the server stop accepting connections, or {@code null} while it accepts them.
+     */
+    public IOException getAcceptFailure() {
+        return acceptFailure;
+    }
+
+    /**
+     * @return The number of messages answered per second since the server was created.
+     */
+    public double getMessagesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? (getAcknowledgedMessages() + getRejectedMessages()) / seconds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MT940IngestionServer[port %d, %d active / %d accepted connections, %d accept errors, %d ACK, %d NAK, %.0f msg/s]",
+                getPort(), getActiveConnections(), getAcceptedConnections(), getAcceptErrors(), getAcknowledgedMessages(),
+                getRejectedMessages(), getMessagesPerSecond());
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        int consecutiveErrors = 0;
+        long backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                acceptErrors.increment();
+                if (++consecutiveErrors >= maxConsecutiveAcceptErrors) {
+                    stopAccepting(e);
+                    return;
+                }
+                // Errors such as too many open files persist and fail at once: wait instead of spinning
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    stopAccepting(e);
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_ACCEPT_BACKOFF_MILLIS);
+                continue;
+            }
+            consecutiveErrors = 0;
+            backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+            acceptedConnections.increment();
+            openSockets.add(socket);
+            // close() sets the flag before closing the registered sockets: a socket registered after that
+            // sees the flag here, and one registered before is closed there
+            if (closed) {
+                discard(socket);
+                return;
+            }
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                discard(socket);
+                return;
+            }
+        }
+    }
+
+    private void discard(Socket socket) {
+        openSockets.remove(socket);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // The connection was never served
+        }
+    }
+
+    private void stopAccepting(IOException failure) {
+        acceptFailure = failure;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             MT940Reader reader = new MT940Reader(socket.getInputStream());
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1))) {
+            socket.setTcpNoDelay(true);
+            reader.setMetrics(parserMetrics);
+            reader.setMaxEnvelopeLength(maxEnvelopeLength);
+            StringBuilder response = new StringBuilder(128);
+            while (true) {
+                MT940ParseResult result;
+                try {
+                    result = reader.readResult();
+                } catch (MT940EnvelopeTooLongException e) {
+                    // The rest of the envelope is never read, so the connection cannot go on
+                    nak(response, e.getOffset(), MT940ErrorCode.MESSAGE_TOO_LONG, reader.getEnvelopeLineNumber(),
+                            e.getMessage());
+                    out.append(response).flush();
+                    return;
+                } catch (EOFException e) {
+                    nak(response, reader.getEnvelopeOffset(), MT940ErrorCode.MISSING_TRAILER, reader.getLineNumber(),
+                            MT940ErrorCode.MISSING_TRAILER.getDescription());
+                    out.append(response).flush();
+                    return;
+                }
+                if (result == null) {
+                    return;
+                }
+                response.setLength(0);
+                if (result.isValid()) {
+                    acknowledgedMessages.increment();
+                    response.append("ACK ").append(result.getOffset()).append(' ')
+                            .append(result.getMessage().getTransactionReferenceNumber()).append('\n');
+                } else {
+                    MT940ParseError error = result.getErrors().get(0);
+                    nak(response, result.getOffset(), error.getCode(), error.getLineNumber(), error.getDetail());
+                }
+                out.append(response).flush();
+            }
+        } catch (SocketException e) {
+            // Client went away or the server is closing
+        } catch (IOException e) {
+            // Nothing to report to a broken connection
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private void nak(StringBuilder response, long offset, MT940ErrorCode code, long lineNumber, String detail) {
+        rejectedMessages.increment();
+        response.setLength(0);
+        response.append("NAK ").append(offset).append(' ').append(code).append(' ').append(lineNumber).append(' ')
+                .append(detail.replace('\n', ' ')).append('\n');
+    }
+
+    /**
+     * Runs a server until the process is stopped, printing its metrics every ten seconds.
+     *
+     * @param args The port, default 9400.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9400;
+        MT940IngestionServer server = new MT940IngestionServer(port);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.println(server);
+        }
+    }
+}
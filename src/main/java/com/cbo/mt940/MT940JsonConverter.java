@@ -0,0 +1,186 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Streams MT940 input to JSON Lines: one JSON object per valid message with its statement lines nested,
+ * written straight from the scanner tokens. No {@link MT940Message} or {@link MT940Tag61} objects are built
+ * and only the current message is buffered, so memory does not grow with the input.
+ * <p>
+ * The header holds blocks 1 to 3 and the opening of block 4 as they appear in the input. Amounts are JSON
+ * numbers with two decimals; balances carry their debit/credit mark, date and currency:
+ * <pre>
+ * {"header":"{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:",
+ *  "transactionReferenceNumber":"20231115-319","accountIdentification":"1022200171931",
+ *  "statementNumber":"319","sequenceNumber":"1",
+ *  "openingBalance":{"tag":"60F","debitCreditMark":"C","date":"231115","currency":"ETB","amount":6994609.00},
+ *  "statementLines":[{"valueDate":"231115","entryDate":"1115","debitCreditMark":"D","fundsCode":"B",
+ *    "amount":533408.00,"transactionTypeIDCode":"NMSC","customerReference":"NONREF",
+ *    "bankReference":"FT23319KHPN5","supplementaryDetails":"Transfer"}],
+ *  "closingBalance":{...},"closingAvailableBalance":{...}}
+ * </pre>
+ * Optional fields that are absent are left out.
+ */
+public class MT940JsonConverter {
+
+    private final Writer out;
+    private final Converter converter = new Converter();
+
+    /**
+     * @param out The destination. It is flushed after every conversion but not closed.
+     */
+    public MT940JsonConverter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Converts every valid message in the input.
+     *
+     * @param reader The MT940 input.
+     * @return The number of messages converted.
+     * @throws IOException If reading or writing fails.
+     */
+    public long convert(MT940Reader reader) throws IOException {
+        long messages = converter.convert(reader);
+        out.flush();
+        return messages;
+    }
+
+    /**
+     * Converts every valid message in the input.
+     *
+     * @param in The MT940 bytes, closed when done.
+     * @return The number of messages converted.
+     * @throws IOException If reading or writing fails.
+     */
+    public long convert(InputStream in) throws IOException {
+        try (MT940Reader reader = new MT940Reader(in)) {
+            return convert(reader);
+        }
+    }
+
+    /**
+     * @return The number of messages written.
+     */
+    public long getMessageCount() {
+        return converter.getMessageCount();
+    }
+
+    /**
+     * @return The number of invalid messages skipped.
+     */
+    public long getRejectedMessageCount() {
+        return converter.getRejectedMessageCount();
+    }
+
+    private final class Converter extends MT940StreamingConverter {
+        // The lines come before the closing balances are known, so they are buffered apart
+        private final StringBuilder lines = new StringBuilder(4096);
+        private final StringBuilder message = new StringBuilder(4096);
+
+        @Override
+        void beginMessage() {
+            lines.setLength(0);
+        }
+
+        @Override
+        void statementLine(MT940Tag61View line) {
+            StringBuilder sb = lines;
+            sb.append(sb.length() == 0 ? "{" : ",{");
+            appendString(sb, "valueDate", text, line.valueDateStart, line.valueDateStart + 6);
+            appendString(sb, "entryDate", text, line.entryDateStart, line.entryDateStart + 4);
+            appendString(sb, "debitCreditMark", text, line.markStart, line.markEnd);
+            appendString(sb, "fundsCode", text, line.fundsCodeStart, line.fundsCodeStart + 1);
+            sb.append(",\"amount\":");
+            appendAmount(sb, line.getAmountMinorUnits());
+            appendString(sb, "transactionTypeIDCode", text, line.typeStart, line.typeStart + 4);
+            appendString(sb, "customerReference", text, line.typeStart + 4, line.customerReferenceEnd);
+            appendString(sb, "bankReference", text, line.bankReferenceStart, line.bankReferenceEnd);
+            appendString(sb, "supplementaryDetails", text, line.supplementaryDetailsStart, line.supplementaryDetailsEnd);
+            sb.append('}');
+        }
+
+        @Override
+        void endMessage(boolean valid) throws IOException {
+            if (!valid) {
+                return;
+            }
+            StringBuilder sb = message;
+            sb.setLength(0);
+            sb.append("{\"header\":");
+            appendQuoted(sb, text, headerStart, headerEnd);
+            appendString(sb, "transactionReferenceNumber", text, transactionReferenceStart, transactionReferenceEnd);
+            appendString(sb, "accountIdentification", text, accountStart, accountEnd);
+            int slash = MT940Scanner.indexOf(text, "/", statementStart, statementEnd);
+            appendString(sb, "statementNumber", text, statementStart, slash < 0 ? statementEnd : slash);
+            appendString(sb, "sequenceNumber", text, slash < 0 ? -1 : slash + 1, statementEnd);
+            appendBalance(sb, "openingBalance", "60", openingStart, getOpeningBalance());
+            sb.append(",\"statementLines\":[").append(lines).append(']');
+            appendBalance(sb, "closingBalance", "62", closingStart, getClosingBalance());
+            if (availableStart >= 0) {
+                appendBalance(sb, "closingAvailableBalance", "64", availableStart, getAvailableBalance());
+            }
+            sb.append("}\n");
+            out.append(sb);
+        }
+
+        // Tags 60 and 62 carry their option letter (F or M) just before the colon that ends the tag
+        private void appendBalance(StringBuilder sb, String name, String tag, int start, long balance) {
+            sb.append(",\"").append(name).append("\":{");
+            sb.append("\"tag\":\"").append(tag);
+            if (!tag.equals("64")) {
+                sb.append(text.charAt(start - 2));
+            }
+            sb.append('"');
+            appendString(sb, "debitCreditMark", text, start, start + 1);
+            appendString(sb, "date", text, start + 1, start + 7);
+            appendString(sb, "currency", text, start + 7, start + 10);
+            sb.append(",\"amount\":");
+            appendAmount(sb, Math.abs(balance));
+            sb.append('}');
+        }
+    }
+
+    // Appends ,"name":"value" after the first member; a negative start leaves the member out
+    private static void appendString(StringBuilder sb, String name, CharSequence text, int start, int end) {
+        if (start < 0) {
+            return;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        if (last != '{') {
+            sb.append(',');
+        }
+        sb.append('"').append(name).append("\":");
+        appendQuoted(sb, text, start, end);
+    }
+
+    private static void appendQuoted(StringBuilder sb, CharSequence text, int start, int end) {
+        sb.append('"');
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendAmount(StringBuilder sb, long minorUnits) {
+        long cents = minorUnits % 100;
+        sb.append(minorUnits / 100).append('.');
+        if (cents < 10) {
+            sb.append('0');
+        }
+        sb.append(cents);
+    }
+}
@@ -0,0 +1,46 @@
+package com.cbo.mt940;
+
+/**
+ * Line break convention of an MT940 or MT942 message. SWIFT uses CRLF; many files, and the messages this
+ * project formats, use LF. The parser accepts both, as well as trailing spaces on a line, and reports
+ * the convention it saw after the {@code {4:} block opening so a writer can use it again.
+ */
+public enum MT940LineEnding {
+    /**
+     * Line feed only, {@code \n}.
+     */
+    LF("\n"),
+    /**
+     * Carriage return and line feed, {@code \r\n}.
+     */
+    CRLF("\r\n");
+
+    private final String separator;
+
+    MT940LineEnding(String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * @return The characters ending a line.
+     */
+    public String getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Detects the convention of the line break at or after {@code position}, skipping trailing spaces.
+     *
+     * @param text     The text.
+     * @param position The position of the end of the line's content.
+     * @param end      The end of the text.
+     * @return {@link #CRLF} if the line ends with CR LF, {@link #LF} otherwise.
+     */
+    static MT940LineEnding detect(CharSequence text, int position, int end) {
+        int i = position;
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i + 1 < end && text.charAt(i) == '\r' && text.charAt(i + 1) == '\n' ? CRLF : LF;
+    }
+}
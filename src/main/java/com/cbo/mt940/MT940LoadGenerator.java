@@ -0,0 +1,178 @@
+package com.cbo.mt940;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load-generator client for {@link MT940IngestionServer}. Opens many connections at once, sends a sample
+ * message on each one and waits for its response before sending the next, and reports throughput and
+ * round-trip latency percentiles.
+ */
+public class MT940LoadGenerator {
+
+    private final String host;
+    private final int port;
+    private final MT940LatencyHistogram latency = new MT940LatencyHistogram();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failedConnections = new LongAdder();
+
+    /**
+     * @param host The server host.
+     * @param port The server port.
+     */
+    public MT940LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Opens {@code connections} connections and sends {@code messagesPerConnection} messages on each.
+     * All connections are opened before the first message is sent, so the server holds them concurrently.
+     *
+     * @param connections           The number of concurrent connections.
+     * @param messagesPerConnection The number of messages sent on each connection.
+     * @return The elapsed time in nanoseconds.
+     * @throws InterruptedException If interrupted while waiting for the connections.
+     */
+    public long run(int connections, int messagesPerConnection) throws InterruptedException {
+        byte[] payload = sampleMessage().getBytes(StandardCharsets.ISO_8859_1);
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = MT940Threads.newThreadPerTaskExecutor("mt940-load");
+        List<Future<?>> tasks = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            tasks.add(executor.submit(() -> connection(payload, messagesPerConnection, connected, go)));
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (Exception e) {
+                failedConnections.increment();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private void connection(byte[] payload, int messages, CountDownLatch connected, CountDownLatch go) {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            connected.countDown();
+            go.await();
+            for (int i = 0; i < messages; i++) {
+                long start = System.nanoTime();
+                out.write(payload);
+                out.flush();
+                String response = in.readLine();
+                if (response == null) {
+                    failedConnections.increment();
+                    return;
+                }
+                latency.record(System.nanoTime() - start);
+                if (response.startsWith("ACK")) {
+                    acknowledged.increment();
+                } else {
+                    rejected.increment();
+                }
+            }
+        } catch (IOException e) {
+            failedConnections.increment();
+            connected.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The round-trip latency of every message.
+     */
+    public MT940LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return The number of ACK responses.
+     */
+    public long getAcknowledged() {
+        return acknowledged.sum();
+    }
+
+    /**
+     * @return The number of NAK responses.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return The number of connections that could not be opened or ended early.
+     */
+    public long getFailedConnections() {
+        return failedConnections.sum();
+    }
+
+    static String sampleMessage() {
+        MT940Message message = new MT940Message();
+        message.setHeader("{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:");
+        message.setTransactionReferenceNumber("20231115-319");
+        message.setAccountIdentification("1022200171931");
+        message.setStatementNumberSequenceNumber("319/1");
+        message.setOpeningBalance("C", "231115", "ETB", "6994609,00");
+        message.setStatementLines("231115", "1115", "D", "B", "533408,00", "NMSC", "NONREF", "FT23319KHPN5", "Transfer");
+        message.setClosingBalanceBookedFunds("C", "231115", "ETB", "6461201,00");
+        message.setClosingAvailableBalance("C", "231115", "ETB", "6461201,00");
+        message.setTrailer("-}");
+        return message.toString() + "\n";
+    }
+
+    /**
+     * Runs a load test against a server, or against an in-process server when no port is given.
+     *
+     * @param args Connections (default 1000), messages per connection (default 100), host and port.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        MT940IngestionServer server = null;
+        String host = args.length > 2 ? args[2] : "localhost";
+        int port;
+        if (args.length > 3) {
+            port = Integer.parseInt(args[3]);
+        } else {
+            server = new MT940IngestionServer(0);
+            server.start();
+            host = "localhost";
+            port = server.getPort();
+        }
+        MT940LoadGenerator generator = new MT940LoadGenerator(host, port);
+        long elapsed = generator.run(connections, messages);
+        long total = generator.getAcknowledged() + generator.getRejected();
+        MT940LatencyHistogram latency = generator.getLatency();
+        System.out.printf("%d connections, %d messages (%d ACK, %d NAK, %d failed connections) in %.1f ms: %.0f msg/s%n",
+                connections, total, generator.getAcknowledged(), generator.getRejected(), generator.getFailedConnections(),
+                elapsed / 1e6, total / (elapsed / 1e9));
+        System.out.printf("round trip p50 %.1f us, p99 %.1f us, max %.1f us%n", latency.getValueAtPercentile(50) / 1e3,
+                latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3);
+        if (server != null) {
+            System.out.println(server);
+            server.close();
+        }
+    }
+}
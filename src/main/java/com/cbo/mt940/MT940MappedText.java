@@ -0,0 +1,64 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-byte {@link CharSequence} over a region of a memory-mapped file. SWIFT messages use a
+ * single-byte character set, so indexes are byte offsets into the region and reading a character
+ * does not decode or copy anything.
+ */
+final class MT940MappedText implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    private MT940MappedText(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Maps {@code length} bytes of a file starting at {@code position}.
+     *
+     * @throws IllegalArgumentException If the region is larger than 2 GB.
+     */
+    static MT940MappedText map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map more than 2 GB at offset " + position);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        return new MT940MappedText(buffer, 0, (int) length);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        // Absolute gets do not move the buffer position, so threads can share one mapping
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length());
+    }
+
+    private String toString(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(start + from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
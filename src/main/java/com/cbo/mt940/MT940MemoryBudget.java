@@ -0,0 +1,265 @@
+package com.cbo.mt940;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control by heap size. Every envelope reserves the estimated size of the message it will
+ * become before it is parsed, and the reservation is released when the message has been handled, so
+ * the parsed messages in flight never exceed the budget however large they are. When the budget is
+ * used up, readers block until earlier messages are released instead of filling the heap.
+ * <p>
+ * Sizes come from {@link MT940Message#estimateRetainedBytes(int, int)}: before parsing, from the length
+ * of the envelope and its number of {@code :61:} fields; once parsed, from the message itself, see
+ * {@link #estimate(MT940Message)}. An envelope larger than the whole budget is admitted alone, when
+ * nothing else is in flight, so it still gets through.
+ * <p>
+ * The default budget is a fraction of the maximum heap, so the same settings fit any {@code -Xmx}.
+ * Usage and the time spent waiting for admission are kept for monitoring.
+ */
+public class MT940MemoryBudget {
+
+    /**
+     * Default share of the maximum heap given to parsed messages in flight.
+     */
+    public static final double DEFAULT_HEAP_FRACTION = 0.5;
+
+    private final long budget;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long used;
+    private long peak;
+    private final LongAdder admitted = new LongAdder();
+    private final MT940LatencyHistogram waitLatency = new MT940LatencyHistogram();
+
+    /**
+     * Creates a budget of {@link #DEFAULT_HEAP_FRACTION} of the maximum heap.
+     */
+    public MT940MemoryBudget() {
+        this((long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION));
+    }
+
+    /**
+     * Creates a budget of a fixed size.
+     *
+     * @param budgetBytes The number of bytes parsed messages in flight may retain.
+     * @throws IllegalArgumentException If the budget is not positive.
+     */
+    public MT940MemoryBudget(long budgetBytes) {
+        if (budgetBytes < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.budget = budgetBytes;
+    }
+
+    /**
+     * Estimates the heap a message will retain once parsed, from its text.
+     *
+     * @param text  The text holding the envelope.
+     * @param start The start of the envelope.
+     * @param end   The end of the envelope.
+     * @return The estimated size in bytes.
+     */
+    public static long estimate(CharSequence text, int start, int end) {
+        int lines = 0;
+        for (int i = MT940Scanner.indexOf(text, "\n:61:", start, end); i >= 0;
+             i = MT940Scanner.indexOf(text, "\n:61:", i + 5, end)) {
+            lines++;
+        }
+        return MT940Message.estimateRetainedBytes(end - start, lines);
+    }
+
+    /**
+     * Estimates the heap a parsed message retains.
+     *
+     * @param message The message.
+     * @return The estimated size in bytes.
+     */
+    public static long estimate(MT940Message message) {
+        return MT940Message.estimateRetainedBytes(message.getEncodedLength(), message.getStatementLines().size());
+    }
+
+    /**
+     * Estimates the heap a statement read with {@link MT940Reader#readStatement()} retains.
+     *
+     * @param statement The statement.
+     * @return The estimated size in bytes.
+     */
+    public static long estimate(MT940Statement statement) {
+        return statement.estimateRetainedBytes();
+    }
+
+    /**
+     * Estimates the heap an MT942 message read with {@link MT940Reader#readMT942Message()} retains.
+     *
+     * @param message The message.
+     * @return The estimated size in bytes.
+     */
+    public static long estimate(MT942Message message) {
+        return message.estimateRetainedBytes();
+    }
+
+    /**
+     * Reserves part of the budget, waiting while it is used up.
+     *
+     * @param bytes The number of bytes.
+     * @throws InterruptedException If the thread is interrupted while waiting; nothing is reserved.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        lock.lock();
+        try {
+            if (used > 0 && used + bytes > budget) {
+                long start = System.nanoTime();
+                do {
+                    released.await();
+                } while (used > 0 && used + bytes > budget);
+                waitLatency.record(System.nanoTime() - start);
+            }
+            reserve(bytes);
+            admitted.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves part of the budget if it is available now.
+     *
+     * @param bytes The number of bytes.
+     * @return {@code true} if the bytes were reserved.
+     */
+    public boolean tryAcquire(long bytes) {
+        lock.lock();
+        try {
+            if (used > 0 && used + bytes > budget) {
+                return false;
+            }
+            reserve(bytes);
+            admitted.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a reservation.
+     *
+     * @param bytes The number of bytes reserved.
+     */
+    public void release(long bytes) {
+        lock.lock();
+        try {
+            used = Math.max(0, used - bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the reservation of a parsed message once it has been handled.
+     *
+     * @param message The message, unchanged since it was admitted.
+     */
+    public void release(MT940Message message) {
+        release(estimate(message));
+    }
+
+    /**
+     * Releases the reservation of a statement once it has been handled.
+     *
+     * @param statement The statement.
+     */
+    public void release(MT940Statement statement) {
+        release(estimate(statement));
+    }
+
+    /**
+     * Releases the reservation of an MT942 message once it has been handled.
+     *
+     * @param message The message, unchanged since it was admitted.
+     */
+    public void release(MT942Message message) {
+        release(estimate(message));
+    }
+
+    /**
+     * Replaces a reservation made from an envelope with the estimate of what it became, without waiting.
+     *
+     * @param reserved The bytes reserved for the envelope.
+     * @param actual   The bytes the parsed result retains, 0 if none.
+     */
+    void adjust(long reserved, long actual) {
+        if (actual < reserved) {
+            release(reserved - actual);
+        } else if (actual > reserved) {
+            lock.lock();
+            try {
+                // Already parsed: the difference is taken even over budget
+                reserve(actual - reserved);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The budget in bytes.
+     */
+    public long getBudgetBytes() {
+        return budget;
+    }
+
+    /**
+     * @return The number of bytes reserved now.
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The largest number of bytes reserved at once.
+     */
+    public long getPeakUsedBytes() {
+        lock.lock();
+        try {
+            return peak;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of reservations made.
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return The times reservations waited for the budget, in nanoseconds; its count is the number of waits.
+     */
+    public MT940LatencyHistogram getWaitLatency() {
+        return waitLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "MT940MemoryBudget{used=" + getUsedBytes() + ", peak=" + getPeakUsedBytes() + ", budget=" + budget
+                + ", admitted=" + admitted.sum() + ", waits=" + waitLatency.getCount() + ", wait p99="
+                + TimeUnit.NANOSECONDS.toMicros(waitLatency.getValueAtPercentile(99)) + "us}";
+    }
+
+    private void reserve(long bytes) {
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+}
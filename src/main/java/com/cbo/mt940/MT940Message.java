@@ -1,14 +1,13 @@
 package com.cbo.mt940;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MT940Message {
 
     // Fields for MT940Message
-    private String header;
+    private MT940Header header;
     private String transactionReferenceNumber;
     private String accountIdentification;
     private String statementNumber ;
@@ -20,7 +19,10 @@ public class MT940Message {
     private String closingBalanceBookedFunds;
     private String closingAvailableBalance;
     private String trailer;
+    private MT940LineEnding lineEnding = MT940LineEnding.LF;
 
+    private static volatile MT940Metrics metrics = MT940Metrics.NONE;
+    private static volatile MT940Canonicalizer canonicalizer = new MT940Canonicalizer();
 
     // Constructors, getters, and setters
 
@@ -30,11 +32,20 @@ public class MT940Message {
     }
 
     /**
-     * Sets the Header for MT940.
+     * Sets the Header for MT940. Blocks 1, 2 and 3 are parsed into an {@link MT940Header}.
      *
-     * @param header
+     * @param header The header from {@code {1:} up to and including {@code {4:}, or {@code null}.
      */
     public void setHeader(String header) {
+        this.header = header == null ? null : MT940Header.parse(header);
+    }
+
+    /**
+     * Sets the parsed Header for MT940.
+     *
+     * @param header The header, or {@code null}.
+     */
+    public void setHeaderBlocks(MT940Header header) {
         this.header = header;
     }
 
@@ -45,7 +56,7 @@ public class MT940Message {
      * @throws IllegalArgumentException If the provided Transaction Reference Number is invalid.
      */
     public void setTransactionReferenceNumber(String transactionReferenceNumber) {
-        validateField("20", transactionReferenceNumber, "\\d{8}-\\d{3}");
+        validateField("20", MT940Validation.isTransactionReferenceNumber(transactionReferenceNumber));
         this.transactionReferenceNumber = transactionReferenceNumber;
     }
 
@@ -56,7 +67,7 @@ public class MT940Message {
      * @throws IllegalArgumentException If the provided Account Identification is invalid.
      */
     public void setAccountIdentification(String accountIdentification) {
-        validateField("25", accountIdentification, "[A-Z0-9]{1,35}");
+        validateField("25", MT940Validation.isAccountIdentification(accountIdentification));
         this.accountIdentification = accountIdentification;
     }
 
@@ -67,7 +78,7 @@ public class MT940Message {
      * @throws IllegalArgumentException If the provided Statement Number is invalid.
      */
     public void setStatementNumberSequenceNumber(String statementNumberSequenceNumber) {
-        validateField("28C", statementNumberSequenceNumber, "\\d{1,5}/\\d{1,5}");
+        validateField("28C", MT940Validation.isStatementNumberSequenceNumber(statementNumberSequenceNumber));
         this.statementNumberSequenceNumber = statementNumberSequenceNumber;
     }
 
@@ -126,6 +137,38 @@ public class MT940Message {
         this.statementLines.add(transaction);
     }
 
+    /**
+     * Adds an already validated Statement Line for Tag 61.
+     *
+     * @param statementLine The statement line to add.
+     * @throws IllegalArgumentException If the statement line is null.
+     */
+    public void addStatementLine(MT940Tag61 statementLine) {
+        if (statementLine == null) {
+            throw new IllegalArgumentException("Statement line cannot be null");
+        }
+        this.statementLines.add(statementLine);
+    }
+
+    /**
+     * Sets fields that were already validated, e.g. by {@link MT940Statement#toMessage()}. Balances are
+     * given as formatted fields, such as {@code :60F:C231115ETB1000,00} and its line break.
+     */
+    void setValidated(MT940Header header, String transactionReferenceNumber, String accountIdentification,
+                      String statementNumber, String sequenceNumber, String openingBalance,
+                      String closingBalanceBookedFunds, String closingAvailableBalance, String trailer) {
+        this.header = header;
+        this.transactionReferenceNumber = transactionReferenceNumber;
+        this.accountIdentification = accountIdentification;
+        this.statementNumber = statementNumber;
+        this.sequenceNumber = sequenceNumber;
+        this.statementNumberSequenceNumber = statementNumber + "/" + sequenceNumber;
+        this.openingBalance = openingBalance;
+        this.closingBalanceBookedFunds = closingBalanceBookedFunds;
+        this.closingAvailableBalance = closingAvailableBalance;
+        this.trailer = trailer;
+    }
+
     /**
      * Sets the Opening Balance for Tag 60F.
      *
@@ -171,11 +214,64 @@ public class MT940Message {
         this.closingAvailableBalance = tag64.toString();
     }
 
+    /**
+     * Sets an Intermediate Opening Balance for Tag 60M, used instead of Tag 60F on every page of a
+     * statement but the first.
+     *
+     * @param debitCreditMark The Debit/Credit Mark to set (C = Credit, D = Debit).
+     * @param statementDate   The Statement Date to set (format: YYMMDD).
+     * @param currency        The Currency to set (ISO currency code).
+     * @param amount          The Amount to set (with comma as decimal separator).
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setIntermediateOpeningBalance(String debitCreditMark, String statementDate, String currency, String amount) {
+        MT940Tag60F tag60F = new MT940Tag60F();
+        tag60F.setOpeningBalance(debitCreditMark, statementDate, currency, amount);
+        this.openingBalance = ":60M:" + tag60F.toString().substring(5);
+    }
+
+    /**
+     * Sets an Intermediate Closing Balance for Tag 62M, used instead of Tag 62F on every page of a
+     * statement but the last.
+     *
+     * @param debitCreditMark The Debit/Credit Mark to set (C = Credit, D = Debit).
+     * @param valueDate       The Value Date to set (format: YYMMDD).
+     * @param currency        The Currency to set (ISO currency code).
+     * @param amount          The Amount to set (with comma as decimal separator).
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setIntermediateClosingBalance(String debitCreditMark, String valueDate, String currency, String amount) {
+        MT940Tag62F tag62F = new MT940Tag62F();
+        tag62F.setClosingBalance(debitCreditMark, valueDate, currency, amount);
+        this.closingBalanceBookedFunds = ":62M:" + tag62F.toString().substring(5);
+    }
+
     public void setTrailer(String trailer) {
         this.trailer = trailer;
     }
 
+    /**
+     * Sets the line breaks {@link MT940FileWriter} writes the message with. Parsed messages carry the
+     * convention of their source.
+     *
+     * @param lineEnding The line ending.
+     * @throws IllegalArgumentException If the line ending is {@code null}.
+     */
+    public void setLineEnding(MT940LineEnding lineEnding) {
+        if (lineEnding == null) {
+            throw new IllegalArgumentException("Line ending must not be null");
+        }
+        this.lineEnding = lineEnding;
+    }
+
     public String getHeader() {
+        return header == null ? null : header.toString();
+    }
+
+    /**
+     * @return The header with its blocks 1, 2 and 3 as fields, or {@code null} if not set.
+     */
+    public MT940Header getHeaderBlocks() {
         return header;
     }
 
@@ -219,6 +315,13 @@ public class MT940Message {
         return trailer;
     }
 
+    /**
+     * @return The line break convention detected when the message was parsed, {@link MT940LineEnding#LF} by default.
+     */
+    public MT940LineEnding getLineEnding() {
+        return lineEnding;
+    }
+
     /**
      * Parses an MT940 message from the provided string.
      *
@@ -227,173 +330,282 @@ public class MT940Message {
      * @throws IllegalArgumentException If the provided MT940 string is invalid.
      */
     public static MT940Message parseMT940Message(String mt940String) {
-        MT940Message mt940Message = new MT940Message();
-
-        // Use regular expressions to extract values from the MT940 string
-
-        // Define the header pattern
-        Pattern headerPattern = Pattern.compile("(\\{1:(.*?)\\}\\{2:(.*?)\\}\\{3:(.*?)\\}\\{4:)\n");
-        Matcher headerMatcher = headerPattern.matcher(mt940String);
-        if (headerMatcher.find()) {
-            // Extract the matched parts
-            String headerField1 = headerMatcher.group(1);
-            String headerField2 = headerMatcher.group(2);
-            String headerField3 = headerMatcher.group(3);
-
-            // Print the results
-//            System.out.println("Header Field 1: " + headerField1);
-//            System.out.println("Header Field 2: " + headerField2);
-//            System.out.println("Header Field 3: " + headerField3);
-            mt940Message.setHeader(headerMatcher.group(1));
-        } else {
+        if (mt940String == null) {
             throw new IllegalArgumentException("Missing or invalid Header in the MT940 message");
         }
+        MT940MessageAssembler assembler = new MT940MessageAssembler();
+        assembler.setMetrics(metrics);
+        return assembler.assemble(mt940String, 0, mt940String.length());
+    }
 
-        Pattern tag20Pattern = Pattern.compile(":20:(\\d{8}-\\d{3})\n");
-        Matcher tag20Matcher = tag20Pattern.matcher(mt940String);
-        if (tag20Matcher.find()) {
-            mt940Message.setTransactionReferenceNumber(tag20Matcher.group(1));
-//            System.out.println("tag20 : " + tag20Matcher.group(1));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 20 in the MT940 message");
-        }
+    /**
+     * Parses an MT940 message from the provided string without throwing on invalid content.
+     * Every problem is reported with an error code, the tag, its offset and its line number.
+     *
+     * @param mt940String The MT940 message string to parse.
+     * @return The result holding either the parsed message or the errors found.
+     */
+    public static MT940ParseResult tryParseMT940Message(String mt940String) {
+        String text = mt940String == null ? "" : mt940String;
+        MT940MessageAssembler assembler = new MT940MessageAssembler();
+        assembler.setMetrics(metrics);
+        return assembler.assembleResult(text, 0, text.length(), 0, 1);
+    }
 
-        Pattern tag25Pattern = Pattern.compile(":25:([A-Z0-9]{1,35})\n");
-        Matcher tag25Matcher = tag25Pattern.matcher(mt940String);
-        if (tag25Matcher.find()) {
-            mt940Message.setAccountIdentification(tag25Matcher.group(1));
-//            System.out.println("tag25 : " + tag25Matcher.group(1));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 25 in the MT940 message");
-        }
+    /**
+     * Installs the metrics that {@link #parseMT940Message(String)} and new {@link MT940Reader}s report to.
+     *
+     * @param metrics The metrics, or {@code null} to turn instrumentation off.
+     */
+    public static void setMetrics(MT940Metrics metrics) {
+        MT940Message.metrics = metrics == null ? MT940Metrics.NONE : metrics;
+    }
 
-        Pattern tag28CPattern = Pattern.compile(":28C:(\\d{1,5})/(\\d{1,5})\n");
-        Matcher tag28CMatcher = tag28CPattern.matcher(mt940String);
-        if (tag28CMatcher.find()) {
-            mt940Message.setStatementNumberSequenceNumber(tag28CMatcher.group(1)+"/"+tag28CMatcher.group(2));
-//            System.out.println("tag28 : " + tag28CMatcher.group(1)+"/"+tag28CMatcher.group(2));
+    /**
+     * Gets the installed metrics.
+     *
+     * @return The metrics, {@link MT940Metrics#NONE} unless installed.
+     */
+    public static MT940Metrics getMetrics() {
+        return metrics;
+    }
 
-                mt940Message.setSequenceNumber(tag28CMatcher.group(1));
+    /**
+     * Installs the canonicalizer through which the parser shares repeated field values (accounts,
+     * statement numbers, dates, codes, references, header blocks). Parsers created afterwards use it;
+     * a shared default table is installed from the start.
+     *
+     * @param canonicalizer The canonicalizer, or {@code null} to give every message its own copies.
+     */
+    public static void setCanonicalizer(MT940Canonicalizer canonicalizer) {
+        MT940Message.canonicalizer = canonicalizer;
+    }
 
-                mt940Message.setSequenceNumber(tag28CMatcher.group(1));
+    /**
+     * Gets the installed canonicalizer.
+     *
+     * @return The canonicalizer, or {@code null} if turned off.
+     */
+    public static MT940Canonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
 
+    /**
+     * Estimates the heap retained by a parsed message from its size, without walking the object graph.
+     *
+     * @param length         The length of the message text.
+     * @param statementLines The number of Tag 61 statement lines.
+     * @return The estimated retained size in bytes.
+     */
+    public static long estimateRetainedBytes(int length, int statementLines) {
+        // Message, list and about ten field Strings, plus a Tag 61 object with nine Strings per line
+        return 496L + length + 420L * statementLines;
+    }
 
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 28C in the MT940 message");
+    /**
+     * Gets the length of {@link #toString()} without formatting the message. The statement lines are
+     * measured from their fields on every call, so lines added through {@link #getStatementLines()} or
+     * changed after they were added are counted as they are now.
+     * Lines are counted with LF line breaks, whatever {@link #getLineEnding()} returns.
+     *
+     * @return The number of characters of the formatted message.
+     */
+    public int getEncodedLength() {
+        int statementLinesLength = 0;
+        for (MT940Tag61 line : statementLines) {
+            statementLinesLength += line.getEncodedLength();
         }
+        return (header != null ? header.length() : 4) + 1
+                + fieldLength("20", transactionReferenceNumber)
+                + fieldLength("25", accountIdentification)
+                + fieldLength("28C", statementNumberSequenceNumber)
+                + lengthOf(openingBalance)
+                + statementLinesLength
+                + lengthOf(closingBalanceBookedFunds)
+                + (closingAvailableBalance != null ? closingAvailableBalance.length() : 0)
+                + lengthOf(trailer);
+    }
 
-        Pattern tag60FPattern = Pattern.compile(":60F:([CD])(\\d{6})([A-Z]{3})(\\d{1,15})((,\\d{2})?)\n");
-        Matcher tag60FMatcher = tag60FPattern.matcher(mt940String);
-        if (tag60FMatcher.find()) {
-//            System.out.println("tag60F Field 1: " + tag60FMatcher.group(1));
-//            System.out.println("tag60F Field 2: " + tag60FMatcher.group(2));
-//            System.out.println("tag60F Field 3: " + tag60FMatcher.group(3));
-//            System.out.println("tag60F Field 4: " + tag60FMatcher.group(4));
-            mt940Message.setOpeningBalance(tag60FMatcher.group(1), tag60FMatcher.group(2), tag60FMatcher.group(3), tag60FMatcher.group(4));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 60 in the MT940 message");
+    /**
+     * Splits the message into a statement sequence whose messages are at most {@code maxMessageLength}
+     * characters long. Every message but the last closes with an intermediate Tag 62M balance, the next
+     * one opens with the same balance in Tag 60M, and Tag 28C carries consecutive sequence numbers.
+     * Sizes are tracked while the lines are distributed, in one pass and without formatting any message;
+     * pages break where {@link MT940StatementBuilder} would break them.
+     * The messages share this message's {@link MT940Tag61} objects.
+     *
+     * @param maxMessageLength The largest message length allowed, e.g. {@link MT940StatementBuilder#DEFAULT_MAX_MESSAGE_LENGTH}.
+     * @return This message alone if it fits, otherwise the sequence of messages.
+     * @throws IllegalArgumentException If the balances or Tag 28C are missing, or the sequence number overflows.
+     */
+    public List<MT940Message> split(int maxMessageLength) {
+        if (getEncodedLength() <= maxMessageLength) {
+            return Collections.singletonList(this);
         }
-
-
-        Pattern tag61Pattern = Pattern.compile(":61:(\\d{6})(\\d{4})([CD])([B])(\\d{1,15},?\\d{2}?)([NF][A-Z]{3})([A-Z0-9]{1,16})//([A-Z0-9]{1,16})\n([A-Za-z0-9]{1,34})\n");
-        Matcher tag61Matcher = tag61Pattern.matcher(mt940String);
-
-        // Process all occurrences of Tag 61
-        while (tag61Matcher.find()) {
-//            System.out.println("tag61 Field 1: " + tag61Matcher.group(1));
-//            System.out.println("tag61 Field 2: " + tag61Matcher.group(2));
-//            System.out.println("tag61 Field 3: " + tag61Matcher.group(3));
-//            System.out.println("tag61 Field 4: " + tag61Matcher.group(4));
-//            System.out.println("tag61 Field 5: " + tag61Matcher.group(5));
-//            System.out.println("tag61 Field 6: " + tag61Matcher.group(6));
-//            System.out.println("tag61 Field 7: " + tag61Matcher.group(7));
-//            System.out.println("tag61 Field 8: " + tag61Matcher.group(8));
-//            System.out.println("tag61 Field 9: " + tag61Matcher.group(9));
-            mt940Message.setStatementLines(tag61Matcher.group(1), tag61Matcher.group(2), tag61Matcher.group(3), tag61Matcher.group(4), tag61Matcher.group(5), tag61Matcher.group(6), tag61Matcher.group(7), tag61Matcher.group(8), tag61Matcher.group(9));
+        if (openingBalance == null || closingBalanceBookedFunds == null || statementNumberSequenceNumber == null) {
+            throw new IllegalArgumentException("Missing or invalid Tag 60, 62F or 28C in the MT940 message");
         }
-
-
-        Pattern tag62FPattern = Pattern.compile(":62F:([CD])(\\d{6})([A-Z]{3})(\\d{1,15})((,\\d{2})?)\n");
-        Matcher tag62FMatcher = tag62FPattern.matcher(mt940String);
-        if (tag62FMatcher.find()) {
-//            System.out.println("tag62F Field 1: " + tag62FMatcher.group(1));
-//            System.out.println("tag62F Field 2: " + tag62FMatcher.group(2));
-//            System.out.println("tag62F Field 3: " + tag62FMatcher.group(3));
-//            System.out.println("tag62F Field 4: " + tag62FMatcher.group(4));
-            mt940Message.setClosingBalanceBookedFunds(tag62FMatcher.group(1), tag62FMatcher.group(2), tag62FMatcher.group(3), tag62FMatcher.group(4));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 62F in the MT940 message");
+        int slash = statementNumberSequenceNumber.indexOf('/');
+        String statement = slash < 0 ? statementNumberSequenceNumber : statementNumberSequenceNumber.substring(0, slash);
+        int sequence = slash < 0 ? 1 : Integer.parseInt(statementNumberSequenceNumber.substring(slash + 1));
+        int openingStart = openingBalance.indexOf(':', 1) + 1;
+        int openingDate = MT940Amount.parseDate(openingBalance, openingStart + 1);
+        String currency = openingBalance.substring(openingStart + 7, openingStart + 10);
+        int closingDate = MT940Amount.parseDate(closingBalanceBookedFunds, closingBalanceBookedFunds.indexOf(':', 1) + 2);
+        long balance = MT940Reconciliation.parseBalance(openingBalance);
+
+        int fixedLength = (header != null ? header.length() : 4) + 1 + fieldLength("20", transactionReferenceNumber)
+                + fieldLength("25", accountIdentification);
+        int finalClosingLength = closingBalanceBookedFunds.length()
+                + (closingAvailableBalance != null ? closingAvailableBalance.length() : 0);
+        MT940Pager pager = new MT940Pager(maxMessageLength, lengthOf(trailer), sequence);
+        List<MT940Message> pages = new ArrayList<>();
+        MT940Message page = page(statement, pager.getSequence(), openingBalance);
+        pager.startPage(fixedLength + fieldLength("28C", page.statementNumberSequenceNumber) + page.openingBalance.length());
+        for (int i = 0; i < statementLines.size(); i++) {
+            MT940Tag61 line = statementLines.get(i);
+            int lineLength = line.getEncodedLength();
+            long amount = MT940Amount.parseMinorUnits(line.getAmount());
+            long after = balance + (MT940Amount.isDebit(line.getDebitCreditMark()) ? -amount : amount);
+            int closingLength = i == statementLines.size() - 1
+                    ? finalClosingLength : MT940StatementBuilder.balanceLength("62M", after);
+            if (!pager.fits(lineLength, closingLength)) {
+                page.closingBalanceBookedFunds = balanceField("62M", closingDate, currency, balance);
+                pages.add(page);
+                page = page(statement, pager.nextSequence(), balanceField("60M", openingDate, currency, balance));
+                pager.startPage(fixedLength + fieldLength("28C", page.statementNumberSequenceNumber)
+                        + page.openingBalance.length());
+            }
+            page.addStatementLine(line);
+            pager.add(lineLength);
+            balance = after;
         }
+        page.closingBalanceBookedFunds = closingBalanceBookedFunds;
+        page.closingAvailableBalance = closingAvailableBalance;
+        pages.add(page);
+        return pages;
+    }
 
+    private MT940Message page(String statement, int sequence, String opening) {
+        MT940Message page = new MT940Message();
+        page.header = header;
+        page.transactionReferenceNumber = transactionReferenceNumber;
+        page.accountIdentification = accountIdentification;
+        page.statementNumber = statement;
+        page.sequenceNumber = String.valueOf(sequence);
+        page.statementNumberSequenceNumber = statement + "/" + sequence;
+        page.openingBalance = opening;
+        page.trailer = trailer;
+        page.lineEnding = lineEnding;
+        return page;
+    }
 
-        Pattern tag64Pattern = Pattern.compile(":64:([CD])(\\d{6})([A-Z]{3})(\\d{1,15},?\\d{2}?)\n");
-        Matcher tag64Matcher = tag64Pattern.matcher(mt940String);
-        if (tag64Matcher.find()) {
-//            System.out.println("tag64 Field 1: " + tag64Matcher.group(1));
-//            System.out.println("tag64 Field 2: " + tag64Matcher.group(2));
-//            System.out.println("tag64 Field 3: " + tag64Matcher.group(3));
-//            System.out.println("tag64 Field 4: " + tag64Matcher.group(4));
-            mt940Message.setClosingAvailableBalance(tag64Matcher.group(1), tag64Matcher.group(2), tag64Matcher.group(3), tag64Matcher.group(4));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid Tag 64 in the MT940 message");
-        }
+    private static String balanceField(String tag, int date, String currency, long balance) {
+        StringBuilder sb = new StringBuilder(40);
+        MT940StatementBuilder.appendBalance(sb, tag, date, currency, balance);
+        return sb.toString();
+    }
 
-        Pattern trailerPattern = Pattern.compile("(-\\})");
-        Matcher trailerMatcher = trailerPattern.matcher(mt940String);
-        if (trailerMatcher.find()) {
-//            System.out.println("trailer: " + trailerMatcher.group(1));
-            mt940Message.setTrailer(trailerMatcher.group(1));
-        } else {
-            throw new IllegalArgumentException("Missing or invalid trailer in the MT940 message");
-        }
-        return mt940Message;
+    // StringBuilder.append(null) writes "null"
+    private static int lengthOf(String value) {
+        return value != null ? value.length() : 4;
+    }
+
+    private static int fieldLength(String tag, String value) {
+        return value != null ? tag.length() + value.length() + 3 : 0;
     }
 
     // Override toString() to format the entire MT940 message
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
+        return format(MT940LineEnding.LF);
+    }
 
-        sb.append(header).append("\n");
+    /**
+     * Formats the message with the given line breaks.
+     *
+     * @param lineEnding The line ending, e.g. {@link #getLineEnding()} to reproduce the parsed source.
+     * @return The MT940 message.
+     */
+    public String toString(MT940LineEnding lineEnding) {
+        return format(lineEnding);
+    }
+
+    private String format(MT940LineEnding lineEnding) {
+        MT940WriteEvent event = MT940Events.isRecorderInitialized() ? new MT940WriteEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        // Sized from the line count: getEncodedLength() needs every mandatory field set
+        StringBuilder sb = new StringBuilder(256 + 96 * (statementLines == null ? 0 : statementLines.size()));
+        appendTo(sb, lineEnding);
+        if (event != null && event.shouldCommit()) {
+            event.messageSize = sb.length();
+            event.lineCount = statementLines == null ? 0 : statementLines.size();
+            event.accountIdentification = accountIdentification;
+            event.commit();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the formatted message, its line breaks written as the given line ending as they are
+     * appended, so no second pass over the text is needed.
+     *
+     * @param sb         The destination.
+     * @param lineEnding The line ending.
+     */
+    void appendTo(StringBuilder sb, MT940LineEnding lineEnding) {
+        String separator = lineEnding.getSeparator();
+        sb.append(header).append(separator);
 
         // Tag 20 - Transaction Reference Number
-        appendField(sb, "20", transactionReferenceNumber);
+        appendField(sb, "20", transactionReferenceNumber, separator);
 
         // Tag 25 - Account Identification
-        appendField(sb, "25", accountIdentification);
+        appendField(sb, "25", accountIdentification, separator);
 
         // Tag 28C - Statement Number/Sequence Number
-        appendField(sb, "28C", statementNumberSequenceNumber);
+        appendField(sb, "28C", statementNumberSequenceNumber, separator);
 
         // Tag 60a - Opening Balance
-        sb.append(openingBalance.toString());
+        appendBalanceField(sb, openingBalance, separator);
 
         // Tag 61 - Statement Line
-        if (statementLines != null && !statementLines.isEmpty()) {
+        if (statementLines != null) {
             for (MT940Tag61 statementLine : statementLines) {
-                sb.append(statementLine.toString());
+                statementLine.appendTo(sb, separator);
             }
         }
 
         // Tag 62 - Closing Balance (Booked Funds)
-        sb.append(closingBalanceBookedFunds);
+        appendBalanceField(sb, closingBalanceBookedFunds, separator);
 
-        // Tag 64 - Closing Available Balance (Available Funds)
-        sb.append(closingAvailableBalance);
+        // Tag 64 - Closing Available Balance (Available Funds), absent on intermediate pages
+        if (closingAvailableBalance != null) {
+            appendBalanceField(sb, closingAvailableBalance, separator);
+        }
 
         sb.append(trailer);
-
-        return sb.toString();
     }
 
-    private void appendField(StringBuilder sb, String tag, String value) {
+    private static void appendField(StringBuilder sb, String tag, String value, String separator) {
         if (value != null) {
-            sb.append(String.format(":%s:%s\n", tag, value));
+            sb.append(':').append(tag).append(':').append(value).append(separator);
+        }
+    }
+
+    // Balance fields are kept formatted, with an LF line break; null is written as "null" like append does
+    private static void appendBalanceField(StringBuilder sb, String field, String separator) {
+        if (field == null || separator.equals("\n") || !field.endsWith("\n")) {
+            sb.append(field);
+        } else {
+            sb.append(field, 0, field.length() - 1).append(separator);
         }
     }
 
-    private void validateField(String tag, String value, String pattern) {
-        if (value == null || !Pattern.matches(pattern, value)) {
+    private void validateField(String tag, boolean valid) {
+        if (!valid) {
             throw new IllegalArgumentException("Invalid " + tag + " value");
         }
     }
@@ -0,0 +1,358 @@
+package com.cbo.mt940;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Builds an {@link MT940Message} from the tokens reported by {@link MT940Scanner}, applying the
+ * account and statement line filters before any field is materialized or validated.
+ * <p>
+ * Every field is checked with {@link MT940Validation} before it is handed to a setter. In the default
+ * mode the first problem throws an {@link IllegalArgumentException} with the setter's message; in
+ * collecting mode problems are recorded as {@link MT940ParseError}s with their position instead.
+ */
+final class MT940MessageAssembler implements MT940Scanner.Handler, MT940ParseInstrumentation.Assembly<MT940Message> {
+
+    private final MT940Tag61View view = new MT940Tag61View();
+    private Predicate<String> accountFilter;
+    private Predicate<MT940Tag61View> statementLineFilter;
+    private MT940Metrics metrics = MT940Metrics.NONE;
+    private MT940Canonicalizer canonicalizer = MT940Message.getCanonicalizer();
+    private boolean instrumented;
+    private boolean failureRecorded;
+
+    // Collecting mode state: where the scanned text sits in the input
+    private boolean collecting;
+    private List<MT940ParseError> errors;
+    private boolean malformed;
+    private CharSequence text;
+    private int textStart;
+    private long baseOffset;
+    private long baseLine;
+
+    private MT940Message message;
+    private boolean rejected;
+    private boolean hasTag20;
+    private boolean hasTag25;
+    private boolean hasTag28C;
+    private boolean hasTag60F;
+    private boolean hasTag62F;
+    private boolean hasTag64;
+    private boolean intermediateClosing;
+    private long skippedStatementLines;
+
+    void setAccountFilter(Predicate<String> accountFilter) {
+        this.accountFilter = accountFilter;
+    }
+
+    void setStatementLineFilter(Predicate<MT940Tag61View> statementLineFilter) {
+        this.statementLineFilter = statementLineFilter;
+    }
+
+    void setMetrics(MT940Metrics metrics) {
+        this.metrics = metrics == null ? MT940Metrics.NONE : metrics;
+    }
+
+    void setCanonicalizer(MT940Canonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    long getSkippedStatementLines() {
+        return skippedStatementLines;
+    }
+
+    /**
+     * Assembles the message found between {@code start} and {@code end}.
+     *
+     * @return The message, or {@code null} if its account was rejected by the account filter.
+     * @throws IllegalArgumentException If the message is invalid.
+     */
+    MT940Message assemble(CharSequence text, int start, int end) {
+        collecting = false;
+        errors = null;
+        return MT940ParseInstrumentation.assemble(this, metrics, text, start, end);
+    }
+
+    /**
+     * Assembles the message found between {@code start} and {@code end} without throwing.
+     *
+     * @param baseOffset The offset of {@code start} in the input, used for error positions.
+     * @param baseLine   The 1-based line number of {@code start} in the input.
+     * @return The result, or {@code null} if the account was rejected by the account filter.
+     */
+    MT940ParseResult assembleResult(CharSequence text, int start, int end, long baseOffset, long baseLine) {
+        collectErrors(start, baseOffset, baseLine);
+        MT940Message result = MT940ParseInstrumentation.assemble(this, metrics, text, start, end);
+        if (rejected) {
+            return null;
+        }
+        return new MT940ParseResult(result, errors, baseOffset, baseLine);
+    }
+
+    /**
+     * Like {@link #assembleResult}, but reported neither to the metrics nor to Flight Recorder: for part
+     * of a message that the caller reports as a whole.
+     */
+    MT940ParseResult assemblePartialResult(CharSequence text, int start, int end, long baseOffset, long baseLine) {
+        collectErrors(start, baseOffset, baseLine);
+        MT940Metrics measured = metrics;
+        metrics = MT940Metrics.NONE;
+        MT940Message result;
+        try {
+            result = assembleMessage(text, start, end);
+        } finally {
+            metrics = measured;
+        }
+        if (rejected) {
+            return null;
+        }
+        return new MT940ParseResult(result, errors, baseOffset, baseLine);
+    }
+
+    private void collectErrors(int start, long baseOffset, long baseLine) {
+        collecting = true;
+        errors = null;
+        this.textStart = start;
+        this.baseOffset = baseOffset;
+        this.baseLine = baseLine;
+    }
+
+    @Override
+    public MT940Message assembleMessage(CharSequence text, int start, int end) {
+        instrumented = metrics.isEnabled();
+        failureRecorded = false;
+        this.text = text;
+        message = new MT940Message();
+        rejected = false;
+        malformed = false;
+        hasTag20 = hasTag25 = hasTag28C = hasTag60F = hasTag62F = hasTag64 = intermediateClosing = false;
+        MT940Scanner.scan(text, start, end, this);
+        if (rejected) {
+            return null;
+        }
+        if (!malformed) {
+            requireTag(hasTag20, "20", end);
+            requireTag(hasTag25, "25", end);
+            requireTag(hasTag28C, "28C", end);
+            requireTag(hasTag60F, "60F", end);
+            requireTag(hasTag62F, "62F", end);
+            // Tag 64 is only carried by the last page of a statement
+            requireTag(hasTag64 || intermediateClosing, "64", end);
+        }
+        return errors == null ? message : null;
+    }
+
+    @Override
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    @Override
+    public boolean isFailureRecorded() {
+        return failureRecorded;
+    }
+
+    @Override
+    public int lineCount(MT940Message message) {
+        return message.getStatementLines().size();
+    }
+
+    @Override
+    public String accountIdentification(MT940Message message) {
+        return message.getAccountIdentification();
+    }
+
+    @Override
+    public void header(CharSequence text, int start, int end) {
+        message.setHeaderBlocks(MT940Header.parse(text, start, end, canonicalizer));
+        message.setLineEnding(MT940LineEnding.detect(text, end, text.length()));
+    }
+
+    @Override
+    public boolean field(String tag, CharSequence text, int start, int end) {
+        if (!instrumented) {
+            return assembleField(tag, text, start, end);
+        }
+        long startNanos = System.nanoTime();
+        try {
+            return assembleField(tag, text, start, end);
+        } catch (IllegalArgumentException e) {
+            if (!failureRecorded) {
+                metrics.recordValidationFailure(tag);
+                failureRecorded = true;
+            }
+            throw e;
+        } finally {
+            metrics.recordTag(tag, System.nanoTime() - startNanos);
+        }
+    }
+
+    private boolean assembleField(String tag, CharSequence text, int start, int end) {
+        switch (tag) {
+            case "20":
+                hasTag20 = true;
+                String transactionReferenceNumber = text.subSequence(start, end).toString();
+                if (!MT940Validation.isTransactionReferenceNumber(transactionReferenceNumber)) {
+                    fail(MT940ErrorCode.INVALID_VALUE, tag, start, "Invalid 20 value");
+                } else {
+                    message.setTransactionReferenceNumber(transactionReferenceNumber);
+                }
+                break;
+            case "25":
+                hasTag25 = true;
+                String accountIdentification = string(text, start, end);
+                if (accountFilter != null && !accountFilter.test(accountIdentification)) {
+                    rejected = true;
+                    return false;
+                }
+                if (!MT940Validation.isAccountIdentification(accountIdentification)) {
+                    fail(MT940ErrorCode.INVALID_VALUE, tag, start, "Invalid 25 value");
+                } else {
+                    message.setAccountIdentification(accountIdentification);
+                }
+                break;
+            case "28C":
+                hasTag28C = true;
+                String statementNumberSequenceNumber = string(text, start, end);
+                if (!MT940Validation.isStatementNumberSequenceNumber(statementNumberSequenceNumber)) {
+                    fail(MT940ErrorCode.INVALID_VALUE, tag, start, "Invalid 28C value");
+                } else {
+                    message.setStatementNumberSequenceNumber(statementNumberSequenceNumber);
+                    int slash = start + statementNumberSequenceNumber.indexOf('/');
+                    message.setStatementNumber(string(text, start, slash));
+                    message.setSequenceNumber(string(text, slash + 1, end));
+                }
+                break;
+            case "60F":
+            case "60M":
+                hasTag60F = true;
+                String[] opening = balance(tag, "Statement Date", text, start, end);
+                if (opening == null) {
+                    break;
+                } else if (tag.equals("60M")) {
+                    message.setIntermediateOpeningBalance(opening[0], opening[1], opening[2], opening[3]);
+                } else {
+                    message.setOpeningBalance(opening[0], opening[1], opening[2], opening[3]);
+                }
+                break;
+            case "61":
+                if (!view.reset(text, start, end)) {
+                    fail(MT940ErrorCode.INVALID_VALUE, tag, start, "Missing or invalid Tag 61 in the MT940 message");
+                } else if (statementLineFilter != null && !statementLineFilter.test(view)) {
+                    skippedStatementLines++;
+                } else {
+                    String error = view.validationError();
+                    if (error != null) {
+                        fail(MT940ErrorCode.INVALID_VALUE, tag, start, error);
+                    } else {
+                        message.addStatementLine(view.toTag61(canonicalizer));
+                    }
+                }
+                break;
+            case "62F":
+            case "62M":
+                hasTag62F = true;
+                intermediateClosing = tag.equals("62M");
+                String[] closing = balance(tag, "Value Date", text, start, end);
+                if (closing == null) {
+                    break;
+                } else if (intermediateClosing) {
+                    message.setIntermediateClosingBalance(closing[0], closing[1], closing[2], closing[3]);
+                } else {
+                    message.setClosingBalanceBookedFunds(closing[0], closing[1], closing[2], closing[3]);
+                }
+                break;
+            case "64":
+                hasTag64 = true;
+                String[] available = balance(tag, "Value Date", text, start, end);
+                if (available != null) {
+                    message.setClosingAvailableBalance(available[0], available[1], available[2], available[3]);
+                }
+                break;
+            default:
+                // Tags without a place in MT940Message (e.g. 86) are ignored
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public void trailer(CharSequence text, int start, int end) {
+        message.setTrailer("-}");
+    }
+
+    @Override
+    public void malformed(MT940ErrorCode code, int position) {
+        malformed = true;
+        fail(code, null, position, code.getDescription());
+    }
+
+    /**
+     * Reports a problem: throws in the default mode, records a positioned error in collecting mode.
+     */
+    private void fail(MT940ErrorCode code, String tag, int position, String detail) {
+        if (instrumented && !failureRecorded) {
+            metrics.recordValidationFailure(tag);
+            failureRecorded = true;
+        }
+        if (!collecting) {
+            throw new IllegalArgumentException(detail);
+        }
+        if (errors == null) {
+            errors = new ArrayList<>(4);
+        }
+        long line = baseLine;
+        for (int i = textStart; i < position; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        errors.add(new MT940ParseError(code, tag, baseOffset + (position - textStart), line, detail));
+    }
+
+    // Values repeated across messages are shared when a canonicalizer is installed
+    private String string(CharSequence text, int start, int end) {
+        return canonicalizer != null ? canonicalizer.canonicalize(text, start, end) : text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Splits and checks a balance field: D/C mark (1), date (6), currency (3) and amount.
+     *
+     * @return The four parts, or {@code null} if the field is invalid.
+     */
+    private String[] balance(String tag, String dateLabel, CharSequence text, int start, int end) {
+        if (end - start < 11) {
+            fail(MT940ErrorCode.INVALID_VALUE, tag, start,
+                    "Missing or invalid Tag " + (tag.equals("60F") ? "60" : tag) + " in the MT940 message");
+            return null;
+        }
+        char markChar = text.charAt(start);
+        String mark = markChar == 'C' ? "C" : markChar == 'D' ? "D" : String.valueOf(markChar);
+        String date = text.subSequence(start + 1, start + 7).toString();
+        String currency = text.subSequence(start + 7, start + 10).toString();
+        String amount = text.subSequence(start + 10, end).toString();
+        String detail = null;
+        if (!MT940Validation.isBalanceDebitCreditMark(mark)) {
+            detail = "Invalid Debit/Credit Mark for Tag " + tag;
+        } else if (!MT940Validation.isDate(date)) {
+            detail = "Invalid " + dateLabel + " for Tag " + tag;
+        } else if (!MT940Validation.isCurrency(currency)) {
+            detail = "Invalid Currency for Tag " + tag;
+        } else if (!MT940Validation.isBalanceAmount(amount)) {
+            detail = "Invalid Amount for Tag " + tag;
+        }
+        if (detail != null) {
+            fail(MT940ErrorCode.INVALID_VALUE, tag, start, detail);
+            return null;
+        }
+        return new String[]{mark, date, currency, amount};
+    }
+
+    private void requireTag(boolean present, String tag, int end) {
+        if (!present) {
+            fail(MT940ErrorCode.MISSING_TAG, tag, end,
+                    "Missing or invalid Tag " + (tag.equals("60F") ? "60" : tag) + " in the MT940 message");
+        }
+    }
+}
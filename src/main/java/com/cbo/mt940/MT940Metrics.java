@@ -0,0 +1,59 @@
+package com.cbo.mt940;
+
+/**
+ * Opt-in instrumentation hooks of the MT940 parser.
+ * <p>
+ * The parser calls {@link #isEnabled()} once per message and skips all timing and recording when it
+ * returns {@code false}, so the default {@link #NONE} costs nothing measurable. Implementations must be
+ * thread-safe; see {@link MT940ParserMetrics} for the standard one.
+ */
+public interface MT940Metrics {
+
+    /**
+     * Metrics that record nothing.
+     */
+    MT940Metrics NONE = new MT940Metrics() {
+    };
+
+    /**
+     * @return Whether the parser should measure and report to this instance.
+     */
+    default boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Records a successfully parsed message.
+     *
+     * @param length         The length of the message in bytes.
+     * @param statementLines The number of Tag 61 statement lines kept in the message.
+     * @param nanos          The time spent parsing the message.
+     */
+    default void recordMessage(int length, int statementLines, long nanos) {
+    }
+
+    /**
+     * Records the time spent parsing and validating one field.
+     *
+     * @param tag   The tag of the field, e.g. {@code 61}.
+     * @param nanos The time spent on the field.
+     */
+    default void recordTag(String tag, long nanos) {
+    }
+
+    /**
+     * Records a message rejected because a field is missing or invalid.
+     *
+     * @param tag The tag that failed validation, or {@code null} if the envelope itself is malformed.
+     */
+    default void recordValidationFailure(String tag) {
+    }
+
+    /**
+     * Records a message skipped by a reader filter.
+     *
+     * @param length The length of the skipped message in bytes.
+     */
+    default void recordSkippedMessage(int length) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.cbo.mt940;
+
+/**
+ * Decides where a statement is paged into a {@code :28C:} sequence, for both
+ * {@link MT940Message#split(int)} and {@link MT940StatementBuilder#writeTo(Appendable)}.
+ * <p>
+ * The caller measures each statement line and the fields that would close the page right after it:
+ * an intermediate :62M: at the running balance, or the final closing fields after the last line.
+ * A line stays on the page if the page can still be closed within the limit; a page always takes
+ * at least one line, whatever its length. Lengths exclude any separator written after the trailer.
+ */
+final class MT940Pager {
+
+    private final int maxMessageLength;
+    private final int trailerLength;
+    private int sequence;
+    private int length;
+    private boolean empty;
+
+    /**
+     * @param maxMessageLength The largest message length allowed.
+     * @param trailerLength    The length of the trailer closing every page, e.g. 2 for {@code -}}.
+     * @param firstSequence    The sequence number of the first page in Tag 28C.
+     */
+    MT940Pager(int maxMessageLength, int trailerLength, int firstSequence) {
+        this.maxMessageLength = maxMessageLength;
+        this.trailerLength = trailerLength;
+        this.sequence = firstSequence;
+    }
+
+    /**
+     * @return The sequence number of the current page.
+     */
+    int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Moves on to the sequence number of the next page.
+     *
+     * @return The new sequence number.
+     * @throws IllegalArgumentException If the sequence number overflows Tag 28C.
+     */
+    int nextSequence() {
+        if (sequence >= 99999) {
+            throw new IllegalArgumentException("Invalid 28C value");
+        }
+        return ++sequence;
+    }
+
+    /**
+     * Starts a page.
+     *
+     * @param openingLength The length of the page up to and including its opening balance.
+     */
+    void startPage(int openingLength) {
+        length = openingLength;
+        empty = true;
+    }
+
+    /**
+     * @param lineLength    The length of the next statement line.
+     * @param closingLength The length of the fields that close the page after that line.
+     * @return Whether the line goes on the current page; if not, the page is closed before it.
+     */
+    boolean fits(int lineLength, int closingLength) {
+        return empty || length + lineLength + closingLength + trailerLength <= maxMessageLength;
+    }
+
+    /**
+     * Adds a statement line to the current page.
+     *
+     * @param lineLength The length of the line.
+     */
+    void add(int lineLength) {
+        length += lineLength;
+        empty = false;
+    }
+}
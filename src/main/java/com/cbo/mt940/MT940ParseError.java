@@ -0,0 +1,61 @@
+package com.cbo.mt940;
+
+/**
+ * One problem found while parsing in non-throwing mode. Unlike an exception it captures no
+ * stack trace, so reporting many bad messages stays cheap.
+ */
+public final class MT940ParseError {
+    private final MT940ErrorCode code;
+    private final String tag;
+    private final long offset;
+    private final long lineNumber;
+    private final String detail;
+
+    MT940ParseError(MT940ErrorCode code, String tag, long offset, long lineNumber, String detail) {
+        this.code = code;
+        this.tag = tag;
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+        this.detail = detail;
+    }
+
+    /**
+     * @return The category of the problem.
+     */
+    public MT940ErrorCode getCode() {
+        return code;
+    }
+
+    /**
+     * @return The tag of the offending field (e.g. {@code 61}), or {@code null} for header, trailer and layout problems.
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return The offset of the offending field in the input, in bytes from the start of the input.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The 1-based line number of the offending field in the input.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return The specific message, e.g. {@code Invalid amount format}.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return code + (tag != null ? " :" + tag + ":" : "") + " at line " + lineNumber + " (offset " + offset + "): " + detail;
+    }
+}
@@ -0,0 +1,36 @@
+package com.cbo.mt940;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted for every MT940 message parsed by
+ * {@link MT940Message#parseMT940Message(String)} or an {@link MT940Reader}, whether it is read as a
+ * message or a statement, and for every MT942 message an {@link MT940Reader} parses.
+ * <p>
+ * Disabled by default; enable it in a recording with {@code com.cbo.mt940.Parse#enabled=true}
+ * and optionally a {@code threshold} to keep only slow messages.
+ */
+@Name("com.cbo.mt940.Parse")
+@Label("MT940 Parse")
+@Description("Parsing of one MT940 message")
+@Category({"MT940"})
+@Enabled(false)
+@StackTrace(false)
+class MT940ParseEvent extends jdk.jfr.Event {
+
+    @Label("Message Size")
+    @DataAmount(DataAmount.BYTES)
+    int messageSize;
+
+    @Label("Statement Lines")
+    int lineCount;
+
+    @Label("Account Identification")
+    String accountIdentification;
+}
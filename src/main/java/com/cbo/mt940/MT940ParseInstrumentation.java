@@ -0,0 +1,131 @@
+package com.cbo.mt940;
+
+/**
+ * Message-level instrumentation shared by the assemblers: times each parse for {@link MT940Metrics},
+ * counts skipped messages and validation failures, and emits an {@link MT940ParseEvent} while Flight
+ * Recorder runs, whichever kind of message the assembler builds.
+ */
+final class MT940ParseInstrumentation {
+
+    /**
+     * An assembler whose parses are instrumented.
+     *
+     * @param <T> The type of the parsed message.
+     */
+    interface Assembly<T> {
+
+        /**
+         * Parses the message found between {@code start} and {@code end} without instrumentation.
+         *
+         * @return The message, or {@code null} if none was produced.
+         * @throws IllegalArgumentException If the message is invalid.
+         */
+        T assembleMessage(CharSequence text, int start, int end);
+
+        /**
+         * @return Whether the last message was rejected by the account filter.
+         */
+        boolean isRejected();
+
+        /**
+         * @return Whether the last parse already recorded its validation failure, with its tag.
+         */
+        default boolean isFailureRecorded() {
+            return false;
+        }
+
+        /**
+         * @return The number of statement lines of a parsed message.
+         */
+        int lineCount(T message);
+
+        /**
+         * @return The Tag 25 Account Identification of a parsed message.
+         */
+        String accountIdentification(T message);
+    }
+
+    private MT940ParseInstrumentation() {
+    }
+
+    /**
+     * Parses a message with {@code assembly}, reporting to {@code metrics} and Flight Recorder.
+     *
+     * @return The message, or {@code null} if none was produced.
+     * @throws IllegalArgumentException If the message is invalid.
+     */
+    static <T> T assemble(Assembly<T> assembly, MT940Metrics metrics, CharSequence text, int start, int end) {
+        if (!MT940Events.isRecorderInitialized()) {
+            return measure(assembly, metrics, text, start, end);
+        }
+        MT940ParseEvent event = new MT940ParseEvent();
+        event.begin();
+        T result = measure(assembly, metrics, text, start, end);
+        if (result != null && event.shouldCommit()) {
+            event.messageSize = end - start;
+            event.lineCount = assembly.lineCount(result);
+            event.accountIdentification = assembly.accountIdentification(result);
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Starts reporting a message that is parsed in parts rather than by one {@link Assembly}.
+     *
+     * @return The event to pass to {@link #record}, or {@code null} while Flight Recorder is not initialized.
+     */
+    static MT940ParseEvent begin() {
+        if (!MT940Events.isRecorderInitialized()) {
+            return null;
+        }
+        MT940ParseEvent event = new MT940ParseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Reports a message parsed in parts as one parse, like {@link #assemble} reports the others.
+     *
+     * @param event      The event returned by {@link #begin()}.
+     * @param startNanos The {@link System#nanoTime()} at which parsing started.
+     */
+    static void record(MT940Metrics metrics, MT940ParseEvent event, long startNanos, int length, MT940ParseResult result) {
+        if (!result.isValid()) {
+            metrics.recordValidationFailure(result.getErrors().get(0).getTag());
+            return;
+        }
+        MT940Message message = result.getMessage();
+        if (metrics.isEnabled()) {
+            metrics.recordMessage(length, message.getStatementLines().size(), System.nanoTime() - startNanos);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.messageSize = length;
+            event.lineCount = message.getStatementLines().size();
+            event.accountIdentification = message.getAccountIdentification();
+            event.commit();
+        }
+    }
+
+    private static <T> T measure(Assembly<T> assembly, MT940Metrics metrics, CharSequence text, int start, int end) {
+        if (!metrics.isEnabled()) {
+            return assembly.assembleMessage(text, start, end);
+        }
+        long startNanos = System.nanoTime();
+        T result;
+        try {
+            result = assembly.assembleMessage(text, start, end);
+        } catch (IllegalArgumentException e) {
+            if (!assembly.isFailureRecorded()) {
+                metrics.recordValidationFailure(null);
+            }
+            throw e;
+        }
+        if (assembly.isRejected()) {
+            metrics.recordSkippedMessage(end - start);
+        } else if (result != null) {
+            metrics.recordMessage(end - start, assembly.lineCount(result), System.nanoTime() - startNanos);
+        }
+        return result;
+    }
+}
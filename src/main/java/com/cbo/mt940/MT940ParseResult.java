@@ -0,0 +1,62 @@
+package com.cbo.mt940;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of parsing one message in non-throwing mode: either the parsed message or the list of
+ * problems found, each with its tag, offset and line number.
+ */
+public final class MT940ParseResult {
+    private final MT940Message message;
+    private final List<MT940ParseError> errors;
+    private final long offset;
+    private final long lineNumber;
+
+    MT940ParseResult(MT940Message message, List<MT940ParseError> errors, long offset, long lineNumber) {
+        this.message = message;
+        this.errors = errors == null ? Collections.emptyList() : Collections.unmodifiableList(errors);
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return Whether the message was parsed without errors.
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * @return The parsed message, or {@code null} if there were errors.
+     */
+    public MT940Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The problems found, in the order they appear in the message.
+     */
+    public List<MT940ParseError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return The offset of the start of the message in the input.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The 1-based line number of the start of the message in the input.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "MT940ParseResult[valid, offset " + offset + "]" : "MT940ParseResult" + errors;
+    }
+}
@@ -0,0 +1,170 @@
+package com.cbo.mt940;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Standard {@link MT940Metrics} implementation.
+ * <p>
+ * All counters are striped {@link LongAdder}s and latencies go into lock-free
+ * {@link MT940LatencyHistogram}s, so many threads can parse in parallel into one instance
+ * without contending. Rates are measured from the creation of the instance.
+ */
+public class MT940ParserMetrics implements MT940Metrics {
+
+    private static final String[] TAGS = {"20", "25", "28C", "60F", "61", "62F", "64"};
+    private static final int OTHER = TAGS.length;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder statementLines = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder skippedMessages = new LongAdder();
+    private final MT940LatencyHistogram messageLatency = new MT940LatencyHistogram();
+    private final MT940LatencyHistogram[] tagLatencies = new MT940LatencyHistogram[TAGS.length + 1];
+    private final LongAdder[] validationFailures = new LongAdder[TAGS.length + 1];
+
+    public MT940ParserMetrics() {
+        for (int i = 0; i <= TAGS.length; i++) {
+            tagLatencies[i] = new MT940LatencyHistogram();
+            validationFailures[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordMessage(int length, int lines, long nanos) {
+        messages.increment();
+        bytes.add(length);
+        statementLines.add(lines);
+        allocatedBytes.add(MT940Message.estimateRetainedBytes(length, lines));
+        messageLatency.record(nanos);
+    }
+
+    @Override
+    public void recordTag(String tag, long nanos) {
+        tagLatencies[indexOf(tag)].record(nanos);
+    }
+
+    @Override
+    public void recordValidationFailure(String tag) {
+        validationFailures[indexOf(tag)].increment();
+    }
+
+    @Override
+    public void recordSkippedMessage(int length) {
+        skippedMessages.increment();
+        bytes.add(length);
+    }
+
+    /**
+     * @return The number of parsed messages.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * @return The number of bytes read, including skipped messages.
+     */
+    public long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return The number of statement lines in parsed messages.
+     */
+    public long getStatementLineCount() {
+        return statementLines.sum();
+    }
+
+    /**
+     * @return The number of messages skipped by reader filters.
+     */
+    public long getSkippedMessageCount() {
+        return skippedMessages.sum();
+    }
+
+    /**
+     * @return The estimated number of bytes allocated for parsed messages, see {@link MT940Message#estimateRetainedBytes(int, int)}.
+     */
+    public long getAllocatedBytesEstimate() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return The average number of parsed messages per second since creation.
+     */
+    public double getMessagesPerSecond() {
+        return perSecond(messages.sum());
+    }
+
+    /**
+     * @return The average number of bytes read per second since creation.
+     */
+    public double getBytesPerSecond() {
+        return perSecond(bytes.sum());
+    }
+
+    /**
+     * @return The distribution of whole-message parse times in nanoseconds.
+     */
+    public MT940LatencyHistogram getMessageLatency() {
+        return messageLatency;
+    }
+
+    /**
+     * Gets the distribution of parse times of one tag.
+     *
+     * @param tag The tag (20, 25, 28C, 60F, 61, 62F or 64); other tags are reported together.
+     * @return The latencies in nanoseconds.
+     */
+    public MT940LatencyHistogram getTagLatency(String tag) {
+        return tagLatencies[indexOf(tag)];
+    }
+
+    /**
+     * Gets the number of validation failures of one tag.
+     *
+     * @param tag The tag (20, 25, 28C, 60F, 61, 62F or 64); other tags and envelope errors are reported together.
+     * @return The number of failures.
+     */
+    public long getValidationFailures(String tag) {
+        return validationFailures[indexOf(tag)].sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("messages=%d (%.0f/s) bytes=%d (%.0f/s) lines=%d skipped=%d allocated~%d%n",
+                getMessageCount(), getMessagesPerSecond(), getByteCount(), getBytesPerSecond(),
+                getStatementLineCount(), getSkippedMessageCount(), getAllocatedBytesEstimate()));
+        for (int i = 0; i <= TAGS.length; i++) {
+            MT940LatencyHistogram latency = tagLatencies[i];
+            sb.append(String.format("  %-5s p50=%dns p99=%dns max=%dns failures=%d%n",
+                    i == OTHER ? "other" : TAGS[i], latency.getValueAtPercentile(50),
+                    latency.getValueAtPercentile(99), latency.getMax(), validationFailures[i].sum()));
+        }
+        return sb.toString();
+    }
+
+    private double perSecond(long value) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : value * 1_000_000_000d / elapsed;
+    }
+
+    private static int indexOf(String tag) {
+        if (tag != null) {
+            for (int i = 0; i < TAGS.length; i++) {
+                if (TAGS[i].equals(tag)) {
+                    return i;
+                }
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,359 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+
+/**
+ * {@link java.util.concurrent.Flow} based ingestion pipeline: split → parse → reconcile → sink.
+ * <p>
+ * Every source is split into envelopes on its own thread. Envelopes are parsed without throwing, valid
+ * messages are checked with {@link MT940Reconciliation#isBalanced(MT940Message)} and the survivors are
+ * delivered to the sink. Each stage has a bounded buffer and its own parallelism, and demand flows from
+ * the sink back to the sources, so a slow sink throttles reading instead of filling the heap.
+ * Invalid and unbalanced messages go to the error handler.
+ * <p>
+ * Buffers count items, not bytes: with a {@link #setMemoryBudget(MT940MemoryBudget) memory budget}
+ * the sources also wait before splitting an envelope whose estimated size does not fit, so a burst of
+ * huge statements cannot exhaust the heap. A message's reservation is released once the sink's
+ * {@code onNext} has returned, when the message is dropped as invalid or unbalanced, or when the run
+ * fails.
+ */
+public class MT940Pipeline {
+
+    private int bufferSize = 256;
+    private int parseParallelism = Runtime.getRuntime().availableProcessors();
+    private int reconcileParallelism = 1;
+    private Consumer<? super MT940ParseResult> errorHandler = result -> {
+    };
+    private MT940MemoryBudget memoryBudget;
+
+    /**
+     * Sets the number of items each stage buffers and requests ahead.
+     *
+     * @param bufferSize The buffer size per stage.
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Sets the number of threads parsing envelopes.
+     *
+     * @param parseParallelism The number of parser threads.
+     */
+    public void setParseParallelism(int parseParallelism) {
+        if (parseParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parseParallelism = parseParallelism;
+    }
+
+    /**
+     * Sets the number of threads reconciling parsed messages.
+     *
+     * @param reconcileParallelism The number of reconciliation threads.
+     */
+    public void setReconcileParallelism(int reconcileParallelism) {
+        if (reconcileParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.reconcileParallelism = reconcileParallelism;
+    }
+
+    /**
+     * Sets the handler of invalid and unbalanced messages. It is called from several threads at once.
+     *
+     * @param errorHandler The handler.
+     */
+    public void setErrorHandler(Consumer<? super MT940ParseResult> errorHandler) {
+        this.errorHandler = errorHandler == null ? result -> {
+        } : errorHandler;
+    }
+
+    /**
+     * Sets the budget bounding the estimated heap retained by messages in flight.
+     *
+     * @param memoryBudget The budget, possibly shared with other pipelines, or {@code null} to bound by item counts only.
+     */
+    public void setMemoryBudget(MT940MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Runs the pipeline into a sink that consumes one message at a time.
+     *
+     * @param sources The MT940 inputs, read concurrently and closed when done.
+     * @param sink    The consumer of valid, balanced messages, called from one thread at a time.
+     * @return A future completed when the sink has received every message.
+     */
+    public CompletableFuture<Void> run(Collection<? extends InputStream> sources, Consumer<? super MT940Message> sink) {
+        return run(sources, new Flow.Subscriber<MT940Message>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(MT940Message item) {
+                sink.accept(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    /**
+     * Runs the pipeline into a reactive sink, which controls the flow through its own demand.
+     *
+     * @param sources The MT940 inputs, read concurrently and closed when done.
+     * @param sink    The subscriber of valid, balanced messages.
+     * @return A future completed when the sink has received every message, or completed exceptionally
+     * if a source cannot be read.
+     */
+    public CompletableFuture<Void> run(Collection<? extends InputStream> sources, Flow.Subscriber<? super MT940Message> sink) {
+        Reservations budget = memoryBudget == null ? null : new Reservations(memoryBudget);
+        ExecutorService delivery = Executors.newCachedThreadPool(MT940PipelineStage.threadFactory("mt940-delivery"));
+        ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, sources.size()),
+                MT940PipelineStage.threadFactory("mt940-split"));
+        SubmissionPublisher<Envelope> split = new SubmissionPublisher<>(delivery, bufferSize);
+
+        ThreadLocal<MT940MessageAssembler> assemblers = ThreadLocal.withInitial(() -> {
+            MT940MessageAssembler assembler = new MT940MessageAssembler();
+            assembler.setMetrics(MT940Message.getMetrics());
+            return assembler;
+        });
+        MT940PipelineStage<Envelope, MT940ParseResult> parse = new MT940PipelineStage<>("mt940-parse",
+                parseParallelism, bufferSize, delivery,
+                envelope -> parse(assemblers.get(), envelope, budget));
+        MT940PipelineStage<MT940ParseResult, MT940Message> reconcile = new MT940PipelineStage<>("mt940-reconcile",
+                reconcileParallelism, bufferSize, delivery, result -> reconcile(result, budget));
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        done.whenComplete((ignored, error) -> {
+            delivery.shutdown();
+            readers.shutdown();
+        });
+        split.subscribe(parse);
+        parse.subscribe(reconcile);
+        reconcile.subscribe(new CompletingSubscriber(sink, done, budget));
+
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (InputStream source : sources) {
+            reads.add(CompletableFuture.runAsync(() -> split(source, split, budget), readers));
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                split.closeExceptionally(error.getCause() != null ? error.getCause() : error);
+            } else {
+                split.close();
+            }
+        });
+        return done;
+    }
+
+    private static void split(InputStream source, SubmissionPublisher<Envelope> split, Reservations budget) {
+        try (MT940Reader reader = new MT940Reader(source)) {
+            CharSequence text;
+            while ((text = reader.readEnvelope()) != null && !split.isClosed()) {
+                long reserved = 0;
+                if (budget != null) {
+                    // The envelope copy is retained until it is parsed, the message until it is delivered
+                    reserved = MT940MemoryBudget.estimate(text, 0, text.length()) + text.length();
+                    if (!budget.acquire(reserved)) {
+                        // The run has failed
+                        return;
+                    }
+                }
+                // Blocks while the parse stage is saturated
+                split.submit(new Envelope(text.toString(), reader.getEnvelopeOffset(), reader.getEnvelopeLineNumber(),
+                        reserved));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for the memory budget"));
+        }
+    }
+
+    private static MT940ParseResult parse(MT940MessageAssembler assembler, Envelope envelope, Reservations budget) {
+        MT940ParseResult result = null;
+        try {
+            result = assembler.assembleResult(envelope.text, 0, envelope.text.length(), envelope.offset,
+                    envelope.lineNumber);
+        } finally {
+            if (budget != null) {
+                // The envelope's reservation now covers the parsed message, if any
+                budget.adjust(envelope.reserved, result != null && result.isValid()
+                        ? MT940MemoryBudget.estimate(result.getMessage()) : 0);
+            }
+        }
+        return result;
+    }
+
+    private MT940Message reconcile(MT940ParseResult result, Reservations budget) {
+        if (!result.isValid()) {
+            errorHandler.accept(result);
+            return null;
+        }
+        MT940Message message = result.getMessage();
+        if (!MT940Reconciliation.isBalanced(message)) {
+            if (budget != null) {
+                budget.release(MT940MemoryBudget.estimate(message));
+            }
+            errorHandler.accept(new MT940ParseResult(null, List.of(new MT940ParseError(MT940ErrorCode.UNBALANCED, "62F",
+                    result.getOffset(), result.getLineNumber(), MT940ErrorCode.UNBALANCED.getDescription())),
+                    result.getOffset(), result.getLineNumber()));
+            return null;
+        }
+        return message;
+    }
+
+    private static final class Envelope {
+        private final String text;
+        private final long offset;
+        private final long lineNumber;
+        private final long reserved;
+
+        private Envelope(String text, long offset, long lineNumber, long reserved) {
+            this.text = text;
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+            this.reserved = reserved;
+        }
+    }
+
+    /**
+     * The memory budget reservations of one run. A failing stage drops its queued and buffered items
+     * without handing them on, so when the run fails whatever is still reserved is released at once,
+     * and the late releases of items that were in progress are ignored.
+     */
+    private static final class Reservations {
+        private final MT940MemoryBudget budget;
+        private long reserved;
+        private boolean released;
+
+        private Reservations(MT940MemoryBudget budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * @return {@code false} if the run has failed meanwhile; nothing is reserved then.
+         */
+        private boolean acquire(long bytes) throws InterruptedException {
+            budget.acquire(bytes);
+            synchronized (this) {
+                if (!released) {
+                    reserved += bytes;
+                    return true;
+                }
+            }
+            budget.release(bytes);
+            return false;
+        }
+
+        private synchronized void adjust(long bytes, long actual) {
+            if (!released) {
+                budget.adjust(bytes, actual);
+                reserved += actual - bytes;
+            }
+        }
+
+        private synchronized void release(long bytes) {
+            if (!released) {
+                budget.release(bytes);
+                reserved -= bytes;
+            }
+        }
+
+        private synchronized void releaseAll() {
+            if (!released) {
+                released = true;
+                budget.release(reserved);
+                reserved = 0;
+            }
+        }
+    }
+
+    /**
+     * Forwards to the sink, releases delivered messages from the memory budget and completes the
+     * pipeline future when the stream ends.
+     */
+    private static final class CompletingSubscriber implements Flow.Subscriber<MT940Message> {
+        private final Flow.Subscriber<? super MT940Message> sink;
+        private final CompletableFuture<Void> done;
+        private final Reservations budget;
+
+        private CompletingSubscriber(Flow.Subscriber<? super MT940Message> sink, CompletableFuture<Void> done,
+                                     Reservations budget) {
+            this.sink = sink;
+            this.done = done;
+            this.budget = budget;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            sink.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(MT940Message item) {
+            if (budget == null) {
+                sink.onNext(item);
+                return;
+            }
+            // Estimated before the sink can change the message
+            long reserved = MT940MemoryBudget.estimate(item);
+            try {
+                sink.onNext(item);
+            } finally {
+                budget.release(reserved);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (budget != null) {
+                budget.releaseAll();
+            }
+            try {
+                sink.onError(throwable);
+            } finally {
+                done.completeExceptionally(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                sink.onComplete();
+            } finally {
+                done.complete(null);
+            }
+        }
+    }
+}
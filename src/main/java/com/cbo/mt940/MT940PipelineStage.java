@@ -0,0 +1,110 @@
+package com.cbo.mt940;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * One stage of an {@link MT940Pipeline}: applies a function to every item on a fixed number of worker
+ * threads and publishes the non-null results downstream.
+ * <p>
+ * Demand is bounded at both ends. The stage never has more than {@code bufferSize} items requested
+ * from upstream, and results go into a {@link SubmissionPublisher} with the same capacity whose
+ * {@code submit} blocks while the downstream subscriber is behind. A slow consumer therefore stalls
+ * the workers, which stop requesting, which propagates back to the source.
+ */
+final class MT940PipelineStage<T, R> implements Flow.Processor<T, R> {
+
+    private final Function<? super T, ? extends R> function;
+    private final ExecutorService workers;
+    private final SubmissionPublisher<R> downstream;
+    private final int bufferSize;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+
+    MT940PipelineStage(String name, int parallelism, int bufferSize, Executor deliveryExecutor,
+                       Function<? super T, ? extends R> function) {
+        this.function = function;
+        this.bufferSize = bufferSize;
+        this.workers = Executors.newFixedThreadPool(parallelism, threadFactory(name));
+        this.downstream = new SubmissionPublisher<>(deliveryExecutor, bufferSize);
+    }
+
+    static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        downstream.subscribe(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.upstream = subscription;
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(T item) {
+        inFlight.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                R result = function.apply(item);
+                if (result != null && !downstream.isClosed()) {
+                    downstream.submit(result);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                upstream.request(1);
+                if (inFlight.decrementAndGet() == 0 && upstreamDone) {
+                    finish();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        if (inFlight.get() == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            downstream.close();
+            workers.shutdown();
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        if (finished.compareAndSet(false, true)) {
+            downstream.closeExceptionally(throwable);
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            workers.shutdownNow();
+        }
+    }
+}
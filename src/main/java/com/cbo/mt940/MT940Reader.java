@@ -0,0 +1,393 @@
+package com.cbo.mt940;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Streaming MT940 parser. Splits the input into {@code {1:...-}} envelopes and parses them
+ * one at a time with a single pass over each message, so files of any size are read in
+ * constant memory.
+ * <p>
+ * Callers can push filters into the parser: messages whose Tag 25 account is rejected are skipped
+ * right after :25: is read, and statement lines rejected by the line filter are dropped before an
+ * {@link MT940Tag61} is created or validated.
+ * <p>
+ * {@link #readStatement()} parses straight into an immutable {@link MT940Statement}, without creating
+ * an {@link MT940Message}, and {@link #readMT942Message()} reads MT942 interim reports from the same kind
+ * of input; all read methods share the filters and the canonicalizer.
+ * <p>
+ * With a {@link #setMemoryBudget(MT940MemoryBudget) memory budget}, every read method but
+ * {@link #readEnvelope()} waits before parsing an envelope until its estimated size fits, and the
+ * caller releases every message or statement it got with the matching
+ * {@link MT940MemoryBudget#release(MT940Message)} overload once it is handled, typically on other threads.
+ */
+public class MT940Reader implements Closeable {
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int bufferPosition;
+    private int bufferLimit;
+    private long offset;
+    private long lineNumber = 1;
+
+    private final StringBuilder envelope = new StringBuilder(1024);
+    private int maxEnvelopeLength = Integer.MAX_VALUE;
+    private long envelopeOffset = -1;
+    private long envelopeLineNumber;
+
+    private final MT940MessageAssembler assembler = new MT940MessageAssembler();
+    private final MT940StatementAssembler statementAssembler = new MT940StatementAssembler();
+    private final MT942MessageAssembler mt942Assembler = new MT942MessageAssembler();
+    private long skippedMessages;
+    private MT940MemoryBudget memoryBudget;
+
+    /**
+     * Creates a reader over characters.
+     *
+     * @param in The MT940 text.
+     */
+    public MT940Reader(Reader in) {
+        this.in = in;
+        setMetrics(MT940Message.getMetrics());
+    }
+
+    /**
+     * Creates a reader over bytes. SWIFT messages use a single-byte character set, so the
+     * offsets reported by this reader are byte offsets into the stream.
+     *
+     * @param in The MT940 bytes.
+     */
+    public MT940Reader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Creates a reader over input that starts at a known position of a larger input, e.g. a file
+     * opened at a checkpoint, so offsets and line numbers keep referring to the whole input.
+     *
+     * @param in         The MT940 text from the position on.
+     * @param offset     The offset of the first character of {@code in}.
+     * @param lineNumber The 1-based line number at that offset.
+     */
+    MT940Reader(Reader in, long offset, long lineNumber) {
+        this(in);
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Sets the filter on the Tag 25 Account Identification. Messages for other accounts are skipped.
+     *
+     * @param accountFilter The filter, or {@code null} to accept all accounts.
+     */
+    public void setAccountFilter(Predicate<String> accountFilter) {
+        assembler.setAccountFilter(accountFilter);
+        statementAssembler.setAccountFilter(accountFilter);
+        mt942Assembler.setAccountFilter(accountFilter);
+    }
+
+    /**
+     * Sets the filter on Tag 61 statement lines. Rejected lines are dropped from the parsed message.
+     *
+     * @param statementLineFilter The filter, or {@code null} to accept all statement lines.
+     */
+    public void setStatementLineFilter(Predicate<MT940Tag61View> statementLineFilter) {
+        assembler.setStatementLineFilter(statementLineFilter);
+        statementAssembler.setStatementLineFilter(statementLineFilter);
+        mt942Assembler.setStatementLineFilter(statementLineFilter);
+    }
+
+    /**
+     * Sets the metrics this reader reports to, overriding the ones installed with {@link MT940Message#setMetrics(MT940Metrics)}.
+     *
+     * @param metrics The metrics, or {@code null} to turn instrumentation off.
+     */
+    public void setMetrics(MT940Metrics metrics) {
+        assembler.setMetrics(metrics);
+        statementAssembler.setMetrics(metrics);
+        mt942Assembler.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the canonicalizer this reader shares repeated field values through, overriding the one
+     * installed with {@link MT940Message#setCanonicalizer(MT940Canonicalizer)}.
+     *
+     * @param canonicalizer The canonicalizer, or {@code null} to give every message its own copies.
+     */
+    public void setCanonicalizer(MT940Canonicalizer canonicalizer) {
+        assembler.setCanonicalizer(canonicalizer);
+        statementAssembler.setCanonicalizer(canonicalizer);
+        mt942Assembler.setCanonicalizer(canonicalizer);
+    }
+
+    /**
+     * Sets the budget the read methods reserve the estimated size of each message from before parsing it. A thread that keeps every message it reads must not use one: it
+     * would wait for itself once the budget is used up.
+     *
+     * @param memoryBudget The budget, or {@code null} to read without admission control.
+     */
+    public void setMemoryBudget(MT940MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets the length an envelope may reach before its trailer is found. Input from untrusted peers should
+     * be bounded, so that an envelope that is never closed cannot fill the heap.
+     *
+     * @param maxEnvelopeLength The number of characters from {@code {1:} to {@code -}}, unbounded by default.
+     * @throws IllegalArgumentException If the length is not positive.
+     */
+    public void setMaxEnvelopeLength(int maxEnvelopeLength) {
+        if (maxEnvelopeLength < 1) {
+            throw new IllegalArgumentException("Maximum envelope length must be positive");
+        }
+        this.maxEnvelopeLength = maxEnvelopeLength;
+    }
+
+    /**
+     * Reads and parses the next message accepted by the account filter.
+     *
+     * @return The parsed message, or {@code null} at the end of the input.
+     * @throws IOException              If reading fails or the input ends inside a message.
+     * @throws IllegalArgumentException If the message is invalid.
+     */
+    public MT940Message readMessage() throws IOException {
+        CharSequence text;
+        while ((text = readEnvelope()) != null) {
+            long reserved = admit(text);
+            MT940Message message = null;
+            try {
+                message = assembler.assemble(text, 0, text.length());
+            } finally {
+                settle(reserved, message != null ? MT940MemoryBudget.estimate(message) : 0);
+            }
+            if (message != null) {
+                return message;
+            }
+            skippedMessages++;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and parses the next message accepted by the account filter into an immutable statement.
+     *
+     * @return The statement, or {@code null} at the end of the input.
+     * @throws IOException              If reading fails or the input ends inside a message.
+     * @throws IllegalArgumentException If the message is invalid.
+     */
+    public MT940Statement readStatement() throws IOException {
+        CharSequence text;
+        while ((text = readEnvelope()) != null) {
+            long reserved = admit(text);
+            MT940Statement statement = null;
+            try {
+                statement = statementAssembler.assemble(text, 0, text.length());
+            } finally {
+                settle(reserved, statement != null ? MT940MemoryBudget.estimate(statement) : 0);
+            }
+            if (statement != null) {
+                return statement;
+            }
+            skippedMessages++;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and parses the next MT942 message accepted by the account filter.
+     *
+     * @return The parsed message, or {@code null} at the end of the input.
+     * @throws IOException              If reading fails or the input ends inside a message.
+     * @throws IllegalArgumentException If the message is invalid or its 90D/90C totals do not match its lines.
+     */
+    public MT942Message readMT942Message() throws IOException {
+        CharSequence text;
+        while ((text = readEnvelope()) != null) {
+            long reserved = admit(text);
+            MT942Message message = null;
+            try {
+                message = mt942Assembler.assemble(text, 0, text.length());
+            } finally {
+                settle(reserved, message != null ? MT940MemoryBudget.estimate(message) : 0);
+            }
+            if (message != null) {
+                return message;
+            }
+            skippedMessages++;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and parses the next message accepted by the account filter without throwing on invalid content.
+     * Errors carry their offset and line number in the whole input, so callers can report them and carry on
+     * with the next message.
+     *
+     * @return The result, or {@code null} at the end of the input.
+     * @throws IOException If reading fails or the input ends inside a message.
+     */
+    public MT940ParseResult readResult() throws IOException {
+        CharSequence text;
+        while ((text = readEnvelope()) != null) {
+            long reserved = admit(text);
+            MT940ParseResult result = null;
+            try {
+                result = assembler.assembleResult(text, 0, text.length(), envelopeOffset, envelopeLineNumber);
+            } finally {
+                settle(reserved, result != null && result.getMessage() != null
+                        ? MT940MemoryBudget.estimate(result.getMessage()) : 0);
+            }
+            if (result != null) {
+                return result;
+            }
+            skippedMessages++;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next raw {@code {1:...-}} envelope without parsing it. Text between envelopes is ignored.
+     *
+     * @return The envelope, valid until the next read, or {@code null} at the end of the input.
+     * @throws MT940EnvelopeTooLongException If the envelope exceeds the {@link #setMaxEnvelopeLength(int) maximum length}.
+     * @throws IOException                   If reading fails or the input ends inside a message.
+     */
+    public CharSequence readEnvelope() throws IOException {
+        envelope.setLength(0);
+        int c;
+        do {
+            c = read();
+            if (c == -1) {
+                return null;
+            }
+        } while (c != '{');
+        envelopeOffset = offset - 1;
+        envelopeLineNumber = lineNumber;
+        envelope.append('{');
+        char previous = '{';
+        while (true) {
+            // Copy up to the next '}' in one go, then check whether it closes the envelope
+            int start = bufferPosition;
+            char ch;
+            while (bufferPosition < bufferLimit && (ch = buffer[bufferPosition]) != '}') {
+                if (ch == '\n') {
+                    lineNumber++;
+                }
+                bufferPosition++;
+            }
+            if (bufferPosition > start) {
+                envelope.append(buffer, start, bufferPosition - start);
+                offset += bufferPosition - start;
+                previous = buffer[bufferPosition - 1];
+            }
+            c = read();
+            if (c == -1) {
+                throw new EOFException("Truncated MT940 message at offset " + envelopeOffset);
+            }
+            envelope.append((char) c);
+            // Checked per buffer, so at most one buffer more than the limit is held before failing
+            if (envelope.length() > maxEnvelopeLength) {
+                throw new MT940EnvelopeTooLongException(envelopeOffset, maxEnvelopeLength);
+            }
+            if (c == '}' && previous == '-') {
+                return envelope;
+            }
+            previous = (char) c;
+        }
+    }
+
+    /**
+     * @return The offset of the first character after the last envelope read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The 1-based line number of the current position.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return The offset of the opening brace of the last envelope read, or -1 before the first one.
+     */
+    public long getEnvelopeOffset() {
+        return envelopeOffset;
+    }
+
+    /**
+     * @return The 1-based line number of the opening brace of the last envelope read.
+     */
+    public long getEnvelopeLineNumber() {
+        return envelopeLineNumber;
+    }
+
+    /**
+     * @return The number of messages skipped by the account filter.
+     */
+    public long getSkippedMessageCount() {
+        return skippedMessages;
+    }
+
+    /**
+     * @return The number of statement lines dropped by the statement line filter.
+     */
+    public long getSkippedStatementLineCount() {
+        return assembler.getSkippedStatementLines() + statementAssembler.getSkippedStatementLines()
+                + mt942Assembler.getSkippedStatementLines();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Waits until the estimated size of the envelope's message fits in the budget
+    private long admit(CharSequence text) throws IOException {
+        if (memoryBudget == null) {
+            return 0;
+        }
+        long bytes = MT940MemoryBudget.estimate(text, 0, text.length());
+        try {
+            memoryBudget.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the memory budget");
+        }
+        return bytes;
+    }
+
+    // Moves the reservation onto the parsed message, or gives it back if there is none
+    private void settle(long reserved, long retained) {
+        if (memoryBudget != null) {
+            memoryBudget.adjust(reserved, retained);
+        }
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n <= 0) {
+                return -1;
+            }
+            bufferPosition = 0;
+            bufferLimit = n;
+        }
+        offset++;
+        char c = buffer[bufferPosition++];
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cbo.mt940;
+
+/**
+ * Balance checks on parsed messages. Balances are signed minor units: credit balances are
+ * positive, debit balances negative.
+ */
+public final class MT940Reconciliation {
+
+    private MT940Reconciliation() {
+    }
+
+    /**
+     * Gets the Tag 60F (or intermediate 60M) opening balance.
+     *
+     * @param message The parsed message.
+     * @return The signed opening balance in minor units.
+     * @throws IllegalArgumentException If the message has no opening balance.
+     */
+    public static long getOpeningBalance(MT940Message message) {
+        return parseBalance(message.getOpeningBalance());
+    }
+
+    /**
+     * Gets the Tag 62F (or intermediate 62M) closing balance (booked funds).
+     *
+     * @param message The parsed message.
+     * @return The signed closing balance in minor units.
+     * @throws IllegalArgumentException If the message has no closing balance.
+     */
+    public static long getClosingBalance(MT940Message message) {
+        return parseBalance(message.getClosingBalanceBookedFunds());
+    }
+
+    /**
+     * Sums the Tag 61 statement lines, credits positive and debits negative.
+     *
+     * @param message The parsed message.
+     * @return The signed movement in minor units.
+     */
+    public static long getStatementLineTotal(MT940Message message) {
+        long total = 0;
+        for (MT940Tag61 line : message.getStatementLines()) {
+            long amount = MT940Amount.parseMinorUnits(line.getAmount());
+            total += MT940Amount.isDebit(line.getDebitCreditMark()) ? -amount : amount;
+        }
+        return total;
+    }
+
+    /**
+     * Checks that the opening balance plus the statement lines equals the closing balance.
+     *
+     * @param message The parsed message.
+     * @return {@code true} if the message balances.
+     */
+    public static boolean isBalanced(MT940Message message) {
+        return getOpeningBalance(message) + getStatementLineTotal(message) == getClosingBalance(message);
+    }
+
+    /**
+     * Parses a formatted balance field such as {@code :60F:C231115ETB6994609,00}.
+     *
+     * @param field The formatted field, with or without the trailing line break.
+     * @return The signed balance in minor units.
+     * @throws IllegalArgumentException If the field is not a balance.
+     */
+    static long parseBalance(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("Missing balance");
+        }
+        int start = field.indexOf(':', 1) + 1;
+        int end = field.endsWith("\n") ? field.length() - 1 : field.length();
+        if (start <= 0 || end - start < 11) {
+            throw new IllegalArgumentException("Invalid balance " + field);
+        }
+        long amount = MT940Amount.parseMinorUnits(field, start + 10, end);
+        return field.charAt(start) == 'D' ? -amount : amount;
+    }
+}
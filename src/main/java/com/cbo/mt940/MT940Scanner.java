@@ -0,0 +1,197 @@
+package com.cbo.mt940;
+
+/**
+ * Single-pass tokenizer for one MT940 or MT942 message. It walks the header, the block 4 fields
+ * and the trailer once and reports character ranges to a {@link Handler}, without regular
+ * expressions and without copying field contents.
+ * <p>
+ * Lines may end with LF or CRLF and carry trailing spaces: the carriage returns, spaces and blank
+ * lines at the end of a field are left out of the range reported for it, so handlers never see them.
+ */
+final class MT940Scanner {
+
+    /**
+     * Receives the tokens of a message in the order they appear.
+     */
+    interface Handler {
+        /**
+         * Called with the {@code {1:...}{2:...}{3:...}{4:} prefix.
+         */
+        void header(CharSequence text, int start, int end);
+
+        /**
+         * Called for every block 4 field. The range excludes the {@code :tag:} prefix and the final
+         * line break with any trailing whitespace, but includes the line breaks of continuation lines
+         * (e.g. Tag 61 supplementary details).
+         *
+         * @return {@code false} to stop scanning the rest of the message.
+         */
+        boolean field(String tag, CharSequence text, int start, int end);
+
+        /**
+         * Called with the {@code -}} trailer.
+         */
+        void trailer(CharSequence text, int start, int end);
+
+        /**
+         * Called when the message layout is broken at {@code position}; scanning stops afterwards.
+         */
+        void malformed(MT940ErrorCode code, int position);
+    }
+
+    private MT940Scanner() {
+    }
+
+    /**
+     * Scans the message found between {@code start} and {@code end}. A malformed header, field
+     * or trailer is reported to {@link Handler#malformed(MT940ErrorCode, int)}.
+     */
+    static void scan(CharSequence text, int start, int end, Handler handler) {
+        int headerStart = indexOf(text, "{1:", start, end);
+        int block4 = headerStart < 0 ? -1 : indexOf(text, "{4:", headerStart, end);
+        int headerEnd = block4 < 0 ? end : skipWhitespace(text, block4 + 3, end);
+        if (headerEnd >= end || text.charAt(headerEnd) != '\n') {
+            handler.malformed(MT940ErrorCode.INVALID_HEADER, Math.max(headerStart, start));
+            return;
+        }
+        handler.header(text, headerStart, block4 + 3);
+
+        int pos = headerEnd + 1;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c == '-' && pos + 1 < end && text.charAt(pos + 1) == '}') {
+                handler.trailer(text, pos, pos + 2);
+                return;
+            }
+            if (c != ':') {
+                handler.malformed(MT940ErrorCode.INVALID_FIELD, pos);
+                return;
+            }
+            int tagEnd = pos + 1;
+            while (tagEnd < end && tagEnd - pos <= 4 && text.charAt(tagEnd) != ':') {
+                tagEnd++;
+            }
+            if (tagEnd >= end || text.charAt(tagEnd) != ':' || tagEnd == pos + 1) {
+                handler.malformed(MT940ErrorCode.INVALID_FIELD, pos);
+                return;
+            }
+            String tag = tagId(text, pos + 1, tagEnd);
+            int contentStart = tagEnd + 1;
+            int lineBreak = fieldEnd(text, contentStart, end);
+            if (!handler.field(tag, text, contentStart, trimEnd(text, contentStart, lineBreak))) {
+                return;
+            }
+            pos = lineBreak + 1;
+        }
+        handler.malformed(MT940ErrorCode.MISSING_TRAILER, end);
+    }
+
+    /**
+     * Returns the index of the line break ending the field that starts at {@code start}:
+     * the first line break followed by another field or the trailer.
+     */
+    static int fieldEnd(CharSequence text, int start, int end) {
+        int pos = start;
+        while (true) {
+            while (pos < end && text.charAt(pos) != '\n') {
+                pos++;
+            }
+            if (pos + 1 >= end) {
+                return pos;
+            }
+            char next = text.charAt(pos + 1);
+            if (next == ':' || (next == '-' && pos + 2 < end && text.charAt(pos + 2) == '}')) {
+                return pos;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Returns the end of the range once trailing spaces, tabs, carriage returns and line breaks are removed.
+     */
+    static int trimEnd(CharSequence text, int start, int end) {
+        int pos = end;
+        while (pos > start) {
+            char c = text.charAt(pos - 1);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                break;
+            }
+            pos--;
+        }
+        return pos;
+    }
+
+    // Skips the spaces, tabs and carriage return before a line break
+    private static int skipWhitespace(CharSequence text, int start, int end) {
+        int pos = start;
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t' || text.charAt(pos) == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    static int indexOf(CharSequence text, String token, int start, int end) {
+        char first = token.charAt(0);
+        int last = end - token.length();
+        outer:
+        for (int i = start; i <= last; i++) {
+            if (text.charAt(i) != first) {
+                continue;
+            }
+            for (int j = 1; j < token.length(); j++) {
+                if (text.charAt(i + j) != token.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Returns a shared constant for the tags this project knows, so scanning does not allocate
+    private static String tagId(CharSequence text, int start, int end) {
+        int length = end - start;
+        char c0 = text.charAt(start);
+        char c1 = length > 1 ? text.charAt(start + 1) : 0;
+        if (length == 2) {
+            if (c0 == '2' && c1 == '0') {
+                return "20";
+            } else if (c0 == '2' && c1 == '1') {
+                return "21";
+            } else if (c0 == '2' && c1 == '5') {
+                return "25";
+            } else if (c0 == '6' && c1 == '1') {
+                return "61";
+            } else if (c0 == '6' && c1 == '4') {
+                return "64";
+            } else if (c0 == '6' && c1 == '5') {
+                return "65";
+            } else if (c0 == '8' && c1 == '6') {
+                return "86";
+            }
+        } else if (length == 3) {
+            char c2 = text.charAt(start + 2);
+            if (c0 == '2' && c1 == '8' && c2 == 'C') {
+                return "28C";
+            } else if (c0 == '6' && c1 == '0' && c2 == 'F') {
+                return "60F";
+            } else if (c0 == '6' && c1 == '0' && c2 == 'M') {
+                return "60M";
+            } else if (c0 == '6' && c1 == '2' && c2 == 'F') {
+                return "62F";
+            } else if (c0 == '6' && c1 == '2' && c2 == 'M') {
+                return "62M";
+            } else if (c0 == '3' && c1 == '4' && c2 == 'F') {
+                return "34F";
+            } else if (c0 == '1' && c1 == '3' && c2 == 'D') {
+                return "13D";
+            } else if (c0 == '9' && c1 == '0' && c2 == 'D') {
+                return "90D";
+            } else if (c0 == '9' && c1 == '0' && c2 == 'C') {
+                return "90C";
+            }
+        }
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,466 @@
+package com.cbo.mt940;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable MT940 statement, safe to hand to other threads without copies or locks.
+ * <p>
+ * All fields are final and the statement lines are kept in compact columns (dates as ints, amounts as
+ * minor units, codes and references as shared Strings) that are never exposed; {@link #getLine(int)}
+ * and {@link #getLines()} create immutable {@link MT940StatementLine} views on access. Balances are
+ * kept as typed values and formatted on request, like {@link MT940Message} returns them.
+ * <p>
+ * Statements are parsed straight from the text with {@link #parse(String)} or
+ * {@link MT940Reader#readStatement()}, without building an {@link MT940Message} first, and convert from
+ * and to the mutable model with {@link #from(MT940Message)} and {@link #toMessage()} without validating
+ * the values again. Amounts are kept as minor units, so leading zeros in the input are not kept.
+ */
+public final class MT940Statement {
+
+    private static final String[] MARKS = {"C", "D", "RC", "RD"};
+    private static final String[] FUNDS_CODES = new String[128];
+
+    static {
+        for (char c = 0; c < FUNDS_CODES.length; c++) {
+            FUNDS_CODES[c] = String.valueOf(c);
+        }
+    }
+
+    private final MT940Header header;
+    private final String transactionReferenceNumber;
+    private final String accountIdentification;
+    private final String statementNumber;
+    private final String sequenceNumber;
+    private final Balance openingBalance;
+    private final Balance closingBalance;
+    private final Balance availableBalance;
+
+    private final int lineCount;
+    private final int[] valueDates;
+    private final short[] entryDates;
+    private final byte[] marks;
+    private final char[] fundsCodes;
+    private final long[] amounts;
+    private final String[] transactionTypeIDCodes;
+    private final String[] customerReferences;
+    private final String[] bankReferences;
+    private final String[] supplementaryDetails;
+
+    MT940Statement(MT940Header header, String transactionReferenceNumber, String accountIdentification,
+                   String statementNumber, String sequenceNumber, Balance openingBalance, Balance closingBalance,
+                   Balance availableBalance, Lines lines) {
+        this.header = header;
+        this.transactionReferenceNumber = transactionReferenceNumber;
+        this.accountIdentification = accountIdentification;
+        this.statementNumber = statementNumber;
+        this.sequenceNumber = sequenceNumber;
+        this.openingBalance = openingBalance;
+        this.closingBalance = closingBalance;
+        this.availableBalance = availableBalance;
+        int n = lines.size;
+        this.lineCount = n;
+        this.valueDates = Arrays.copyOf(lines.valueDates, n);
+        this.entryDates = Arrays.copyOf(lines.entryDates, n);
+        this.marks = Arrays.copyOf(lines.marks, n);
+        this.fundsCodes = Arrays.copyOf(lines.fundsCodes, n);
+        this.amounts = Arrays.copyOf(lines.amounts, n);
+        this.transactionTypeIDCodes = Arrays.copyOf(lines.transactionTypeIDCodes, n);
+        this.customerReferences = Arrays.copyOf(lines.customerReferences, n);
+        this.bankReferences = Arrays.copyOf(lines.bankReferences, n);
+        this.supplementaryDetails = Arrays.copyOf(lines.supplementaryDetails, n);
+    }
+
+    /**
+     * Parses an MT940 message into a statement.
+     *
+     * @param mt940String The MT940 message string to parse.
+     * @return The statement.
+     * @throws IllegalArgumentException If the provided MT940 string is invalid.
+     */
+    public static MT940Statement parse(String mt940String) {
+        if (mt940String == null) {
+            throw new IllegalArgumentException("Missing or invalid Header in the MT940 message");
+        }
+        return new MT940StatementAssembler().assemble(mt940String, 0, mt940String.length());
+    }
+
+    /**
+     * Takes a snapshot of a mutable message. Strings are shared, not copied.
+     *
+     * @param message The message, with all mandatory fields set.
+     * @return The statement.
+     * @throws IllegalArgumentException If a mandatory field of the message is missing.
+     */
+    public static MT940Statement from(MT940Message message) {
+        require(message.getTransactionReferenceNumber() != null, "20");
+        require(message.getAccountIdentification() != null, "25");
+        // Tag 28C as a whole is set by the parser and by setStatementNumberSequenceNumber alike
+        String statementNumberSequenceNumber = message.getStatementNumberSequenceNumber();
+        int slash = statementNumberSequenceNumber == null ? -1 : statementNumberSequenceNumber.indexOf('/');
+        require(slash > 0, "28C");
+        require(message.getOpeningBalance() != null, "60");
+        require(message.getClosingBalanceBookedFunds() != null, "62F");
+        Lines lines = new Lines(message.getStatementLines().size());
+        for (MT940Tag61 line : message.getStatementLines()) {
+            lines.add(MT940Amount.parseDate(line.getValueDate(), 0),
+                    line.getEntryDate() == null ? 0 : Integer.parseInt(line.getEntryDate()),
+                    line.getDebitCreditMark(), line.getFundsCode(), MT940Amount.parseMinorUnits(line.getAmount()),
+                    line.getTransactionTypeIDCode(), line.getCustomerReference(), line.getBankReference(),
+                    line.getSupplementaryDetails());
+        }
+        String available = message.getClosingAvailableBalance();
+        return new MT940Statement(message.getHeaderBlocks(), message.getTransactionReferenceNumber(),
+                message.getAccountIdentification(), statementNumberSequenceNumber.substring(0, slash),
+                statementNumberSequenceNumber.substring(slash + 1),
+                Balance.parse(message.getOpeningBalance()), Balance.parse(message.getClosingBalanceBookedFunds()),
+                available == null ? null : Balance.parse(available), lines);
+    }
+
+    /**
+     * Creates a mutable copy of the statement. The values are already valid, so they are not checked again.
+     *
+     * @return The message.
+     */
+    public MT940Message toMessage() {
+        MT940Message message = new MT940Message();
+        message.setValidated(header, transactionReferenceNumber, accountIdentification, statementNumber,
+                sequenceNumber, openingBalance.format(), closingBalance.format(),
+                availableBalance == null ? null : availableBalance.format(), "-}");
+        for (int i = 0; i < lineCount; i++) {
+            message.addStatementLine(getLine(i).toTag61());
+        }
+        return message;
+    }
+
+    public String getHeader() {
+        return header == null ? null : header.toString();
+    }
+
+    public MT940Header getHeaderBlocks() {
+        return header;
+    }
+
+    public String getTransactionReferenceNumber() {
+        return transactionReferenceNumber;
+    }
+
+    public String getAccountIdentification() {
+        return accountIdentification;
+    }
+
+    public String getStatementNumber() {
+        return statementNumber;
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public String getStatementNumberSequenceNumber() {
+        return statementNumber + "/" + sequenceNumber;
+    }
+
+    /**
+     * @return The opening balance field, e.g. {@code :60F:C231115ETB1000,00} and its line break.
+     */
+    public String getOpeningBalance() {
+        return openingBalance.format();
+    }
+
+    /**
+     * @return The signed opening balance in minor units, negative for a debit balance.
+     */
+    public long getOpeningBalanceMinorUnits() {
+        return openingBalance.signed();
+    }
+
+    /**
+     * @return The opening balance date as a YYMMDD int.
+     */
+    public int getOpeningBalanceDate() {
+        return openingBalance.date;
+    }
+
+    /**
+     * @return Whether the statement opens with an intermediate :60M: balance.
+     */
+    public boolean isIntermediateOpening() {
+        return openingBalance.tag.equals("60M");
+    }
+
+    /**
+     * @return The ISO currency code of the opening balance.
+     */
+    public String getCurrency() {
+        return openingBalance.currency;
+    }
+
+    /**
+     * @return The closing balance field, :62F: or :62M:, and its line break.
+     */
+    public String getClosingBalanceBookedFunds() {
+        return closingBalance.format();
+    }
+
+    /**
+     * @return The signed closing balance (booked funds) in minor units.
+     */
+    public long getClosingBalanceMinorUnits() {
+        return closingBalance.signed();
+    }
+
+    /**
+     * @return The closing balance date as a YYMMDD int.
+     */
+    public int getClosingBalanceDate() {
+        return closingBalance.date;
+    }
+
+    /**
+     * @return Whether the statement closes with an intermediate :62M: balance, i.e. more pages follow.
+     */
+    public boolean isIntermediateClosing() {
+        return closingBalance.tag.equals("62M");
+    }
+
+    /**
+     * @return The :64: closing available balance field, or {@code null} if absent.
+     */
+    public String getClosingAvailableBalance() {
+        return availableBalance == null ? null : availableBalance.format();
+    }
+
+    /**
+     * @return The signed closing available balance in minor units.
+     * @throws IllegalStateException If the statement has no Tag 64.
+     */
+    public long getAvailableBalanceMinorUnits() {
+        if (availableBalance == null) {
+            throw new IllegalStateException("No Tag 64 in the statement");
+        }
+        return availableBalance.signed();
+    }
+
+    /**
+     * @return The number of statement lines.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Estimates the heap the statement retains: the columns take a few dozen bytes per line, plus the
+     * Strings they refer to, counted even where the canonicalizer shares them with other statements.
+     */
+    long estimateRetainedBytes() {
+        long bytes = 496L + 33L * lineCount;
+        for (int i = 0; i < lineCount; i++) {
+            bytes += stringBytes(customerReferences[i]) + stringBytes(bankReferences[i])
+                    + stringBytes(supplementaryDetails[i]);
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String string) {
+        return string == null ? 0 : 40L + string.length();
+    }
+
+    /**
+     * @param index The line index.
+     * @return The line.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public MT940StatementLine getLine(int index) {
+        checkIndex(index);
+        return new MT940StatementLine(valueDates[index], entryDates[index], MARKS[marks[index]],
+                fundsCodes[index] == 0 ? null : fundsCode(fundsCodes[index]), amounts[index],
+                transactionTypeIDCodes[index], customerReferences[index], bankReferences[index],
+                supplementaryDetails[index]);
+    }
+
+    /**
+     * Gets a line's amount without creating the line.
+     *
+     * @param index The line index.
+     * @return The signed amount in minor units: negative for debits (D and RC).
+     */
+    public long getSignedAmountMinorUnits(int index) {
+        checkIndex(index);
+        return isDebitMark(marks[index]) ? -amounts[index] : amounts[index];
+    }
+
+    /**
+     * @return The lines as an unmodifiable list; elements are created on access.
+     */
+    public List<MT940StatementLine> getLines() {
+        return new AbstractList<MT940StatementLine>() {
+            @Override
+            public MT940StatementLine get(int index) {
+                return getLine(index);
+            }
+
+            @Override
+            public int size() {
+                return lineCount;
+            }
+        };
+    }
+
+    /**
+     * @return The statement as an MT940 message, like {@link MT940Message#toString()}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256 + 64 * lineCount);
+        sb.append(header).append('\n');
+        sb.append(":20:").append(transactionReferenceNumber).append('\n');
+        sb.append(":25:").append(accountIdentification).append('\n');
+        sb.append(":28C:").append(statementNumber).append('/').append(sequenceNumber).append('\n');
+        openingBalance.appendTo(sb);
+        for (int i = 0; i < lineCount; i++) {
+            getLine(i).appendTo(sb);
+        }
+        closingBalance.appendTo(sb);
+        if (availableBalance != null) {
+            availableBalance.appendTo(sb);
+        }
+        return sb.append("-}").toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + lineCount);
+        }
+    }
+
+    private static void require(boolean present, String tag) {
+        if (!present) {
+            throw new IllegalArgumentException("Missing or invalid Tag " + tag + " in the MT940 message");
+        }
+    }
+
+    private static String fundsCode(char c) {
+        return c < FUNDS_CODES.length ? FUNDS_CODES[c] : String.valueOf(c);
+    }
+
+    private static boolean isDebitMark(byte mark) {
+        // D and RC book on the debit side
+        return mark == 1 || mark == 2;
+    }
+
+    static byte mark(String debitCreditMark) {
+        for (byte i = 0; i < MARKS.length; i++) {
+            if (MARKS[i].equals(debitCreditMark)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid debit/credit mark");
+    }
+
+    /**
+     * A balance field: tag (60F, 60M, 62F, 62M or 64), D/C mark, date, currency and amount.
+     */
+    static final class Balance {
+        final String tag;
+        final boolean debit;
+        final int date;
+        final String currency;
+        final long amount;
+
+        Balance(String tag, boolean debit, int date, String currency, long amount) {
+            this.tag = tag;
+            this.debit = debit;
+            this.date = date;
+            this.currency = currency;
+            this.amount = amount;
+        }
+
+        // Parses a formatted field such as :60F:C231115ETB1000,00 and its line break
+        static Balance parse(String field) {
+            int colon = field.indexOf(':', 1);
+            int end = field.endsWith("\n") ? field.length() - 1 : field.length();
+            return new Balance(field.substring(1, colon), field.charAt(colon + 1) == 'D',
+                    MT940Amount.parseDate(field, colon + 2), field.substring(colon + 8, colon + 11),
+                    MT940Amount.parseMinorUnits(field, colon + 11, end));
+        }
+
+        long signed() {
+            return debit ? -amount : amount;
+        }
+
+        String format() {
+            StringBuilder sb = new StringBuilder(40);
+            appendTo(sb);
+            return sb.toString();
+        }
+
+        void appendTo(StringBuilder sb) {
+            sb.append(':').append(tag).append(':').append(debit ? 'D' : 'C');
+            MT940StatementLine.appendDigits(sb, date, 6);
+            sb.append(currency);
+            MT940Amount.appendTo(sb, amount);
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Growable line columns, filled by the parser or from a message and copied to their exact size
+     * when the statement is created.
+     */
+    static final class Lines {
+        int size;
+        int[] valueDates;
+        short[] entryDates;
+        byte[] marks;
+        char[] fundsCodes;
+        long[] amounts;
+        String[] transactionTypeIDCodes;
+        String[] customerReferences;
+        String[] bankReferences;
+        String[] supplementaryDetails;
+
+        Lines(int capacity) {
+            allocate(Math.max(capacity, 4));
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int valueDate, int entryDate, String debitCreditMark, String fundsCode, long amount,
+                 String transactionTypeIDCode, String customerReference, String bankReference,
+                 String supplementaryDetail) {
+            if (size == valueDates.length) {
+                allocate(size * 2);
+            }
+            valueDates[size] = valueDate;
+            entryDates[size] = (short) entryDate;
+            marks[size] = mark(debitCreditMark);
+            fundsCodes[size] = fundsCode == null ? 0 : fundsCode.charAt(0);
+            amounts[size] = amount;
+            transactionTypeIDCodes[size] = transactionTypeIDCode;
+            customerReferences[size] = customerReference;
+            bankReferences[size] = bankReference;
+            supplementaryDetails[size] = supplementaryDetail;
+            size++;
+        }
+
+        private void allocate(int capacity) {
+            valueDates = valueDates == null ? new int[capacity] : Arrays.copyOf(valueDates, capacity);
+            entryDates = entryDates == null ? new short[capacity] : Arrays.copyOf(entryDates, capacity);
+            marks = marks == null ? new byte[capacity] : Arrays.copyOf(marks, capacity);
+            fundsCodes = fundsCodes == null ? new char[capacity] : Arrays.copyOf(fundsCodes, capacity);
+            amounts = amounts == null ? new long[capacity] : Arrays.copyOf(amounts, capacity);
+            transactionTypeIDCodes = transactionTypeIDCodes == null ? new String[capacity]
+                    : Arrays.copyOf(transactionTypeIDCodes, capacity);
+            customerReferences = customerReferences == null ? new String[capacity]
+                    : Arrays.copyOf(customerReferences, capacity);
+            bankReferences = bankReferences == null ? new String[capacity] : Arrays.copyOf(bankReferences, capacity);
+            supplementaryDetails = supplementaryDetails == null ? new String[capacity]
+                    : Arrays.copyOf(supplementaryDetails, capacity);
+        }
+    }
+}
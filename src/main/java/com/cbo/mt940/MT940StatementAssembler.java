@@ -0,0 +1,168 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Predicate;
+
+/**
+ * Builds an {@link MT940Statement} straight from the {@link MT940Scanner} tokens: statement lines go
+ * into the statement's columns as they are scanned, and no {@link MT940Message} or {@link MT940Tag61}
+ * is created. Fields are validated like the parser does, and lines rejected by the statement line filter
+ * are dropped before they are validated; for an invalid message the message assembler, with the same
+ * filters, is run on it to throw the parser's exception.
+ */
+final class MT940StatementAssembler extends MT940StreamingConverter
+        implements MT940ParseInstrumentation.Assembly<MT940Statement> {
+
+    private final MT940Statement.Lines lines = new MT940Statement.Lines(64);
+    private MT940Canonicalizer canonicalizer = MT940Message.getCanonicalizer();
+    private MT940Metrics metrics = MT940Metrics.NONE;
+    private Predicate<String> accountFilter;
+    private Predicate<MT940Tag61View> statementLineFilter;
+    private long skippedStatementLines;
+    private boolean rejected;
+    private MT940Statement statement;
+
+    void setAccountFilter(Predicate<String> accountFilter) {
+        this.accountFilter = accountFilter;
+    }
+
+    void setStatementLineFilter(Predicate<MT940Tag61View> statementLineFilter) {
+        this.statementLineFilter = statementLineFilter;
+    }
+
+    void setCanonicalizer(MT940Canonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    void setMetrics(MT940Metrics metrics) {
+        this.metrics = metrics == null ? MT940Metrics.NONE : metrics;
+    }
+
+    long getSkippedStatementLines() {
+        return skippedStatementLines;
+    }
+
+    /**
+     * Assembles the statement found between {@code start} and {@code end}.
+     *
+     * @return The statement, or {@code null} if its account was rejected by the account filter.
+     * @throws IllegalArgumentException If the message is invalid.
+     */
+    MT940Statement assemble(CharSequence text, int start, int end) {
+        return MT940ParseInstrumentation.assemble(this, metrics, text, start, end);
+    }
+
+    @Override
+    public MT940Statement assembleMessage(CharSequence text, int start, int end) {
+        statement = null;
+        rejected = false;
+        try {
+            convert(text, start, end);
+        } catch (IOException e) {
+            // Nothing is written, so this cannot happen
+            throw new UncheckedIOException(e);
+        }
+        if (rejected || statement != null) {
+            return statement;
+        }
+        MT940MessageAssembler assembler = new MT940MessageAssembler();
+        assembler.setCanonicalizer(null);
+        assembler.setAccountFilter(accountFilter);
+        assembler.setStatementLineFilter(statementLineFilter);
+        assembler.assemble(text, start, end);
+        // The scanner and the message assembler agree on validity; kept as a safety net
+        throw new IllegalArgumentException("Invalid MT940 message");
+    }
+
+    @Override
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    @Override
+    public int lineCount(MT940Statement statement) {
+        return statement.getLineCount();
+    }
+
+    @Override
+    public String accountIdentification(MT940Statement statement) {
+        return statement.getAccountIdentification();
+    }
+
+    @Override
+    public boolean field(String tag, CharSequence text, int start, int end) {
+        boolean valid = super.field(tag, text, start, end);
+        if (valid && accountFilter != null && tag.equals("25")
+                && !accountFilter.test(string(accountStart, accountEnd))) {
+            // Stop scanning; the rest of the message is neither validated nor kept
+            rejected = true;
+            return false;
+        }
+        return valid;
+    }
+
+    @Override
+    void beginMessage() {
+        lines.clear();
+    }
+
+    @Override
+    boolean acceptsStatementLine(MT940Tag61View line) {
+        if (statementLineFilter != null && !statementLineFilter.test(line)) {
+            skippedStatementLines++;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    void statementLine(MT940Tag61View line) {
+        lines.add(line.getValueDate(),
+                line.entryDateStart < 0 ? 0 : digits(line.entryDateStart, line.entryDateStart + 4),
+                line.getDebitCreditMark(),
+                line.fundsCodeStart < 0 ? null : string(line.fundsCodeStart, line.fundsCodeStart + 1),
+                line.getAmountMinorUnits(),
+                string(line.typeStart, line.typeStart + 4),
+                string(line.typeStart + 4, line.customerReferenceEnd),
+                line.bankReferenceStart < 0 ? null : string(line.bankReferenceStart, line.bankReferenceEnd),
+                line.supplementaryDetailsStart < 0 ? null
+                        : string(line.supplementaryDetailsStart, line.supplementaryDetailsEnd));
+    }
+
+    @Override
+    void endMessage(boolean valid) {
+        if (!valid || rejected) {
+            return;
+        }
+        int slash = MT940Scanner.indexOf(text, "/", statementStart, statementEnd);
+        statement = new MT940Statement(MT940Header.parse(text, headerStart, headerEnd, canonicalizer),
+                string(transactionReferenceStart, transactionReferenceEnd), string(accountStart, accountEnd),
+                string(statementStart, slash), string(slash + 1, statementEnd),
+                balance(text.charAt(openingStart - 2) == 'M' ? "60M" : "60F", openingStart,
+                        getOpeningBalance()),
+                balance(text.charAt(closingStart - 2) == 'M' ? "62M" : "62F", closingStart,
+                        getClosingBalance()),
+                availableStart < 0 ? null : balance("64", availableStart, getAvailableBalance()),
+                lines);
+    }
+
+    private MT940Statement.Balance balance(String tag, int start, long signed) {
+        return new MT940Statement.Balance(tag, text.charAt(start) == 'D', MT940Amount.parseDate(text, start + 1),
+                string(start + 7, start + 10), Math.abs(signed));
+    }
+
+    // Entry dates are MMDD, already checked to be digits
+    private int digits(int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private String string(int start, int end) {
+        return canonicalizer != null ? canonicalizer.canonicalize(text, start, end)
+                : text.subSequence(start, end).toString();
+    }
+}
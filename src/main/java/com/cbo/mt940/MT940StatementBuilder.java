@@ -0,0 +1,485 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk generator of outgoing MT940 statements from columnar data.
+ * <p>
+ * Statement lines are added as arrays (value dates, signed amounts in minor units, references) or one by
+ * one, optionally with a reversal mark and a funds code, and kept in columns; each value is checked once with {@link MT940Validation} instead of going through nine
+ * String setters per line. The closing balances for Tag 62F and Tag 64 are computed from the Tag 60F
+ * opening balance plus the lines. When a message would grow past the size limit, the statement is paged
+ * into a {@code :28C:} sequence: every page but the last closes with an intermediate :62M: balance and
+ * the next page opens with the same :60M: balance.
+ */
+public class MT940StatementBuilder {
+
+    /**
+     * SWIFT FIN limit for the text block of an MT940 message. It is applied to the whole message,
+     * header included, so generated messages stay within it.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 2000;
+
+    private static final long MAX_AMOUNT = 999_999_999_999_999_99L;
+    // Indexed by the marks column, as in MT940Statement
+    private static final String[] MARKS = {"C", "D", "RC", "RD"};
+
+    private final String header;
+    private final String transactionReferenceNumber;
+    private final String accountIdentification;
+    private final String currency;
+    private int statementNumber = 1;
+    private int openingDate;
+    private long openingBalance;
+    private int closingDate;
+    private int maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH;
+
+    private int size;
+    private int[] valueDates = new int[16];
+    private int[] entryDates = new int[16];
+    private byte[] marks = new byte[16];
+    private char[] fundsCodes = new char[16];
+    private long[] amounts = new long[16];
+    private String[] transactionTypeIDCodes = new String[16];
+    private String[] customerReferences = new String[16];
+    private String[] bankReferences = new String[16];
+    private String[] supplementaryDetails = new String[16];
+    private long movement;
+
+    /**
+     * Starts a statement.
+     *
+     * @param header                     The {@code {1:...}{2:...}{3:...}{4:} header.
+     * @param transactionReferenceNumber The Tag 20 Transaction Reference Number.
+     * @param accountIdentification      The Tag 25 Account Identification.
+     * @param currency                   The ISO currency code of the balances.
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public MT940StatementBuilder(String header, String transactionReferenceNumber, String accountIdentification,
+                                 String currency) {
+        if (header == null || !header.startsWith("{1:") || !header.endsWith("{4:")) {
+            throw new IllegalArgumentException("Invalid header");
+        }
+        if (!MT940Validation.isTransactionReferenceNumber(transactionReferenceNumber)) {
+            throw new IllegalArgumentException("Invalid 20 value");
+        }
+        if (!MT940Validation.isAccountIdentification(accountIdentification)) {
+            throw new IllegalArgumentException("Invalid 25 value");
+        }
+        if (!MT940Validation.isCurrency(currency)) {
+            throw new IllegalArgumentException("Invalid Currency");
+        }
+        this.header = header;
+        this.transactionReferenceNumber = transactionReferenceNumber;
+        this.accountIdentification = accountIdentification;
+        this.currency = currency;
+    }
+
+    /**
+     * Sets the statement number written in Tag 28C. Pages are numbered 1, 2, ... after the slash.
+     *
+     * @param statementNumber The statement number (1 to 99999).
+     * @throws IllegalArgumentException If the statement number is out of range.
+     */
+    public void setStatementNumber(int statementNumber) {
+        if (statementNumber < 1 || statementNumber > 99999) {
+            throw new IllegalArgumentException("Invalid 28C value");
+        }
+        this.statementNumber = statementNumber;
+    }
+
+    /**
+     * Sets the Tag 60F opening balance. The closing date defaults to the statement date.
+     *
+     * @param statementDate The statement date as a YYMMDD int, e.g. {@code 231115}.
+     * @param balance       The signed balance in minor units, negative for a debit balance.
+     * @throws IllegalArgumentException If the date or the balance is invalid.
+     */
+    public void setOpeningBalance(int statementDate, long balance) {
+        checkDate(statementDate, "Invalid Statement Date for Tag 60F");
+        checkAmount(balance, "Invalid Amount for Tag 60F");
+        this.openingDate = statementDate;
+        this.openingBalance = balance;
+        if (closingDate == 0) {
+            closingDate = statementDate;
+        }
+    }
+
+    /**
+     * Sets the date of the Tag 62F and Tag 64 closing balances.
+     *
+     * @param valueDate The date as a YYMMDD int.
+     * @throws IllegalArgumentException If the date is invalid.
+     */
+    public void setClosingDate(int valueDate) {
+        checkDate(valueDate, "Invalid Value Date for Tag 62F");
+        this.closingDate = valueDate;
+    }
+
+    /**
+     * Sets the size limit of each generated message, header and trailer included.
+     *
+     * @param maxMessageLength The limit in characters.
+     * @throws IllegalArgumentException If the limit cannot hold a page with one statement line.
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength < 512) {
+            throw new IllegalArgumentException("Message length limit must be at least 512");
+        }
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Adds statement lines from columns. All arrays are read from index {@code from} to {@code to};
+     * the optional columns may be {@code null}.
+     *
+     * @param valueDates             Value dates as YYMMDD ints.
+     * @param entryDates             Entry dates as MMDD ints, 0 for none (optional).
+     * @param amounts                Signed amounts in minor units: credits positive, debits negative.
+     * @param transactionTypeIDCodes Transaction type ID codes, e.g. {@code NMSC}.
+     * @param customerReferences     Customer references, e.g. {@code NONREF}.
+     * @param bankReferences         Bank references, {@code null} for none (optional).
+     * @param supplementaryDetails   Supplementary details, {@code null} for none (optional).
+     * @param from                   The first index to add.
+     * @param to                     The index after the last one to add.
+     * @throws IllegalArgumentException If a value is invalid; lines before it are kept.
+     */
+    public void addLines(int[] valueDates, int[] entryDates, long[] amounts, String[] transactionTypeIDCodes,
+                         String[] customerReferences, String[] bankReferences, String[] supplementaryDetails,
+                         int from, int to) {
+        ensureCapacity(size + to - from);
+        for (int i = from; i < to; i++) {
+            addLine(valueDates[i], entryDates == null ? 0 : entryDates[i], amounts[i], transactionTypeIDCodes[i],
+                    customerReferences[i], bankReferences == null ? null : bankReferences[i],
+                    supplementaryDetails == null ? null : supplementaryDetails[i]);
+        }
+    }
+
+    /**
+     * Adds one statement line, marked C or D by the sign of its amount.
+     *
+     * @param valueDate             The value date as a YYMMDD int.
+     * @param entryDate             The entry date as an MMDD int, 0 for none.
+     * @param amount                The signed amount in minor units: credits positive, debits negative.
+     * @param transactionTypeIDCode The transaction type ID code.
+     * @param customerReference     The customer reference.
+     * @param bankReference         The bank reference, or {@code null}.
+     * @param supplementaryDetail   The supplementary details, or {@code null}.
+     * @throws IllegalArgumentException If a value is invalid.
+     */
+    public void addLine(int valueDate, int entryDate, long amount, String transactionTypeIDCode,
+                        String customerReference, String bankReference, String supplementaryDetail) {
+        add(valueDate, entryDate, amount < 0 ? 1 : 0, (char) 0, amount, transactionTypeIDCode, customerReference,
+                bankReference, supplementaryDetail);
+    }
+
+    /**
+     * Adds one statement line with an explicit debit/credit mark and funds code. Reversals are booked on
+     * the opposite side of what they reverse: RC (reversal of credit) lowers the balance like D, RD
+     * (reversal of debit) raises it like C.
+     *
+     * @param valueDate             The value date as a YYMMDD int.
+     * @param entryDate             The entry date as an MMDD int, 0 for none.
+     * @param debitCreditMark       The debit/credit mark: C, D, RC or RD.
+     * @param fundsCode             The funds code, a single letter, or {@code null}.
+     * @param amount                The unsigned amount in minor units.
+     * @param transactionTypeIDCode The transaction type ID code.
+     * @param customerReference     The customer reference.
+     * @param bankReference         The bank reference, or {@code null}.
+     * @param supplementaryDetail   The supplementary details, or {@code null}.
+     * @throws IllegalArgumentException If a value is invalid.
+     */
+    public void addLine(int valueDate, int entryDate, String debitCreditMark, String fundsCode, long amount,
+                        String transactionTypeIDCode, String customerReference, String bankReference,
+                        String supplementaryDetail) {
+        int mark = debitCreditMark == null ? -1 : Arrays.asList(MARKS).indexOf(debitCreditMark);
+        if (mark < 0) {
+            throw new IllegalArgumentException("Invalid debit/credit mark");
+        }
+        // A digit would be read back as the start of the amount
+        if (fundsCode != null && (fundsCode.length() != 1 || !Character.isLetter(fundsCode.charAt(0))
+                || !MT940Validation.isSwiftText(fundsCode, 0, 1, 1))) {
+            throw new IllegalArgumentException("Invalid funds code");
+        }
+        if (amount < 0) {
+            throw new IllegalArgumentException("Invalid amount format");
+        }
+        add(valueDate, entryDate, mark, fundsCode == null ? 0 : fundsCode.charAt(0),
+                MT940Amount.isDebit(debitCreditMark) ? -amount : amount, transactionTypeIDCode, customerReference,
+                bankReference, supplementaryDetail);
+    }
+
+    private void add(int valueDate, int entryDate, int mark, char fundsCode, long amount, String transactionTypeIDCode,
+                     String customerReference, String bankReference, String supplementaryDetail) {
+        checkDate(valueDate, "Invalid value date format");
+        if (entryDate != 0 && !MT940Validation.isDate(entryDate)) {
+            throw new IllegalArgumentException("Invalid entry date format");
+        }
+        checkAmount(amount, "Invalid amount format");
+        if (transactionTypeIDCode == null
+                || !MT940Validation.isTransactionTypeIDCode(transactionTypeIDCode, 0, transactionTypeIDCode.length())) {
+            throw new IllegalArgumentException("Invalid transaction type ID code");
+        }
+        if (customerReference == null || !MT940Validation.isSwiftText(customerReference, 0, customerReference.length(), 16)) {
+            throw new IllegalArgumentException("Invalid customer reference");
+        }
+        if (bankReference != null && !MT940Validation.isSwiftText(bankReference, 0, bankReference.length(), 16)) {
+            throw new IllegalArgumentException("Invalid bank reference");
+        }
+        if (supplementaryDetail != null
+                && !MT940Validation.isSwiftText(supplementaryDetail, 0, supplementaryDetail.length(), 34)) {
+            throw new IllegalArgumentException("Invalid supplementary details");
+        }
+        ensureCapacity(size + 1);
+        valueDates[size] = valueDate;
+        entryDates[size] = entryDate;
+        marks[size] = (byte) mark;
+        fundsCodes[size] = fundsCode;
+        amounts[size] = amount;
+        transactionTypeIDCodes[size] = transactionTypeIDCode;
+        customerReferences[size] = customerReference;
+        bankReferences[size] = bankReference;
+        supplementaryDetails[size] = supplementaryDetail;
+        movement = Math.addExact(movement, amount);
+        size++;
+    }
+
+    /**
+     * @return The number of statement lines added.
+     */
+    public int getLineCount() {
+        return size;
+    }
+
+    /**
+     * @return The closing balance in minor units: the opening balance plus all statement lines.
+     */
+    public long getClosingBalance() {
+        return openingBalance + movement;
+    }
+
+    /**
+     * Writes the statement as one or more messages, each followed by a line break.
+     *
+     * @param out The destination.
+     * @return The number of messages (pages) written.
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If the opening balance is not set or the closing balance is out of range.
+     */
+    public int writeTo(Appendable out) throws IOException {
+        if (openingDate == 0) {
+            throw new IllegalArgumentException("Missing or invalid Tag 60 in the MT940 message");
+        }
+        checkAmount(getClosingBalance(), "Invalid Amount for Tag 62F");
+        StringBuilder page = new StringBuilder(Math.min(maxMessageLength, 4096));
+        MT940Pager pager = new MT940Pager(maxMessageLength, 2, 1);
+        long balance = openingBalance;
+        long closingBalance = getClosingBalance();
+        int finalClosingLength = balanceLength("62F", closingBalance) + balanceLength("64", closingBalance);
+        startPage(page, pager.getSequence(), "60F", balance);
+        pager.startPage(page.length());
+        for (int i = 0; i < size; i++) {
+            int mark = page.length();
+            appendLine(page, i);
+            int lineLength = page.length() - mark;
+            long after = balance + amounts[i];
+            int closingLength = i == size - 1 ? finalClosingLength : balanceLength("62M", after);
+            if (!pager.fits(lineLength, closingLength)) {
+                // The line does not fit: close this page at the line before and carry the line over
+                page.setLength(mark);
+                appendBalance(page, "62M", closingDate, currency, balance);
+                page.append("-}\n");
+                out.append(page);
+                startPage(page, pager.nextSequence(), "60M", balance);
+                pager.startPage(page.length());
+                appendLine(page, i);
+            }
+            pager.add(lineLength);
+            balance = after;
+        }
+        appendBalance(page, "62F", closingDate, currency, balance);
+        appendBalance(page, "64", closingDate, currency, balance);
+        page.append("-}\n");
+        out.append(page);
+        return pager.getSequence();
+    }
+
+    /**
+     * Renders the statement.
+     *
+     * @return The messages of the statement, each followed by a line break.
+     */
+    public String build() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes many statements to files. Statements are divided into consecutive runs, one per file, and
+     * rendered in parallel; each file receives its statements in list order.
+     *
+     * @param statements  The statements to write.
+     * @param files       The output files, created or truncated.
+     * @param parallelism The number of threads rendering and writing.
+     * @throws IOException If a file cannot be written.
+     */
+    public static void writeAll(List<MT940StatementBuilder> statements, List<Path> files, int parallelism) throws IOException {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No output file");
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<?>> writes = new ArrayList<>(files.size());
+            for (int f = 0; f < files.size(); f++) {
+                List<MT940StatementBuilder> run = statements.subList(
+                        (int) ((long) statements.size() * f / files.size()),
+                        (int) ((long) statements.size() * (f + 1) / files.size()));
+                Path file = files.get(f);
+                writes.add(pool.submit(() -> {
+                    writeFile(run, file, parallelism);
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void writeFile(List<MT940StatementBuilder> statements, Path file, int parallelism) {
+        MT940WriteEvent event = MT940Events.isRecorderInitialized() ? new MT940WriteEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long length = 0;
+        int lines = 0;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1)) {
+            // Render a window of statements in parallel, then write them in order
+            int window = parallelism * 4;
+            for (int start = 0; start < statements.size(); start += window) {
+                List<String> rendered = statements.subList(start, Math.min(statements.size(), start + window))
+                        .parallelStream().map(MT940StatementBuilder::build).collect(Collectors.toList());
+                for (String text : rendered) {
+                    writer.write(text);
+                    length += text.length();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (event != null && event.shouldCommit()) {
+            for (MT940StatementBuilder statement : statements) {
+                lines += statement.size;
+            }
+            event.messageSize = (int) Math.min(length, Integer.MAX_VALUE);
+            event.lineCount = lines;
+            event.destination = file.toString();
+            event.commit();
+        }
+    }
+
+    private void startPage(StringBuilder page, int sequence, String openingTag, long balance) {
+        page.setLength(0);
+        page.append(header).append('\n')
+                .append(":20:").append(transactionReferenceNumber).append('\n')
+                .append(":25:").append(accountIdentification).append('\n')
+                .append(":28C:").append(statementNumber).append('/').append(sequence).append('\n');
+        appendBalance(page, openingTag, openingDate, currency, balance);
+    }
+
+    private void appendLine(StringBuilder sb, int i) {
+        sb.append(":61:");
+        MT940StatementLine.appendDigits(sb, valueDates[i], 6);
+        if (entryDates[i] != 0) {
+            MT940StatementLine.appendDigits(sb, entryDates[i], 4);
+        }
+        sb.append(MARKS[marks[i]]);
+        if (fundsCodes[i] != 0) {
+            sb.append(fundsCodes[i]);
+        }
+        MT940Amount.appendTo(sb, Math.abs(amounts[i]));
+        sb.append(transactionTypeIDCodes[i]).append(customerReferences[i]);
+        if (bankReferences[i] != null) {
+            sb.append("//").append(bankReferences[i]);
+        }
+        if (supplementaryDetails[i] != null) {
+            sb.append('\n').append(supplementaryDetails[i]);
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends a balance field such as {@code :62F:C231115ETB6461201,00}.
+     */
+    static void appendBalance(StringBuilder sb, String tag, int date, String currency, long balance) {
+        sb.append(':').append(tag).append(':').append(balance < 0 ? 'D' : 'C');
+        MT940StatementLine.appendDigits(sb, date, 6);
+        sb.append(currency);
+        MT940Amount.appendTo(sb, Math.abs(balance));
+        sb.append('\n');
+    }
+
+    /**
+     * @return The length {@link #appendBalance} appends for a balance field with a three-letter currency.
+     */
+    static int balanceLength(String tag, long balance) {
+        return tag.length() + 13 + MT940Amount.formattedLength(Math.abs(balance));
+    }
+
+    private static void checkDate(int date, String message) {
+        if (!MT940Validation.isDate(date)) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static void checkAmount(long amount, String message) {
+        if (amount > MAX_AMOUNT || amount < -MAX_AMOUNT) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= valueDates.length) {
+            return;
+        }
+        int length = Math.max(capacity, valueDates.length * 2);
+        valueDates = Arrays.copyOf(valueDates, length);
+        entryDates = Arrays.copyOf(entryDates, length);
+        marks = Arrays.copyOf(marks, length);
+        fundsCodes = Arrays.copyOf(fundsCodes, length);
+        amounts = Arrays.copyOf(amounts, length);
+        transactionTypeIDCodes = Arrays.copyOf(transactionTypeIDCodes, length);
+        customerReferences = Arrays.copyOf(customerReferences, length);
+        bankReferences = Arrays.copyOf(bankReferences, length);
+        supplementaryDetails = Arrays.copyOf(supplementaryDetails, length);
+    }
+}
@@ -0,0 +1,187 @@
+package com.cbo.mt940;
+
+import java.util.Objects;
+
+/**
+ * Immutable Tag 61 statement line of an {@link MT940Statement}. Instances are created on access from the
+ * statement's columns and can be shared between threads freely.
+ */
+public final class MT940StatementLine {
+
+    private final int valueDate;
+    private final int entryDate;
+    private final String debitCreditMark;
+    private final String fundsCode;
+    private final long amount;
+    private final String transactionTypeIDCode;
+    private final String customerReference;
+    private final String bankReference;
+    private final String supplementaryDetails;
+
+    MT940StatementLine(int valueDate, int entryDate, String debitCreditMark, String fundsCode, long amount,
+                       String transactionTypeIDCode, String customerReference, String bankReference,
+                       String supplementaryDetails) {
+        this.valueDate = valueDate;
+        this.entryDate = entryDate;
+        this.debitCreditMark = debitCreditMark;
+        this.fundsCode = fundsCode;
+        this.amount = amount;
+        this.transactionTypeIDCode = transactionTypeIDCode;
+        this.customerReference = customerReference;
+        this.bankReference = bankReference;
+        this.supplementaryDetails = supplementaryDetails;
+    }
+
+    /**
+     * @return The value date as a YYMMDD int, e.g. {@code 231115}.
+     */
+    public int getValueDate() {
+        return valueDate;
+    }
+
+    /**
+     * @return The entry date as an MMDD int, or 0 if absent.
+     */
+    public int getEntryDate() {
+        return entryDate;
+    }
+
+    /**
+     * @return The debit/credit mark (C = Credit, D = Debit, RD = Reverse Debit, RC = Reverse Credit).
+     */
+    public String getDebitCreditMark() {
+        return debitCreditMark;
+    }
+
+    /**
+     * @return Whether the line books on the debit side (D or RC).
+     */
+    public boolean isDebit() {
+        return MT940Amount.isDebit(debitCreditMark);
+    }
+
+    /**
+     * @return The funds code, or {@code null} if absent.
+     */
+    public String getFundsCode() {
+        return fundsCode;
+    }
+
+    /**
+     * @return The amount in minor units, without sign.
+     */
+    public long getAmountMinorUnits() {
+        return amount;
+    }
+
+    /**
+     * @return The amount formatted with two decimals, e.g. {@code 533408,00}.
+     */
+    public String getAmount() {
+        return MT940Amount.format(amount);
+    }
+
+    /**
+     * @return The transaction type ID code, e.g. {@code NMSC}.
+     */
+    public String getTransactionTypeIDCode() {
+        return transactionTypeIDCode;
+    }
+
+    /**
+     * @return The customer reference, e.g. {@code NONREF}.
+     */
+    public String getCustomerReference() {
+        return customerReference;
+    }
+
+    /**
+     * @return The bank reference, or {@code null} if absent.
+     */
+    public String getBankReference() {
+        return bankReference;
+    }
+
+    /**
+     * @return The supplementary details, or {@code null} if absent.
+     */
+    public String getSupplementaryDetails() {
+        return supplementaryDetails;
+    }
+
+    /**
+     * Creates a mutable copy of the line. The values are already valid, so they are not checked again.
+     *
+     * @return The statement line.
+     */
+    public MT940Tag61 toTag61() {
+        return new MT940Tag61(date(valueDate, 6), entryDate == 0 ? null : date(entryDate, 4), debitCreditMark,
+                fundsCode, getAmount(), transactionTypeIDCode, customerReference, bankReference, supplementaryDetails);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MT940StatementLine)) {
+            return false;
+        }
+        MT940StatementLine line = (MT940StatementLine) o;
+        return valueDate == line.valueDate && entryDate == line.entryDate && amount == line.amount
+                && debitCreditMark.equals(line.debitCreditMark) && Objects.equals(fundsCode, line.fundsCode)
+                && transactionTypeIDCode.equals(line.transactionTypeIDCode)
+                && customerReference.equals(line.customerReference)
+                && Objects.equals(bankReference, line.bankReference)
+                && Objects.equals(supplementaryDetails, line.supplementaryDetails);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(valueDate, entryDate, debitCreditMark, fundsCode, amount, transactionTypeIDCode,
+                customerReference, bankReference, supplementaryDetails);
+    }
+
+    /**
+     * @return The line as a {@code :61:} field with its line break, like {@link MT940Tag61#toString()}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    void appendTo(StringBuilder sb) {
+        sb.append(":61:");
+        appendDigits(sb, valueDate, 6);
+        if (entryDate != 0) {
+            appendDigits(sb, entryDate, 4);
+        }
+        sb.append(debitCreditMark);
+        if (fundsCode != null) {
+            sb.append(fundsCode);
+        }
+        MT940Amount.appendTo(sb, amount);
+        sb.append(transactionTypeIDCode).append(customerReference);
+        if (bankReference != null) {
+            sb.append("//").append(bankReference);
+        }
+        if (supplementaryDetails != null) {
+            sb.append('\n').append(supplementaryDetails);
+        }
+        sb.append('\n');
+    }
+
+    static String date(int value, int digits) {
+        StringBuilder sb = new StringBuilder(digits);
+        appendDigits(sb, value, digits);
+        return sb.toString();
+    }
+
+    static void appendDigits(StringBuilder sb, int value, int digits) {
+        for (int divisor = (int) Math.pow(10, digits - 1); divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
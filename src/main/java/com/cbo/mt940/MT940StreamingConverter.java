@@ -0,0 +1,286 @@
+package com.cbo.mt940;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Base of the converters that turn MT940 input into another format straight from the
+ * {@link MT940Scanner} tokens, without building {@link MT940Message} or {@link MT940Tag61} objects.
+ * <p>
+ * Fields are validated with {@link MT940Validation} like the parser does, and only their positions in
+ * the envelope are kept. Subclasses receive every statement line as a {@link MT940Tag61View} while the
+ * message is scanned and must be able to discard what they produced for it: a message is only known to
+ * be valid once its last field has been checked, when {@link #endMessage(boolean)} is called.
+ */
+abstract class MT940StreamingConverter implements MT940Scanner.Handler {
+
+    private final MT940Tag61View view = new MT940Tag61View();
+    private final Slice slice = new Slice();
+    private long messages;
+    private long rejectedMessages;
+    private long statementLines;
+    private long messageLines;
+
+    // Positions of the current message's fields in text; valid until the next envelope is read
+    CharSequence text;
+    int headerStart;
+    int headerEnd;
+    int transactionReferenceStart;
+    int transactionReferenceEnd;
+    int accountStart;
+    int accountEnd;
+    int statementStart;
+    int statementEnd;
+    int openingStart;
+    int closingStart;
+    int availableStart;
+    private int openingEnd;
+    private int closingEnd;
+    private int availableEnd;
+    private boolean valid;
+    private boolean intermediateClosing;
+    private boolean trailer;
+
+    /**
+     * Converts every message the reader returns.
+     *
+     * @param reader The input.
+     * @return The number of valid messages converted.
+     * @throws IOException If reading fails, the input ends inside a message or the output cannot be written.
+     */
+    long convert(MT940Reader reader) throws IOException {
+        long before = messages;
+        CharSequence envelope;
+        while ((envelope = reader.readEnvelope()) != null) {
+            convert(envelope, 0, envelope.length());
+        }
+        return messages - before;
+    }
+
+    /**
+     * Converts the message found between {@code start} and {@code end}.
+     *
+     * @return Whether the message was valid.
+     */
+    boolean convert(CharSequence text, int start, int end) throws IOException {
+        this.text = text;
+        headerStart = headerEnd = -1;
+        transactionReferenceStart = accountStart = statementStart = openingStart = closingStart = availableStart = -1;
+        intermediateClosing = trailer = false;
+        valid = true;
+        messageLines = 0;
+        beginMessage();
+        try {
+            MT940Scanner.scan(text, start, end, this);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        valid &= headerStart >= 0 && transactionReferenceStart >= 0 && accountStart >= 0 && statementStart >= 0
+                && openingStart >= 0 && closingStart >= 0 && (availableStart >= 0 || intermediateClosing) && trailer;
+        if (valid) {
+            messages++;
+            statementLines += messageLines;
+        } else {
+            rejectedMessages++;
+        }
+        endMessage(valid);
+        return valid;
+    }
+
+    /**
+     * @return The number of valid messages converted.
+     */
+    long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * @return The number of invalid messages skipped.
+     */
+    long getRejectedMessageCount() {
+        return rejectedMessages;
+    }
+
+    /**
+     * @return The number of statement lines of valid messages converted.
+     */
+    long getStatementLineCount() {
+        return statementLines;
+    }
+
+    /**
+     * Called before a message is scanned.
+     */
+    abstract void beginMessage() throws IOException;
+
+    /**
+     * Called for every statement line with a valid layout before its fields are validated.
+     *
+     * @return Whether the line is validated and converted; {@code true} unless overridden.
+     */
+    boolean acceptsStatementLine(MT940Tag61View line) {
+        return true;
+    }
+
+    /**
+     * Called for every valid statement line while the message is scanned. Header fields seen so far
+     * (Tag 20, 25, 28C and the opening balance precede the lines) are available through the positions.
+     */
+    abstract void statementLine(MT940Tag61View line) throws IOException;
+
+    /**
+     * Called after a message is scanned.
+     *
+     * @param valid Whether the whole message is valid; if not, its output must be discarded.
+     */
+    abstract void endMessage(boolean valid) throws IOException;
+
+    @Override
+    public void header(CharSequence text, int start, int end) {
+        headerStart = start;
+        headerEnd = end;
+    }
+
+    @Override
+    public boolean field(String tag, CharSequence text, int start, int end) {
+        switch (tag) {
+            case "20":
+                transactionReferenceStart = start;
+                transactionReferenceEnd = end;
+                return check(MT940Validation.isTransactionReferenceNumber(slice.of(text, start, end)));
+            case "25":
+                accountStart = start;
+                accountEnd = end;
+                return check(MT940Validation.isAccountIdentification(slice.of(text, start, end)));
+            case "28C":
+                statementStart = start;
+                statementEnd = end;
+                return check(MT940Validation.isStatementNumberSequenceNumber(slice.of(text, start, end)));
+            case "60F":
+            case "60M":
+                openingStart = start;
+                openingEnd = end;
+                return check(isBalance(text, start, end));
+            case "61":
+                if (!view.reset(text, start, end)) {
+                    return check(false);
+                }
+                if (!acceptsStatementLine(view)) {
+                    // Dropped before validation, as by the parser's statement line filter
+                    return true;
+                }
+                if (view.validationError() != null) {
+                    return check(false);
+                }
+                try {
+                    statementLine(view);
+                } catch (IOException e) {
+                    // The scanner's handler cannot throw checked exceptions; unwrapped in convert
+                    throw new UncheckedIOException(e);
+                }
+                messageLines++;
+                return true;
+            case "62F":
+            case "62M":
+                closingStart = start;
+                closingEnd = end;
+                intermediateClosing = tag.equals("62M");
+                return check(isBalance(text, start, end));
+            case "64":
+                availableStart = start;
+                availableEnd = end;
+                return check(isBalance(text, start, end));
+            default:
+                // Tags without a place in MT940Message (e.g. 86) are ignored, as by the parser
+                return true;
+        }
+    }
+
+    @Override
+    public void trailer(CharSequence text, int start, int end) {
+        trailer = true;
+    }
+
+    @Override
+    public void malformed(MT940ErrorCode code, int position) {
+        valid = false;
+    }
+
+    /**
+     * @return The signed opening balance in minor units.
+     */
+    long getOpeningBalance() {
+        return balance(openingStart, openingEnd);
+    }
+
+    /**
+     * @return The signed closing balance (booked funds) in minor units.
+     */
+    long getClosingBalance() {
+        return balance(closingStart, closingEnd);
+    }
+
+    /**
+     * @return The signed closing available balance in minor units; only valid if Tag 64 is present.
+     */
+    long getAvailableBalance() {
+        return balance(availableStart, availableEnd);
+    }
+
+    private long balance(int start, int end) {
+        long amount = MT940Amount.parseMinorUnits(text, start + 10, end);
+        return text.charAt(start) == 'D' ? -amount : amount;
+    }
+
+    // Stops scanning at the first invalid field
+    private boolean check(boolean fieldValid) {
+        valid &= fieldValid;
+        return fieldValid;
+    }
+
+    // D/C mark (1), YYMMDD date (6), currency (3) and amount, like MT940MessageAssembler.balance
+    private boolean isBalance(CharSequence text, int start, int end) {
+        return end - start >= 11
+                && (text.charAt(start) == 'C' || text.charAt(start) == 'D')
+                && MT940Validation.isDigits(text, start + 1, start + 7)
+                && MT940Validation.isDate(MT940Amount.parseDate(text, start + 1))
+                && MT940Validation.isCurrency(slice.of(text, start + 7, start + 10))
+                && MT940Validation.isBalanceAmount(slice.of(text, start + 10, end));
+    }
+
+    /**
+     * Reusable window on a character range, so the validators can check a field without copying it.
+     */
+    private static final class Slice implements CharSequence {
+        private CharSequence text;
+        private int start;
+        private int end;
+
+        Slice of(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return text.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package com.cbo.mt940;
 
-import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.regex.Pattern;
 
 public class MT940Tag60F {
     private String debitCreditMark;
+    private String statementDateText;
     private Date statementDate;
     private String currency;
     private String amount;
@@ -27,7 +26,8 @@ public class MT940Tag60F {
         validateCurrency(currency);
         validateAmount(amount);
         this.debitCreditMark = debitCreditMark;
-        this.statementDate = parseStatementDate(statementDate);
+        this.statementDateText = statementDate;
+        this.statementDate = null;
         this.currency = currency;
         this.amount = parseAmount(amount);
     }
@@ -52,7 +52,8 @@ public class MT940Tag60F {
      */
     public void setStatementDate(String statementDate) {
         validateStatementDate(statementDate);
-        this.statementDate = parseStatementDate(statementDate);
+        this.statementDateText = statementDate;
+        this.statementDate = null;
     }
 
     /**
@@ -92,6 +93,10 @@ public class MT940Tag60F {
      * @return The Statement Date.
      */
     public Date getStatementDate() {
+        // Parsed on demand: formatting the tag only needs the validated text
+        if (statementDate == null && statementDateText != null) {
+            statementDate = parseStatementDate(statementDateText);
+        }
         return statementDate;
     }
 
@@ -121,7 +126,7 @@ public class MT940Tag60F {
      * @throws IllegalArgumentException If the Debit/Credit Mark is invalid.
      */
     private void validateDebitCreditMark(String debitCreditMark) {
-        if (debitCreditMark == null || !Pattern.matches("[CD]{1}", debitCreditMark)) {
+        if (debitCreditMark == null || !MT940Validation.isBalanceDebitCreditMark(debitCreditMark)) {
             throw new IllegalArgumentException("Invalid Debit/Credit Mark for Tag 60F");
         }
     }
@@ -134,8 +139,7 @@ public class MT940Tag60F {
      * @throws IllegalArgumentException If the Statement Date is invalid.
      */
     private void validateStatementDate(String statementDate) {
-        String pattern = "\\d{6}";
-        if (statementDate == null || !Pattern.matches(pattern, statementDate)) {
+        if (!MT940Validation.isDate(statementDate)) {
             throw new IllegalArgumentException("Invalid Statement Date for Tag 60F");
         }
     }
@@ -165,7 +169,7 @@ public class MT940Tag60F {
      * @throws IllegalArgumentException If the Currency is invalid.
      */
     private void validateCurrency(String currency) {
-        if (currency == null || !Pattern.matches("[A-Z]{3}", currency)) {
+        if (currency == null || !MT940Validation.isCurrency(currency)) {
             throw new IllegalArgumentException("Invalid Currency for Tag 60F");
         }
     }
@@ -178,8 +182,7 @@ public class MT940Tag60F {
      * @throws IllegalArgumentException If the Amount is invalid.
      */
     private void validateAmount(String amount) {
-        String pattern = "\\d{1,15}(,\\d{2})?";
-        if (amount == null || !Pattern.matches(pattern, amount)) {
+        if (!MT940Validation.isBalanceAmount(amount)) {
             throw new IllegalArgumentException("Invalid Amount for Tag 60F");
         }
     }
@@ -193,14 +196,8 @@ public class MT940Tag60F {
      */
     private String parseAmount(String amount) {
         try {
-
-            DecimalFormat decimalFormat = new DecimalFormat("#,##0.00");
-            decimalFormat.setParseBigDecimal(true);
-            double parsedValue = decimalFormat.parse(amount).doubleValue();
-
-            // Remove commas and replace dots with commas
-            return decimalFormat.format(parsedValue).replace(",", "").replace(".", ",");
-        } catch (ParseException e) {
+            return MT940Amount.format(MT940Amount.parseMinorUnits(amount));
+        } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Invalid Amount for Tag 60F");
         }
     }
@@ -214,9 +211,7 @@ public class MT940Tag60F {
      */
     @Override
     public String toString() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyMMdd");
-        return String.format(":60F:%s%s%s%s\n", debitCreditMark, dateFormat.format(statementDate), currency,
-                amount);
+        return ":60F:" + debitCreditMark + statementDateText + currency + amount + "\n";
     }
 
 }
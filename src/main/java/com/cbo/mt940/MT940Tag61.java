@@ -1,7 +1,5 @@
 package com.cbo.mt940;
 
-import java.util.regex.Pattern;
-
 public class MT940Tag61 {
     private String valueDate;
     private String entryDate;
@@ -15,13 +13,30 @@ public class MT940Tag61 {
 
     // Constructors, getters, and setters
 
+    public MT940Tag61() {
+    }
+
+    // Values that were already validated, e.g. by MT940StatementLine#toTag61
+    MT940Tag61(String valueDate, String entryDate, String debitCreditMark, String fundsCode, String amount,
+               String transactionTypeIDCode, String customerReference, String bankReference, String supplementaryDetails) {
+        this.valueDate = valueDate;
+        this.entryDate = entryDate;
+        this.debitCreditMark = debitCreditMark;
+        this.fundsCode = fundsCode;
+        this.amount = amount;
+        this.transactionTypeIDCode = transactionTypeIDCode;
+        this.customerReference = customerReference;
+        this.bankReference = bankReference;
+        this.supplementaryDetails = supplementaryDetails;
+    }
+
     /**
      * Sets the value date for the transaction.
      * @param valueDate The value date in the format YYMMDD.
      * @throws IllegalArgumentException If the value date is invalid.
      */
     public void setValueDate(String valueDate) {
-        if (valueDate == null || !Pattern.matches("\\d{6}", valueDate)) {
+        if (valueDate == null || valueDate.length() != 6 || !MT940Validation.isDigits(valueDate, 0, 6)) {
             throw new IllegalArgumentException("Invalid value date format");
         }
         this.valueDate = valueDate;
@@ -33,7 +48,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the entry date is invalid.
      */
     public void setEntryDate(String entryDate) {
-        if (entryDate != null && !Pattern.matches("\\d{4}", entryDate)) {
+        if (entryDate != null && (entryDate.length() != 4 || !MT940Validation.isDigits(entryDate, 0, 4))) {
             throw new IllegalArgumentException("Invalid entry date format");
         }
         this.entryDate = entryDate;
@@ -45,7 +60,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the debit/credit mark is invalid.
      */
     public void setDebitCreditMark(String debitCreditMark) {
-        if (debitCreditMark == null || !Pattern.matches("[CD]{1,2}", debitCreditMark)) {
+        if (debitCreditMark == null || !MT940Validation.isDebitCreditMark(debitCreditMark)) {
             throw new IllegalArgumentException("Invalid debit/credit mark");
         }
         this.debitCreditMark = debitCreditMark;
@@ -57,7 +72,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the funds code is invalid.
      */
     public void setFundsCode(String fundsCode) {
-        if (fundsCode != null && !Pattern.matches("[A-Za-z0-9 .,()/'+:?{}]{1}", fundsCode)) {
+        if (fundsCode != null && !MT940Validation.isSwiftText(fundsCode, 0, fundsCode.length(), 1)) {
             throw new IllegalArgumentException("Invalid funds code");
         }
         this.fundsCode = fundsCode;
@@ -69,7 +84,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the amount is invalid.
      */
     public void setAmount(String amount) {
-        if (amount == null || !Pattern.matches("\\d{1,15},\\d{2}", amount)) {
+        if (amount == null || !MT940Validation.isStatementLineAmount(amount, 0, amount.length())) {
             throw new IllegalArgumentException("Invalid amount format");
         }
         this.amount = amount;
@@ -81,7 +96,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the transaction type ID code is invalid.
      */
     public void setTransactionTypeIDCode(String transactionTypeIDCode) {
-        if (transactionTypeIDCode == null || !Pattern.matches("[NF]{1}[A-Z]{3}", transactionTypeIDCode)) {
+        if (transactionTypeIDCode == null || !MT940Validation.isTransactionTypeIDCode(transactionTypeIDCode, 0, transactionTypeIDCode.length())) {
             throw new IllegalArgumentException("Invalid transaction type ID code");
         }
         this.transactionTypeIDCode = transactionTypeIDCode;
@@ -93,7 +108,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the customer reference is invalid.
      */
     public void setCustomerReference(String customerReference) {
-        if (customerReference == null || !Pattern.matches("[A-Za-z0-9 .,()/'+:?{}]{1,16}", customerReference)) {
+        if (customerReference == null || !MT940Validation.isSwiftText(customerReference, 0, customerReference.length(), 16)) {
             throw new IllegalArgumentException("Invalid customer reference");
         }
         this.customerReference = customerReference;
@@ -105,7 +120,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the bank reference is invalid.
      */
     public void setBankReference(String bankReference) {
-        if (bankReference != null && !Pattern.matches("[A-Za-z0-9 .,()/'+:?{}]{1,16}", bankReference)) {
+        if (bankReference != null && !MT940Validation.isSwiftText(bankReference, 0, bankReference.length(), 16)) {
             throw new IllegalArgumentException("Invalid bank reference");
         }
         this.bankReference = bankReference;
@@ -117,7 +132,7 @@ public class MT940Tag61 {
      * @throws IllegalArgumentException If the supplementary details are invalid.
      */
     public void setSupplementaryDetails(String supplementaryDetails) {
-        if (supplementaryDetails != null && !Pattern.matches("[A-Za-z0-9 .,()/'+:?{}]{1,34}", supplementaryDetails)) {
+        if (supplementaryDetails != null && !MT940Validation.isSwiftText(supplementaryDetails, 0, supplementaryDetails.length(), 34)) {
             throw new IllegalArgumentException("Invalid supplementary details");
         }
         this.supplementaryDetails = supplementaryDetails;
@@ -196,24 +211,49 @@ public class MT940Tag61 {
     }
 
 
+    /**
+     * Gets the length of the formatted Tag 61 content without formatting it.
+     * @return The number of characters {@link #toString()} returns.
+     */
+    int getEncodedLength() {
+        return 5 + valueDate.length()
+                + (entryDate != null ? entryDate.length() : 0)
+                + debitCreditMark.length()
+                + (fundsCode != null ? fundsCode.length() : 0)
+                + amount.length()
+                + transactionTypeIDCode.length()
+                + customerReference.length()
+                + (bankReference != null ? 2 + bankReference.length() : 0)
+                + (supplementaryDetails != null ? 1 + supplementaryDetails.length() : 0);
+    }
+
     // Override toString() to format the Tag 61 content
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder(":61:");
-        sb.append(valueDate)
-                .append(entryDate != null ? entryDate : "")
-                .append(debitCreditMark)
-                .append(fundsCode != null ? fundsCode : "")
-                .append(amount)
-                .append(transactionTypeIDCode)
-                .append(customerReference)
-                .append(bankReference != null ? "//" + bankReference : "")
-                .append(supplementaryDetails != null ? "\n" + supplementaryDetails : "")
-                .append("\n");
-
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb, "\n");
         return sb.toString();
     }
 
-
-
+    /**
+     * Appends the formatted Tag 61 content, its line breaks written as {@code separator}.
+     */
+    void appendTo(StringBuilder sb, String separator) {
+        sb.append(":61:").append(valueDate);
+        if (entryDate != null) {
+            sb.append(entryDate);
+        }
+        sb.append(debitCreditMark);
+        if (fundsCode != null) {
+            sb.append(fundsCode);
+        }
+        sb.append(amount).append(transactionTypeIDCode).append(customerReference);
+        if (bankReference != null) {
+            sb.append("//").append(bankReference);
+        }
+        if (supplementaryDetails != null) {
+            sb.append(separator).append(supplementaryDetails);
+        }
+        sb.append(separator);
+    }
 }
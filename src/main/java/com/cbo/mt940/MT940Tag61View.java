@@ -0,0 +1,312 @@
+package com.cbo.mt940;
+
+/**
+ * Read-only, reusable view of a Tag 61 statement line over the raw message text.
+ * <p>
+ * The streaming parser positions one view on each :61: field and hands it to statement line filters
+ * before any {@link MT940Tag61} is created or validated. Accessors returning primitives do not allocate;
+ * accessors returning Strings copy the field on each call. A view is only valid during the callback
+ * it was passed to.
+ */
+public final class MT940Tag61View {
+    // Package-private so converters can copy field ranges without creating Strings; -1 marks absent fields
+    CharSequence text;
+    int valueDateStart;
+    int entryDateStart;
+    int markStart;
+    int markEnd;
+    int fundsCodeStart;
+    int amountStart;
+    int amountEnd;
+    int typeStart;
+    int customerReferenceEnd;
+    int bankReferenceStart;
+    int bankReferenceEnd;
+    int supplementaryDetailsStart;
+    int supplementaryDetailsEnd;
+
+    MT940Tag61View() {
+    }
+
+    /**
+     * Positions the view on the content of a :61: field.
+     *
+     * @return {@code false} if the field does not have the Tag 61 layout.
+     */
+    boolean reset(CharSequence text, int start, int end) {
+        this.text = text;
+        int pos = start;
+        if (!digits(pos, 6, end)) {
+            return false;
+        }
+        valueDateStart = pos;
+        pos += 6;
+
+        // Entry date (MMDD) is optional
+        entryDateStart = -1;
+        if (digits(pos, 4, end)) {
+            entryDateStart = pos;
+            pos += 4;
+        }
+
+        // Debit/credit mark: C, D, RC or RD
+        markStart = pos;
+        if (pos < end && text.charAt(pos) == 'R') {
+            pos++;
+        }
+        if (pos >= end || (text.charAt(pos) != 'C' && text.charAt(pos) != 'D')) {
+            return false;
+        }
+        markEnd = ++pos;
+
+        // Funds code is an optional single letter before the amount
+        fundsCodeStart = -1;
+        if (pos < end && Character.isLetter(text.charAt(pos))) {
+            fundsCodeStart = pos++;
+        }
+
+        amountStart = pos;
+        while (pos < end && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == ',')) {
+            pos++;
+        }
+        amountEnd = pos;
+        if (amountEnd == amountStart) {
+            return false;
+        }
+
+        typeStart = pos;
+        pos += 4;
+        if (pos > end) {
+            return false;
+        }
+
+        int lineEnd = pos;
+        while (lineEnd < end && text.charAt(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        // The reference line may end with CRLF and trailing spaces
+        int referencesEnd = MT940Scanner.trimEnd(text, pos, lineEnd);
+        int separator = MT940Scanner.indexOf(text, "//", pos, referencesEnd);
+        bankReferenceStart = -1;
+        bankReferenceEnd = -1;
+        if (separator >= 0) {
+            customerReferenceEnd = separator;
+            bankReferenceStart = separator + 2;
+            bankReferenceEnd = referencesEnd;
+        } else {
+            customerReferenceEnd = referencesEnd;
+        }
+        if (customerReferenceEnd == pos) {
+            return false;
+        }
+
+        supplementaryDetailsStart = -1;
+        supplementaryDetailsEnd = -1;
+        if (lineEnd < end) {
+            supplementaryDetailsStart = lineEnd + 1;
+            supplementaryDetailsEnd = end;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the value date.
+     * @return The value date as a YYMMDD int, e.g. {@code 231115}.
+     */
+    public int getValueDate() {
+        return MT940Amount.parseDate(text, valueDateStart);
+    }
+
+    /**
+     * Gets the debit/credit mark without allocating.
+     * @return The debit/credit mark (C = Credit, D = Debit, RD = Reverse Debit, RC = Reverse Credit).
+     */
+    public String getDebitCreditMark() {
+        boolean debit = text.charAt(markEnd - 1) == 'D';
+        if (markEnd - markStart == 2) {
+            return debit ? "RD" : "RC";
+        }
+        return debit ? "D" : "C";
+    }
+
+    /**
+     * Tells whether the line books on the debit side (D or RC).
+     * @return {@code true} for debit entries.
+     */
+    public boolean isDebit() {
+        return MT940Amount.isDebit(getDebitCreditMark());
+    }
+
+    /**
+     * Gets the amount without allocating.
+     * @return The amount in minor units.
+     * @throws IllegalArgumentException If the amount is invalid.
+     */
+    public long getAmountMinorUnits() {
+        return MT940Amount.parseMinorUnits(text, amountStart, amountEnd);
+    }
+
+    /**
+     * Compares the transaction type ID code without allocating.
+     * @param transactionTypeIDCode The code to compare with, e.g. {@code NMSC}.
+     * @return {@code true} if the line has this transaction type ID code.
+     */
+    public boolean isTransactionTypeIDCode(String transactionTypeIDCode) {
+        return regionMatches(typeStart, typeStart + 4, transactionTypeIDCode);
+    }
+
+    /**
+     * Compares the customer reference without allocating.
+     * @param customerReference The reference to compare with, e.g. {@code NONREF}.
+     * @return {@code true} if the line has this customer reference.
+     */
+    public boolean isCustomerReference(String customerReference) {
+        return regionMatches(typeStart + 4, customerReferenceEnd, customerReference);
+    }
+
+    /**
+     * Gets the entry date.
+     * @return The entry date in the format MMDD, or {@code null} if absent.
+     */
+    public String getEntryDate() {
+        return entryDateStart < 0 ? null : substring(entryDateStart, entryDateStart + 4);
+    }
+
+    /**
+     * Gets the funds code.
+     * @return The funds code, or {@code null} if absent.
+     */
+    public String getFundsCode() {
+        return fundsCodeStart < 0 ? null : substring(fundsCodeStart, fundsCodeStart + 1);
+    }
+
+    /**
+     * Gets the amount as written in the message.
+     * @return The transaction amount.
+     */
+    public String getAmount() {
+        return substring(amountStart, amountEnd);
+    }
+
+    /**
+     * Gets the transaction type ID code.
+     * @return The transaction type ID code.
+     */
+    public String getTransactionTypeIDCode() {
+        return substring(typeStart, typeStart + 4);
+    }
+
+    /**
+     * Gets the customer reference.
+     * @return The customer reference.
+     */
+    public String getCustomerReference() {
+        return substring(typeStart + 4, customerReferenceEnd);
+    }
+
+    /**
+     * Gets the bank reference.
+     * @return The bank reference, or {@code null} if absent.
+     */
+    public String getBankReference() {
+        return bankReferenceStart < 0 ? null : substring(bankReferenceStart, bankReferenceEnd);
+    }
+
+    /**
+     * Gets the supplementary details.
+     * @return The supplementary details, or {@code null} if absent.
+     */
+    public String getSupplementaryDetails() {
+        return supplementaryDetailsStart < 0 ? null : substring(supplementaryDetailsStart, supplementaryDetailsEnd);
+    }
+
+    /**
+     * Checks the viewed line against the {@link MT940Tag61} field formats without allocating.
+     * @return The message {@link MT940Tag61} would throw for the first invalid field, or {@code null} if the line is valid.
+     */
+    String validationError() {
+        // The mark is C, D, RC or RD once reset() accepted the line
+        if (fundsCodeStart >= 0 && !MT940Validation.isSwiftText(text, fundsCodeStart, fundsCodeStart + 1, 1)) {
+            return "Invalid funds code";
+        }
+        if (!MT940Validation.isStatementLineAmount(text, amountStart, amountEnd)) {
+            return "Invalid amount format";
+        }
+        if (!MT940Validation.isTransactionTypeIDCode(text, typeStart, typeStart + 4)) {
+            return "Invalid transaction type ID code";
+        }
+        if (!MT940Validation.isSwiftText(text, typeStart + 4, customerReferenceEnd, 16)) {
+            return "Invalid customer reference";
+        }
+        if (bankReferenceStart >= 0 && !MT940Validation.isSwiftText(text, bankReferenceStart, bankReferenceEnd, 16)) {
+            return "Invalid bank reference";
+        }
+        if (supplementaryDetailsStart >= 0
+                && !MT940Validation.isSwiftText(text, supplementaryDetailsStart, supplementaryDetailsEnd, 34)) {
+            return "Invalid supplementary details";
+        }
+        return null;
+    }
+
+    /**
+     * Creates a validated {@link MT940Tag61} from the viewed line.
+     * @return The statement line.
+     * @throws IllegalArgumentException If a field is invalid.
+     */
+    public MT940Tag61 toTag61() {
+        return toTag61(MT940Message.getCanonicalizer());
+    }
+
+    /**
+     * Creates a validated {@link MT940Tag61}, sharing the values that repeat across lines (dates, codes,
+     * customer references and supplementary details) through the canonicalizer. Amounts and bank
+     * references are mostly unique and are always copied.
+     */
+    MT940Tag61 toTag61(MT940Canonicalizer canonicalizer) {
+        MT940Tag61 transaction = new MT940Tag61();
+        transaction.setValueDate(string(canonicalizer, valueDateStart, valueDateStart + 6));
+        transaction.setEntryDate(entryDateStart < 0 ? null : string(canonicalizer, entryDateStart, entryDateStart + 4));
+        transaction.setDebitCreditMark(getDebitCreditMark());
+        transaction.setFundsCode(fundsCodeStart < 0 ? null : string(canonicalizer, fundsCodeStart, fundsCodeStart + 1));
+        transaction.setAmount(getAmount());
+        transaction.setTransactionTypeIDCode(string(canonicalizer, typeStart, typeStart + 4));
+        transaction.setCustomerReference(string(canonicalizer, typeStart + 4, customerReferenceEnd));
+        transaction.setBankReference(getBankReference());
+        transaction.setSupplementaryDetails(supplementaryDetailsStart < 0 ? null
+                : string(canonicalizer, supplementaryDetailsStart, supplementaryDetailsEnd));
+        return transaction;
+    }
+
+    private boolean digits(int start, int count, int end) {
+        if (start + count > end) {
+            return false;
+        }
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int start, int end, String value) {
+        if (value == null || value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String substring(int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    private String string(MT940Canonicalizer canonicalizer, int start, int end) {
+        return canonicalizer != null ? canonicalizer.canonicalize(text, start, end) : substring(start, end);
+    }
+}
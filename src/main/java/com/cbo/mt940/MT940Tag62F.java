@@ -1,13 +1,12 @@
 package com.cbo.mt940;
 
-import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.regex.Pattern;
 
 public class MT940Tag62F {
     private String debitCreditMark;
+    private String valueDateText;
     private Date valueDate;
     private String currency;
     private String amount;
@@ -27,7 +26,8 @@ public class MT940Tag62F {
         validateCurrency(currency);
         validateAmount(amount);
         this.debitCreditMark = debitCreditMark;
-        this.valueDate = parseValueDate(valueDate);
+        this.valueDateText = valueDate;
+        this.valueDate = null;
         this.currency = currency;
         this.amount = parseAmount(amount);
     }
@@ -47,6 +47,10 @@ public class MT940Tag62F {
      * @return The Value Date.
      */
     public Date getValueDate() {
+        // Parsed on demand: formatting the tag only needs the validated text
+        if (valueDate == null && valueDateText != null) {
+            valueDate = parseValueDate(valueDateText);
+        }
         return valueDate;
     }
 
@@ -76,7 +80,7 @@ public class MT940Tag62F {
      * @throws IllegalArgumentException If the Debit/Credit Mark is invalid.
      */
     private void validateDebitCreditMark(String debitCreditMark) {
-        if (debitCreditMark == null || !Pattern.matches("[CD]{1}", debitCreditMark)) {
+        if (debitCreditMark == null || !MT940Validation.isBalanceDebitCreditMark(debitCreditMark)) {
             throw new IllegalArgumentException("Invalid Debit/Credit Mark for Tag 62F");
         }
     }
@@ -89,8 +93,7 @@ public class MT940Tag62F {
      * @throws IllegalArgumentException If the Value Date is invalid.
      */
     private void validateValueDate(String valueDate) {
-        String pattern = "\\d{6}";
-        if (valueDate == null || !Pattern.matches(pattern, valueDate)) {
+        if (!MT940Validation.isDate(valueDate)) {
             throw new IllegalArgumentException("Invalid Value Date for Tag 62F");
         }
     }
@@ -120,7 +123,7 @@ public class MT940Tag62F {
      * @throws IllegalArgumentException If the Currency is invalid.
      */
     private void validateCurrency(String currency) {
-        if (currency == null || !Pattern.matches("[A-Z]{3}", currency)) {
+        if (currency == null || !MT940Validation.isCurrency(currency)) {
             throw new IllegalArgumentException("Invalid Currency for Tag 62F");
         }
     }
@@ -133,8 +136,7 @@ public class MT940Tag62F {
      * @throws IllegalArgumentException If the Amount is invalid.
      */
     private void validateAmount(String amount) {
-        String pattern = "\\d{1,15}(,\\d{2})?";
-        if (amount == null || !Pattern.matches(pattern, amount)) {
+        if (!MT940Validation.isBalanceAmount(amount)) {
             throw new IllegalArgumentException("Invalid Amount for Tag 62F");
         }
     }
@@ -148,14 +150,8 @@ public class MT940Tag62F {
      */
     private String parseAmount(String amount) {
         try {
-
-            DecimalFormat decimalFormat = new DecimalFormat("#,##0.00");
-            decimalFormat.setParseBigDecimal(true);
-            double parsedValue = decimalFormat.parse(amount).doubleValue();
-
-            // Remove commas and replace dots with commas
-            return decimalFormat.format(parsedValue).replace(",", "").replace(".", ",");
-        } catch (ParseException e) {
+            return MT940Amount.format(MT940Amount.parseMinorUnits(amount));
+        } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Invalid Amount for Tag 62F");
         }
     }
@@ -169,8 +165,7 @@ public class MT940Tag62F {
      */
     @Override
     public String toString() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyMMdd");
-        return String.format(":62F:%s%s%s%s\n", debitCreditMark, dateFormat.format(valueDate), currency, amount);
+        return ":62F:" + debitCreditMark + valueDateText + currency + amount + "\n";
     }
 
 }
@@ -0,0 +1,44 @@
+package com.cbo.mt940;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-per-task executors for blocking I/O. Tasks run on daemon platform threads with a small stack, so
+ * thousands of mostly idle connections stay cheap. The project targets Java 17 and the threads are created
+ * directly rather than through a reflective lookup of the Java 21 virtual thread builder, which keeps the
+ * library usable in a GraalVM native image without reflection configuration.
+ */
+final class MT940Threads {
+
+    // Serving a connection or driving a load client needs far less than the default stack
+    private static final long STACK_SIZE = 256 * 1024;
+
+    private MT940Threads() {
+    }
+
+    /**
+     * Creates an executor that starts a new thread for every task.
+     *
+     * @param name The thread name prefix.
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        return Executors.newCachedThreadPool(factory(name));
+    }
+
+    /**
+     * Creates a factory producing numbered daemon threads with a small stack.
+     *
+     * @param name The thread name prefix.
+     */
+    static ThreadFactory factory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, name + "-" + counter.incrementAndGet(), STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,223 @@
+package com.cbo.mt940;
+
+/**
+ * Hand-written field checks shared by the setters and the parser. Each check accepts exactly what the
+ * documented field format allows, works on character ranges and never allocates or throws, so the
+ * parser can validate fields before materializing them.
+ */
+final class MT940Validation {
+
+    private MT940Validation() {
+    }
+
+    /**
+     * Tag 20: {@code \d{8}-\d{3}}.
+     */
+    static boolean isTransactionReferenceNumber(CharSequence value) {
+        return value != null && value.length() == 12 && isDigits(value, 0, 8) && value.charAt(8) == '-'
+                && isDigits(value, 9, 12);
+    }
+
+    /**
+     * Tag 25: {@code [A-Z0-9]{1,35}}.
+     */
+    static boolean isAccountIdentification(CharSequence value) {
+        if (value == null || value.length() < 1 || value.length() > 35) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tag 28C: {@code \d{1,5}/\d{1,5}}.
+     */
+    static boolean isStatementNumberSequenceNumber(CharSequence value) {
+        if (value == null) {
+            return false;
+        }
+        int slash = -1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '/') {
+                slash = i;
+                break;
+            }
+        }
+        return slash >= 1 && slash <= 5 && isDigits(value, 0, slash)
+                && value.length() - slash - 1 >= 1 && value.length() - slash - 1 <= 5
+                && isDigits(value, slash + 1, value.length());
+    }
+
+    /**
+     * Tag 61 Debit/Credit Mark: {@code [CD]{1,2}}, or the reversal marks {@code RC} and {@code RD}.
+     */
+    static boolean isDebitCreditMark(CharSequence value) {
+        if (value == null || value.length() < 1 || value.length() > 2) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != 'C' && c != 'D' && !(c == 'R' && i == 0 && value.length() == 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tag 61 amount: {@code \d{1,15},\d{2}}.
+     */
+    static boolean isStatementLineAmount(CharSequence value, int start, int end) {
+        int comma = end - 3;
+        return comma > start && comma - start <= 15 && value.charAt(comma) == ','
+                && isDigits(value, start, comma) && isDigits(value, comma + 1, end);
+    }
+
+    /**
+     * Tag 61 transaction type ID code: {@code [NF][A-Z]{3}}.
+     */
+    static boolean isTransactionTypeIDCode(CharSequence value, int start, int end) {
+        if (end - start != 4 || (value.charAt(start) != 'N' && value.charAt(start) != 'F')) {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tag 61 references and details: 1 to {@code maxLength} characters of the SWIFT X character subset
+     * {@code [A-Za-z0-9 .,()/'+:?{}]}.
+     */
+    static boolean isSwiftText(CharSequence value, int start, int end, int maxLength) {
+        if (end - start < 1 || end - start > maxLength) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'A' && c <= 'Z') && !(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')
+                    && " .,()/'+:?{}".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Balance Debit/Credit Mark: {@code [CD]}.
+     */
+    static boolean isBalanceDebitCreditMark(CharSequence value) {
+        return value != null && value.length() == 1 && (value.charAt(0) == 'C' || value.charAt(0) == 'D');
+    }
+
+    /**
+     * Balance date: a YYMMDD date that exists in the calendar.
+     */
+    static boolean isDate(CharSequence value) {
+        if (value == null || value.length() != 6 || !isDigits(value, 0, 6)) {
+            return false;
+        }
+        return isDate((value.charAt(0) - '0') * 100000 + (value.charAt(1) - '0') * 10000
+                + (value.charAt(2) - '0') * 1000 + (value.charAt(3) - '0') * 100
+                + (value.charAt(4) - '0') * 10 + (value.charAt(5) - '0'));
+    }
+
+    /**
+     * Balance date as an int, e.g. {@code 231115}: a YYMMDD date that exists in the calendar.
+     */
+    static boolean isDate(int yymmdd) {
+        if (yymmdd < 0 || yymmdd > 991231) {
+            return false;
+        }
+        int year = yymmdd / 10000;
+        int month = yymmdd / 100 % 100;
+        int day = yymmdd % 100;
+        if (month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        // Two-digit years map to 1946..2045, where every year divisible by 4 is a leap year
+        int days = month == 2 ? (year % 4 == 0 ? 29 : 28)
+                : (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+        return day <= days;
+    }
+
+    /**
+     * Balance currency: {@code [A-Z]{3}}.
+     */
+    static boolean isCurrency(CharSequence value) {
+        if (value == null || value.length() != 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = value.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Balance amount: {@code \d{1,15}(,\d{2})?}.
+     */
+    static boolean isBalanceAmount(CharSequence value) {
+        return value != null && isBalanceAmount(value, 0, value.length());
+    }
+
+    /**
+     * Balance amount between {@code start} and {@code end}: {@code \d{1,15}(,\d{2})?}.
+     */
+    static boolean isBalanceAmount(CharSequence value, int start, int end) {
+        if (end - start > 3 && value.charAt(end - 3) == ',') {
+            return isDigits(value, end - 2, end) && end - 3 - start <= 15 && isDigits(value, start, end - 3);
+        }
+        return end - start >= 1 && end - start <= 15 && isDigits(value, start, end);
+    }
+
+    /**
+     * MT942 Tag 13D: {@code YYMMDDHHMM[+-]HHMM}, a calendar date, a time of day and a UTC offset of at
+     * most 14 hours.
+     */
+    static boolean isDateTimeIndication(CharSequence value, int start, int end) {
+        if (end - start != 15 || !isDigits(value, start, start + 10) || !isDigits(value, start + 11, end)) {
+            return false;
+        }
+        char sign = value.charAt(start + 10);
+        return (sign == '+' || sign == '-') && isDate(MT940Amount.parseDate(value, start))
+                && twoDigits(value, start + 6) < 24 && twoDigits(value, start + 8) < 60
+                && twoDigits(value, start + 11) <= 14 && twoDigits(value, start + 13) < 60;
+    }
+
+    /**
+     * MT942 Tags 90D and 90C number of entries: {@code \d{1,5}}.
+     */
+    static boolean isEntryCount(CharSequence value, int start, int end) {
+        return end - start <= 5 && isDigits(value, start, end);
+    }
+
+    private static int twoDigits(CharSequence value, int start) {
+        return (value.charAt(start) - '0') * 10 + value.charAt(start + 1) - '0';
+    }
+
+    static boolean isDigits(CharSequence value, int start, int end) {
+        if (end <= start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
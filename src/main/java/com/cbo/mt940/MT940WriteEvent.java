@@ -0,0 +1,38 @@
+package com.cbo.mt940;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted when an MT940 message is formatted with
+ * {@link MT940Message#toString()} or written by {@link MT940FileWriter}.
+ * <p>
+ * Disabled by default; enable it in a recording with {@code com.cbo.mt940.Write#enabled=true}.
+ */
+@Name("com.cbo.mt940.Write")
+@Label("MT940 Write")
+@Description("Formatting or writing of one MT940 message")
+@Category({"MT940"})
+@Enabled(false)
+@StackTrace(false)
+class MT940WriteEvent extends jdk.jfr.Event {
+
+    @Label("Message Size")
+    @DataAmount(DataAmount.BYTES)
+    int messageSize;
+
+    @Label("Statement Lines")
+    int lineCount;
+
+    @Label("Account Identification")
+    String accountIdentification;
+
+    @Label("Destination")
+    @Description("The file written to, or null when the message was only formatted")
+    String destination;
+}
@@ -0,0 +1,439 @@
+package com.cbo.mt940;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MT942 Interim Transaction Report, the intraday sibling of {@link MT940Message}.
+ * <p>
+ * It shares Tags 20, 25, 28C and the {@link MT940Tag61} statement lines with MT940, and replaces the
+ * balances with the Tag 34F floor limits, the Tag 13D date-time indication and the optional Tag 90D and
+ * 90C number and sum of debit and credit entries. Messages are parsed by the same single-pass scanner
+ * as MT940; the 90D/90C totals are checked against the statement lines while the message is scanned.
+ */
+public class MT942Message {
+
+    private MT940Header header;
+    private String transactionReferenceNumber;
+    private String relatedReference;
+    private String accountIdentification;
+    private String statementNumber;
+    private String sequenceNumber;
+    private String currency;
+    private long debitFloorLimit;
+    private long creditFloorLimit;
+    private boolean separateFloorLimits;
+    private String dateTimeIndication;
+    private final List<MT940Tag61> statementLines = new ArrayList<>();
+    private int debitEntryCount = -1;
+    private long debitEntrySum;
+    private int creditEntryCount = -1;
+    private long creditEntrySum;
+    private String trailer;
+
+    /**
+     * Sets the Header. Blocks 1, 2 and 3 are parsed into an {@link MT940Header}.
+     *
+     * @param header The header from {@code {1:} up to and including {@code {4:}, or {@code null}.
+     */
+    public void setHeader(String header) {
+        this.header = header == null ? null : MT940Header.parse(header);
+    }
+
+    /**
+     * Sets the parsed Header.
+     *
+     * @param header The header, or {@code null}.
+     */
+    public void setHeaderBlocks(MT940Header header) {
+        this.header = header;
+    }
+
+    /**
+     * Sets the Transaction Reference Number for Tag 20.
+     *
+     * @param transactionReferenceNumber The Transaction Reference Number to set.
+     * @throws IllegalArgumentException If the provided Transaction Reference Number is invalid.
+     */
+    public void setTransactionReferenceNumber(String transactionReferenceNumber) {
+        validateField("20", MT940Validation.isTransactionReferenceNumber(transactionReferenceNumber));
+        this.transactionReferenceNumber = transactionReferenceNumber;
+    }
+
+    /**
+     * Sets the Related Reference for the optional Tag 21.
+     *
+     * @param relatedReference The reference (up to 16 SWIFT characters), or {@code null}.
+     * @throws IllegalArgumentException If the provided reference is invalid.
+     */
+    public void setRelatedReference(String relatedReference) {
+        validateField("21", relatedReference == null
+                || MT940Validation.isSwiftText(relatedReference, 0, relatedReference.length(), 16));
+        this.relatedReference = relatedReference;
+    }
+
+    /**
+     * Sets the Account Identification for Tag 25.
+     *
+     * @param accountIdentification The Account Identification to set.
+     * @throws IllegalArgumentException If the provided Account Identification is invalid.
+     */
+    public void setAccountIdentification(String accountIdentification) {
+        validateField("25", MT940Validation.isAccountIdentification(accountIdentification));
+        this.accountIdentification = accountIdentification;
+    }
+
+    /**
+     * Sets the Statement Number / Sequence Number for Tag 28C.
+     *
+     * @param statementNumberSequenceNumber The value, e.g. {@code 1/1}.
+     * @throws IllegalArgumentException If the provided value is invalid.
+     */
+    public void setStatementNumberSequenceNumber(String statementNumberSequenceNumber) {
+        validateField("28C", MT940Validation.isStatementNumberSequenceNumber(statementNumberSequenceNumber));
+        int slash = statementNumberSequenceNumber.indexOf('/');
+        this.statementNumber = statementNumberSequenceNumber.substring(0, slash);
+        this.sequenceNumber = statementNumberSequenceNumber.substring(slash + 1);
+    }
+
+    /**
+     * Sets one Tag 34F floor limit that applies to debit and credit entries.
+     *
+     * @param currency The Currency (ISO currency code).
+     * @param amount   The floor limit (with comma as decimal separator).
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setFloorLimit(String currency, String amount) {
+        setFloorLimits(currency, amount, amount);
+        this.separateFloorLimits = false;
+    }
+
+    /**
+     * Sets separate Tag 34F floor limits for debit and credit entries.
+     *
+     * @param currency     The Currency (ISO currency code).
+     * @param debitAmount  The debit floor limit.
+     * @param creditAmount The credit floor limit.
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setFloorLimits(String currency, String debitAmount, String creditAmount) {
+        validateField("34F", MT940Validation.isCurrency(currency) && MT940Validation.isBalanceAmount(debitAmount)
+                && MT940Validation.isBalanceAmount(creditAmount));
+        // The entry totals are in the same currency
+        validateField("34F", this.currency == null || this.currency.equals(currency)
+                || debitEntryCount < 0 && creditEntryCount < 0);
+        this.currency = currency;
+        this.debitFloorLimit = MT940Amount.parseMinorUnits(debitAmount);
+        this.creditFloorLimit = MT940Amount.parseMinorUnits(creditAmount);
+        this.separateFloorLimits = true;
+    }
+
+    /**
+     * Sets the Date/Time Indication for Tag 13D.
+     *
+     * @param dateTimeIndication The value in the format YYMMDDHHMM followed by the UTC offset, e.g. {@code 2311151430+0300}.
+     * @throws IllegalArgumentException If the provided value is invalid.
+     */
+    public void setDateTimeIndication(String dateTimeIndication) {
+        validateField("13D", dateTimeIndication != null
+                && MT940Validation.isDateTimeIndication(dateTimeIndication, 0, dateTimeIndication.length()));
+        this.dateTimeIndication = dateTimeIndication;
+    }
+
+    /**
+     * Adds an already validated Statement Line for Tag 61.
+     *
+     * @param statementLine The statement line to add.
+     * @throws IllegalArgumentException If the statement line is null.
+     */
+    public void addStatementLine(MT940Tag61 statementLine) {
+        if (statementLine == null) {
+            throw new IllegalArgumentException("Statement line cannot be null");
+        }
+        statementLines.add(statementLine);
+    }
+
+    /**
+     * Sets the Number and Sum of Debit Entries for Tag 90D.
+     *
+     * @param count    The number of debit entries.
+     * @param currency The Currency, the one of the floor limit.
+     * @param amount   The sum of the debit entries.
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setDebitEntries(int count, String currency, String amount) {
+        checkEntries("90D", count, currency, amount);
+        this.currency = currency;
+        this.debitEntryCount = count;
+        this.debitEntrySum = MT940Amount.parseMinorUnits(amount);
+    }
+
+    /**
+     * Sets the Number and Sum of Credit Entries for Tag 90C.
+     *
+     * @param count    The number of credit entries.
+     * @param currency The Currency, the one of the floor limit.
+     * @param amount   The sum of the credit entries.
+     * @throws IllegalArgumentException If the provided parameters are invalid.
+     */
+    public void setCreditEntries(int count, String currency, String amount) {
+        checkEntries("90C", count, currency, amount);
+        this.currency = currency;
+        this.creditEntryCount = count;
+        this.creditEntrySum = MT940Amount.parseMinorUnits(amount);
+    }
+
+    public void setTrailer(String trailer) {
+        this.trailer = trailer;
+    }
+
+    public String getHeader() {
+        return header == null ? null : header.toString();
+    }
+
+    public MT940Header getHeaderBlocks() {
+        return header;
+    }
+
+    public String getTransactionReferenceNumber() {
+        return transactionReferenceNumber;
+    }
+
+    /**
+     * @return The Tag 21 Related Reference, or {@code null} if absent.
+     */
+    public String getRelatedReference() {
+        return relatedReference;
+    }
+
+    public String getAccountIdentification() {
+        return accountIdentification;
+    }
+
+    public String getStatementNumber() {
+        return statementNumber;
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public String getStatementNumberSequenceNumber() {
+        return statementNumber == null ? null : statementNumber + "/" + sequenceNumber;
+    }
+
+    /**
+     * @return The currency of the floor limits and the entry totals.
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return The debit floor limit in minor units.
+     */
+    public long getDebitFloorLimitMinorUnits() {
+        return debitFloorLimit;
+    }
+
+    /**
+     * @return The credit floor limit in minor units.
+     */
+    public long getCreditFloorLimitMinorUnits() {
+        return creditFloorLimit;
+    }
+
+    /**
+     * @return Whether debit and credit floor limits were given in two Tag 34F fields.
+     */
+    public boolean hasSeparateFloorLimits() {
+        return separateFloorLimits;
+    }
+
+    public String getDateTimeIndication() {
+        return dateTimeIndication;
+    }
+
+    public List<MT940Tag61> getStatementLines() {
+        return Collections.unmodifiableList(statementLines);
+    }
+
+    /**
+     * Estimates the heap the message retains, like {@link MT940Message#estimateRetainedBytes(int, int)}
+     * from the header and statement lines, which make up nearly all of an interim report.
+     */
+    long estimateRetainedBytes() {
+        int length = header != null ? header.length() : 0;
+        for (MT940Tag61 line : statementLines) {
+            length += line.getEncodedLength();
+        }
+        return MT940Message.estimateRetainedBytes(length, statementLines.size());
+    }
+
+    /**
+     * @return The Tag 90D number of debit entries, or -1 if absent.
+     */
+    public int getDebitEntryCount() {
+        return debitEntryCount;
+    }
+
+    /**
+     * @return The Tag 90D sum of debit entries in minor units, 0 if absent.
+     */
+    public long getDebitEntrySumMinorUnits() {
+        return debitEntrySum;
+    }
+
+    /**
+     * @return The Tag 90C number of credit entries, or -1 if absent.
+     */
+    public int getCreditEntryCount() {
+        return creditEntryCount;
+    }
+
+    /**
+     * @return The Tag 90C sum of credit entries in minor units, 0 if absent.
+     */
+    public long getCreditEntrySumMinorUnits() {
+        return creditEntrySum;
+    }
+
+    public String getTrailer() {
+        return trailer;
+    }
+
+    /**
+     * Checks the Tag 90D and 90C totals, where present, against the statement lines. Debits are D and RC
+     * lines, credits C and RD lines.
+     *
+     * @return {@code true} if every total present matches the lines.
+     */
+    public boolean isReconciled() {
+        int debits = 0;
+        int credits = 0;
+        long debitSum = 0;
+        long creditSum = 0;
+        for (MT940Tag61 line : statementLines) {
+            long amount = MT940Amount.parseMinorUnits(line.getAmount());
+            if (MT940Amount.isDebit(line.getDebitCreditMark())) {
+                debits++;
+                debitSum += amount;
+            } else {
+                credits++;
+                creditSum += amount;
+            }
+        }
+        return (debitEntryCount < 0 || debitEntryCount == debits && debitEntrySum == debitSum)
+                && (creditEntryCount < 0 || creditEntryCount == credits && creditEntrySum == creditSum);
+    }
+
+    /**
+     * Parses an MT942 message from the provided string.
+     *
+     * @param mt942String The MT942 message string to parse.
+     * @return The parsed MT942 message.
+     * @throws IllegalArgumentException If the provided MT942 string is invalid or its 90D/90C totals do
+     *                                  not match the statement lines.
+     */
+    public static MT942Message parseMT942Message(String mt942String) {
+        if (mt942String == null) {
+            throw new IllegalArgumentException("Missing or invalid Header in the MT942 message");
+        }
+        return new MT942MessageAssembler().assemble(mt942String, 0, mt942String.length());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256 + 64 * statementLines.size());
+        sb.append(header).append('\n');
+        appendField(sb, "20", transactionReferenceNumber);
+        appendField(sb, "21", relatedReference);
+        appendField(sb, "25", accountIdentification);
+        appendField(sb, "28C", getStatementNumberSequenceNumber());
+        if (currency != null) {
+            if (separateFloorLimits) {
+                appendFloorLimit(sb, "D", debitFloorLimit);
+                appendFloorLimit(sb, "C", creditFloorLimit);
+            } else {
+                appendFloorLimit(sb, "", debitFloorLimit);
+            }
+        }
+        appendField(sb, "13D", dateTimeIndication);
+        for (MT940Tag61 statementLine : statementLines) {
+            sb.append(statementLine);
+        }
+        if (debitEntryCount >= 0) {
+            appendEntries(sb, "90D", debitEntryCount, debitEntrySum);
+        }
+        if (creditEntryCount >= 0) {
+            appendEntries(sb, "90C", creditEntryCount, creditEntrySum);
+        }
+        return sb.append(trailer).toString();
+    }
+
+    // Fields already validated by the parser, see MT942MessageAssembler
+    void setValidated(String statementNumber, String sequenceNumber) {
+        this.statementNumber = statementNumber;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    void setFloorLimitValidated(String currency, char mark, long amount) {
+        this.currency = currency;
+        if (mark != 'C') {
+            this.debitFloorLimit = amount;
+        }
+        if (mark != 'D') {
+            this.creditFloorLimit = amount;
+        }
+        this.separateFloorLimits = mark != 0;
+    }
+
+    void setEntriesValidated(boolean debit, int count, long sum) {
+        if (debit) {
+            this.debitEntryCount = count;
+            this.debitEntrySum = sum;
+        } else {
+            this.creditEntryCount = count;
+            this.creditEntrySum = sum;
+        }
+    }
+
+    void setRelatedReferenceValidated(String relatedReference) {
+        this.relatedReference = relatedReference;
+    }
+
+    void setDateTimeIndicationValidated(String dateTimeIndication) {
+        this.dateTimeIndication = dateTimeIndication;
+    }
+
+    private void checkEntries(String tag, int count, String currency, String amount) {
+        validateField(tag, count >= 0 && count <= 99999 && MT940Validation.isCurrency(currency)
+                && (this.currency == null || this.currency.equals(currency))
+                && MT940Validation.isBalanceAmount(amount));
+    }
+
+    private void appendFloorLimit(StringBuilder sb, String mark, long amount) {
+        sb.append(":34F:").append(currency).append(mark);
+        MT940Amount.appendTo(sb, amount);
+        sb.append('\n');
+    }
+
+    private void appendEntries(StringBuilder sb, String tag, int count, long sum) {
+        sb.append(':').append(tag).append(':').append(count).append(currency);
+        MT940Amount.appendTo(sb, sum);
+        sb.append('\n');
+    }
+
+    private static void appendField(StringBuilder sb, String tag, String value) {
+        if (value != null) {
+            sb.append(':').append(tag).append(':').append(value).append('\n');
+        }
+    }
+
+    private static void validateField(String tag, boolean valid) {
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid " + tag + " value");
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cbo.mt940;
+
+import java.util.function.Predicate;
+
+/**
+ * Builds an {@link MT942Message} from the tokens reported by {@link MT940Scanner}, the MT942 counterpart
+ * of {@link MT940MessageAssembler}. Fields are checked with {@link MT940Validation} on their character
+ * ranges before anything is materialized, statement lines go through the shared {@link MT940Tag61View},
+ * and the count and sum of debit and credit lines are kept as the lines are scanned, so the Tag 90D and
+ * 90C totals are checked when they are reached without a second pass.
+ */
+final class MT942MessageAssembler implements MT940Scanner.Handler, MT940ParseInstrumentation.Assembly<MT942Message> {
+
+    private final MT940Tag61View view = new MT940Tag61View();
+    private Predicate<String> accountFilter;
+    private Predicate<MT940Tag61View> statementLineFilter;
+    private MT940Canonicalizer canonicalizer = MT940Message.getCanonicalizer();
+    private MT940Metrics metrics = MT940Metrics.NONE;
+    private long skippedStatementLines;
+
+    private MT942Message message;
+    private boolean rejected;
+    private boolean hasTag20;
+    private boolean hasTag25;
+    private boolean hasTag28C;
+    private boolean hasTag13D;
+    private boolean trailer;
+    private int floorLimits;
+    private int debitLines;
+    private int creditLines;
+    private long debitSum;
+    private long creditSum;
+
+    void setAccountFilter(Predicate<String> accountFilter) {
+        this.accountFilter = accountFilter;
+    }
+
+    void setStatementLineFilter(Predicate<MT940Tag61View> statementLineFilter) {
+        this.statementLineFilter = statementLineFilter;
+    }
+
+    void setCanonicalizer(MT940Canonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    void setMetrics(MT940Metrics metrics) {
+        this.metrics = metrics == null ? MT940Metrics.NONE : metrics;
+    }
+
+    long getSkippedStatementLines() {
+        return skippedStatementLines;
+    }
+
+    /**
+     * Assembles the message found between {@code start} and {@code end}.
+     *
+     * @return The message, or {@code null} if its account was rejected by the account filter.
+     * @throws IllegalArgumentException If the message is invalid or its totals do not match its lines.
+     */
+    MT942Message assemble(CharSequence text, int start, int end) {
+        return MT940ParseInstrumentation.assemble(this, metrics, text, start, end);
+    }
+
+    @Override
+    public MT942Message assembleMessage(CharSequence text, int start, int end) {
+        message = new MT942Message();
+        rejected = false;
+        hasTag20 = hasTag25 = hasTag28C = hasTag13D = trailer = false;
+        floorLimits = debitLines = creditLines = 0;
+        debitSum = creditSum = 0;
+        MT940Scanner.scan(text, start, end, this);
+        if (rejected) {
+            return null;
+        }
+        requireTag(hasTag20, "20");
+        requireTag(hasTag25, "25");
+        requireTag(hasTag28C, "28C");
+        // A D floor limit needs its C counterpart
+        requireTag(floorLimits == 1 && !message.hasSeparateFloorLimits() || floorLimits == 2, "34F");
+        requireTag(hasTag13D, "13D");
+        if (!trailer) {
+            throw new IllegalArgumentException("Missing or invalid trailer in the MT942 message");
+        }
+        return message;
+    }
+
+    @Override
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    @Override
+    public int lineCount(MT942Message message) {
+        return message.getStatementLines().size();
+    }
+
+    @Override
+    public String accountIdentification(MT942Message message) {
+        return message.getAccountIdentification();
+    }
+
+    @Override
+    public void header(CharSequence text, int start, int end) {
+        message.setHeaderBlocks(MT940Header.parse(text, start, end, canonicalizer));
+    }
+
+    @Override
+    public boolean field(String tag, CharSequence text, int start, int end) {
+        switch (tag) {
+            case "20":
+                hasTag20 = true;
+                message.setTransactionReferenceNumber(text.subSequence(start, end).toString());
+                break;
+            case "21":
+                check(MT940Validation.isSwiftText(text, start, end, 16), tag);
+                message.setRelatedReferenceValidated(string(text, start, end));
+                break;
+            case "25":
+                hasTag25 = true;
+                String accountIdentification = string(text, start, end);
+                if (accountFilter != null && !accountFilter.test(accountIdentification)) {
+                    rejected = true;
+                    return false;
+                }
+                message.setAccountIdentification(accountIdentification);
+                break;
+            case "28C":
+                hasTag28C = true;
+                check(MT940Validation.isStatementNumberSequenceNumber(text.subSequence(start, end)), tag);
+                int slash = MT940Scanner.indexOf(text, "/", start, end);
+                message.setValidated(string(text, start, slash), string(text, slash + 1, end));
+                break;
+            case "34F":
+                floorLimit(text, start, end);
+                break;
+            case "13D":
+                hasTag13D = true;
+                check(MT940Validation.isDateTimeIndication(text, start, end), tag);
+                message.setDateTimeIndicationValidated(string(text, start, end));
+                break;
+            case "61":
+                statementLine(text, start, end);
+                break;
+            case "90D":
+            case "90C":
+                entries(tag, text, start, end);
+                break;
+            default:
+                // Tags without a place in MT942Message (e.g. 86) are ignored
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public void trailer(CharSequence text, int start, int end) {
+        trailer = true;
+        message.setTrailer("-}");
+    }
+
+    @Override
+    public void malformed(MT940ErrorCode code, int position) {
+        throw new IllegalArgumentException(code.getDescription().replace("MT940", "MT942"));
+    }
+
+    // Currency, an optional D or C mark and the amount; one field for both sides, or D then C
+    private void floorLimit(CharSequence text, int start, int end) {
+        check(end - start >= 4 && MT940Validation.isCurrency(text.subSequence(start, start + 3)), "34F");
+        char mark = text.charAt(start + 3);
+        int amountStart = mark == 'D' || mark == 'C' ? start + 4 : start + 3;
+        if (amountStart == start + 3) {
+            mark = 0;
+        }
+        check(MT940Validation.isBalanceAmount(text, amountStart, end), "34F");
+        // A single field has no mark; with two fields the first is D and the second C
+        check(floorLimits == 0 ? mark != 'C' : floorLimits == 1 && mark == 'C' && message.hasSeparateFloorLimits(),
+                "34F");
+        String currency = string(text, start, start + 3);
+        check(floorLimits == 0 || currency.equals(message.getCurrency()), "34F");
+        message.setFloorLimitValidated(currency, mark, MT940Amount.parseMinorUnits(text, amountStart, end));
+        floorLimits++;
+    }
+
+    private void statementLine(CharSequence text, int start, int end) {
+        if (!view.reset(text, start, end)) {
+            throw new IllegalArgumentException("Missing or invalid Tag 61 in the MT942 message");
+        }
+        String error = view.validationError();
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        // Counted before filtering: the totals cover every line of the message
+        long amount = view.getAmountMinorUnits();
+        if (view.isDebit()) {
+            debitLines++;
+            debitSum += amount;
+        } else {
+            creditLines++;
+            creditSum += amount;
+        }
+        if (statementLineFilter != null && !statementLineFilter.test(view)) {
+            skippedStatementLines++;
+        } else {
+            message.addStatementLine(view.toTag61(canonicalizer));
+        }
+    }
+
+    // Number of entries (1 to 5 digits), currency and sum
+    private void entries(String tag, CharSequence text, int start, int end) {
+        int digits = start;
+        while (digits < end && digits - start < 6 && text.charAt(digits) >= '0' && text.charAt(digits) <= '9') {
+            digits++;
+        }
+        check(MT940Validation.isEntryCount(text, start, digits) && end - digits >= 4
+                && MT940Validation.isCurrency(text.subSequence(digits, digits + 3))
+                && MT940Validation.isBalanceAmount(text, digits + 3, end), tag);
+        check(message.getCurrency() == null || message.getCurrency().contentEquals(text.subSequence(digits, digits + 3)),
+                tag);
+        int count = Integer.parseInt(text.subSequence(start, digits).toString());
+        long sum = MT940Amount.parseMinorUnits(text, digits + 3, end);
+        boolean debit = tag.equals("90D");
+        if (debit ? count != debitLines || sum != debitSum : count != creditLines || sum != creditSum) {
+            throw new IllegalArgumentException("Tag " + tag + " does not match the statement lines");
+        }
+        message.setEntriesValidated(debit, count, sum);
+    }
+
+    private static void check(boolean valid, String tag) {
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid " + tag + " value");
+        }
+    }
+
+    private static void requireTag(boolean present, String tag) {
+        if (!present) {
+            throw new IllegalArgumentException("Missing or invalid Tag " + tag + " in the MT942 message");
+        }
+    }
+
+    private String string(CharSequence text, int start, int end) {
+        return canonicalizer != null ? canonicalizer.canonicalize(text, start, end)
+                : text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940AggregationTest {
+
+    @Test
+    void sumsDebitsAndCreditsPerAccountDayAndType() {
+        MT940Aggregation aggregation = new MT940Aggregation();
+        aggregation.add(MT940Samples.message("1022200171931", 319));
+        aggregation.add(MT940Samples.message("1022200171931", 320));
+
+        Map<String, long[]> rows = rows(aggregation);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new long[]{2, 106681600, 0, 0}, rows.get("1022200171931/231115/NMSC"));
+        assertArrayEquals(new long[]{0, 0, 2, 20100}, rows.get("1022200171931/231116/NTRF"));
+    }
+
+    @Test
+    void rollsUpDroppedDimensions() {
+        MT940Aggregation aggregation = new MT940Aggregation();
+        aggregation.add(MT940Samples.message("1022200171931", 319));
+        aggregation.add(MT940Samples.message("1022200171932", 319));
+
+        Map<String, long[]> byAccount = rows(aggregation.byAccount());
+        assertEquals(2, byAccount.size());
+        assertArrayEquals(new long[]{1, 53340800, 1, 10050}, byAccount.get("1022200171932/0/null"));
+
+        Map<String, long[]> byType = rows(aggregation.byTransactionType());
+        assertArrayEquals(new long[]{2, 106681600, 0, 0}, byType.get("null/0/NMSC"));
+    }
+
+    @Test
+    void parallelAggregationMatchesSequential() {
+        List<MT940Message> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            messages.add(MT940Samples.message("10222001719" + (i % 7), 300 + i));
+        }
+        MT940Aggregation sequential = new MT940Aggregation();
+        messages.forEach(sequential::add);
+
+        Map<String, long[]> expected = rows(sequential);
+        assertRowsEqual(expected, rows(MT940Aggregation.aggregate(messages, 4)));
+        assertRowsEqual(expected, rows(messages.parallelStream().collect(MT940Aggregation.collector())));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        MT940Aggregation aggregation = new MT940Aggregation(1);
+        for (int day = 1; day <= 28; day++) {
+            aggregation.add("1022200171931", 231100 + day, "NMSC", day % 2 == 0, day);
+        }
+        assertEquals(28, aggregation.size());
+        Map<String, long[]> rows = rows(aggregation.byAccount());
+        assertArrayEquals(new long[]{14, 210, 14, 196}, rows.get("1022200171931/0/null"));
+    }
+
+    @Test
+    void rejectsInvalidTransactionType() {
+        MT940Aggregation aggregation = new MT940Aggregation();
+        assertThrows(IllegalArgumentException.class, () -> aggregation.add("1022200171931", 231115, "nmsc", true, 1));
+        assertNull(rows(aggregation).get("1022200171931/231115/nmsc"));
+    }
+
+    private static Map<String, long[]> rows(MT940Aggregation aggregation) {
+        Map<String, long[]> rows = new HashMap<>();
+        aggregation.forEach((account, valueDate, type, debitCount, debitAmount, creditCount, creditAmount) ->
+                rows.put(account + "/" + valueDate + "/" + type,
+                        new long[]{debitCount, debitAmount, creditCount, creditAmount}));
+        return rows;
+    }
+
+    private static void assertRowsEqual(Map<String, long[]> expected, Map<String, long[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, totals) -> assertArrayEquals(totals, actual.get(key), key));
+    }
+}
@@ -0,0 +1,78 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940BalanceContinuityTest {
+
+    @Test
+    void messagesBuiltWithTag28CAsAWholeAreChecked() {
+        MT940BalanceContinuity continuity = new MT940BalanceContinuity();
+        assertTrue(continuity.update(MT940Samples.message("1022200171931", 1)));
+        assertTrue(continuity.update(continuing(MT940Samples.message("1022200171931", 2))));
+        assertFalse(continuity.update(continuing(MT940Samples.message("1022200171931", 4))));
+        assertEquals(3, continuity.getStatementCount());
+        assertEquals(0, continuity.getBalanceBreakCount());
+        assertEquals(1, continuity.getStatementNumberGapCount());
+        assertEquals(6461201_00L, continuity.getClosingBalanceMinorUnits("1022200171931"));
+    }
+
+    @Test
+    void balanceBreaksAreReported() {
+        MT940BalanceContinuity continuity = new MT940BalanceContinuity();
+        List<MT940BalanceContinuity.Break> breaks = new ArrayList<>();
+        continuity.setBreakHandler(breaks::add);
+        continuity.update(MT940Samples.message("1022200171931", 1));
+        // Opens at 6994609,00 again instead of the previous 6461201,00 close
+        assertFalse(continuity.update(MT940Samples.message("1022200171931", 2)));
+        assertEquals(1, breaks.size());
+        MT940BalanceContinuity.Break found = breaks.get(0);
+        assertEquals(MT940BalanceContinuity.Break.Kind.BALANCE, found.getKind());
+        assertEquals(6461201_00L, found.getPreviousClosingBalanceMinorUnits());
+        assertEquals(6994609_00L, found.getOpeningBalanceMinorUnits());
+        assertEquals("1/1", found.getPreviousStatementNumberSequenceNumber());
+        assertEquals("2/1", found.getStatementNumberSequenceNumber());
+    }
+
+    @Test
+    void splitPagesChainThroughIntermediateBalances() {
+        MT940Message message = MT940Message.parseMT940Message(MT940Samples.text("1022200171931", 7, 1000_00,
+                new long[]{-250_00, 125_50, -10_00, 99_99, -1_00, 50_00, -20_00, 300_00, -45_45, 5_00}));
+        List<MT940Message> pages = message.split(MT940Samples.text("1022200171931", 7, 1000_00, 1).length() + 60);
+        assertTrue(pages.size() > 1);
+        MT940BalanceContinuity continuity = new MT940BalanceContinuity(16, true);
+        for (MT940Message page : pages) {
+            assertTrue(continuity.update(page));
+        }
+        assertEquals(0, continuity.getBalanceBreakCount() + continuity.getStatementNumberGapCount());
+    }
+
+    @Test
+    void checkpointIsRestored(@TempDir Path directory) throws IOException {
+        Path checkpoint = directory.resolve("continuity.bin");
+        try (MT940BalanceContinuity continuity = new MT940BalanceContinuity(16, directory)) {
+            continuity.update(MT940Samples.message("1022200171931", 1));
+            continuity.checkpoint(checkpoint);
+        }
+        MT940BalanceContinuity restored = new MT940BalanceContinuity();
+        restored.restore(checkpoint);
+        assertTrue(restored.contains("1022200171931"));
+        assertEquals(231115, restored.getClosingBalanceDate("1022200171931"));
+        assertTrue(restored.update(continuing(MT940Samples.message("1022200171931", 2))));
+    }
+
+    // Opens where the sample message closes
+    private static MT940Message continuing(MT940Message message) {
+        message.setOpeningBalance("C", "231115", "ETB", "6461201");
+        return message;
+    }
+}
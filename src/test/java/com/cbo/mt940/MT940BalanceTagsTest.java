@@ -0,0 +1,85 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940BalanceTagsTest {
+
+    @Test
+    void baselineSampleBalancesAreUnchanged() {
+        MT940Message message = MT940Message.parseMT940Message(MT940Samples.BASELINE);
+        assertEquals(":60F:C231115ETB6994609,00\n", message.getOpeningBalance());
+        assertEquals(":62F:C231115ETB6461201,00\n", message.getClosingBalanceBookedFunds());
+        assertEquals(":64:C231115ETB6461201,00\n", message.getClosingAvailableBalance());
+    }
+
+    @Test
+    void decimalCommaIsNotAGroupingSeparator() {
+        MT940Message message = new MT940Message();
+        message.setOpeningBalance("C", "231115", "ETB", "6994609,00");
+        message.setClosingBalanceBookedFunds("C", "231115", "ETB", "6461201,05");
+        message.setClosingAvailableBalance("D", "231115", "ETB", "0,10");
+        assertEquals(":60F:C231115ETB6994609,00\n", message.getOpeningBalance());
+        assertEquals(":62F:C231115ETB6461201,05\n", message.getClosingBalanceBookedFunds());
+        assertEquals(":64:D231115ETB0,10\n", message.getClosingAvailableBalance());
+    }
+
+    @Test
+    void amountsAreNormalizedToTwoDecimals() {
+        MT940Tag60F tag60F = new MT940Tag60F();
+        tag60F.setOpeningBalance("C", "231115", "ETB", "000123");
+        assertEquals("123,00", tag60F.getAmount());
+
+        MT940Tag62F tag62F = new MT940Tag62F();
+        tag62F.setClosingBalance("C", "231115", "ETB", "999999999999999,99");
+        assertEquals("999999999999999,99", tag62F.getAmount());
+    }
+
+    @Test
+    void invalidAmountsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MT940Tag60F().setOpeningBalance("C", "231115", "ETB", "6.994.609,00"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MT940Tag64().setClosingAvailableBalance("C", "231115", "ETB", "1,5"));
+    }
+
+    @Test
+    void datesAreParsedFromTheValidatedText() {
+        MT940Tag60F tag60F = new MT940Tag60F();
+        tag60F.setOpeningBalance("C", "240229", "ETB", "1,00");
+        assertEquals(LocalDate.of(2024, 2, 29), toLocalDate(tag60F.getStatementDate()));
+        tag60F.setStatementDate("231115");
+        assertEquals(LocalDate.of(2023, 11, 15), toLocalDate(tag60F.getStatementDate()));
+        assertEquals(":60F:C231115ETB1,00\n", tag60F.toString());
+
+        MT940Tag62F tag62F = new MT940Tag62F();
+        tag62F.setClosingBalance("D", "231231", "USD", "2");
+        assertEquals(LocalDate.of(2023, 12, 31), toLocalDate(tag62F.getValueDate()));
+        assertEquals(":62F:D231231USD2,00\n", tag62F.toString());
+
+        MT940Tag64 tag64 = new MT940Tag64();
+        tag64.setClosingAvailableBalance("C", "000101", "EUR", "0,01");
+        assertEquals(LocalDate.of(2000, 1, 1), toLocalDate(tag64.getValueDate()));
+        assertEquals(":64:C000101EUR0,01\n", tag64.toString());
+    }
+
+    @Test
+    void impossibleDatesAreRejectedWhenSet() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MT940Tag60F().setOpeningBalance("C", "230229", "ETB", "1,00"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MT940Tag62F().setClosingBalance("C", "231131", "ETB", "1,00"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MT940Tag64().setClosingAvailableBalance("C", "231300", "ETB", "1,00"));
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
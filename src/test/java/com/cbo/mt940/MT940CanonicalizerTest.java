@@ -0,0 +1,73 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940CanonicalizerTest {
+
+    @Test
+    void rangesOfTextAndBytesShareOneInstance() {
+        MT940Canonicalizer canonicalizer = new MT940Canonicalizer(16, 8);
+        String first = canonicalizer.canonicalize(":25:NONREF\n", 4, 10);
+        assertEquals("NONREF", first);
+        assertSame(first, canonicalizer.canonicalize(new StringBuilder("xNONREFx"), 1, 7));
+        assertSame(first, canonicalizer.canonicalize("..NONREF".getBytes(StandardCharsets.ISO_8859_1), 2, 8));
+        assertSame(first, canonicalizer.canonicalize(new String("NONREF")));
+        assertNull(canonicalizer.canonicalize(null));
+
+        // Longer values are not kept
+        String longer = canonicalizer.canonicalize(" Transfer!", 1, 10);
+        assertNotSame(longer, canonicalizer.canonicalize(" Transfer!", 1, 10));
+
+        canonicalizer.clear();
+        assertNotSame(first, canonicalizer.canonicalize("NONREF", 0, 6));
+    }
+
+    @Test
+    void tableStaysBounded() {
+        MT940Canonicalizer canonicalizer = new MT940Canonicalizer(5, 35);
+        assertEquals(8, canonicalizer.getCapacity());
+        String kept = canonicalizer.canonicalize("ETB");
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("V" + i, canonicalizer.canonicalize("V" + i));
+        }
+        // The value was evicted, yet lookups still return an equal String
+        assertEquals(kept, canonicalizer.canonicalize("ETB", 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> new MT940Canonicalizer(0, 35));
+        assertThrows(IllegalArgumentException.class, () -> new MT940Canonicalizer(16, 0));
+    }
+
+    @Test
+    void readerSharesRepeatedFields() throws IOException {
+        String file = MT940Samples.text("1022200171931", 1, 0, 1_00, 2_00) + "\n"
+                + MT940Samples.text("1022200171931", 2, 3_00, -1_00) + "\n";
+        MT940Message first;
+        MT940Message second;
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            reader.setCanonicalizer(new MT940Canonicalizer());
+            first = reader.readMessage();
+            second = reader.readMessage();
+        }
+        assertSame(first.getAccountIdentification(), second.getAccountIdentification());
+        MT940Tag61 line = first.getStatementLines().get(0);
+        assertSame(line.getTransactionTypeIDCode(), second.getStatementLines().get(0).getTransactionTypeIDCode());
+        assertSame(line.getCustomerReference(), first.getStatementLines().get(1).getCustomerReference());
+
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            reader.setCanonicalizer(null);
+            first = reader.readMessage();
+            second = reader.readMessage();
+        }
+        assertEquals(first.getAccountIdentification(), second.getAccountIdentification());
+        assertNotSame(first.getAccountIdentification(), second.getAccountIdentification());
+    }
+}
@@ -0,0 +1,99 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940CheckpointedIngestionTest {
+
+    @Test
+    void resumesAfterTheLastCheckpoint(@TempDir Path directory) throws IOException {
+        String text = statements(1, 50);
+        Path file = Files.writeString(directory.resolve("statements.sta"), text, StandardCharsets.ISO_8859_1);
+        Path journal = directory.resolve("statements.journal");
+
+        MT940CheckpointedIngestion first = new MT940CheckpointedIngestion(journal);
+        first.setCheckpointInterval(10);
+        List<String> handled = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> first.run(file, result -> {
+            if (result.getMessage().getStatementNumberSequenceNumber().equals("25/1")) {
+                throw new IllegalStateException("Handler failed");
+            }
+            handled.add(result.getMessage().getStatementNumberSequenceNumber());
+        }));
+        assertEquals(24, handled.size());
+        assertEquals(20, first.getProcessedMessageCount());
+        assertEquals(text.indexOf("-}", text.indexOf(":28C:20/1")) + 2, first.getCheckpointOffset());
+
+        // Messages after the checkpoint are handed over again, with offsets and line numbers in the whole file
+        MT940CheckpointedIngestion second = new MT940CheckpointedIngestion(journal);
+        second.setCheckpointInterval(10);
+        List<MT940ParseResult> results = new ArrayList<>();
+        assertEquals(30, second.run(file, results::add));
+        assertEquals(first.getCheckpointOffset(), second.getResumedOffset());
+        MT940ParseResult resumed = results.get(0);
+        assertEquals("21/1", resumed.getMessage().getStatementNumberSequenceNumber());
+        assertEquals(text.lastIndexOf("{1:", text.indexOf(":28C:21/1")), resumed.getOffset());
+        assertEquals(text.substring(0, (int) resumed.getOffset()).split("\n", -1).length, resumed.getLineNumber());
+        assertEquals(50, second.getProcessedMessageCount());
+        assertEquals(text.lastIndexOf("-}") + 2, second.getCheckpointOffset());
+
+        // Nothing is left on an unchanged file; appended messages are picked up
+        assertEquals(0, new MT940CheckpointedIngestion(journal).run(file, result -> { }));
+        Files.writeString(file, statements(51, 5), StandardCharsets.ISO_8859_1, StandardOpenOption.APPEND);
+        MT940CheckpointedIngestion third = new MT940CheckpointedIngestion(journal);
+        assertEquals(5, third.run(file, result -> { }));
+        assertEquals(55, third.getProcessedMessageCount());
+    }
+
+    @Test
+    void replacedFileStartsOver(@TempDir Path directory) throws IOException {
+        Path file = Files.writeString(directory.resolve("statements.sta"), statements(1, 20), StandardCharsets.ISO_8859_1);
+        Path journal = directory.resolve("statements.journal");
+        assertEquals(20, new MT940CheckpointedIngestion(journal).run(file, result -> { }));
+
+        Files.writeString(file, statements(100, 30), StandardCharsets.ISO_8859_1);
+        MT940CheckpointedIngestion ingestion = new MT940CheckpointedIngestion(journal);
+        assertEquals(30, ingestion.run(file, result -> { }));
+        assertEquals(0, ingestion.getResumedOffset());
+    }
+
+    @Test
+    void tornCheckpointFallsBackToThePreviousOne(@TempDir Path directory) throws IOException {
+        String text = statements(1, 30);
+        Path file = Files.writeString(directory.resolve("statements.sta"), text, StandardCharsets.ISO_8859_1);
+        Path journal = directory.resolve("statements.journal");
+        MT940CheckpointedIngestion first = new MT940CheckpointedIngestion(journal);
+        first.setCheckpointInterval(10);
+        first.run(file, result -> { });
+        assertEquals(3, first.getCheckpointCount());
+
+        // The third checkpoint went to the second slot; damage it as a crash during the write would
+        try (RandomAccessFile log = new RandomAccessFile(journal.toFile(), "rw")) {
+            log.seek(64 + 20);
+            log.write(0xFF);
+        }
+        MT940CheckpointedIngestion second = new MT940CheckpointedIngestion(journal);
+        assertEquals(10, second.run(file, result -> { }));
+        assertEquals(text.indexOf("-}", text.indexOf(":28C:20/1")) + 2, second.getResumedOffset());
+    }
+
+    private static String statements(int first, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            sb.append(MT940Samples.text("1022200171931", i, 1000_00, -250_00, 125_50)).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940ChunkedParserTest {
+
+    @Test
+    void matchesTheSequentialReader(@TempDir Path directory) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String message = MT940Samples.text("1022200171931", i + 1, 1000_00, -250_00, 125_50);
+            // Every 97th message has an invalid line
+            text.append(i % 97 == 0 ? message.replaceFirst("250,00", "250.00") : message).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        // One statement larger than a range, with a bad line in the middle
+        long[] amounts = new long[5000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = i % 2 == 0 ? 1_00 : -1_00;
+        }
+        String giant = MT940Samples.text("2000000000002", 1, 0, amounts);
+        int middle = giant.indexOf(":61:", giant.length() / 2);
+        text.append(giant, 0, middle).append(":61:bad\n").append(giant, middle, giant.length()).append('\n');
+        text.append(MT940Samples.text("1022200171931", 9999, 0, 1_00)).append('\n');
+        Path file = directory.resolve("large.sta");
+        Files.writeString(file, text, StandardCharsets.ISO_8859_1);
+
+        List<MT940ParseResult> expected = new ArrayList<>();
+        try (MT940Reader reader = new MT940Reader(new StringReader(text.toString()))) {
+            MT940ParseResult result;
+            while ((result = reader.readResult()) != null) {
+                expected.add(result);
+            }
+        }
+        MT940ChunkedParser parser = new MT940ChunkedParser();
+        parser.setParallelism(4);
+        parser.setChunkSize(64 * 1024);
+        List<MT940ParseResult> actual = parser.parse(file);
+
+        assertTrue(giant.length() > 2 * 64 * 1024 && text.length() > 8 * 64 * 1024);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(describe(expected.get(i)), describe(actual.get(i)), "message " + i);
+        }
+    }
+
+    @Test
+    void giantStatementsAreMeasuredAsOneMessage(@TempDir Path directory) throws IOException {
+        long[] amounts = new long[5000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = i % 2 == 0 ? 1_00 : -1_00;
+        }
+        String small = MT940Samples.text("1022200171931", 1, 0, 1_00);
+        String giant = MT940Samples.text("2000000000002", 1, 0, amounts);
+        int middle = giant.indexOf(":61:", giant.length() / 2);
+        String invalid = giant.substring(0, middle) + ":61:bad\n" + giant.substring(middle);
+        Path file = directory.resolve("giant.sta");
+        Files.writeString(file, small + "\n" + giant + "\n" + invalid + "\n", StandardCharsets.ISO_8859_1);
+
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        MT940Message.setMetrics(metrics);
+        try {
+            MT940ChunkedParser parser = new MT940ChunkedParser();
+            parser.setChunkSize(64 * 1024);
+            assertEquals(3, parser.parse(file).size());
+        } finally {
+            MT940Message.setMetrics(null);
+        }
+        assertEquals(2, metrics.getMessageCount());
+        assertEquals(1 + amounts.length, metrics.getStatementLineCount());
+        assertEquals(small.length() + 1 + giant.length() + 1, metrics.getByteCount());
+        assertEquals(1, metrics.getValidationFailures("61"));
+    }
+
+    @Test
+    void emptyFileHasNoMessages(@TempDir Path directory) throws IOException {
+        Path file = Files.createFile(directory.resolve("empty.sta"));
+        assertTrue(new MT940ChunkedParser().parse(file).isEmpty());
+    }
+
+    private static String describe(MT940ParseResult result) {
+        StringBuilder sb = new StringBuilder().append(result.getOffset()).append('@').append(result.getLineNumber());
+        if (result.isValid()) {
+            sb.append(' ').append(result.getMessage());
+        }
+        for (MT940ParseError error : result.getErrors()) {
+            sb.append(' ').append(error.getCode()).append(' ').append(error.getTag()).append(' ')
+                    .append(error.getOffset()).append(' ').append(error.getLineNumber());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MT940ColumnarExporterTest {
+
+    @Test
+    void exportedRowsMatchTheParsedLines() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            String message = MT940Samples.text(i % 3 == 0 ? "1022200171931" : "2000000000002", i + 1, 1000_00,
+                    -250_00, i * 1_01L, 7);
+            if (i % 10 == 0) {
+                message = message.replace("Transfer\n", "").replace("//FT23319KHP", "");
+            }
+            // Every 25th message is invalid and none of its lines may be exported
+            text.append(i % 25 == 24 ? message.replace(":62F:", ":62X:") : message).append('\n');
+        }
+        List<Object[]> expected = new ArrayList<>();
+        try (MT940Reader reader = new MT940Reader(new StringReader(text.toString()))) {
+            MT940ParseResult result;
+            while ((result = reader.readResult()) != null) {
+                if (result.isValid()) {
+                    MT940Message message = result.getMessage();
+                    for (MT940Tag61 line : message.getStatementLines()) {
+                        expected.add(row(message, line));
+                    }
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported;
+        MT940ColumnarExporter exporter = new MT940ColumnarExporter(out);
+        try (exporter) {
+            exporter.setRowGroupSize(50);
+            exported = exporter.export(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        assertEquals(expected.size(), exported);
+        assertEquals(4, exporter.getRejectedMessageCount());
+
+        List<Object[]> actual = decode(out.toByteArray());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "row " + i);
+        }
+    }
+
+    private static Object[] row(MT940Message message, MT940Tag61 line) {
+        String opening = message.getOpeningBalance();
+        return new Object[]{message.getTransactionReferenceNumber(), message.getAccountIdentification(),
+                message.getStatementNumberSequenceNumber(), opening.substring(12, 15),
+                Integer.parseInt(line.getValueDate()),
+                line.getEntryDate() == null ? null : Integer.parseInt(line.getEntryDate()),
+                line.getDebitCreditMark(), line.getFundsCode(), MT940Amount.parseMinorUnits(line.getAmount()),
+                line.getTransactionTypeIDCode(), line.getCustomerReference(), line.getBankReference(),
+                line.getSupplementaryDetails()};
+    }
+
+    // Decodes the layout documented on MT940ColumnarExporter
+    private static List<Object[]> decode(byte[] file) {
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        byte[] magic = new byte[8];
+        buffer.get(magic);
+        assertArrayEquals(MT940ColumnarExporter.MAGIC, magic);
+        assertEquals(1, buffer.get());
+        assertArrayEquals(MT940ColumnarExporter.MAGIC, Arrays.copyOfRange(file, file.length - 8, file.length));
+
+        int footerLength = buffer.getInt(file.length - 12);
+        buffer.position(file.length - 12 - footerLength);
+        int columns = buffer.getInt();
+        byte[] types = new byte[columns];
+        for (int c = 0; c < columns; c++) {
+            int nameLength = buffer.getShort();
+            buffer.position(buffer.position() + nameLength);
+            types[c] = buffer.get();
+        }
+        int rowGroups = buffer.getInt();
+        long[][] groups = new long[rowGroups][];
+        for (int g = 0; g < rowGroups; g++) {
+            groups[g] = new long[]{buffer.getLong(), buffer.getInt(), buffer.getLong()};
+        }
+        long totalRows = buffer.getLong();
+
+        List<Object[]> rows = new ArrayList<>();
+        for (long[] group : groups) {
+            buffer.position((int) group[0]);
+            int count = (int) group[1];
+            Object[][] values = new Object[count][columns];
+            for (int c = 0; c < columns; c++) {
+                int encoding = buffer.get();
+                byte[] validity = null;
+                if (buffer.get() == 1) {
+                    validity = new byte[(count + 7) >> 3];
+                    buffer.get(validity);
+                }
+                Object[] column = encoding == 1 ? dictionary(buffer, count) : plain(buffer, types[c], count);
+                for (int r = 0; r < count; r++) {
+                    boolean valid = validity == null || (validity[r >> 3] >> (r & 7) & 1) != 0;
+                    values[r][c] = valid ? column[r] : null;
+                }
+            }
+            assertEquals(group[0] + group[2], buffer.position());
+            rows.addAll(Arrays.asList(values));
+        }
+        assertEquals(totalRows, rows.size());
+        return rows;
+    }
+
+    private static Object[] plain(ByteBuffer buffer, byte type, int count) {
+        Object[] column = new Object[count];
+        if (type == MT940ColumnarExporter.STRING) {
+            return strings(buffer, count);
+        }
+        for (int r = 0; r < count; r++) {
+            column[r] = type == MT940ColumnarExporter.INT32 ? (Object) buffer.getInt() : (Object) buffer.getLong();
+        }
+        return column;
+    }
+
+    private static Object[] dictionary(ByteBuffer buffer, int count) {
+        Object[] entries = strings(buffer, buffer.getInt());
+        int width = buffer.get();
+        Object[] column = new Object[count];
+        for (int r = 0; r < count; r++) {
+            column[r] = entries[width == 1 ? buffer.get() & 0xFF : width == 2 ? buffer.getShort() & 0xFFFF : buffer.getInt()];
+        }
+        return column;
+    }
+
+    private static Object[] strings(ByteBuffer buffer, int count) {
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            offsets[i] = buffer.getInt();
+        }
+        byte[] bytes = new byte[offsets[count]];
+        buffer.get(bytes);
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.ISO_8859_1);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class MT940CompressedInputTest {
+
+    @Test
+    void plainGzipAndZipFilesGiveTheSameMessages(@TempDir Path directory) throws IOException {
+        String[] parts = {statements(1, 300), statements(301, 300), statements(601, 300)};
+        String text = String.join("", parts);
+        Path plain = Files.writeString(directory.resolve("statements.sta"), text, StandardCharsets.ISO_8859_1);
+        Path gzip = directory.resolve("statements.sta.gz");
+        // Two gzip members back to back
+        try (OutputStream out = Files.newOutputStream(gzip)) {
+            out.write(gzip(parts[0]));
+            out.write(gzip(parts[1] + parts[2]));
+        }
+        Path zip = directory.resolve("statements.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("empty/"));
+            for (int i = 0; i < parts.length; i++) {
+                out.putNextEntry(new ZipEntry("part" + i + ".sta"));
+                out.write(parts[i].getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        MT940CompressedInput input = new MT940CompressedInput();
+        input.setBlockSize(1000);
+        input.setBufferBlocks(2);
+        input.setParallelism(2);
+        List<String> expected = read(input.open(plain));
+        assertEquals(900, expected.size());
+        assertEquals(expected, read(input.open(gzip)));
+        assertEquals(expected, read(input.open(zip)));
+        assertEquals(expected, read(input.open(Files.newInputStream(gzip))));
+        assertEquals(expected, read(input.open(Files.newInputStream(zip))));
+
+        List<InputStream> entries = input.openEntries(zip);
+        assertEquals(3, entries.size());
+        // Entries can be read in any order
+        for (int i = parts.length - 1; i >= 0; i--) {
+            assertEquals(expected.subList(i * 300, i * 300 + 300), read(entries.get(i)));
+        }
+    }
+
+    @Test
+    void truncatedArchiveFails(@TempDir Path directory) throws IOException {
+        byte[] bytes = gzip(statements(1, 500));
+        Path gzip = Files.write(directory.resolve("truncated.sta.gz"), Arrays.copyOf(bytes, bytes.length / 2));
+        InputStream in = new MT940CompressedInput().open(gzip);
+        assertThrows(IOException.class, () -> read(in));
+    }
+
+    @Test
+    void closingEarlyStopsDecompression(@TempDir Path directory) throws IOException {
+        Path gzip = Files.write(directory.resolve("large.sta.gz"), gzip(statements(1, 5000)));
+        MT940CompressedInput input = new MT940CompressedInput();
+        input.setBlockSize(1024);
+        input.setBufferBlocks(1);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (MT940Reader reader = new MT940Reader(input.open(gzip))) {
+                assertEquals("1/1", reader.readMessage().getStatementNumberSequenceNumber());
+            }
+        });
+    }
+
+    private static String statements(int first, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            sb.append(MT940Samples.text("1022200171931", i, 1000_00, -250_00, 125_50)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> read(InputStream in) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (MT940Reader reader = new MT940Reader(in)) {
+            MT940Message message;
+            while ((message = reader.readMessage()) != null) {
+                statements.add(message.getStatementNumberSequenceNumber());
+            }
+        }
+        return statements;
+    }
+}
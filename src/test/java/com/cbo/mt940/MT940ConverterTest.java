@@ -0,0 +1,62 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MT940ConverterTest {
+
+    private static final String HEADER = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:";
+
+    // A line whose supplementary details need quoting, an invalid message and a line without optional fields
+    private static final String FILE = MT940Samples.text("1022200171931", 1, 1000_00, -250_00)
+            .replace("Transfer", "Rent, May") + "\n"
+            + MT940Samples.text("1022200171931", 2, 0, 1_00).replace(":62F:", ":62X:") + "\n"
+            + MT940Samples.text("2000000000002", 7, 0, 5_00).replace("//FT23319KHP0\nTransfer", "") + "\n";
+
+    @Test
+    void csvRowsPerStatementLine() throws IOException {
+        StringWriter out = new StringWriter();
+        MT940CsvConverter converter = new MT940CsvConverter(out);
+        assertEquals(2, converter.convert(new MT940Reader(new StringReader(FILE))));
+        // The header is written once across conversions
+        assertEquals(2, converter.convert(new ByteArrayInputStream(FILE.getBytes(StandardCharsets.ISO_8859_1))));
+
+        String rows = "20231115-319,1022200171931,1,1,ETB,231115,1115,D,B,25000,NMSC,NONREF,FT23319KHP0,\"Rent, May\"\r\n"
+                + "20231115-319,2000000000002,7,1,ETB,231115,1115,C,B,500,NMSC,NONREF,,\r\n";
+        assertEquals(MT940CsvConverter.HEADER + rows + rows, out.toString());
+        assertEquals(4, converter.getRowCount());
+        assertEquals(2, converter.getRejectedMessageCount());
+    }
+
+    @Test
+    void jsonLinePerMessage() throws IOException {
+        StringWriter out = new StringWriter();
+        MT940JsonConverter converter = new MT940JsonConverter(out);
+        assertEquals(2, converter.convert(new MT940Reader(new StringReader(FILE))));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"header\":\"" + HEADER + "\",\"transactionReferenceNumber\":\"20231115-319\","
+                + "\"accountIdentification\":\"1022200171931\",\"statementNumber\":\"1\",\"sequenceNumber\":\"1\","
+                + "\"openingBalance\":{\"tag\":\"60F\",\"debitCreditMark\":\"C\",\"date\":\"231115\",\"currency\":\"ETB\",\"amount\":1000.00},"
+                + "\"statementLines\":[{\"valueDate\":\"231115\",\"entryDate\":\"1115\",\"debitCreditMark\":\"D\","
+                + "\"fundsCode\":\"B\",\"amount\":250.00,\"transactionTypeIDCode\":\"NMSC\",\"customerReference\":\"NONREF\","
+                + "\"bankReference\":\"FT23319KHP0\",\"supplementaryDetails\":\"Rent, May\"}],"
+                + "\"closingBalance\":{\"tag\":\"62F\",\"debitCreditMark\":\"C\",\"date\":\"231115\",\"currency\":\"ETB\",\"amount\":750.00},"
+                + "\"closingAvailableBalance\":{\"tag\":\"64\",\"debitCreditMark\":\"C\",\"date\":\"231115\",\"currency\":\"ETB\",\"amount\":750.00}}",
+                lines[0]);
+        // Absent optional fields are left out
+        assertEquals("[{\"valueDate\":\"231115\",\"entryDate\":\"1115\",\"debitCreditMark\":\"C\",\"fundsCode\":\"B\","
+                        + "\"amount\":5.00,\"transactionTypeIDCode\":\"NMSC\",\"customerReference\":\"NONREF\"}]",
+                lines[1].substring(lines[1].indexOf('['), lines[1].indexOf(']') + 1));
+        assertEquals(2, converter.getMessageCount());
+        assertEquals(1, converter.getRejectedMessageCount());
+    }
+}
@@ -0,0 +1,110 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940CsvImporterTest {
+
+    private static final String HEADER = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:";
+
+    @Test
+    void importsOneStatementPerAccountAndDate() throws IOException {
+        MT940CsvImporter importer = new MT940CsvImporter(HEADER);
+        importer.setOpeningBalance("1022200171931", 1000_00);
+        StringWriter out = new StringWriter();
+        long statements = importer.importCsv(new StringReader(
+                "account,currency,value_date,amount_minor_units\n"
+                        + "1022200171931,ETB,231115,-250\n"
+                        + "1022200171931,ETB,231115,1000\n"
+                        + "1022200171931,ETB,231116,-50\n"), out);
+        assertEquals(2, statements);
+        assertEquals(3, importer.getRowCount());
+        assertEquals(1007_00L, importer.getClosingBalances().get("1022200171931"));
+        assertTrue(out.toString().contains(":62F:C231116ETB1007,00\n"));
+    }
+
+    @Test
+    void convertedReversalsAndFundsCodesImportBack() throws IOException {
+        String text = HEADER + "\n"
+                + ":20:20231115-319\n"
+                + ":25:1022200171931\n"
+                + ":28C:319/1\n"
+                + ":60F:C231115ETB1000,00\n"
+                + ":61:2311151115RCB250,00NMSCNONREF//FT23319KHPN5\nTransfer\n"
+                + ":61:231115RD100,50NTRFNONREF\nRefund\n"
+                + ":61:2311151115DB533,00NMSCNONREF//FT23319KHPN6\n"
+                + ":61:231115C10,00NCHGNONREF\n"
+                + ":62F:C231115ETB327,50\n"
+                + ":64:C231115ETB327,50\n"
+                + "-}";
+        MT940Message source = MT940Message.parseMT940Message(text);
+        StringWriter csv = new StringWriter();
+        try (MT940Reader reader = new MT940Reader(new StringReader(text))) {
+            assertEquals(1, new MT940CsvConverter(csv).convert(reader));
+        }
+
+        MT940CsvImporter importer = new MT940CsvImporter(HEADER);
+        importer.setOpeningBalance("1022200171931", 1000_00);
+        StringWriter out = new StringWriter();
+        assertEquals(1, importer.importCsv(new StringReader(csv.toString()), out));
+        MT940Message imported = MT940Message.parseMT940Message(out.toString().trim());
+        assertEquals(source.getClosingBalanceBookedFunds(), imported.getClosingBalanceBookedFunds());
+        assertEquals(4, imported.getStatementLines().size());
+        for (int i = 0; i < 4; i++) {
+            MT940Tag61 expected = source.getStatementLines().get(i);
+            MT940Tag61 line = imported.getStatementLines().get(i);
+            assertEquals(expected.toString(), line.toString());
+        }
+        assertEquals("RC", imported.getStatementLines().get(0).getDebitCreditMark());
+        assertEquals("B", imported.getStatementLines().get(0).getFundsCode());
+        assertNull(imported.getStatementLines().get(3).getFundsCode());
+    }
+
+    @Test
+    void writeFailureIsReportedInsteadOfBlockingTheReader() {
+        StringBuilder csv = new StringBuilder("account,currency,value_date,amount_minor_units\n");
+        // Far more batches than the shard queues hold, so the reader blocks unless the shards keep draining
+        for (int date = 230101; date <= 231228; date += date % 100 == 28 ? 73 : 1) {
+            for (int account = 0; account < 200; account++) {
+                csv.append("10222001").append(10000 + account).append(",ETB,").append(date).append(",1250\n");
+            }
+        }
+        IOException failure = new IOException("Disk full");
+        Writer out = new Writer() {
+            private long written;
+
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                written += length;
+                if (written > 100 * 1024) {
+                    throw failure;
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        MT940CsvImporter importer = new MT940CsvImporter(HEADER);
+        importer.setParallelism(2);
+        IOException thrown = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IOException.class, () -> importer.importCsv(new StringReader(csv.toString()), out)));
+        assertSame(failure, thrown);
+    }
+}
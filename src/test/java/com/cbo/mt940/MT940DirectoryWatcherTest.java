@@ -0,0 +1,91 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940DirectoryWatcherTest {
+
+    @Test
+    void ingestsExistingAndAppendedEnvelopes(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("statements.sta");
+        Files.writeString(file, MT940Samples.text("1022200171931", 1, 1000_00, -250_00) + "\n", StandardCharsets.ISO_8859_1);
+        List<MT940ParseResult> results = new CopyOnWriteArrayList<>();
+        CountDownLatch handled = new CountDownLatch(3);
+        try (MT940DirectoryWatcher watcher = new MT940DirectoryWatcher(directory, result -> {
+            results.add(result);
+            handled.countDown();
+        })) {
+            watcher.setRescanInterval(Duration.ofMillis(50));
+            watcher.start();
+            // The second envelope is completed by a later write
+            String second = MT940Samples.text("1022200171931", 2, 750_00, 100_00);
+            Files.writeString(file, second.substring(0, 100), StandardCharsets.ISO_8859_1, StandardOpenOption.APPEND);
+            Files.writeString(file, second.substring(100) + "\n{1:garbage-}\n", StandardCharsets.ISO_8859_1,
+                    StandardOpenOption.APPEND);
+            assertTrue(handled.await(10, TimeUnit.SECONDS));
+            assertEquals(3, watcher.getMessageCount());
+        }
+        assertEquals(2, results.stream().filter(MT940ParseResult::isValid).count());
+    }
+
+    @Test
+    void handlerFailuresDoNotStopTheWatcher(@TempDir Path directory) throws IOException, InterruptedException {
+        StringBuilder failing = new StringBuilder();
+        for (int i = 0; i < 1100; i++) {
+            failing.append(MT940Samples.text("1022200171931", i % 99999 + 1, 0, 1_00)).append('\n');
+        }
+        Files.writeString(directory.resolve("failing.sta"), failing, StandardCharsets.ISO_8859_1);
+
+        AtomicBoolean first = new AtomicBoolean();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(1);
+        List<Path> failedFiles = new CopyOnWriteArrayList<>();
+        MT940DirectoryWatcher watcher = new MT940DirectoryWatcher(directory, result -> {
+            if (first.compareAndSet(false, true)) {
+                // Holds the only parser thread, so the queue fills up and the watcher thread parses too
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (result.getMessage().getAccountIdentification().equals("1022200171931")) {
+                throw new IllegalStateException("Handler failed");
+            }
+            handled.countDown();
+        });
+        try (watcher) {
+            watcher.setParallelism(1);
+            watcher.setRescanInterval(Duration.ofMillis(50));
+            watcher.setFailureHandler((file, failure) -> {
+                failedFiles.add(file);
+                release.countDown();
+            });
+            watcher.start();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+
+            Files.writeString(directory.resolve("working.sta"), MT940Samples.text("1000000000001", 1, 0, 1_00),
+                    StandardCharsets.ISO_8859_1);
+            assertTrue(handled.await(10, TimeUnit.SECONDS));
+        }
+        // Counted once close() has waited for the parser threads
+        assertEquals(1100, watcher.getFailureCount());
+        assertEquals(1100, failedFiles.size());
+        assertTrue(failedFiles.stream().allMatch(file -> file.endsWith("failing.sta")));
+    }
+}
@@ -0,0 +1,133 @@
+package com.cbo.mt940;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940EventsTest {
+
+    private static final String MT942 = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I942XXXXXXXXXXXXN}{4:\n" +
+            ":20:20231115-042\n" +
+            ":25:2000000000002\n" +
+            ":28C:5/1\n" +
+            ":34F:ETB0,00\n" +
+            ":13D:2311151430+0300\n" +
+            ":61:2311151115CB100,50NTRFNONREF//FT23319KHPN6\nRefund\n" +
+            "-}";
+
+    @Test
+    void eventsAreRecordedOnceARecordingRuns(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("mt940.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.cbo.mt940.Parse");
+            recording.enable("com.cbo.mt940.Write");
+            recording.start();
+            assertTrue(MT940Events.isRecorderInitialized());
+            MT940Message message = MT940Message.parseMT940Message(MT940Samples.BASELINE);
+            String text = message.toString();
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            RecordedEvent parse = only(events, "com.cbo.mt940.Parse");
+            assertEquals(MT940Samples.BASELINE.length(), parse.getInt("messageSize"));
+            assertEquals(2, parse.getInt("lineCount"));
+            assertEquals("1022200171931", parse.getString("accountIdentification"));
+            RecordedEvent write = only(events, "com.cbo.mt940.Write");
+            assertEquals(text.length(), write.getInt("messageSize"));
+        }
+    }
+
+    @Test
+    void readerAndFileWriterEmitEvents(@TempDir Path directory) throws IOException {
+        String text = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50) + "\n"
+                + MT940Samples.text("2000000000002", 2, 0, 1_00).replace(":62F:", ":62X:") + "\n"
+                + MT940Samples.text("2000000000002", 3, 0, 1_00) + "\n";
+        Path file = directory.resolve("mt940.jfr");
+        Path output = directory.resolve("out.sta");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.cbo.mt940.Parse");
+            recording.enable("com.cbo.mt940.Write");
+            recording.start();
+            MT940Message last = null;
+            try (MT940Reader reader = new MT940Reader(new StringReader(text))) {
+                MT940ParseResult result;
+                while ((result = reader.readResult()) != null) {
+                    last = result.isValid() ? result.getMessage() : last;
+                }
+            }
+            MT940FileWriter.writeToFile(last, output.toString());
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        // Invalid messages are not recorded
+        List<String> accounts = events.stream().filter(e -> e.getEventType().getName().equals("com.cbo.mt940.Parse"))
+                .map(e -> e.getString("accountIdentification")).toList();
+        assertEquals(List.of("1022200171931", "2000000000002"), accounts);
+        // Formatting the message records a nested event without a destination
+        List<RecordedEvent> writes = events.stream().filter(e -> e.getEventType().getName().equals("com.cbo.mt940.Write")
+                && e.getString("destination") != null).toList();
+        assertEquals(1, writes.size());
+        assertEquals(output.toString(), writes.get(0).getString("destination"));
+        assertEquals(1, writes.get(0).getInt("lineCount"));
+    }
+
+    @Test
+    void statementsAndInterimReportsEmitParseEvents(@TempDir Path directory) throws IOException {
+        String text = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50);
+        Path file = directory.resolve("mt940.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.cbo.mt940.Parse");
+            recording.start();
+            try (MT940Reader reader = new MT940Reader(new StringReader(text))) {
+                reader.readStatement();
+            }
+            try (MT940Reader reader = new MT940Reader(new StringReader(MT942))) {
+                reader.readMT942Message();
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> parses = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("com.cbo.mt940.Parse")).toList();
+        assertEquals(2, parses.size());
+        assertEquals(text.length(), parses.get(0).getInt("messageSize"));
+        assertEquals(2, parses.get(0).getInt("lineCount"));
+        assertEquals("1022200171931", parses.get(0).getString("accountIdentification"));
+        assertEquals(MT942.length(), parses.get(1).getInt("messageSize"));
+        assertEquals(1, parses.get(1).getInt("lineCount"));
+        assertEquals("2000000000002", parses.get(1).getString("accountIdentification"));
+    }
+
+    @Test
+    void eventsAreDisabledByDefault(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("mt940.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            MT940Message.parseMT940Message(MT940Samples.BASELINE).toString();
+            recording.stop();
+            recording.dump(file);
+        }
+        assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(e -> e.getEventType().getName().startsWith("com.cbo.mt940.")));
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
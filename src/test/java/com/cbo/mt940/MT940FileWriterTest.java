@@ -0,0 +1,189 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940FileWriterTest {
+
+    @Test
+    void concurrentWritesAreSyncedInGroups(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("out.sta");
+        MT940FileWriter writer = new MT940FileWriter(file);
+        writer.setSyncMessages(100);
+        writer.setBufferSize(16 * 1024);
+        writer.start();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * 250;
+            Thread producer = new Thread(() -> {
+                for (int i = first; i < first + 250; i++) {
+                    CompletableFuture<Void> future = writer.write(MT940Samples.message("1022200171931", i + 1));
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        writer.close();
+
+        assertEquals(1000, writer.getMessageCount());
+        assertTrue(writer.getSyncCount() < 1000);
+        List<String> statements = read(file);
+        assertEquals(1000, statements.size());
+        // Each producer's messages stay in order
+        assertTrue(statements.indexOf("1/1") < statements.indexOf("250/1"));
+        assertTrue(statements.indexOf("751/1") < statements.indexOf("1000/1"));
+    }
+
+    @Test
+    void syncForcesQueuedMessages(@TempDir Path directory) throws Exception {
+        MT940FileWriter writer = new MT940FileWriter(directory.resolve("out.sta"));
+        writer.setSyncMessages(1_000_000);
+        writer.setSyncInterval(Duration.ofHours(1));
+        writer.start();
+        try (writer) {
+            CompletableFuture<Void> written = writer.write(MT940Samples.message("1022200171931", 1));
+            assertThrows(TimeoutException.class, () -> written.get(200, TimeUnit.MILLISECONDS));
+            writer.sync().get(10, TimeUnit.SECONDS);
+            assertTrue(written.isDone());
+            assertEquals(1, writer.getSyncCount());
+        }
+        assertEquals(List.of("1/1"), read(directory.resolve("out.sta")));
+    }
+
+    @Test
+    void producerWaitingAtCloseIsRefused(@TempDir Path directory) throws Exception {
+        MT940FileWriter writer = new MT940FileWriter(directory.resolve("out.sta"));
+        writer.setSyncMessages(1_000_000);
+        writer.setSyncInterval(Duration.ofHours(1));
+        writer.setBufferSize(1);
+        writer.start();
+        // Holds the I/O thread in the completion of the first message, so the buffer stays full
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        writer.write(MT940Samples.message("1022200171931", 1)).thenRun(() -> {
+            writerBlocked.countDown();
+            awaitQuietly(release);
+        });
+        writer.sync();
+        assertTrue(writerBlocked.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = writer.write(MT940Samples.message("1022200171931", 2));
+
+        CompletableFuture<CompletableFuture<Void>> third = new CompletableFuture<>();
+        Thread producer = new Thread(() -> third.complete(writer.write(MT940Samples.message("1022200171931", 3))));
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        Thread closer = new Thread(() -> {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        closer.start();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> third.get(10, TimeUnit.SECONDS).get());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+
+        release.countDown();
+        closer.join();
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("1/1", "2/1"), read(directory.resolve("out.sta")));
+    }
+
+    @Test
+    void rotatesByMessageCount(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("count.sta");
+        MT940FileWriter writer = new MT940FileWriter(file);
+        writer.setMaxFileMessages(3);
+        writer.start();
+        try (writer) {
+            for (int i = 0; i < 10; i++) {
+                writer.write(MT940Samples.message("1022200171931", i + 1));
+            }
+        }
+        assertEquals(4, writer.getFileCount());
+        assertEquals(List.of("1/1", "2/1", "3/1"), read(file));
+        assertEquals(List.of("7/1", "8/1", "9/1"), read(directory.resolve("count.sta.2")));
+        assertEquals(List.of("10/1"), read(directory.resolve("count.sta.3")));
+    }
+
+    @Test
+    void rotatesBySize(@TempDir Path directory) throws IOException {
+        // Two messages fit below the size, and messages are never split
+        MT940Message message = MT940Samples.message("1022200171931", 1);
+        MT940FileWriter writer = new MT940FileWriter(directory.resolve("size.sta"));
+        writer.setMaxFileSize(message.getEncodedLength() * 5L / 2);
+        writer.start();
+        try (writer) {
+            for (int i = 0; i < 5; i++) {
+                writer.write(MT940Samples.message("1022200171931", i + 1));
+            }
+        }
+        assertEquals(3, writer.getFileCount());
+        assertEquals(List.of("3/1", "4/1"), read(directory.resolve("size.sta.1")));
+        assertEquals(List.of("5/1"), read(directory.resolve("size.sta.2")));
+    }
+
+    @Test
+    void writesRequireARunningWriter(@TempDir Path directory) throws IOException {
+        MT940FileWriter writer = new MT940FileWriter(directory.resolve("out.sta"));
+        MT940Message message = MT940Samples.message("1022200171931", 1);
+        assertThrows(IllegalStateException.class, () -> writer.write(message));
+        writer.start();
+        writer.close();
+        assertThrows(IllegalStateException.class, () -> writer.write(message));
+        assertThrows(IllegalArgumentException.class, () -> writer.setSyncMessages(0));
+
+        // The first file is opened by start()
+        MT940FileWriter broken = new MT940FileWriter(directory.resolve("missing").resolve("out.sta"));
+        assertThrows(IOException.class, broken::start);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> read(Path file) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (MT940Reader reader = new MT940Reader(new StringReader(Files.readString(file, StandardCharsets.ISO_8859_1)))) {
+            MT940Message message;
+            while ((message = reader.readMessage()) != null) {
+                statements.add(message.getStatementNumberSequenceNumber());
+            }
+        }
+        return statements;
+    }
+}
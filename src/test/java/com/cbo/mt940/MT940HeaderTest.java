@@ -0,0 +1,81 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940HeaderTest {
+
+    private static final String INPUT = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:";
+    private static final String OUTPUT = "{1:F01CBORETAAXXXX2206123456}{2:O9401200231115BANKUS33AXXX2206654321"
+            + "2311151201N}{3:{119:STP}{121:e2e-0001}}{4:";
+
+    @Test
+    void parsesAnInputHeader() {
+        MT940Header header = MT940Header.parse(INPUT);
+        assertTrue(header.isParsed());
+        assertEquals("F", header.getApplicationId());
+        assertEquals("01", header.getServiceId());
+        assertEquals("CBORETAAXXXX", header.getLogicalTerminalAddress());
+        assertEquals("CBORETAAXXX", header.getBic());
+        assertEquals("2206", header.getSessionNumber());
+        assertEquals("1ZFPHG", header.getSequenceNumber());
+        assertTrue(header.isInput());
+        assertEquals("940", header.getMessageType());
+        assertEquals("XXXXXXXXXXXX", header.getReceiverAddress());
+        assertNull(header.getMessageInputReference());
+        assertEquals("N", header.getPriority());
+        assertEquals("22061ZFPHG97870", header.getMessageUserReference());
+        assertEquals(INPUT, header.toString());
+        assertEquals(INPUT.length(), header.length());
+    }
+
+    @Test
+    void parsesAnOutputHeader() {
+        MT940Header header = MT940Header.parse(OUTPUT);
+        assertTrue(header.isParsed());
+        assertFalse(header.isInput());
+        assertEquals("940", header.getMessageType());
+        assertNull(header.getReceiverAddress());
+        assertEquals("231115BANKUS33AXXX2206654321", header.getMessageInputReference());
+        assertEquals("N", header.getPriority());
+        assertEquals(Map.of("119", "STP", "121", "e2e-0001"), header.getUserHeader());
+        assertEquals("e2e-0001", header.getUniqueEndToEndReference());
+        assertEquals(OUTPUT, header.toString());
+    }
+
+    @Test
+    void unknownLayoutsAreKeptAsTheyAre() {
+        String text = "{1:F01CBORETAAXXXX22061ZFPHG}{2:X940}{4:";
+        MT940Header header = MT940Header.parse(text);
+        assertFalse(header.isParsed());
+        assertNull(header.getLogicalTerminalAddress());
+        assertEquals(text, header.toString());
+        assertThrows(IllegalArgumentException.class, () -> MT940Header.parse(null));
+    }
+
+    @Test
+    void repeatedValuesAreShared() {
+        MT940Canonicalizer canonicalizer = new MT940Canonicalizer();
+        String text = "xx" + INPUT + INPUT;
+        MT940Header first = MT940Header.parse(text, 2, 2 + INPUT.length(), canonicalizer);
+        MT940Header second = MT940Header.parse(text, 2 + INPUT.length(), text.length(), canonicalizer);
+        assertEquals(first, second);
+        assertSame(first.getLogicalTerminalAddress(), second.getLogicalTerminalAddress());
+        assertSame(first.getApplicationHeader(), second.getApplicationHeader());
+        // Message user references are unique per message and not kept
+        assertEquals(first.getMessageUserReference(), second.getMessageUserReference());
+
+        // Parsed messages carry the header blocks
+        MT940Message message = MT940Message.parseMT940Message(MT940Samples.BASELINE);
+        assertEquals("CBORETAAXXX", message.getHeaderBlocks().getBic());
+        assertEquals(INPUT, message.getHeader());
+    }
+}
@@ -0,0 +1,209 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940IngestionServerTest {
+
+    @Test
+    void answersEveryEnvelopeInOrder() throws IOException {
+        try (MT940IngestionServer server = new MT940IngestionServer(0)) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                OutputStream out = socket.getOutputStream();
+                String invalid = MT940Samples.BASELINE.replace(":64:C231115ETB6461201\n", "");
+                out.write((MT940Samples.BASELINE + "\n" + invalid + "\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                assertEquals("ACK 0 20231115-319", in.readLine());
+                String nak = in.readLine();
+                assertTrue(nak.startsWith("NAK " + (MT940Samples.BASELINE.length() + 1) + " MISSING_TAG "), nak);
+            }
+            assertEquals(1, server.getAcknowledgedMessages());
+            assertEquals(1, server.getRejectedMessages());
+            assertEquals(1, server.getAcceptedConnections());
+        }
+    }
+
+    @Test
+    void oversizedEnvelopeIsRejectedAndTheConnectionClosed() throws Exception {
+        try (MT940IngestionServer server = new MT940IngestionServer(0)) {
+            server.setMaxEnvelopeLength(4096);
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                OutputStream out = socket.getOutputStream();
+                out.write((MT940Samples.BASELINE + "\n{1:").getBytes(StandardCharsets.ISO_8859_1));
+                // A message that never ends, streamed until the server hangs up
+                Thread sender = new Thread(() -> {
+                    byte[] chunk = new byte[1024];
+                    Arrays.fill(chunk, (byte) 'A');
+                    try {
+                        for (int i = 0; i < 1024; i++) {
+                            out.write(chunk);
+                        }
+                    } catch (IOException e) {
+                        // Closed by the server
+                    }
+                });
+                sender.start();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                assertEquals("ACK 0 20231115-319", in.readLine());
+                String nak = in.readLine();
+                assertTrue(nak.startsWith("NAK " + (MT940Samples.BASELINE.length() + 1) + " MESSAGE_TOO_LONG "), nak);
+                assertConnectionClosed(in);
+                sender.join(10_000);
+            }
+            assertEquals(1, server.getRejectedMessages());
+
+            // Other connections are still served
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.getOutputStream().write(MT940Samples.BASELINE.getBytes(StandardCharsets.ISO_8859_1));
+                socket.shutdownOutput();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                assertEquals("ACK 0 20231115-319", in.readLine());
+            }
+        }
+    }
+
+    @Test
+    void transientAcceptErrorsAreRetried() throws IOException {
+        FailingServerSocket serverSocket = new FailingServerSocket(3);
+        try (MT940IngestionServer server = new MT940IngestionServer(serverSocket)) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.getOutputStream().write(MT940Samples.BASELINE.getBytes(StandardCharsets.ISO_8859_1));
+                socket.shutdownOutput();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                assertEquals("ACK 0 20231115-319", in.readLine());
+            }
+            assertEquals(3, server.getAcceptErrors());
+            assertNull(server.getAcceptFailure());
+        }
+    }
+
+    @Test
+    void persistentAcceptErrorsStopTheAcceptorWithBackoff() throws Exception {
+        FailingServerSocket serverSocket = new FailingServerSocket(Integer.MAX_VALUE);
+        try (MT940IngestionServer server = new MT940IngestionServer(serverSocket)) {
+            server.setMaxConsecutiveAcceptErrors(4);
+            long start = System.nanoTime();
+            server.start();
+            while (server.getAcceptFailure() == null) {
+                assertTrue(System.nanoTime() - start < 10_000_000_000L, "Acceptor did not give up");
+                Thread.sleep(5);
+            }
+            // Backed off 10, 20 and 40 ms between the four attempts
+            assertTrue(System.nanoTime() - start >= 70_000_000L);
+            assertEquals("Too many open files", server.getAcceptFailure().getMessage());
+            assertEquals(4, server.getAcceptErrors());
+            assertEquals(4, serverSocket.attempts.get());
+            assertTrue(serverSocket.isClosed());
+            assertThrows(IllegalStateException.class, () -> server.setMaxConsecutiveAcceptErrors(10));
+        }
+    }
+
+    @Test
+    void connectionAcceptedWhileClosingIsClosed() throws Exception {
+        LateServerSocket serverSocket = new LateServerSocket();
+        MT940IngestionServer server = new MT940IngestionServer(serverSocket);
+        server.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setSoTimeout(5000);
+            server.close();
+            assertConnectionClosed(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1)));
+        }
+        serverSocket.returned.await(5, TimeUnit.SECONDS);
+        assertEquals(0, server.getActiveConnections());
+    }
+
+    @Test
+    void rejectsNonPositiveErrorLimit() throws IOException {
+        try (MT940IngestionServer server = new MT940IngestionServer(0)) {
+            assertThrows(IllegalArgumentException.class, () -> server.setMaxConsecutiveAcceptErrors(0));
+        }
+    }
+
+    // Unread input makes the server's close reset the connection instead of ending it
+    private static void assertConnectionClosed(BufferedReader in) {
+        try {
+            assertNull(in.readLine());
+        } catch (IOException e) {
+            assertInstanceOf(SocketException.class, e);
+        }
+    }
+
+    /**
+     * Hands over an accepted connection only after the server has been closed.
+     */
+    private static final class LateServerSocket extends ServerSocket {
+        private final CountDownLatch closing = new CountDownLatch(1);
+        private final CountDownLatch returned = new CountDownLatch(1);
+
+        private LateServerSocket() throws IOException {
+            super();
+            bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            try {
+                closing.await();
+                // Lets close() finish closing the registered sockets and shutting down the executor
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            returned.countDown();
+            return socket;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            closing.countDown();
+        }
+    }
+
+    /**
+     * Fails the first accept calls as a process out of file descriptors does.
+     */
+    private static final class FailingServerSocket extends ServerSocket {
+        private final int failures;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private FailingServerSocket(int failures) throws IOException {
+            super();
+            this.failures = failures;
+            bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new IOException("Too many open files");
+            }
+            return super.accept();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MT940LineEndingTest {
+
+    @Test
+    void crlfSourceIsReproduced() {
+        String lf = MT940Samples.text("1022200171931", 319, 1000_00, -250_00, 125_50);
+        String crlf = lf.replace("\n", "\r\n");
+        MT940Message message = MT940Message.parseMT940Message(crlf);
+        assertEquals(MT940LineEnding.CRLF, message.getLineEnding());
+        assertEquals(crlf, message.toString(message.getLineEnding()));
+        assertEquals(lf, message.toString());
+        assertEquals(lf, message.toString(MT940LineEnding.LF));
+    }
+
+    @Test
+    void builtMessageFieldsGetTheLineEnding() {
+        MT940Message message = MT940Samples.message("1022200171931", 319);
+        String lf = message.toString();
+        assertEquals(lf.replace("\n", "\r\n"), message.toString(MT940LineEnding.CRLF));
+
+        // An intermediate page has no Tag 64
+        List<MT940Message> pages = message.split(message.getEncodedLength() - 1);
+        assertEquals(2, pages.size());
+        for (MT940Message page : pages) {
+            assertEquals(page.toString().replace("\n", "\r\n"), page.toString(MT940LineEnding.CRLF));
+        }
+    }
+
+    @Test
+    void fileWriterSeparatesMessagesWithTheirLineEnding(@TempDir Path directory) throws Exception {
+        String crlf = MT940Samples.text("1022200171931", 319, 1000_00, -250_00).replace("\n", "\r\n");
+        MT940Message parsed = MT940Message.parseMT940Message(crlf);
+        MT940Message built = MT940Samples.message("1022200171931", 320);
+        Path file = directory.resolve("out.sta");
+        try (MT940FileWriter writer = new MT940FileWriter(file)) {
+            writer.start();
+            writer.write(parsed);
+            writer.write(built).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(crlf + "\r\n" + built + "\n", Files.readString(file, StandardCharsets.ISO_8859_1));
+    }
+}
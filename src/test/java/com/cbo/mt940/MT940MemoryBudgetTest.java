@@ -0,0 +1,119 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940MemoryBudgetTest {
+
+    @Test
+    void reservationsWaitForTheBudget() throws Exception {
+        MT940MemoryBudget budget = new MT940MemoryBudget(1000);
+        budget.acquire(600);
+        assertFalse(budget.tryAcquire(500));
+        assertTrue(budget.tryAcquire(400));
+        assertEquals(1000, budget.getUsedBytes());
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                budget.acquire(300);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        budget.release(400);
+        waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(900, budget.getUsedBytes());
+        assertEquals(1000, budget.getPeakUsedBytes());
+        assertEquals(3, budget.getAdmittedCount());
+        assertEquals(1, budget.getWaitLatency().getCount());
+    }
+
+    @Test
+    void oversizedReservationIsAdmittedAlone() throws InterruptedException {
+        MT940MemoryBudget budget = new MT940MemoryBudget(1000);
+        budget.acquire(5000);
+        assertFalse(budget.tryAcquire(1));
+        budget.release(5000);
+        assertEquals(0, budget.getUsedBytes());
+        assertTrue(budget.tryAcquire(1));
+        assertThrows(IllegalArgumentException.class, () -> new MT940MemoryBudget(0));
+    }
+
+    @Test
+    void envelopeEstimateMatchesTheParsedMessage() {
+        String text = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50, 7);
+        MT940Message message = MT940Message.parseMT940Message(text);
+        assertEquals(MT940MemoryBudget.estimate(message), MT940MemoryBudget.estimate(text, 0, text.length()));
+        String longer = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50, 7, 8, 9);
+        assertTrue(MT940MemoryBudget.estimate(longer, 0, longer.length()) > MT940MemoryBudget.estimate(message));
+    }
+
+    @Test
+    void readerWaitsUntilMessagesAreReleased() throws Exception {
+        String first = MT940Samples.text("1022200171931", 1, 1000_00, -250_00);
+        long size = MT940MemoryBudget.estimate(first, 0, first.length());
+        MT940MemoryBudget budget = new MT940MemoryBudget(size * 3 / 2);
+        String file = first + "\n" + MT940Samples.text("1022200171931", 2, 750_00, 1_00) + "\n";
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            reader.setMemoryBudget(budget);
+            MT940Message message = reader.readMessage();
+            assertEquals(MT940MemoryBudget.estimate(message), budget.getUsedBytes());
+
+            CompletableFuture<MT940Message> next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.readMessage();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertThrows(TimeoutException.class, () -> next.get(200, TimeUnit.MILLISECONDS));
+            budget.release(message);
+            MT940Message second = next.get(10, TimeUnit.SECONDS);
+            assertEquals("2/1", second.getStatementNumberSequenceNumber());
+            budget.release(second);
+        }
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void readerAdmitsStatements() throws Exception {
+        String first = MT940Samples.text("1022200171931", 1, 1000_00, -250_00);
+        long size = MT940MemoryBudget.estimate(first, 0, first.length());
+        MT940MemoryBudget budget = new MT940MemoryBudget(size);
+        String file = first + "\n" + MT940Samples.text("2000000000002", 2, 750_00, 1_00) + "\n"
+                + MT940Samples.text("1022200171931", 3, 750_00, 1_00).replace(":62F:", ":62X:") + "\n";
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            reader.setMemoryBudget(budget);
+            MT940Statement statement = reader.readStatement();
+            assertEquals(MT940MemoryBudget.estimate(statement), budget.getUsedBytes());
+
+            CompletableFuture<MT940Statement> next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.readStatement();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertThrows(TimeoutException.class, () -> next.get(200, TimeUnit.MILLISECONDS));
+            budget.release(statement);
+            MT940Statement second = next.get(10, TimeUnit.SECONDS);
+            assertEquals("2/1", second.getStatementNumberSequenceNumber());
+            budget.release(second);
+            // An invalid message gives its reservation back
+            assertThrows(IllegalArgumentException.class, reader::readStatement);
+        }
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(3, budget.getAdmittedCount());
+    }
+}
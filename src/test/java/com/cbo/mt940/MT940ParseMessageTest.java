@@ -0,0 +1,97 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940ParseMessageTest {
+
+    private static final String BASELINE_OUTPUT = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:\n" +
+            ":20:20231115-319\n" +
+            ":25:1022200171931\n" +
+            ":28C:319/1\n" +
+            ":60F:C231115ETB6994609,00\n" +
+            ":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n" +
+            ":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n" +
+            ":62F:C231115ETB6461201,00\n" +
+            ":64:C231115ETB6461201,00\n" +
+            "-}";
+
+    @Test
+    void baselineSampleParsesAsBefore() {
+        MT940Message message = MT940Message.parseMT940Message(MT940Samples.BASELINE);
+        assertEquals("{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:", message.getHeader());
+        assertEquals("20231115-319", message.getTransactionReferenceNumber());
+        assertEquals("1022200171931", message.getAccountIdentification());
+        assertEquals("319/1", message.getStatementNumberSequenceNumber());
+        assertEquals(2, message.getStatementLines().size());
+        assertEquals("-}", message.getTrailer());
+        assertEquals(BASELINE_OUTPUT, message.toString());
+        assertEquals(MT940RegexParser.parse(MT940Samples.BASELINE).toString(), message.toString());
+    }
+
+    @Test
+    void matchesRegexParserOnValidMessages() {
+        List<String> messages = List.of(
+                MT940Samples.BASELINE,
+                MT940Samples.BASELINE.replace(":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n", ""),
+                MT940Samples.BASELINE.replace(":61:2311151115DB533408,00", ":61:2311161116CB1,05"),
+                MT940Samples.BASELINE.replace(":28C:319/1", ":28C:00319/00002").replace(":60F:C", ":60F:D"),
+                MT940Samples.BASELINE.replace(":62F:", ":86:Free text\n:62F:"),
+                MT940Samples.BASELINE.replace(":64:C231115ETB6461201", ":64:D231115ETB6461201,99"));
+        for (String text : messages) {
+            assertEquals(MT940RegexParser.parse(text).toString(), MT940Message.parseMT940Message(text).toString(), text);
+        }
+    }
+
+    @Test
+    void missingTagsAreReportedLikeTheRegexParser() {
+        List<String> messages = List.of(
+                MT940Samples.BASELINE.replace(":20:20231115-319\n", ""),
+                MT940Samples.BASELINE.replace(":25:1022200171931\n", ""),
+                MT940Samples.BASELINE.replace(":28C:319/1\n", ""),
+                MT940Samples.BASELINE.replace(":60F:C231115ETB6994609\n", ""),
+                MT940Samples.BASELINE.replace(":62F:C231115ETB6461201\n", ""),
+                MT940Samples.BASELINE.replace(":64:C231115ETB6461201\n", ""));
+        for (String text : messages) {
+            IllegalArgumentException expected = assertThrows(IllegalArgumentException.class, () -> MT940RegexParser.parse(text));
+            IllegalArgumentException actual = assertThrows(IllegalArgumentException.class, () -> MT940Message.parseMT940Message(text));
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    @Test
+    void balanceDecimalsAreKept() {
+        String text = MT940Samples.BASELINE.replace(":60F:C231115ETB6994609", ":60F:C231115ETB6994609,50");
+        assertEquals(":60F:C231115ETB6994609,00\n", MT940RegexParser.parse(text).getOpeningBalance());
+        assertEquals(":60F:C231115ETB6994609,50\n", MT940Message.parseMT940Message(text).getOpeningBalance());
+    }
+
+    @Test
+    void statementNumberAndSequenceNumberAreSplit() {
+        MT940Message message = MT940Message.parseMT940Message(MT940Samples.BASELINE);
+        assertEquals("319", message.getStatementNumber());
+        assertEquals("1", message.getSequenceNumber());
+    }
+
+    @Test
+    void nullMessageIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MT940Message.parseMT940Message(null));
+    }
+
+    @Test
+    void installedMetricsSeeParsedMessages() {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        MT940Message.setMetrics(metrics);
+        try {
+            MT940Message.parseMT940Message(MT940Samples.BASELINE);
+        } finally {
+            MT940Message.setMetrics(null);
+        }
+        assertEquals(1, metrics.getMessageCount());
+        assertEquals(2, metrics.getStatementLineCount());
+    }
+}
@@ -0,0 +1,56 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940ParseResultTest {
+
+    @Test
+    void validMessageHasNoErrors() {
+        MT940ParseResult result = MT940Message.tryParseMT940Message(MT940Samples.BASELINE);
+        assertTrue(result.isValid());
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals("1022200171931", result.getMessage().getAccountIdentification());
+    }
+
+    @Test
+    void invalidValueIsReportedWithItsPosition() {
+        String text = MT940Samples.BASELINE.replaceFirst("DB533408,00", "DB533408.00");
+        MT940ParseResult result = MT940Message.tryParseMT940Message(text);
+        assertFalse(result.isValid());
+        assertNull(result.getMessage());
+        MT940ParseError error = result.getErrors().get(0);
+        assertEquals(MT940ErrorCode.INVALID_VALUE, error.getCode());
+        assertEquals("61", error.getTag());
+        assertEquals(6, error.getLineNumber());
+        // Points at the value after the tag
+        assertEquals(text.indexOf(":61:") + 4, error.getOffset());
+
+        // The throwing parser reports the same problem
+        assertThrows(IllegalArgumentException.class, () -> MT940Message.parseMT940Message(text));
+    }
+
+    @Test
+    void everyMissingTagIsReported() {
+        String text = MT940Samples.BASELINE.replace(":25:1022200171931\n", "").replace(":28C:319/1\n", "");
+        MT940ParseResult result = MT940Message.tryParseMT940Message(text);
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().stream().anyMatch(e -> e.getCode() == MT940ErrorCode.MISSING_TAG && "25".equals(e.getTag())));
+        assertTrue(result.getErrors().stream().anyMatch(e -> e.getCode() == MT940ErrorCode.MISSING_TAG && "28C".equals(e.getTag())));
+    }
+
+    @Test
+    void missingHeaderAndTrailer() {
+        assertEquals(MT940ErrorCode.INVALID_HEADER,
+                MT940Message.tryParseMT940Message(":20:20231115-319\n").getErrors().get(0).getCode());
+        assertEquals(MT940ErrorCode.INVALID_HEADER, MT940Message.tryParseMT940Message(null).getErrors().get(0).getCode());
+        String text = MT940Samples.BASELINE.substring(0, MT940Samples.BASELINE.length() - 2);
+        assertTrue(MT940Message.tryParseMT940Message(text).getErrors().stream()
+                .anyMatch(e -> e.getCode() == MT940ErrorCode.MISSING_TRAILER));
+    }
+}
@@ -0,0 +1,111 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940ParserMetricsTest {
+
+    @Test
+    void recordsParsedMessagesAndTagLatencies() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        try (MT940Reader reader = new MT940Reader(new StringReader(MT940Samples.BASELINE + "\n" + MT940Samples.BASELINE))) {
+            reader.setMetrics(metrics);
+            assertNotNull(reader.readMessage());
+            assertNotNull(reader.readMessage());
+            assertNull(reader.readMessage());
+        }
+        assertEquals(2, metrics.getMessageCount());
+        assertEquals(4, metrics.getStatementLineCount());
+        assertEquals(2L * MT940Samples.BASELINE.length(), metrics.getByteCount());
+        assertEquals(2 * MT940Message.estimateRetainedBytes(MT940Samples.BASELINE.length(), 2),
+                metrics.getAllocatedBytesEstimate());
+        assertEquals(2, metrics.getMessageLatency().getCount());
+        assertEquals(4, metrics.getTagLatency("61").getCount());
+        assertEquals(2, metrics.getTagLatency("28C").getCount());
+        assertEquals(0, metrics.getValidationFailures("64"));
+    }
+
+    @Test
+    void recordsValidationFailuresByTag() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        String missingTag64 = MT940Samples.BASELINE.replace(":64:C231115ETB6461201\n", "");
+        String invalidTag25 = MT940Samples.BASELINE.replace(":25:1022200171931", ":25:10222-00171931");
+        try (MT940Reader reader = new MT940Reader(new StringReader(missingTag64 + "\n" + invalidTag25))) {
+            reader.setMetrics(metrics);
+            assertThrows(IllegalArgumentException.class, reader::readMessage);
+            assertThrows(IllegalArgumentException.class, reader::readMessage);
+        }
+        assertEquals(0, metrics.getMessageCount());
+        assertEquals(1, metrics.getValidationFailures("64"));
+        assertEquals(1, metrics.getValidationFailures("25"));
+    }
+
+    @Test
+    void skippedMessagesAreCountedSeparately() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        try (MT940Reader reader = new MT940Reader(new StringReader(MT940Samples.BASELINE))) {
+            reader.setMetrics(metrics);
+            reader.setAccountFilter(account -> false);
+            assertNull(reader.readMessage());
+        }
+        assertEquals(0, metrics.getMessageCount());
+        assertEquals(1, metrics.getSkippedMessageCount());
+        assertEquals(MT940Samples.BASELINE.length(), metrics.getByteCount());
+    }
+
+    @Test
+    void statementsAreMeasuredLikeMessages() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        String other = MT940Samples.text("2000000000002", 2, 0, 1_00);
+        String invalid = MT940Samples.BASELINE.replace(":25:1022200171931", ":25:10222-00171931");
+        try (MT940Reader reader = new MT940Reader(new StringReader(MT940Samples.BASELINE + "\n" + other + "\n" + invalid))) {
+            reader.setMetrics(metrics);
+            reader.setAccountFilter(account -> !account.equals("2000000000002"));
+            assertNotNull(reader.readStatement());
+            assertThrows(IllegalArgumentException.class, reader::readStatement);
+        }
+        assertEquals(1, metrics.getMessageCount());
+        assertEquals(2, metrics.getStatementLineCount());
+        assertEquals(1, metrics.getSkippedMessageCount());
+        assertEquals(MT940Samples.BASELINE.length() + other.length(), metrics.getByteCount());
+        assertEquals(1, metrics.getMessageLatency().getCount());
+        assertEquals(1, metrics.getValidationFailures(null));
+    }
+
+    @Test
+    void readersUseInstalledMetrics() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        MT940Message.setMetrics(metrics);
+        try (MT940Reader reader = new MT940Reader(new StringReader(MT940Samples.BASELINE))) {
+            assertNotNull(reader.readMessage());
+        } finally {
+            MT940Message.setMetrics(null);
+        }
+        assertEquals(1, metrics.getMessageCount());
+        assertEquals(MT940Metrics.NONE, MT940Message.getMetrics());
+    }
+
+    @Test
+    void histogramPercentilesStayWithinBucketError() {
+        MT940LatencyHistogram histogram = new MT940LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 0.5);
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p50 > 5_000_000 * 0.93 && p50 <= 5_000_000, "p50 " + p50);
+        assertTrue(p99 > 9_900_000 * 0.93 && p99 <= 9_900_000, "p99 " + p99);
+        assertEquals(0, new MT940LatencyHistogram().getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,111 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940PipelineTest {
+
+    @Test
+    void deliversBalancedMessagesAndReportsTheRest() throws Exception {
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            first.append(MT940Samples.text("1022200171931", i + 1, 100000, -2500, 1000)).append('\n');
+            second.append(MT940Samples.text("1022200171932", i + 1, 50000, -100)).append('\n');
+        }
+        second.append(MT940Samples.BASELINE).append('\n');
+        second.append(MT940Samples.BASELINE.replace(":64:C231115ETB6461201\n", "")).append('\n');
+
+        MT940Pipeline pipeline = new MT940Pipeline();
+        pipeline.setBufferSize(4);
+        pipeline.setParseParallelism(3);
+        pipeline.setReconcileParallelism(2);
+        List<MT940ErrorCode> errors = Collections.synchronizedList(new ArrayList<>());
+        pipeline.setErrorHandler(result -> errors.add(result.getErrors().get(0).getCode()));
+        List<MT940Message> delivered = new ArrayList<>();
+        pipeline.run(List.of(stream(first), stream(second)), delivered::add).get(30, TimeUnit.SECONDS);
+
+        assertEquals(200, delivered.size());
+        assertEquals(2, errors.size());
+        assertEquals(1, errors.stream().filter(code -> code == MT940ErrorCode.UNBALANCED).count());
+    }
+
+    @Test
+    void memoryBudgetIsReleasedOnceDone() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append(MT940Samples.text("1022200171931", i + 1, 100000, -2500)).append('\n');
+        }
+        text.append(MT940Samples.BASELINE).append('\n');
+        MT940MemoryBudget budget = new MT940MemoryBudget(64 * 1024);
+        MT940Pipeline pipeline = new MT940Pipeline();
+        pipeline.setMemoryBudget(budget);
+        List<MT940Message> delivered = new ArrayList<>();
+        pipeline.run(List.of(stream(text)), delivered::add).get(30, TimeUnit.SECONDS);
+
+        assertEquals(50, delivered.size());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void memoryBudgetIsReleasedWhenAStageFails() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String message = MT940Samples.text("1022200171931", i + 1, 100000, -2500);
+            // The error handler fails on the first invalid message, with many others still in flight
+            text.append(i == 20 ? message.replace(":62F:", ":62X:") : message).append('\n');
+        }
+        MT940MemoryBudget budget = new MT940MemoryBudget(1024 * 1024);
+        MT940Pipeline pipeline = new MT940Pipeline();
+        pipeline.setMemoryBudget(budget);
+        pipeline.setErrorHandler(result -> {
+            throw new IllegalStateException("Error handler failed");
+        });
+        CompletableFuture<Void> done = pipeline.run(List.of(stream(text)), message -> {
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void unreadableSourceFailsTheRun() {
+        InputStream failing = new SequenceInputStream(stream(new StringBuilder(MT940Samples.BASELINE)), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Disk on fire");
+            }
+        });
+        CompletableFuture<Void> done = new MT940Pipeline().run(List.of(failing), message -> {
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause().getCause());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        MT940Pipeline pipeline = new MT940Pipeline();
+        assertThrows(IllegalArgumentException.class, () -> pipeline.setBufferSize(0));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.setParseParallelism(0));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.setReconcileParallelism(0));
+    }
+
+    private static InputStream stream(CharSequence text) {
+        return new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,97 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MT940ReaderTest {
+
+    private static final String FILE = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50) + "\n"
+            + MT940Samples.text("2000000000002", 7, 0, 5_00) + "\r\n\r\n"
+            + MT940Samples.text("1022200171931", 2, 875_50, 1_000_00, -10_00, 99) + "\n";
+
+    @Test
+    void readsEveryMessageOfAStream() throws IOException {
+        try (MT940Reader reader = new MT940Reader(new StringReader(FILE))) {
+            assertEquals("1022200171931", reader.readMessage().getAccountIdentification());
+            assertEquals(1, reader.getEnvelopeLineNumber());
+            assertEquals(0, reader.getEnvelopeOffset());
+            MT940Message second = reader.readMessage();
+            assertEquals("7/1", second.getStatementNumberSequenceNumber());
+            assertEquals(FILE.indexOf("{1:", 1), reader.getEnvelopeOffset());
+            assertEquals(3, reader.readMessage().getStatementLines().size());
+            assertNull(reader.readMessage());
+        }
+    }
+
+    @Test
+    void accountFilterSkipsMessages() throws IOException {
+        try (MT940Reader reader = new MT940Reader(new StringReader(FILE))) {
+            reader.setAccountFilter("2000000000002"::equals);
+            assertEquals("2000000000002", reader.readMessage().getAccountIdentification());
+            assertNull(reader.readMessage());
+            assertEquals(2, reader.getSkippedMessageCount());
+        }
+    }
+
+    @Test
+    void statementLineFilterDropsLines() throws IOException {
+        try (MT940Reader reader = new MT940Reader(new StringReader(FILE))) {
+            reader.setStatementLineFilter(line -> line.isDebit() && line.getAmountMinorUnits() >= 100_00);
+            assertEquals("250,00", reader.readMessage().getStatementLines().get(0).getAmount());
+            assertEquals(0, reader.readMessage().getStatementLines().size());
+            assertEquals(0, reader.readMessage().getStatementLines().size());
+            assertEquals(5, reader.getSkippedStatementLineCount());
+        }
+    }
+
+    @Test
+    void filteredOutInvalidContentDoesNotFailStatements() throws IOException {
+        // The 125,50 line is invalid, and so is the closing balance of the other account's message
+        String file = MT940Samples.text("1022200171931", 1, 1000_00, -250_00, 125_50)
+                .replace("KHP1\nTransfer", "KHP1\nTrans\"fer") + "\n" + MT940Samples.text("2000000000002", 7, 0, 5_00).replace(":62F:C", ":62F:X") + "\n";
+        for (int i = 0; i < 2; i++) {
+            try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+                reader.setAccountFilter("1022200171931"::equals);
+                reader.setStatementLineFilter(line -> line.getAmountMinorUnits() != 125_50);
+                int lines = i == 0 ? reader.readMessage().getStatementLines().size() : reader.readStatement().getLineCount();
+                assertEquals(1, lines);
+                assertNull(i == 0 ? reader.readMessage() : reader.readStatement());
+                assertEquals(1, reader.getSkippedMessageCount());
+                assertEquals(1, reader.getSkippedStatementLineCount());
+            }
+        }
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            assertThrows(IllegalArgumentException.class, reader::readStatement);
+        }
+    }
+
+    @Test
+    void envelopeLongerThanTheLimitFails() throws IOException {
+        String longer = MT940Samples.text("1022200171931", 3, 0, new long[200]);
+        try (MT940Reader reader = new MT940Reader(new StringReader(FILE + longer))) {
+            reader.setMaxEnvelopeLength(longer.length() - 1);
+            for (int i = 0; i < 3; i++) {
+                reader.readMessage();
+            }
+            MT940EnvelopeTooLongException e = assertThrows(MT940EnvelopeTooLongException.class, reader::readMessage);
+            assertEquals(FILE.length(), e.getOffset());
+            assertEquals(longer.length() - 1, e.getMaxLength());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MT940Reader(new StringReader(FILE)).setMaxEnvelopeLength(0));
+    }
+
+    @Test
+    void unterminatedMessageFails() throws IOException {
+        String text = MT940Samples.text("1022200171931", 1, 0, 1_00);
+        try (MT940Reader reader = new MT940Reader(new StringReader(text.substring(0, text.length() - 2)))) {
+            assertThrows(EOFException.class, reader::readMessage);
+        }
+    }
+}
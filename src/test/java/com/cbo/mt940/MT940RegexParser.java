@@ -0,0 +1,54 @@
+package com.cbo.mt940;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The original regular expression implementation of {@link MT940Message#parseMT940Message(String)},
+ * kept as the reference the single-pass engine is compared against.
+ */
+final class MT940RegexParser {
+
+    private static final Pattern HEADER = Pattern.compile("(\\{1:(.*?)\\}\\{2:(.*?)\\}\\{3:(.*?)\\}\\{4:)\n");
+    private static final Pattern TAG_20 = Pattern.compile(":20:(\\d{8}-\\d{3})\n");
+    private static final Pattern TAG_25 = Pattern.compile(":25:([A-Z0-9]{1,35})\n");
+    private static final Pattern TAG_28C = Pattern.compile(":28C:(\\d{1,5})/(\\d{1,5})\n");
+    private static final Pattern TAG_60F = Pattern.compile(":60F:([CD])(\\d{6})([A-Z]{3})(\\d{1,15})((,\\d{2})?)\n");
+    private static final Pattern TAG_61 = Pattern.compile(":61:(\\d{6})(\\d{4})([CD])([B])(\\d{1,15},?\\d{2}?)([NF][A-Z]{3})([A-Z0-9]{1,16})//([A-Z0-9]{1,16})\n([A-Za-z0-9]{1,34})\n");
+    private static final Pattern TAG_62F = Pattern.compile(":62F:([CD])(\\d{6})([A-Z]{3})(\\d{1,15})((,\\d{2})?)\n");
+    private static final Pattern TAG_64 = Pattern.compile(":64:([CD])(\\d{6})([A-Z]{3})(\\d{1,15},?\\d{2}?)\n");
+    private static final Pattern TRAILER = Pattern.compile("(-\\})");
+
+    private MT940RegexParser() {
+    }
+
+    static MT940Message parse(String mt940String) {
+        MT940Message message = new MT940Message();
+        message.setHeader(find(HEADER, mt940String, "Header").group(1));
+        message.setTransactionReferenceNumber(find(TAG_20, mt940String, "Tag 20").group(1));
+        message.setAccountIdentification(find(TAG_25, mt940String, "Tag 25").group(1));
+        Matcher tag28C = find(TAG_28C, mt940String, "Tag 28C");
+        message.setStatementNumberSequenceNumber(tag28C.group(1) + "/" + tag28C.group(2));
+        Matcher tag60F = find(TAG_60F, mt940String, "Tag 60");
+        message.setOpeningBalance(tag60F.group(1), tag60F.group(2), tag60F.group(3), tag60F.group(4));
+        Matcher tag61 = TAG_61.matcher(mt940String);
+        while (tag61.find()) {
+            message.setStatementLines(tag61.group(1), tag61.group(2), tag61.group(3), tag61.group(4), tag61.group(5),
+                    tag61.group(6), tag61.group(7), tag61.group(8), tag61.group(9));
+        }
+        Matcher tag62F = find(TAG_62F, mt940String, "Tag 62F");
+        message.setClosingBalanceBookedFunds(tag62F.group(1), tag62F.group(2), tag62F.group(3), tag62F.group(4));
+        Matcher tag64 = find(TAG_64, mt940String, "Tag 64");
+        message.setClosingAvailableBalance(tag64.group(1), tag64.group(2), tag64.group(3), tag64.group(4));
+        message.setTrailer(find(TRAILER, mt940String, "trailer").group(1));
+        return message;
+    }
+
+    private static Matcher find(Pattern pattern, String mt940String, String name) {
+        Matcher matcher = pattern.matcher(mt940String);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Missing or invalid " + name + " in the MT940 message");
+        }
+        return matcher;
+    }
+}
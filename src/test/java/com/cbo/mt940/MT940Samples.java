@@ -0,0 +1,80 @@
+package com.cbo.mt940;
+
+/**
+ * Sample messages shared by the tests.
+ */
+final class MT940Samples {
+
+    /**
+     * The sample message of {@link Main#parseMT940Message()}, as the original parser accepted it.
+     */
+    static final String BASELINE = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:\n" +
+            ":20:20231115-319\n" +
+            ":25:1022200171931\n" +
+            ":28C:319/1\n" +
+            ":60F:C231115ETB6994609\n" +
+            ":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n" +
+            ":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n" +
+            ":62F:C231115ETB6461201\n" +
+            ":64:C231115ETB6461201\n" +
+            "-}";
+
+    private MT940Samples() {
+    }
+
+    /**
+     * Formats a valid message whose closing balances equal the opening balance plus its statement lines.
+     *
+     * @param account         The Tag 25 account identification.
+     * @param statementNumber The Tag 28C statement number.
+     * @param opening         The opening balance in minor units, credit if not negative.
+     * @param amounts         The statement line amounts in minor units, negative for debits.
+     * @return The message text.
+     */
+    static String text(String account, int statementNumber, long opening, long... amounts) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:\n")
+                .append(":20:20231115-319\n")
+                .append(":25:").append(account).append('\n')
+                .append(":28C:").append(statementNumber).append("/1\n")
+                .append(":60F:").append(balance(opening)).append('\n');
+        long closing = opening;
+        for (int i = 0; i < amounts.length; i++) {
+            long amount = amounts[i];
+            closing += amount;
+            sb.append(":61:2311151115").append(amount < 0 ? 'D' : 'C').append('B')
+                    .append(MT940Amount.format(Math.abs(amount))).append("NMSCNONREF//FT23319KHP").append(i % 10)
+                    .append("\nTransfer\n");
+        }
+        sb.append(":62F:").append(balance(closing)).append('\n')
+                .append(":64:").append(balance(closing)).append('\n')
+                .append("-}");
+        return sb.toString();
+    }
+
+    private static String balance(long amount) {
+        return (amount < 0 ? "D" : "C") + "231115ETB" + MT940Amount.format(Math.abs(amount));
+    }
+
+    /**
+     * Builds the sample message of {@link Main#buildMT940Message()} for another account and statement.
+     *
+     * @param account         The Tag 25 account identification.
+     * @param statementNumber The Tag 28C statement number.
+     * @return The message.
+     */
+    static MT940Message message(String account, int statementNumber) {
+        MT940Message message = new MT940Message();
+        message.setHeader("{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:");
+        message.setTransactionReferenceNumber("20231115-319");
+        message.setAccountIdentification(account);
+        message.setStatementNumberSequenceNumber(statementNumber + "/1");
+        message.setOpeningBalance("C", "231115", "ETB", "6994609");
+        message.setStatementLines("231115", "1115", "D", "B", "533408,00", "NMSC", "NONREF", "FT23319KHPN5", "Transfer");
+        message.setStatementLines("231116", "1116", "C", "B", "100,50", "NTRF", "NONREF", "FT23319KHPN6", "Refund");
+        message.setClosingBalanceBookedFunds("C", "231115", "ETB", "6461201");
+        message.setClosingAvailableBalance("C", "231115", "ETB", "6461201");
+        message.setTrailer("-}");
+        return message;
+    }
+}
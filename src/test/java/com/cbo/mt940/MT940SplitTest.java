@@ -0,0 +1,101 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940SplitTest {
+
+    @Test
+    void linesAddedThroughTheListAreMeasured() {
+        MT940Message message = message();
+        for (int i = 0; i < 100; i++) {
+            message.getStatementLines().add(line());
+        }
+        assertEquals(message.toString().length(), message.getEncodedLength());
+
+        List<MT940Message> pages = message.split(2000);
+        assertTrue(pages.size() > 1);
+        for (MT940Message page : pages) {
+            assertTrue(page.getEncodedLength() <= 2000);
+            assertEquals(page.toString().length(), page.getEncodedLength());
+            assertTrue(MT940Reconciliation.isBalanced(MT940Message.parseMT940Message(page.toString())));
+        }
+    }
+
+    @Test
+    void changedLinesAreMeasured() {
+        MT940Message message = message();
+        MT940Tag61 line = line();
+        message.addStatementLine(line);
+        for (int i = 0; i < 99; i++) {
+            message.addStatementLine(line());
+        }
+        line.setSupplementaryDetails("Transfer of the month of November");
+        line.setBankReference(null);
+        assertEquals(message.toString().length(), message.getEncodedLength());
+    }
+
+    @Test
+    void splitBreaksPagesWhereTheBuilderDoes() {
+        for (int limit : new int[]{512, 600, 2000}) {
+            MT940StatementBuilder unlimited = builder();
+            unlimited.setMaxMessageLength(Integer.MAX_VALUE);
+            MT940Message message = MT940Message.parseMT940Message(unlimited.build().trim());
+
+            StringBuilder split = new StringBuilder();
+            for (MT940Message page : message.split(limit)) {
+                assertTrue(page.getEncodedLength() <= limit);
+                split.append(page).append('\n');
+            }
+            MT940StatementBuilder paged = builder();
+            paged.setMaxMessageLength(limit);
+            assertEquals(paged.build(), split.toString(), "limit " + limit);
+        }
+    }
+
+    private static MT940StatementBuilder builder() {
+        MT940StatementBuilder builder = new MT940StatementBuilder(
+                "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:",
+                "20231115-319", "1022200171931", "ETB");
+        builder.setStatementNumber(319);
+        builder.setOpeningBalance(231115, 99_000_00);
+        for (int i = 0; i < 300; i++) {
+            // Balances of varying widths, so the :62M: reserve differs from page to page
+            long amount = (i % 3 == 0 ? -1 : 1) * (i * 7_919_13L % 1_000_000_00L + 1);
+            builder.addLine(231115 + i % 2, 1115, amount, "NTRF", "NONREF", i % 4 == 0 ? null : "FT23319KHP" + i,
+                    i % 5 == 0 ? null : "Transfer " + i);
+        }
+        return builder;
+    }
+
+    private static MT940Message message() {
+        MT940Message message = new MT940Message();
+        message.setHeader("{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:");
+        message.setTransactionReferenceNumber("20231115-319");
+        message.setAccountIdentification("1022200171931");
+        message.setStatementNumberSequenceNumber("319/1");
+        message.setOpeningBalance("C", "231115", "ETB", "1000,00");
+        message.setClosingBalanceBookedFunds("C", "231115", "ETB", "1100,00");
+        message.setClosingAvailableBalance("C", "231115", "ETB", "1100,00");
+        message.setTrailer("-}");
+        return message;
+    }
+
+    private static MT940Tag61 line() {
+        MT940Tag61 line = new MT940Tag61();
+        line.setValueDate("231115");
+        line.setEntryDate("1115");
+        line.setDebitCreditMark("C");
+        line.setFundsCode("B");
+        line.setAmount("1,00");
+        line.setTransactionTypeIDCode("NTRF");
+        line.setCustomerReference("NONREF");
+        line.setBankReference("FT23319KHPN5");
+        line.setSupplementaryDetails("Transfer");
+        return line;
+    }
+}
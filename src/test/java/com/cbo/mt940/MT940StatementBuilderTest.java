@@ -0,0 +1,127 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940StatementBuilderTest {
+
+    private static final String HEADER = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I940XXXXXXXXXXXXN}{3:{108:22061ZFPHG97870}}{4:";
+
+    @Test
+    void builtStatementParsesAndBalances() {
+        MT940StatementBuilder builder = new MT940StatementBuilder(HEADER, "20231115-319", "1022200171931", "ETB");
+        builder.setStatementNumber(319);
+        builder.setOpeningBalance(231115, 6994609_00L);
+        builder.addLines(new int[]{231115, 231116}, new int[]{1115, 1116}, new long[]{-533408_00L, 100_50},
+                new String[]{"NMSC", "NTRF"}, new String[]{"NONREF", "NONREF"},
+                new String[]{"FT23319KHPN5", "FT23319KHPN6"}, new String[]{"Transfer", "Refund"}, 0, 2);
+        assertEquals(6461201_00L + 100_50, builder.getClosingBalance());
+
+        MT940Message message = MT940Message.parseMT940Message(builder.build().trim());
+        assertEquals(2, message.getStatementLines().size());
+        assertEquals(":62F:C231115ETB6461301,50\n", message.getClosingBalanceBookedFunds());
+        assertTrue(MT940Reconciliation.isBalanced(message));
+    }
+
+    @Test
+    void reversalsAndFundsCodesAreWritten() {
+        MT940StatementBuilder builder = new MT940StatementBuilder(HEADER, "20231115-319", "1022200171931", "ETB");
+        builder.setOpeningBalance(231115, 1000_00);
+        builder.addLine(231115, 1115, "RC", "B", 250_00, "NMSC", "NONREF", "FT23319KHPN5", null);
+        builder.addLine(231115, 0, "RD", null, 100_50, "NTRF", "NONREF", null, "Refund");
+        builder.addLine(231115, 0, "D", "B", 0, "NCHG", "NONREF", null, null);
+        assertEquals(1000_00 - 250_00 + 100_50, builder.getClosingBalance());
+
+        String text = builder.build();
+        assertTrue(text.contains(":61:2311151115RCB250,00NMSCNONREF//FT23319KHPN5\n"));
+        assertTrue(text.contains(":61:231115RD100,50NTRFNONREF\nRefund\n"));
+        assertTrue(text.contains(":61:231115DB0,00NCHGNONREF\n"));
+        assertTrue(text.contains(":62F:C231115ETB850,50\n"));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.addLine(231115, 0, "CD", null, 1, "NMSC", "NONREF", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.addLine(231115, 0, "C", "1", 1, "NMSC", "NONREF", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.addLine(231115, 0, "C", null, -1, "NMSC", "NONREF", null, null));
+    }
+
+    @Test
+    void longStatementsArePaged() throws IOException {
+        MT940StatementBuilder builder = new MT940StatementBuilder(HEADER, "20231115-319", "1022200171931", "ETB");
+        builder.setOpeningBalance(231115, -5_000_00);
+        for (int i = 0; i < 200; i++) {
+            builder.addLine(231115, 0, (i + 1) * 1_01L, "NTRF", "NONREF", null, "Line " + i);
+        }
+        builder.setMaxMessageLength(1000);
+        StringBuilder out = new StringBuilder();
+        int pages = builder.writeTo(out);
+        assertTrue(pages > 1);
+
+        List<MT940Message> messages = new ArrayList<>();
+        try (MT940Reader reader = new MT940Reader(new StringReader(out.toString()))) {
+            MT940Message message;
+            while ((message = reader.readMessage()) != null) {
+                messages.add(message);
+            }
+        }
+        assertEquals(pages, messages.size());
+        int lines = 0;
+        for (int i = 0; i < pages; i++) {
+            MT940Message message = messages.get(i);
+            assertTrue(message.getEncodedLength() <= 1000);
+            assertEquals("1/" + (i + 1), message.getStatementNumberSequenceNumber());
+            assertTrue(MT940Reconciliation.isBalanced(message));
+            if (i > 0) {
+                assertEquals(messages.get(i - 1).getClosingBalanceBookedFunds().substring(5),
+                        message.getOpeningBalance().substring(5));
+            }
+            lines += message.getStatementLines().size();
+        }
+        assertEquals(200, lines);
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MT940StatementBuilder("{1:", "20231115-319", "1022200171931", "ETB"));
+        MT940StatementBuilder builder = new MT940StatementBuilder(HEADER, "20231115-319", "1022200171931", "ETB");
+        assertThrows(IllegalArgumentException.class, () -> builder.addLine(231332, 0, 1_00, "NTRF", "NONREF", null, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.addLine(231115, 0, 1_00, "NTRF", "NONREF-TOO-LONG-REF", null, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.setMaxMessageLength(100));
+        // The opening balance is mandatory
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+
+    @Test
+    void writeAllKeepsStatementOrderPerFile(@TempDir Path directory) throws IOException {
+        List<MT940StatementBuilder> statements = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            MT940StatementBuilder builder = new MT940StatementBuilder(HEADER, "20231115-319", "1022200171931", "ETB");
+            builder.setStatementNumber(i + 1);
+            builder.setOpeningBalance(231115, i);
+            builder.addLine(231115, 0, 1_00, "NTRF", "NONREF", null, null);
+            statements.add(builder);
+        }
+        List<Path> files = List.of(directory.resolve("a.sta"), directory.resolve("b.sta"), directory.resolve("c.sta"));
+        MT940StatementBuilder.writeAll(statements, files, 3);
+
+        StringBuilder expected = new StringBuilder();
+        statements.forEach(statement -> expected.append(statement.build()));
+        StringBuilder actual = new StringBuilder();
+        for (Path file : files) {
+            actual.append(Files.readString(file, StandardCharsets.ISO_8859_1));
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
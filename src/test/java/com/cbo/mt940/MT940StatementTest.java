@@ -0,0 +1,50 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT940StatementTest {
+
+    @Test
+    void parsedStatementMatchesParsedMessage() {
+        String text = MT940Samples.text("1022200171931", 319, 1000_00, -250_00, 125_50);
+        MT940Statement statement = MT940Statement.parse(text);
+        assertEquals(MT940Message.parseMT940Message(text).toString(), statement.toMessage().toString());
+        assertEquals("319/1", statement.getStatementNumberSequenceNumber());
+        assertEquals(1000_00, statement.getOpeningBalanceMinorUnits());
+        assertEquals(875_50, statement.getClosingBalanceMinorUnits());
+        assertEquals(2, statement.getLineCount());
+        assertEquals(-250_00, statement.getSignedAmountMinorUnits(0));
+        assertTrue(statement.getLine(0).isDebit());
+    }
+
+    @Test
+    void snapshotOfABuiltMessage() {
+        MT940Message message = MT940Samples.message("1022200171931", 12);
+        MT940Statement statement = MT940Statement.from(message);
+        assertEquals("12", statement.getStatementNumber());
+        assertEquals("1", statement.getSequenceNumber());
+        assertEquals(message.toString(), statement.toMessage().toString());
+
+        // Later changes to the message do not reach the snapshot
+        message.getStatementLines().get(0).setAmount("1,00");
+        assertEquals(533408_00, statement.getLine(0).getAmountMinorUnits());
+    }
+
+    @Test
+    void linesAreReadOnly() {
+        MT940Statement statement = MT940Statement.from(MT940Samples.message("1022200171931", 12));
+        assertThrows(UnsupportedOperationException.class, () -> statement.getLines().remove(0));
+    }
+
+    @Test
+    void missingTag28CIsRejected() {
+        MT940Message message = new MT940Message();
+        message.setTransactionReferenceNumber("20231115-319");
+        message.setAccountIdentification("1022200171931");
+        assertThrows(IllegalArgumentException.class, () -> MT940Statement.from(message));
+    }
+}
@@ -0,0 +1,118 @@
+package com.cbo.mt940;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT942MessageTest {
+
+    private static final String MESSAGE = "{1:F01CBORETAAXXXX22061ZFPHG}{2:I942XXXXXXXXXXXXN}{4:\n" +
+            ":20:20231115-042\n" +
+            ":21:NONREF\n" +
+            ":25:1022200171931\n" +
+            ":28C:5/1\n" +
+            ":34F:ETBD100,00\n" +
+            ":34F:ETBC50,00\n" +
+            ":13D:2311151430+0300\n" +
+            ":61:2311151115DB533408,00NMSCNONREF//FT23319KHPN5\nTransfer\n" +
+            ":61:2311151115CB100,50NTRFNONREF//FT23319KHPN6\nRefund\n" +
+            ":90D:1ETB533408,00\n" +
+            ":90C:1ETB100,50\n" +
+            "-}";
+
+    @Test
+    void parsesAnInterimReport() {
+        MT942Message message = MT942Message.parseMT942Message(MESSAGE);
+        assertEquals("942", message.getHeaderBlocks().getMessageType());
+        assertEquals("20231115-042", message.getTransactionReferenceNumber());
+        assertEquals("NONREF", message.getRelatedReference());
+        assertEquals("1022200171931", message.getAccountIdentification());
+        assertEquals("5", message.getStatementNumber());
+        assertEquals("1", message.getSequenceNumber());
+        assertEquals("ETB", message.getCurrency());
+        assertTrue(message.hasSeparateFloorLimits());
+        assertEquals(100_00, message.getDebitFloorLimitMinorUnits());
+        assertEquals(50_00, message.getCreditFloorLimitMinorUnits());
+        assertEquals("2311151430+0300", message.getDateTimeIndication());
+        assertEquals(2, message.getStatementLines().size());
+        assertEquals("Refund", message.getStatementLines().get(1).getSupplementaryDetails());
+        assertEquals(1, message.getDebitEntryCount());
+        assertEquals(533408_00, message.getDebitEntrySumMinorUnits());
+        assertEquals(100_50, message.getCreditEntrySumMinorUnits());
+        assertTrue(message.isReconciled());
+        assertEquals(MESSAGE, message.toString());
+    }
+
+    @Test
+    void optionalTagsMayBeLeftOut() {
+        String text = MESSAGE.replace(":21:NONREF\n", "").replace(":34F:ETBC50,00\n", "")
+                .replace(":34F:ETBD100,00\n", ":34F:ETB0,00\n").replace(":90D:1ETB533408,00\n:90C:1ETB100,50\n", "");
+        MT942Message message = MT942Message.parseMT942Message(text);
+        assertNull(message.getRelatedReference());
+        assertFalse(message.hasSeparateFloorLimits());
+        assertEquals(0, message.getCreditFloorLimitMinorUnits());
+        assertEquals(-1, message.getDebitEntryCount());
+        assertTrue(message.isReconciled());
+        assertEquals(text, message.toString());
+    }
+
+    @Test
+    void invalidReportsAreRejected() {
+        // The totals must match the lines
+        assertThrows(IllegalArgumentException.class,
+                () -> MT942Message.parseMT942Message(MESSAGE.replace(":90D:1ETB", ":90D:2ETB")));
+        assertThrows(IllegalArgumentException.class,
+                () -> MT942Message.parseMT942Message(MESSAGE.replace(":13D:2311151430+0300\n", "")));
+        assertThrows(IllegalArgumentException.class, () -> MT942Message.parseMT942Message(null));
+
+        MT942Message message = new MT942Message();
+        assertThrows(IllegalArgumentException.class, () -> message.setStatementNumberSequenceNumber("5"));
+        assertThrows(IllegalArgumentException.class, () -> message.setDateTimeIndication("2311151430"));
+        message.setFloorLimit("ETB", "0,00");
+        assertThrows(IllegalArgumentException.class, () -> message.setDebitEntries(1, "USD", "1,00"));
+    }
+
+    @Test
+    void readerReadsInterimReports() throws IOException {
+        String file = MESSAGE + "\r\n" + MESSAGE.replace(":25:1022200171931", ":25:2000000000002") + "\n";
+        try (MT940Reader reader = new MT940Reader(new StringReader(file))) {
+            reader.setAccountFilter("2000000000002"::equals);
+            assertEquals("2000000000002", reader.readMT942Message().getAccountIdentification());
+            assertNull(reader.readMT942Message());
+            assertEquals(1, reader.getSkippedMessageCount());
+        }
+    }
+
+    @Test
+    void readerMeasuresAndAdmitsInterimReports() throws IOException {
+        MT940ParserMetrics metrics = new MT940ParserMetrics();
+        MT940MemoryBudget budget = new MT940MemoryBudget(1 << 20);
+        String other = MESSAGE.replace(":25:1022200171931", ":25:2000000000002");
+        String invalid = MESSAGE.replace(":90D:1ETB", ":90D:2ETB");
+        try (MT940Reader reader = new MT940Reader(new StringReader(MESSAGE + "\n" + other + "\n" + invalid))) {
+            reader.setMetrics(metrics);
+            reader.setMemoryBudget(budget);
+            reader.setAccountFilter("1022200171931"::equals);
+            MT942Message message = reader.readMT942Message();
+            assertEquals(MT940MemoryBudget.estimate(message), budget.getUsedBytes());
+            // The other account is skipped and the invalid report gives its reservation back
+            assertThrows(IllegalArgumentException.class, reader::readMT942Message);
+            assertEquals(MT940MemoryBudget.estimate(message), budget.getUsedBytes());
+            budget.release(message);
+        }
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(3, budget.getAdmittedCount());
+        assertEquals(1, metrics.getMessageCount());
+        assertEquals(2, metrics.getStatementLineCount());
+        assertEquals(1, metrics.getSkippedMessageCount());
+        assertEquals(MESSAGE.length() + other.length(), metrics.getByteCount());
+        assertEquals(1, metrics.getValidationFailures(null));
+    }
+}